@@ -0,0 +1,666 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.bytecode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Writes the bytecode of a single method.  The writer tracks the operand
+ * stack depth to compute max_stack, and resolves branch labels when the
+ * class is written.
+ */
+public class CodeWriter {
+  public static final int ACONST_NULL = 0x01;
+  public static final int ICONST_0 = 0x03;
+  public static final int BIPUSH = 0x10;
+  public static final int SIPUSH = 0x11;
+  public static final int LDC = 0x12;
+  public static final int LDC_W = 0x13;
+  public static final int LDC2_W = 0x14;
+  public static final int ILOAD = 0x15;
+  public static final int ALOAD = 0x19;
+  public static final int AALOAD = 0x32;
+  public static final int ISTORE = 0x36;
+  public static final int ASTORE = 0x3a;
+  public static final int POP = 0x57;
+  public static final int DUP = 0x59;
+  public static final int SWAP = 0x5f;
+  public static final int ISUB = 0x64;
+  public static final int IXOR = 0x82;
+  public static final int I2L = 0x85;
+  public static final int L2I = 0x88;
+  public static final int IFEQ = 0x99;
+  public static final int IFNE = 0x9a;
+  public static final int IF_ICMPEQ = 0x9f;
+  public static final int IF_ICMPNE = 0xa0;
+  public static final int IF_ICMPLT = 0xa1;
+  public static final int IF_ICMPGE = 0xa2;
+  public static final int IF_ICMPGT = 0xa3;
+  public static final int IF_ICMPLE = 0xa4;
+  public static final int IF_ACMPEQ = 0xa5;
+  public static final int IF_ACMPNE = 0xa6;
+  public static final int GOTO = 0xa7;
+  public static final int IRETURN = 0xac;
+  public static final int ARETURN = 0xb0;
+  public static final int RETURN = 0xb1;
+  public static final int GETSTATIC = 0xb2;
+  public static final int GETFIELD = 0xb4;
+  public static final int PUTFIELD = 0xb5;
+  public static final int INVOKEVIRTUAL = 0xb6;
+  public static final int INVOKESPECIAL = 0xb7;
+  public static final int INVOKESTATIC = 0xb8;
+  public static final int INVOKEINTERFACE = 0xb9;
+  public static final int NEW = 0xbb;
+  public static final int ARRAYLENGTH = 0xbe;
+  public static final int ATHROW = 0xbf;
+  public static final int CHECKCAST = 0xc0;
+  public static final int INSTANCEOF = 0xc1;
+  public static final int IFNULL = 0xc6;
+  public static final int IFNONNULL = 0xc7;
+
+  private final JavaClassWriter _class;
+  private final int _access;
+  private final String _name;
+  private final String _descriptor;
+
+  private byte []_code = new byte[256];
+  private int _length;
+
+  private int _stack;
+  private int _maxStack;
+  private int _maxLocals;
+
+  // true if the current position is unreachable, e.g. after a goto
+  private boolean _isDead;
+
+  private final ArrayList<Label> _exceptionLabels = new ArrayList<Label>();
+  private final ArrayList<Integer> _exceptionTypes = new ArrayList<Integer>();
+
+  private final ArrayList<Label> _labels = new ArrayList<Label>();
+
+  CodeWriter(JavaClassWriter cl, int access, String name, String descriptor)
+  {
+    _class = cl;
+    _access = access;
+    _name = name;
+    _descriptor = descriptor;
+
+    _maxLocals = getArgSize(descriptor);
+
+    if ((access & JavaClassWriter.ACC_STATIC) == 0)
+      _maxLocals++;
+  }
+
+  /**
+   * Returns the owning class writer.
+   */
+  public JavaClassWriter getJavaClass()
+  {
+    return _class;
+  }
+
+  /**
+   * Returns the method name.
+   */
+  public String getName()
+  {
+    return _name;
+  }
+
+  /**
+   * Returns the current code length.
+   */
+  public int getLength()
+  {
+    return _length;
+  }
+
+  /**
+   * True if the current position can be reached by normal flow.
+   */
+  public boolean isReachable()
+  {
+    return ! _isDead;
+  }
+
+  /**
+   * Allocates a new local variable slot.
+   */
+  public int allocateLocal()
+  {
+    return _maxLocals++;
+  }
+
+  /**
+   * Creates a new branch label.
+   */
+  public Label createLabel()
+  {
+    return new Label();
+  }
+
+  /**
+   * Places the label at the current position.
+   */
+  public void mark(Label label)
+  {
+    if (label.getOffset() >= 0)
+      throw new IllegalStateException(label + " is already placed");
+
+    label.setOffset(_length);
+
+    if (label.getStack() >= 0) {
+      // a branch or exception handler already targets the label
+      _stack = label.getStack();
+      _isDead = false;
+    }
+    else if (! _isDead)
+      label.setStack(_stack);
+  }
+
+  //
+  // constants
+  //
+
+  public void pushNull()
+  {
+    op(ACONST_NULL, 1);
+  }
+
+  public void pushInt(int value)
+  {
+    if (-1 <= value && value <= 5)
+      op(ICONST_0 + value, 1);
+    else if (Byte.MIN_VALUE <= value && value <= Byte.MAX_VALUE) {
+      op(BIPUSH, 1);
+      write(value);
+    }
+    else if (Short.MIN_VALUE <= value && value <= Short.MAX_VALUE) {
+      op(SIPUSH, 1);
+      write16(value);
+    }
+    else
+      ldc(_class.addInteger(value), 1);
+  }
+
+  public void pushString(String value)
+  {
+    ldc(_class.addString(value), 1);
+  }
+
+  public void pushLong(long value)
+  {
+    op(LDC2_W, 2);
+    write16(_class.addLong(value));
+  }
+
+  public void pushDouble(double value)
+  {
+    op(LDC2_W, 2);
+    write16(_class.addDouble(value));
+  }
+
+  private void ldc(int index, int size)
+  {
+    if (index < 0x100) {
+      op(LDC, size);
+      write(index);
+    }
+    else {
+      op(LDC_W, size);
+      write16(index);
+    }
+  }
+
+  //
+  // locals
+  //
+
+  public void loadLocal(int index)
+  {
+    localOp(ALOAD, index, 1);
+  }
+
+  public void storeLocal(int index)
+  {
+    localOp(ASTORE, index, -1);
+  }
+
+  public void loadIntLocal(int index)
+  {
+    localOp(ILOAD, index, 1);
+  }
+
+  public void storeIntLocal(int index)
+  {
+    localOp(ISTORE, index, -1);
+  }
+
+  private void localOp(int code, int index, int delta)
+  {
+    if (_maxLocals <= index)
+      _maxLocals = index + 1;
+
+    if (index <= 3) {
+      // xload_n and xstore_n short forms
+      int base;
+
+      if (code == ILOAD)
+        base = 0x1a;
+      else if (code == ALOAD)
+        base = 0x2a;
+      else if (code == ISTORE)
+        base = 0x3b;
+      else
+        base = 0x4b;
+
+      op(base + index, delta);
+    }
+    else if (index < 0x100) {
+      op(code, delta);
+      write(index);
+    }
+    else {
+      op(0xc4, 0); // wide
+      write(code);
+      write16(index);
+      adjustStack(delta);
+    }
+  }
+
+  //
+  // stack and arithmetic
+  //
+
+  public void pop()
+  {
+    op(POP, -1);
+  }
+
+  public void dup()
+  {
+    op(DUP, 1);
+  }
+
+  public void swap()
+  {
+    op(SWAP, 0);
+  }
+
+  public void isub()
+  {
+    op(ISUB, -1);
+  }
+
+  public void ixor()
+  {
+    op(IXOR, -1);
+  }
+
+  public void aaload()
+  {
+    op(AALOAD, -1);
+  }
+
+  public void arrayLength()
+  {
+    op(ARRAYLENGTH, 0);
+  }
+
+  public void i2l()
+  {
+    op(I2L, 1);
+  }
+
+  public void l2i()
+  {
+    op(L2I, -1);
+  }
+
+  //
+  // objects and fields
+  //
+
+  public void newInstance(String className)
+  {
+    op(NEW, 1);
+    write16(_class.addClass(className));
+  }
+
+  public void checkCast(String className)
+  {
+    op(CHECKCAST, 0);
+    write16(_class.addClass(className));
+  }
+
+  public void instanceOf(String className)
+  {
+    op(INSTANCEOF, 0);
+    write16(_class.addClass(className));
+  }
+
+  public void getStatic(String owner, String name, String descriptor)
+  {
+    op(GETSTATIC, getTypeSize(descriptor, 0));
+    write16(_class.addFieldRef(owner, name, descriptor));
+  }
+
+  public void getField(String owner, String name, String descriptor)
+  {
+    op(GETFIELD, getTypeSize(descriptor, 0) - 1);
+    write16(_class.addFieldRef(owner, name, descriptor));
+  }
+
+  public void putField(String owner, String name, String descriptor)
+  {
+    op(PUTFIELD, - getTypeSize(descriptor, 0) - 1);
+    write16(_class.addFieldRef(owner, name, descriptor));
+  }
+
+  //
+  // invocation
+  //
+
+  public void invokeVirtual(String owner, String name, String descriptor)
+  {
+    op(INVOKEVIRTUAL, getInvokeDelta(descriptor, true));
+    write16(_class.addMethodRef(owner, name, descriptor));
+  }
+
+  public void invokeSpecial(String owner, String name, String descriptor)
+  {
+    op(INVOKESPECIAL, getInvokeDelta(descriptor, true));
+    write16(_class.addMethodRef(owner, name, descriptor));
+  }
+
+  public void invokeStatic(String owner, String name, String descriptor)
+  {
+    op(INVOKESTATIC, getInvokeDelta(descriptor, false));
+    write16(_class.addMethodRef(owner, name, descriptor));
+  }
+
+  public void invokeInterface(String owner, String name, String descriptor)
+  {
+    op(INVOKEINTERFACE, getInvokeDelta(descriptor, true));
+    write16(_class.addInterfaceMethodRef(owner, name, descriptor));
+    write(getArgSize(descriptor) + 1);
+    write(0);
+  }
+
+  //
+  // control flow
+  //
+
+  /**
+   * Writes a conditional or unconditional branch to the label.
+   */
+  public void branch(int code, Label label)
+  {
+    int delta;
+
+    switch (code) {
+    case GOTO:
+      delta = 0;
+      break;
+    case IFEQ: case IFNE: case IFNULL: case IFNONNULL:
+    case 0x9b: case 0x9c: case 0x9d: case 0x9e:
+      delta = -1;
+      break;
+    default:
+      delta = -2;
+      break;
+    }
+
+    int op = _length;
+
+    op(code, delta);
+    write16(0);
+
+    if (label.getFixupCount() == 0)
+      _labels.add(label);
+
+    label.addFixup(op);
+
+    if (label.getStack() < 0)
+      label.setStack(_stack);
+
+    if (code == GOTO)
+      _isDead = true;
+  }
+
+  public void gotoLabel(Label label)
+  {
+    branch(GOTO, label);
+  }
+
+  public void returnValue()
+  {
+    op(ARETURN, -1);
+    _isDead = true;
+  }
+
+  public void returnInt()
+  {
+    op(IRETURN, -1);
+    _isDead = true;
+  }
+
+  public void returnVoid()
+  {
+    op(RETURN, 0);
+    _isDead = true;
+  }
+
+  public void throwException()
+  {
+    op(ATHROW, -1);
+    _isDead = true;
+  }
+
+  /**
+   * Adds an exception handler covering [start, end).  The labels may be
+   * placed after the call, but the handler must be added before it is
+   * marked.
+   *
+   * @param type the internal name of the caught class, or null for any
+   */
+  public void addExceptionHandler(Label start, Label end, Label handler,
+                                  String type)
+  {
+    _exceptionLabels.add(start);
+    _exceptionLabels.add(end);
+    _exceptionLabels.add(handler);
+    _exceptionTypes.add(type != null ? _class.addClass(type) : 0);
+
+    if (handler.getStack() < 0)
+      handler.setStack(1);
+  }
+
+  //
+  // writing
+  //
+
+  private void op(int code, int delta)
+  {
+    write(code);
+    adjustStack(delta);
+  }
+
+  private void adjustStack(int delta)
+  {
+    _stack += delta;
+
+    if (_stack < 0)
+      throw new IllegalStateException(_name + ": stack underflow at " + _length);
+
+    if (_maxStack < _stack)
+      _maxStack = _stack;
+  }
+
+  private void write(int b)
+  {
+    if (_code.length <= _length) {
+      byte []code = new byte[2 * _code.length];
+      System.arraycopy(_code, 0, code, 0, _length);
+      _code = code;
+    }
+
+    _code[_length++] = (byte) b;
+  }
+
+  private void write16(int v)
+  {
+    write(v >> 8);
+    write(v);
+  }
+
+  /**
+   * Resolves the labels and adds the pool entries needed by the method.
+   */
+  void prepare()
+  {
+    _class.addUtf8(_name);
+    _class.addUtf8(_descriptor);
+
+    for (int i = 0; i < _labels.size(); i++)
+      resolve(_labels.get(i));
+
+    for (int i = 0; i < _exceptionLabels.size(); i++) {
+      if (_exceptionLabels.get(i).getOffset() < 0)
+        throw new IllegalStateException(_name + ": unplaced exception label");
+    }
+  }
+
+  private void resolve(Label label)
+  {
+    int target = label.getOffset();
+
+    if (label.getFixupCount() > 0 && target < 0)
+      throw new IllegalStateException(_name + ": unplaced " + label);
+
+    for (int i = 0; i < label.getFixupCount(); i++) {
+      int op = label.getFixup(i);
+      int offset = target - op;
+
+      if (offset < Short.MIN_VALUE || Short.MAX_VALUE < offset)
+        throw new IllegalStateException(_name + ": branch offset too large");
+
+      _code[op + 1] = (byte) (offset >> 8);
+      _code[op + 2] = (byte) offset;
+    }
+  }
+
+  void write(DataOutputStream out, int codeIndex)
+    throws IOException
+  {
+    if (_length >= 0x10000)
+      throw new IllegalStateException(_name + ": method code too large");
+
+    out.writeShort(_access);
+    out.writeShort(_class.addUtf8(_name));
+    out.writeShort(_class.addUtf8(_descriptor));
+
+    out.writeShort(1); // attributes
+
+    int exceptionCount = _exceptionTypes.size();
+
+    out.writeShort(codeIndex);
+    out.writeInt(2 + 2 + 4 + _length + 2 + 8 * exceptionCount + 2);
+    out.writeShort(_maxStack);
+    out.writeShort(_maxLocals);
+    out.writeInt(_length);
+    out.write(_code, 0, _length);
+
+    out.writeShort(exceptionCount);
+
+    for (int i = 0; i < exceptionCount; i++) {
+      out.writeShort(_exceptionLabels.get(3 * i).getOffset());
+      out.writeShort(_exceptionLabels.get(3 * i + 1).getOffset());
+      out.writeShort(_exceptionLabels.get(3 * i + 2).getOffset());
+      out.writeShort(_exceptionTypes.get(i));
+    }
+
+    out.writeShort(0); // code attributes
+  }
+
+  //
+  // descriptors
+  //
+
+  private static int getInvokeDelta(String descriptor, boolean hasThis)
+  {
+    int ret = descriptor.indexOf(')');
+    int returnSize = getTypeSize(descriptor, ret + 1);
+
+    return returnSize - getArgSize(descriptor) - (hasThis ? 1 : 0);
+  }
+
+  /**
+   * Returns the number of local slots used by the arguments.
+   */
+  private static int getArgSize(String descriptor)
+  {
+    int size = 0;
+    int i = 1;
+
+    while (descriptor.charAt(i) != ')') {
+      size += getTypeSize(descriptor, i);
+
+      while (descriptor.charAt(i) == '[')
+        i++;
+
+      if (descriptor.charAt(i) == 'L')
+        i = descriptor.indexOf(';', i);
+
+      i++;
+    }
+
+    return size;
+  }
+
+  private static int getTypeSize(String descriptor, int i)
+  {
+    switch (descriptor.charAt(i)) {
+    case 'V':
+      return 0;
+    case 'J': case 'D':
+      return 2;
+    default:
+      return 1;
+    }
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _name + _descriptor + "]";
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes a Java class file.  The writer produces version 49 class files,
+ * which do not need StackMapTable attributes.
+ */
+public class JavaClassWriter {
+  public static final int ACC_PUBLIC = 0x0001;
+  public static final int ACC_PRIVATE = 0x0002;
+  public static final int ACC_PROTECTED = 0x0004;
+  public static final int ACC_STATIC = 0x0008;
+  public static final int ACC_FINAL = 0x0010;
+  public static final int ACC_SUPER = 0x0020;
+
+  private static final int CP_UTF8 = 1;
+  private static final int CP_INTEGER = 3;
+  private static final int CP_LONG = 5;
+  private static final int CP_DOUBLE = 6;
+  private static final int CP_CLASS = 7;
+  private static final int CP_STRING = 8;
+  private static final int CP_FIELD_REF = 9;
+  private static final int CP_METHOD_REF = 10;
+  private static final int CP_INTERFACE_METHOD_REF = 11;
+  private static final int CP_NAME_AND_TYPE = 12;
+
+  private final String _className;
+  private final String _superClassName;
+  private int _access = ACC_PUBLIC | ACC_SUPER;
+
+  private final ByteArrayOutputStream _poolBuffer
+    = new ByteArrayOutputStream();
+  private final DataOutputStream _pool = new DataOutputStream(_poolBuffer);
+  private final HashMap<String,Integer> _poolMap
+    = new HashMap<String,Integer>();
+  private int _poolCount = 1;
+
+  private final ArrayList<CodeWriter> _methods = new ArrayList<CodeWriter>();
+
+  /**
+   * Creates the writer.
+   *
+   * @param className the internal class name, e.g. "_quercus/Foo"
+   * @param superClassName the internal name of the super class
+   */
+  public JavaClassWriter(String className, String superClassName)
+  {
+    _className = className;
+    _superClassName = superClassName;
+  }
+
+  /**
+   * Returns the internal class name.
+   */
+  public String getClassName()
+  {
+    return _className;
+  }
+
+  /**
+   * Returns the internal name of the super class.
+   */
+  public String getSuperClassName()
+  {
+    return _superClassName;
+  }
+
+  /**
+   * Sets the class access flags.
+   */
+  public void setAccessFlags(int access)
+  {
+    _access = access | ACC_SUPER;
+  }
+
+  /**
+   * Adds a method, returning the writer for its code.
+   */
+  public CodeWriter addMethod(int access, String name, String descriptor)
+  {
+    CodeWriter code = new CodeWriter(this, access, name, descriptor);
+
+    _methods.add(code);
+
+    return code;
+  }
+
+  /**
+   * Adds a UTF-8 constant.
+   */
+  public int addUtf8(String value)
+  {
+    String key = "U" + value;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    try {
+      _pool.writeByte(CP_UTF8);
+      _pool.writeUTF(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return addEntry(key, 1);
+  }
+
+  /**
+   * Adds a class constant.
+   */
+  public int addClass(String className)
+  {
+    String key = "C" + className;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    int nameIndex = addUtf8(className);
+
+    writeEntry(CP_CLASS, nameIndex);
+
+    return addEntry(key, 1);
+  }
+
+  /**
+   * Adds a string constant.
+   */
+  public int addString(String value)
+  {
+    String key = "S" + value;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    int valueIndex = addUtf8(value);
+
+    writeEntry(CP_STRING, valueIndex);
+
+    return addEntry(key, 1);
+  }
+
+  /**
+   * Adds an integer constant.
+   */
+  public int addInteger(int value)
+  {
+    String key = "I" + value;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    try {
+      _pool.writeByte(CP_INTEGER);
+      _pool.writeInt(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return addEntry(key, 1);
+  }
+
+  /**
+   * Adds a long constant, which uses two pool entries.
+   */
+  public int addLong(long value)
+  {
+    String key = "J" + value;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    try {
+      _pool.writeByte(CP_LONG);
+      _pool.writeLong(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return addEntry(key, 2);
+  }
+
+  /**
+   * Adds a double constant, which uses two pool entries.
+   */
+  public int addDouble(double value)
+  {
+    String key = "D" + Double.doubleToRawLongBits(value);
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    try {
+      _pool.writeByte(CP_DOUBLE);
+      _pool.writeDouble(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return addEntry(key, 2);
+  }
+
+  /**
+   * Adds a field reference.
+   */
+  public int addFieldRef(String owner, String name, String descriptor)
+  {
+    return addMemberRef(CP_FIELD_REF, owner, name, descriptor);
+  }
+
+  /**
+   * Adds a method reference.
+   */
+  public int addMethodRef(String owner, String name, String descriptor)
+  {
+    return addMemberRef(CP_METHOD_REF, owner, name, descriptor);
+  }
+
+  /**
+   * Adds an interface method reference.
+   */
+  public int addInterfaceMethodRef(String owner, String name,
+                                   String descriptor)
+  {
+    return addMemberRef(CP_INTERFACE_METHOD_REF, owner, name, descriptor);
+  }
+
+  private int addMemberRef(int tag, String owner, String name,
+                           String descriptor)
+  {
+    String key = "M" + tag + owner + "." + name + descriptor;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    int classIndex = addClass(owner);
+    int nameAndTypeIndex = addNameAndType(name, descriptor);
+
+    writeEntry(tag, classIndex, nameAndTypeIndex);
+
+    return addEntry(key, 1);
+  }
+
+  private int addNameAndType(String name, String descriptor)
+  {
+    String key = "N" + name + " " + descriptor;
+    Integer index = _poolMap.get(key);
+
+    if (index != null)
+      return index;
+
+    int nameIndex = addUtf8(name);
+    int descriptorIndex = addUtf8(descriptor);
+
+    writeEntry(CP_NAME_AND_TYPE, nameIndex, descriptorIndex);
+
+    return addEntry(key, 1);
+  }
+
+  private void writeEntry(int tag, int index)
+  {
+    try {
+      _pool.writeByte(tag);
+      _pool.writeShort(index);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void writeEntry(int tag, int index1, int index2)
+  {
+    try {
+      _pool.writeByte(tag);
+      _pool.writeShort(index1);
+      _pool.writeShort(index2);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private int addEntry(String key, int size)
+  {
+    int index = _poolCount;
+
+    _poolCount += size;
+
+    if (_poolCount > 0xffff)
+      throw new IllegalStateException("constant pool overflow in " + _className);
+
+    _poolMap.put(key, index);
+
+    return index;
+  }
+
+  /**
+   * Returns the class file bytes.
+   */
+  public byte []toByteArray()
+  {
+    int thisIndex = addClass(_className);
+    int superIndex = addClass(_superClassName);
+    int codeIndex = addUtf8("Code");
+
+    for (CodeWriter method : _methods)
+      method.prepare();
+
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bos);
+
+      out.writeInt(0xcafebabe);
+      out.writeShort(0);  // minor
+      out.writeShort(49); // major, Java 5
+
+      out.writeShort(_poolCount);
+      _pool.flush();
+      _poolBuffer.writeTo(out);
+
+      out.writeShort(_access);
+      out.writeShort(thisIndex);
+      out.writeShort(superIndex);
+
+      out.writeShort(0); // interfaces
+      out.writeShort(0); // fields
+
+      out.writeShort(_methods.size());
+
+      for (CodeWriter method : _methods)
+        method.write(out, codeIndex);
+
+      out.writeShort(0); // attributes
+
+      out.close();
+
+      return bos.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _className + "]";
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.bytecode;
+
+/**
+ * A branch target in a CodeWriter.
+ */
+public class Label {
+  private int _offset = -1;
+  private int _stack = -1;
+
+  private int []_fixups = new int[4];
+  private int _fixupCount;
+
+  /**
+   * Returns the code offset, or -1 if the label is not yet placed.
+   */
+  public int getOffset()
+  {
+    return _offset;
+  }
+
+  /**
+   * True if some branch refers to the label.
+   */
+  public boolean isUsed()
+  {
+    return _fixupCount > 0 || _offset >= 0;
+  }
+
+  void setOffset(int offset)
+  {
+    _offset = offset;
+  }
+
+  int getStack()
+  {
+    return _stack;
+  }
+
+  void setStack(int stack)
+  {
+    _stack = stack;
+  }
+
+  /**
+   * Records a branch instruction at <code>op</code> whose 16-bit offset
+   * is written at <code>op + 1</code>.
+   */
+  void addFixup(int op)
+  {
+    if (_fixups.length <= _fixupCount) {
+      int []fixups = new int[2 * _fixups.length];
+      System.arraycopy(_fixups, 0, fixups, 0, _fixupCount);
+      _fixups = fixups;
+    }
+
+    _fixups[_fixupCount++] = op;
+  }
+
+  int getFixupCount()
+  {
+    return _fixupCount;
+  }
+
+  int getFixup(int i)
+  {
+    return _fixups[i];
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _offset + "]";
+  }
+}
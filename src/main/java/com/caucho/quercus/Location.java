@@ -32,7 +32,9 @@ package com.caucho.quercus;
 /**
  * Records the source file location of a statement or expression.
  */
-public class Location {
+public class Location implements java.io.Serializable {
+  private static final long serialVersionUID = 1L;
+
   public static final Location UNKNOWN = new Location();
 
   private final String _fileName;
@@ -59,6 +61,18 @@ public class Location {
     _functionName = null;
   }
 
+  /**
+   * Keeps UNKNOWN a singleton when deserialized.
+   */
+  private Object readResolve()
+  {
+    if (_fileName == null && _lineNumber == 0
+        && _className == null && _functionName == null)
+      return UNKNOWN;
+    else
+      return this;
+  }
+
   public String getFileName()
   {
     return _fileName;
@@ -35,6 +35,7 @@ import com.caucho.quercus.env.*;
 import com.caucho.quercus.expr.ExprFactory;
 import com.caucho.quercus.function.AbstractFunction;
 import com.caucho.quercus.lib.db.JavaSqlDriverWrapper;
+import com.caucho.quercus.lib.db.PooledDataSource;
 import com.caucho.quercus.lib.file.FileModule;
 import com.caucho.quercus.lib.regexp.RegexpModule;
 import com.caucho.quercus.lib.session.QuercusSessionManager;
@@ -75,11 +76,11 @@ public class Quercus
   
   private ModuleContext _moduleContext;
 
-  private LruCache<String, UnicodeBuilderValue> _unicodeMap
-    = new LruCache<String, UnicodeBuilderValue>(8 * 1024);
+  private SegmentedLruCache<String, UnicodeBuilderValue> _unicodeMap
+    = new SegmentedLruCache<String, UnicodeBuilderValue>(8 * 1024);
 
-  private LruCache<String, ConstStringValue> _stringMap
-    = new LruCache<String, ConstStringValue>(8 * 1024);
+  private SegmentedLruCache<String, ConstStringValue> _stringMap
+    = new SegmentedLruCache<String, ConstStringValue>(8 * 1024);
 
   private HashMap<String, ModuleInfo> _modules
     = new HashMap<String, ModuleInfo>();
@@ -118,6 +119,10 @@ public class Quercus
   private Path _iniFile;
   private HashMap<String, Value> _iniMap;
 
+  private Path _preloadPath;
+  private final ThreadLocal<SaveState> _preloadState
+    = new ThreadLocal<SaveState>();
+
   private HashMap<Value, Value> _serverEnvMap
     = new HashMap<Value, Value>();
 
@@ -136,8 +141,8 @@ public class Quercus
   
   private AbstractFunction []_functionMap = new AbstractFunction[256];
 
-  private LruCache<String, QuercusProgram> _evalCache
-    = new LruCache<String, QuercusProgram>(4096);
+  private SegmentedLruCache<String, QuercusProgram> _evalCache
+    = new SegmentedLruCache<String, QuercusProgram>(4096);
 
   private int _includeCacheMax = 8192;
   private long _includeCacheTimeout = 10000L;
@@ -165,8 +170,13 @@ public class Quercus
 
   private boolean _isStrict;
   private boolean _isRequireSource;
+
+  private int _directInvokeThreshold = 32;
   
   private boolean _isConnectionPool = true;
+  private int _connectionPoolMax = 32;
+  private long _connectionPoolMaxIdleTime = 60000L;
+  private String _connectionPoolValidationQuery;
 
   private Boolean _isUnicodeSemantics;
   
@@ -183,6 +193,9 @@ public class Quercus
   private ServletContext _servletContext;
  
   private boolean _isProduction;
+
+  // true while this engine holds a reference on the shared clock
+  private boolean _isClockStarted;
  
   /**
    * Constructor.
@@ -386,6 +399,14 @@ public class Quercus
   {
     return getIniBoolean("allow_url_fopen");
   }
+
+  /**
+   * Returns true if scripts are optimized while parsing.
+   */
+  public boolean isOptimize()
+  {
+    return getIniBoolean("quercus.optimize");
+  }
   
   /**
    * Set true if pages should be compiled.
@@ -411,6 +432,40 @@ public class Quercus
     _pageManager.setCompileFailover(isCompileFailover);
   }
 
+  /*
+   * Sets the number of requests before a lazy page is compiled.
+   */
+  public void setCompileThreshold(int threshold)
+  {
+    _pageManager.setCompileThreshold(threshold);
+  }
+
+  /*
+   * Returns the number of calls before a builtin function is given a
+   * generated direct invoker.
+   */
+  public int getDirectInvokeThreshold()
+  {
+    return _directInvokeThreshold;
+  }
+
+  /*
+   * Sets the number of calls before a builtin function is given a
+   * generated direct invoker, or -1 to always use reflection.
+   */
+  public void setDirectInvokeThreshold(int threshold)
+  {
+    _directInvokeThreshold = threshold;
+  }
+
+  /*
+   * Sets the directory for the persistent parsed-program cache.
+   */
+  public void setProgramCacheDirectory(Path dir)
+  {
+    _pageManager.setProgramCacheDirectory(dir);
+  }
+
   /*
    * Returns the expected encoding of php scripts.
    */
@@ -531,6 +586,16 @@ public class Quercus
         
         if (ds instanceof DataSource)
           database = (DataSource) ds;
+        else if (_isConnectionPool) {
+          PooledDataSource pool
+            = new PooledDataSource((java.sql.Driver) ds, url);
+
+          pool.setMaxConnections(_connectionPoolMax);
+          pool.setMaxIdleTime(_connectionPoolMaxIdleTime);
+          pool.setValidationQuery(_connectionPoolValidationQuery);
+
+          database = pool;
+        }
         else
           database = new JavaSqlDriverWrapper((java.sql.Driver) ds, url);
 
@@ -552,6 +617,7 @@ public class Quercus
    */
   public void markForPoolRemoval(Connection conn)
   {
+    PooledDataSource.markForPoolRemoval(conn);
   }
 
   /**
@@ -559,7 +625,36 @@ public class Quercus
    */
   public Connection getConnection(Connection conn)
   {
-    return conn;
+    return PooledDataSource.getPhysicalConnection(conn);
+  }
+
+  /**
+   * Closes any pooled connections the env failed to close.
+   */
+  public void closeLeakedConnections(Env env)
+  {
+    for (DataSource database : _databaseMap.values()) {
+      if (database instanceof PooledDataSource)
+        ((PooledDataSource) database).closeLeakedConnections(env);
+    }
+  }
+
+  /*
+   * Returns the connection pool statistics, keyed by url and user.
+   */
+  public ArrayValue getConnectionPoolStats(Env env)
+  {
+    ArrayValue result = new ArrayValueImpl();
+    
+    for (DataSource database : _databaseMap.values()) {
+      if (database instanceof PooledDataSource) {
+        PooledDataSource pool = (PooledDataSource) database;
+
+        result.put(env.createStringOld(pool.getURL()), pool.getStats(env));
+      }
+    }
+
+    return result;
   }
   
   /**
@@ -650,6 +745,30 @@ public class Quercus
     return _isConnectionPool;
   }
 
+  /*
+   * Sets the maximum number of pooled connections per database user.
+   */
+  public void setConnectionPoolMax(int max)
+  {
+    _connectionPoolMax = max;
+  }
+
+  /*
+   * Sets the time in milliseconds a pooled connection may stay idle.
+   */
+  public void setConnectionPoolMaxIdleTime(long ms)
+  {
+    _connectionPoolMaxIdleTime = ms;
+  }
+
+  /*
+   * Sets the query used to check a pooled connection before reuse.
+   */
+  public void setConnectionPoolValidationQuery(String query)
+  {
+    _connectionPoolValidationQuery = query;
+  }
+
   /**
    * Adds a java class
    */
@@ -808,6 +927,76 @@ public class Quercus
     return _iniFile;
   }
 
+  /**
+   * Sets the bootstrap script that is run once per worker thread.
+   * Each request's env then starts from the saved functions, classes,
+   * constants and globals instead of re-running the script.
+   *
+   * Output of the script is discarded and resources it opens are
+   * closed once the state is saved.
+   */
+  public void setPreloadScript(Path path)
+  {
+    _preloadPath = path;
+  }
+
+  /**
+   * Returns the bootstrap script, or null.
+   */
+  public Path getPreloadScript()
+  {
+    return _preloadPath;
+  }
+
+  /**
+   * Starts the env from the worker's preloaded state, running the
+   * preload script when the worker has no current state.
+   */
+  public void preload(Env env)
+    throws IOException
+  {
+    if (_preloadPath == null)
+      return;
+
+    SaveState state = _preloadState.get();
+
+    if (state == null || state.isModified()) {
+      state = executePreload();
+
+      _preloadState.set(state);
+    }
+
+    env.restorePreloadState(state);
+  }
+
+  /**
+   * Runs the preload script in its own env and saves the result.
+   */
+  private SaveState executePreload()
+    throws IOException
+  {
+    QuercusPage page = parse(_preloadPath);
+
+    WriteStream out = new NullWriteStream();
+
+    Env env = createEnv(page, out, null, null);
+
+    try {
+      env.start();
+
+      env.executeTop();
+
+      // the stdio wrappers belong to the preload env
+      env.removeConstant("STDIN");
+      env.removeConstant("STDOUT");
+      env.removeConstant("STDERR");
+
+      return env.saveState();
+    } finally {
+      env.close();
+    }
+  }
+
   /**
    * Returns the IniDefinitions for all ini that have been defined by modules.
    */
@@ -1520,6 +1709,11 @@ public class Quercus
                                                      getIncludeCacheTimeout());
 
     initLocal();
+
+    if (! _isClockStarted) {
+      _isClockStarted = true;
+      CurrentTime.start();
+    }
   }
 
   public void addModule(QuercusModule module)
@@ -1743,13 +1937,30 @@ public class Quercus
   
   public ExprFactory createExprFactory()
   {
-    return new ExprFactory();
+    ExprFactory factory = new ExprFactory();
+
+    factory.setQuercus(this);
+    factory.setOptimize(isOptimize());
+
+    return factory;
   }
 
   public void close()
   {
     _sessionManager.close();
     _pageManager.close();
+
+    for (ModuleInfo info : _moduleContext.getModules()) {
+      QuercusModule module = info.getModule();
+
+      if (module instanceof AbstractQuercusModule)
+        ((AbstractQuercusModule) module).close();
+    }
+
+    if (_isClockStarted) {
+      _isClockStarted = false;
+      CurrentTime.stop();
+    }
   }
 
   public static Value exnConstructor(Env env, Value obj, String msg)
@@ -1840,6 +2051,8 @@ public class Quercus
     = _ini.add("register_long_arrays", true, IniDefinition.PHP_INI_PERDIR);
   public static final IniDefinition INI_ALWAYS_POPULATE_RAW_POST_DATA
     = _ini.add("always_populate_raw_post_data", false, IniDefinition.PHP_INI_PERDIR);
+  public static final IniDefinition INI_QUERCUS_OPTIMIZE
+    = _ini.add("quercus.optimize", true, IniDefinition.PHP_INI_SYSTEM);
   
   // unicode ini
   public static final IniDefinition INI_UNICODE_SEMANTICS
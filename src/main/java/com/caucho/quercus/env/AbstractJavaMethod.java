@@ -37,6 +37,8 @@ import com.caucho.quercus.function.AbstractFunction;
  */
 abstract public class AbstractJavaMethod extends AbstractFunction
 {
+  private static final long serialVersionUID = 1L;
+
   /**
    * Returns the minimally required number of arguments.
    */
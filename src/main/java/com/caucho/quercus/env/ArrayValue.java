@@ -572,22 +572,46 @@ abstract public class ArrayValue extends Value {
   @Override
   public Iterator<Map.Entry<Value, Value>> getIterator(Env env)
   {
-    return new EntryIterator(getHead());
+    return createEntryIterator();
   }
   
   public Iterator<Map.Entry<Value, Value>> getIterator()
   {
-    return new EntryIterator(getHead());
+    return createEntryIterator();
   }
 
   @Override
   public Iterator<Value> getKeyIterator(Env env)
   {
-    return new KeyIterator(getHead());
+    return createKeyIterator();
   }
 
   @Override
   public Iterator<Value> getValueIterator(Env env)
+  {
+    return createValueIterator();
+  }
+
+  /**
+   * Creates the entry iterator used by the iterators and views.
+   */
+  protected Iterator<Map.Entry<Value,Value>> createEntryIterator()
+  {
+    return new EntryIterator(getHead());
+  }
+
+  /**
+   * Creates the key iterator used by the iterators and views.
+   */
+  protected Iterator<Value> createKeyIterator()
+  {
+    return new KeyIterator(getHead());
+  }
+
+  /**
+   * Creates the value iterator used by the iterators and views.
+   */
+  protected Iterator<Value> createValueIterator()
   {
     return new ValueIterator(getHead());
   }
@@ -1529,7 +1553,7 @@ abstract public class ArrayValue extends Value {
     @Override
     public Iterator<Map.Entry<Value,Value>> iterator()
     {
-      return new EntryIterator(getHead());
+      return createEntryIterator();
     }
   }
 
@@ -1547,7 +1571,7 @@ abstract public class ArrayValue extends Value {
     @Override
     public Iterator<Value> iterator()
     {
-      return new KeyIterator(getHead());
+      return createKeyIterator();
     }
   }
 
@@ -1565,7 +1589,7 @@ abstract public class ArrayValue extends Value {
     @Override
     public Iterator<Value> iterator()
     {
-      return new ValueIterator(getHead());
+      return createValueIterator();
     }
   }
 
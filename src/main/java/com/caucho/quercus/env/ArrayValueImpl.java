@@ -37,10 +37,16 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
  * Represents a PHP array value.
+ *
+ * Arrays start packed: while the keys are exactly 0..n-1 in order, the
+ * values are kept in a dense array without entries or a hash table.
+ * The first operation needing entries converts the array to the linked
+ * entry form, which it keeps from then on.
  */
 public class ArrayValueImpl extends ArrayValue
   implements Serializable
@@ -53,6 +59,13 @@ public class ArrayValueImpl extends ArrayValue
   private static final int DEFAULT_SIZE = 16;
   
   private static final int MIN_HASH = 4;
+
+  private static final int MIN_PACKED = 8;
+
+  // true while the keys are 0..n-1, stored in _packed
+  protected boolean _isPacked = true;
+  // values by index, a Var for a reference
+  protected Value []_packed;
   
   protected Entry []_entries;
   protected int _hashMask;
@@ -74,6 +87,9 @@ public class ArrayValueImpl extends ArrayValue
 
   public ArrayValueImpl(int size)
   {
+    if (size > 0)
+      _packed = new Value[size];
+    
     /*
     int capacity = DEFAULT_SIZE;
 
@@ -89,14 +105,16 @@ public class ArrayValueImpl extends ArrayValue
   {
     // this(copy.getSize());
 
-    for (Entry ptr = source.getHead(); ptr != null; ptr = ptr._next) {
-      // php/0662 for copy
-      Entry entry = createEntry(ptr._key);
+    Iterator<Map.Entry<Value,Value>> iter = source.createEntryIterator();
+
+    while (iter.hasNext()) {
+      Entry ptr = (Entry) iter.next();
       
+      // php/0662 for copy
       if (ptr._var != null)
-        entry._var = ptr._var;
+        putRaw(ptr._key, ptr._var);
       else
-        entry._value = ptr._value.copyArrayItem();
+        putRaw(ptr._key, ptr._value.copyArrayItem());
     }
   }
 
@@ -108,6 +126,8 @@ public class ArrayValueImpl extends ArrayValue
     _isDirty = true;
     
     _size = source._size;
+    _isPacked = source._isPacked;
+    _packed = source._packed;
     _entries = source._entries;
     _hashMask = source._hashMask;
 
@@ -124,6 +144,8 @@ public class ArrayValueImpl extends ArrayValue
     _isDirty = true;
     
     _size = source._size;
+    _isPacked = source._isPacked;
+    _packed = source._packed;
     _entries = source._entries;
     _hashMask = source._hashMask;
 
@@ -131,6 +153,13 @@ public class ArrayValueImpl extends ArrayValue
     _current = source._current;
     _tail = source._tail;
     _nextAvailableIndex = source._nextAvailableIndex;
+
+    // get() returns nested values without copying, and a caller that
+    // writes through one, e.g. foreach by reference, would change the
+    // shared constant.  Copying the entries now makes each nested
+    // constant a copy-on-write copy of its own.
+    if (source.hasNestedArray())
+      copyOnWrite();
   }
 
   public ArrayValueImpl(Env env,
@@ -141,7 +170,10 @@ public class ArrayValueImpl extends ArrayValue
     
     map.put(copy, this);
 
-    for (Entry ptr = copy.getHead(); ptr != null; ptr = ptr._next) {
+    Iterator<Map.Entry<Value,Value>> iter = copy.createEntryIterator();
+
+    while (iter.hasNext()) {
+      Entry ptr = (Entry) iter.next();
       Value value = ptr._var != null ? ptr._var.toValue() : ptr._value;
       
       append(ptr._key, value.copy(env, map));
@@ -159,7 +191,10 @@ public class ArrayValueImpl extends ArrayValue
     
     root.putCopy(copy, this);
     
-    for (Entry ptr = copy.getHead(); ptr != null; ptr = ptr._next) {
+    Iterator<Map.Entry<Value,Value>> iter = copy.createEntryIterator();
+
+    while (iter.hasNext()) {
+      Entry ptr = (Entry) iter.next();
       Value value = ptr._var != null ? ptr._var.toValue() : ptr._value;
       
       append(ptr._key, value.copyTree(env, root));
@@ -212,6 +247,27 @@ public class ArrayValueImpl extends ArrayValue
 
     _isDirty = false;
 
+    if (_isPacked) {
+      Value []packed = _packed;
+
+      if (packed != null) {
+        Value []copy = new Value[packed.length];
+
+        for (int i = 0; i < _size; i++) {
+          Value value = packed[i];
+
+          if (value instanceof Var)
+            copy[i] = value;
+          else
+            copy[i] = value.copyArrayItem();
+        }
+
+        _packed = copy;
+      }
+
+      return;
+    }
+
     Entry []entries = _entries;
 
     if (entries != null)
@@ -372,6 +428,8 @@ public class ArrayValueImpl extends ArrayValue
       _isDirty = false;
     }
     
+    _isPacked = true;
+    _packed = null;
     _entries = null;
       
     _size = 0;
@@ -400,6 +458,18 @@ public class ArrayValueImpl extends ArrayValue
     if (key instanceof UnsetValue) // php/4a4h
       key = createTailKey();
 
+    if (_isPacked) {
+      int index = getPackedIndex(key.toKey(), _size + 1);
+
+      if (index >= 0) {
+        setPacked(index, value);
+
+        return this;
+      }
+
+      unpack();
+    }
+
     Entry entry = createEntry(key);
 
     // php/0434
@@ -427,6 +497,9 @@ public class ArrayValueImpl extends ArrayValue
    */
   public ArrayValue unshift(Value value)
   {
+    if (_isPacked)
+      unpack();
+    
     if (_isDirty)
       copyOnWrite();
     
@@ -461,6 +534,9 @@ public class ArrayValueImpl extends ArrayValue
    */
   public ArrayValue splice(int start, int end, ArrayValue replace)
   {
+    if (_isPacked)
+      unpack();
+    
     if (_isDirty)
       copyOnWrite();
 
@@ -547,6 +623,19 @@ public class ArrayValueImpl extends ArrayValue
   public ArrayValue slice(Env env, int start, int end, boolean isPreserveKeys)
   {
     ArrayValueImpl array = new ArrayValueImpl();
+
+    if (_isPacked) {
+      int size = Math.min(end, _size);
+
+      for (int i = Math.max(start, 0); i < size; i++) {
+        if (isPreserveKeys)
+          array.put(LongValue.create(i), getPackedValue(i));
+        else
+          array.put(getPackedValue(i));
+      }
+
+      return array;
+    }
     
     int i = 0;
     for (Entry ptr = _head; i < end && ptr != null; ptr = ptr._next) {
@@ -577,6 +666,20 @@ public class ArrayValueImpl extends ArrayValue
     // php/3d42
     //if (isTop)
       //return new ArgGetValue(this, index);
+
+    if (_isPacked) {
+      int i = getPackedIndex(index.toKey(), _size);
+
+      if (i < 0)
+        return new ArgGetValue(this, index);
+
+      Value value = getPackedValue(i);
+
+      if (! isTop && value.isset())
+        return value;
+      else
+        return getPackedRef(i);
+    }
     
     Entry entry = getEntry(index);
 
@@ -621,6 +724,28 @@ public class ArrayValueImpl extends ArrayValue
     if (_isDirty) {
       copyOnWrite();
     }
+
+    if (_isPacked) {
+      int i = getPackedIndex(index.toKey(), _size + 1);
+
+      if (i >= 0) {
+        if (i == _size)
+          setPacked(i, NullValue.NULL);
+
+        Value value = getPackedValue(i);
+        Value array = value.toAutoArray();
+
+        if (value != array) {
+          value = array;
+
+          setPacked(i, value);
+        }
+
+        return value;
+      }
+
+      unpack();
+    }
     
     Entry entry = createEntry(index);
     Value value = entry.toValue();
@@ -681,6 +806,9 @@ public class ArrayValueImpl extends ArrayValue
    */
   public Value createTailKey()
   {
+    if (_isPacked)
+      return LongValue.create(_size);
+    
     if (_nextAvailableIndex < 0)
       updateNextAvailableIndex();
     
@@ -694,6 +822,15 @@ public class ArrayValueImpl extends ArrayValue
   {
     key = key.toKey();
 
+    if (_isPacked) {
+      int i = getPackedIndex(key, _size);
+
+      if (i >= 0)
+        return getPackedValue(i);
+      else
+        return UnsetValue.UNSET;
+    }
+
     Entry []entries = _entries;
     
     if (entries != null) {
@@ -737,6 +874,15 @@ public class ArrayValueImpl extends ArrayValue
   {
     key = key.toKey();
 
+    if (_isPacked) {
+      int i = getPackedIndex(key, _size);
+
+      if (i >= 0)
+        return _packed[i];
+      else
+        return UnsetValue.UNSET;
+    }
+
     Entry []entries = _entries;
     if (entries != null) {
       int hashMask = _hashMask;
@@ -777,6 +923,15 @@ public class ArrayValueImpl extends ArrayValue
   @Override
   public Value contains(Value value)
   {
+    if (_isPacked) {
+      for (int i = 0; i < _size; i++) {
+        if (getPackedValue(i).eq(value))
+          return LongValue.create(i);
+      }
+
+      return NullValue.NULL;
+    }
+    
     for (Entry entry = getHead(); entry != null; entry = entry._next) {
       if (entry.getValue().eq(value))
         return entry.getKey();
@@ -795,6 +950,15 @@ public class ArrayValueImpl extends ArrayValue
   @Override
   public Value containsStrict(Value value)
   {
+    if (_isPacked) {
+      for (int i = 0; i < _size; i++) {
+        if (getPackedValue(i).eql(value))
+          return LongValue.create(i);
+      }
+
+      return NullValue.NULL;
+    }
+    
     for (Entry entry = getHead(); entry != null; entry = entry._next) {
       if (entry.getValue().eql(value))
         return entry.getKey();
@@ -813,6 +977,15 @@ public class ArrayValueImpl extends ArrayValue
   @Override
   public Value containsKey(Value key)
   {
+    if (_isPacked) {
+      int i = getPackedIndex(key.toKey(), _size);
+
+      if (i >= 0)
+        return getPackedValue(i);
+      else
+        return null;
+    }
+    
     Entry entry = getEntry(key);
 
     if (entry != null)
@@ -826,6 +999,9 @@ public class ArrayValueImpl extends ArrayValue
    */
   private Entry getEntry(Value key)
   {
+    if (_isPacked)
+      unpack();
+    
     key = key.toKey();
 
     Entry []entries = _entries;
@@ -859,6 +1035,9 @@ public class ArrayValueImpl extends ArrayValue
   {
     key = key.toKey();
 
+    if (_isPacked)
+      return getPackedIndex(key, _size) >= 0;
+
     Entry []entries = _entries;
     if (entries != null) {
       int hash = key.hashCode() & _hashMask;
@@ -893,6 +1072,24 @@ public class ArrayValueImpl extends ArrayValue
 
     key = key.toKey();
 
+    if (_isPacked) {
+      int i = getPackedIndex(key, _size);
+
+      if (i < 0)
+        return UnsetValue.UNSET;
+      else if (i == _size - 1) {
+        Value value = getPackedValue(i);
+
+        _packed[i] = null;
+        _size = i;
+        _nextAvailableIndex = i;
+
+        return value;
+      }
+
+      unpack();
+    }
+
     Entry []entries = _entries;
     if (entries != null) {
       int hash = key.hashCode() & _hashMask;
@@ -964,6 +1161,19 @@ public class ArrayValueImpl extends ArrayValue
   {
     if (_isDirty)
       copyOnWrite();
+
+    if (_isPacked) {
+      int i = getPackedIndex(index.toKey(), _size + 1);
+
+      if (i >= 0) {
+        if (i == _size)
+          setPacked(i, NullValue.NULL);
+
+        return getPackedRef(i);
+      }
+
+      unpack();
+    }
     
     Entry entry = createEntry(index);
     // quercus/0431
@@ -991,6 +1201,9 @@ public class ArrayValueImpl extends ArrayValue
     //
     //            http://us3.php.net/types.array
 
+    if (_isPacked)
+      unpack();
+
     if (_isDirty)
       copyOnWrite();
     
@@ -1108,6 +1321,13 @@ public class ArrayValueImpl extends ArrayValue
   {
     if (_isDirty)
       copyOnWrite();
+
+    if (_isPacked) {
+      if (_size > 0)
+        return remove(LongValue.create(_size - 1));
+      else
+        return BooleanValue.FALSE;
+    }
     
     if (_tail != null)
       return remove(_tail._key);
@@ -1117,11 +1337,17 @@ public class ArrayValueImpl extends ArrayValue
 
   protected final Entry getHead()
   {
+    if (_isPacked)
+      unpack();
+    
     return _head;
   }
 
   protected final Entry getTail()
   {
+    if (_isPacked)
+      unpack();
+    
     return _tail;
   }
 
@@ -1130,6 +1356,9 @@ public class ArrayValueImpl extends ArrayValue
    */
   public void shuffle()
   {
+    if (_isPacked)
+      unpack();
+    
     if (_isDirty)
       copyOnWrite();
     
@@ -1192,6 +1421,395 @@ public class ArrayValueImpl extends ArrayValue
       return super.getValues();
   }
 
+  /**
+   * Returns the current value.
+   */
+  @Override
+  public Value current()
+  {
+    if (_isPacked)
+      unpack();
+
+    return super.current();
+  }
+
+  /**
+   * Returns the current key
+   */
+  @Override
+  public Value key()
+  {
+    if (_isPacked)
+      unpack();
+
+    return super.key();
+  }
+
+  /**
+   * Returns true if there are more elements.
+   */
+  @Override
+  public boolean hasCurrent()
+  {
+    if (_isPacked)
+      unpack();
+
+    return super.hasCurrent();
+  }
+
+  /**
+   * Returns the next value.
+   */
+  @Override
+  public Value next()
+  {
+    if (_isPacked)
+      unpack();
+
+    return super.next();
+  }
+
+  /**
+   * Returns the previous value.
+   */
+  @Override
+  public Value prev()
+  {
+    if (_isPacked)
+      unpack();
+
+    return super.prev();
+  }
+
+  /**
+   * The each iterator
+   */
+  @Override
+  public Value each()
+  {
+    if (_isPacked)
+      unpack();
+
+    return super.each();
+  }
+
+  /**
+   * Takes the values of this array and puts them in a java array
+   */
+  @Override
+  public Value[] keysToArray()
+  {
+    if (! _isPacked)
+      return super.keysToArray();
+
+    Value []keys = new Value[_size];
+
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = LongValue.create(i);
+    }
+
+    return keys;
+  }
+
+  /**
+   * Takes the values of this array and puts them in a java array
+   */
+  @Override
+  public Value[] valuesToArray()
+  {
+    if (! _isPacked)
+      return super.valuesToArray();
+
+    Value []values = new Value[_size];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getPackedValue(i);
+    }
+
+    return values;
+  }
+
+  @Override
+  protected Iterator<Map.Entry<Value,Value>> createEntryIterator()
+  {
+    if (_isPacked)
+      return new PackedEntryIterator();
+    else
+      return super.createEntryIterator();
+  }
+
+  @Override
+  protected Iterator<Value> createKeyIterator()
+  {
+    if (_isPacked)
+      return new PackedKeyIterator();
+    else
+      return super.createKeyIterator();
+  }
+
+  @Override
+  protected Iterator<Value> createValueIterator()
+  {
+    if (_isPacked)
+      return new PackedValueIterator();
+    else
+      return super.createValueIterator();
+  }
+
+  //
+  // packed arrays
+  //
+
+  /**
+   * Returns the packed index for the key, or -1 if the key is not
+   * an integer less than the limit.
+   */
+  private static int getPackedIndex(Value key, int limit)
+  {
+    if (! (key instanceof LongValue))
+      return -1;
+
+    long index = key.toLong();
+
+    if (0 <= index && index < limit)
+      return (int) index;
+    else
+      return -1;
+  }
+
+  /**
+   * Returns the packed value, dereferencing any Var.
+   */
+  private Value getPackedValue(int i)
+  {
+    Value value = _packed[i];
+
+    if (value instanceof Var)
+      return value.toValue();
+    else
+      return value;
+  }
+
+  /**
+   * Returns the packed value as a Var, creating it if necessary.
+   */
+  private Var getPackedRef(int i)
+  {
+    Value value = _packed[i];
+
+    if (value instanceof Var)
+      return (Var) value;
+
+    Var var = new Var(value);
+
+    _packed[i] = var;
+
+    return var;
+  }
+
+  /**
+   * Sets a packed value with the assignment semantics of append(),
+   * where i may be the next index.
+   */
+  private void setPacked(int i, Value value)
+  {
+    if (i == _size) {
+      Value []packed = _packed;
+
+      if (packed == null)
+        _packed = packed = new Value[MIN_PACKED];
+      else if (packed.length <= i) {
+        _packed = new Value[2 * packed.length];
+        System.arraycopy(packed, 0, _packed, 0, i);
+      }
+
+      _packed[i] = NullValue.NULL;
+      _size = i + 1;
+      _nextAvailableIndex = _size;
+    }
+
+    // php/0434
+    Value oldValue = _packed[i];
+
+    if (value instanceof Var) {
+      // php/0a59
+      Var var = (Var) value;
+      var.setReference();
+
+      _packed[i] = var;
+    }
+    else if (oldValue instanceof Var)
+      oldValue.set(value);
+    else
+      _packed[i] = value;
+  }
+
+  /**
+   * Adds a value as-is, where a Var is a reference, for copying.
+   */
+  private void putRaw(Value key, Value value)
+  {
+    if (_isPacked) {
+      int i = getPackedIndex(key.toKey(), _size + 1);
+
+      if (i >= 0) {
+        if (i == _size)
+          setPacked(i, NullValue.NULL);
+
+        _packed[i] = value;
+
+        return;
+      }
+
+      unpack();
+    }
+
+    Entry entry = createEntry(key);
+
+    if (value instanceof Var)
+      entry._var = (Var) value;
+    else
+      entry._value = value;
+  }
+
+  /**
+   * Converts a packed array to the entry representation.  A shared
+   * (dirty) array is copied as part of the conversion.
+   */
+  protected void unpack()
+  {
+    if (! _isPacked)
+      return;
+
+    Value []packed = _packed;
+    int size = _size;
+    boolean isCopy = _isDirty;
+
+    _isPacked = false;
+    _packed = null;
+    _isDirty = false;
+    _constSource = null;
+
+    _size = 0;
+    _nextAvailableIndex = 0;
+    _entries = null;
+    _head = _tail = _current = null;
+
+    for (int i = 0; i < size; i++) {
+      Value value = packed[i];
+
+      Entry entry = createEntry(LongValue.create(i));
+
+      if (value instanceof Var)
+        entry._var = (Var) value;
+      else if (isCopy)
+        entry._value = value.copyArrayItem();
+      else
+        entry._value = value;
+    }
+
+    _current = _head;
+  }
+
+  /**
+   * Iterates over a packed array.  If the array is unpacked during the
+   * iteration, the iterator continues from the matching entry.
+   */
+  abstract class PackedIterator<T> implements Iterator<T>
+  {
+    private int _index;
+    private Entry _entry;
+    private boolean _isEntry;
+
+    public boolean hasNext()
+    {
+      if (_isEntry)
+        return _entry != null;
+      else if (_isPacked)
+        return _index < _size;
+
+      _isEntry = true;
+      _entry = getEntry(LongValue.create(_index));
+
+      return _entry != null;
+    }
+
+    public T next()
+    {
+      if (! hasNext())
+        return null;
+
+      if (_isEntry) {
+        Entry entry = _entry;
+        _entry = entry._next;
+
+        return create(entry);
+      }
+
+      int index = _index++;
+
+      return create(index, _packed[index]);
+    }
+
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    abstract T create(int index, Value value);
+
+    abstract T create(Entry entry);
+  }
+
+  class PackedEntryIterator extends PackedIterator<Map.Entry<Value,Value>>
+  {
+    Map.Entry<Value,Value> create(int index, Value value)
+    {
+      Entry entry = new Entry(LongValue.create(index));
+
+      if (value instanceof Var)
+        entry._var = (Var) value;
+      else
+        entry._value = value;
+
+      return entry;
+    }
+
+    Map.Entry<Value,Value> create(Entry entry)
+    {
+      return entry;
+    }
+  }
+
+  class PackedKeyIterator extends PackedIterator<Value>
+  {
+    Value create(int index, Value value)
+    {
+      return LongValue.create(index);
+    }
+
+    Value create(Entry entry)
+    {
+      return entry.getKey();
+    }
+  }
+
+  class PackedValueIterator extends PackedIterator<Value>
+  {
+    Value create(int index, Value value)
+    {
+      if (value instanceof Var)
+        return value.toValue();
+      else
+        return value;
+    }
+
+    Value create(Entry entry)
+    {
+      return entry.getValue();
+    }
+  }
+
   //
   // Java serialization code
   //
@@ -1212,14 +1830,11 @@ public class ArrayValueImpl extends ArrayValue
   {
     int size = in.readInt();
     
-    int capacity = DEFAULT_SIZE;
+    // the field initializers don't run for deserialization
+    _isPacked = true;
 
-    while (capacity < 4 * size) {
-      capacity *= 2;
-    }
-
-    _entries = new Entry[capacity];
-    _hashMask = _entries.length - 1;
+    if (size > 0)
+      _packed = new Value[size];
 
     for (int i = 0; i < size; i++) {
       put((Value) in.readObject(), (Value) in.readObject());
@@ -1276,6 +1891,8 @@ public class ArrayValueImpl extends ArrayValue
   {
     if (_size == 0)
       return 0;
+    else if (_isPacked)
+      return getPackedValue(0).hashCode();
     else
       return _head.getValue().hashCode();
   }
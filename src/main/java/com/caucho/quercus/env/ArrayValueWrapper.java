@@ -56,6 +56,14 @@ public class ArrayValueWrapper extends ArrayValue {
   {
     return _array;
   }
+
+  /**
+   * Replaces the wrapped array.
+   */
+  protected void setArray(ArrayValue array)
+  {
+    _array = array;
+  }
   
   /**
    * Copy for assignment.
@@ -63,7 +71,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value copy()
   {
-    return _array.copy();
+    return getArray().copy();
   }
   
   /**
@@ -72,7 +80,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value copy(Env env, IdentityHashMap<Value,Value> map)
   {
-    return _array.copy(env, map);
+    return getArray().copy(env, map);
   }
 
   /**
@@ -81,7 +89,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public int getSize()
   {
-    return _array.getSize();
+    return getArray().getSize();
   }
 
   /**
@@ -90,7 +98,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public void clear()
   {
-    _array.clear();
+    getArray().clear();
   }
   
   /**
@@ -99,7 +107,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value put(Value key, Value value)
   {
-    return _array.put(key, value);
+    return getArray().put(key, value);
   }
   
   /**
@@ -108,7 +116,10 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public ArrayValue append(Value key, Value value)
   {
-    return _array.append(key, value);
+    getArray().append(key, value);
+
+    // the wrapper, not the wrapped array, stays in the variable
+    return this;
   }
 
   /**
@@ -117,7 +128,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value put(Value value)
   {
-    return _array.put(value);
+    return getArray().put(value);
   }
 
   /**
@@ -126,7 +137,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public ArrayValue unshift(Value value)
   {
-    return _array.unshift(value);
+    return getArray().unshift(value);
   }
 
   /**
@@ -135,7 +146,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public ArrayValue splice(int start, int end, ArrayValue replace)
   {
-    return _array.splice(start, end, replace);
+    return getArray().splice(start, end, replace);
   }
 
   /**
@@ -144,7 +155,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value getArg(Value index, boolean isTop)
   {
-    return _array.getArg(index, isTop);
+    return getArray().getArg(index, isTop);
   }
 
   /**
@@ -153,7 +164,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Var putRef()
   {
-    return _array.putRef();
+    return getArray().putRef();
   }
 
   /**
@@ -162,7 +173,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value createTailKey()
   {
-    return _array.createTailKey();
+    return getArray().createTailKey();
   }
 
   /**
@@ -171,7 +182,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value get(Value key)
   {
-    return _array.get(key);
+    return getArray().get(key);
   }
 
   /**
@@ -180,7 +191,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value remove(Value key)
   {
-    return _array.remove(key);
+    return getArray().remove(key);
   }
 
   /**
@@ -189,7 +200,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Var getRef(Value index)
   {
-    return _array.getRef(index);
+    return getArray().getRef(index);
   }
   
   /**
@@ -198,7 +209,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value pop()
   {
-    return _array.pop();
+    return getArray().pop();
   }
 
   /**
@@ -207,7 +218,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public void shuffle()
   {
-    _array.shuffle();
+    getArray().shuffle();
   }
 
   /**
@@ -216,7 +227,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   protected Entry getHead()
   {
-    return _array.getHead();
+    return getArray().getHead();
   }
 
   /**
@@ -225,7 +236,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   protected Entry getTail()
   {
-    return _array.getTail();
+    return getArray().getTail();
   }
   
   /**
@@ -234,7 +245,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value current()
   {
-    return _array.current();
+    return getArray().current();
   }
 
   /**
@@ -243,7 +254,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value key()
   {
-    return _array.key();
+    return getArray().key();
   }
 
   /**
@@ -252,7 +263,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public boolean hasCurrent()
   {
-    return _array.hasCurrent();
+    return getArray().hasCurrent();
   }
 
   /**
@@ -261,7 +272,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value next()
   {
-    return _array.next();
+    return getArray().next();
   }
 
   /**
@@ -270,7 +281,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value prev()
   {
-    return _array.prev();
+    return getArray().prev();
   }
 
   /**
@@ -279,7 +290,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value each()
   {
-    return _array.each();
+    return getArray().each();
   }
 
   /**
@@ -288,7 +299,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value reset()
   {
-    return _array.reset();
+    return getArray().reset();
   }
 
   /**
@@ -297,7 +308,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value end()
   {
-    return _array.end();
+    return getArray().end();
   }
   
   /**
@@ -310,7 +321,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value contains(Value key)
   {
-    return _array.contains(key);
+    return getArray().contains(key);
   }
   
   /**
@@ -323,7 +334,7 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value containsStrict(Value key)
   {
-    return _array.containsStrict(key);
+    return getArray().containsStrict(key);
   }
   
   /**
@@ -336,31 +347,31 @@ public class ArrayValueWrapper extends ArrayValue {
   @Override
   public Value containsKey(Value key)
   {
-    return _array.containsKey(key);
+    return getArray().containsKey(key);
   }
 
   @Override
   public Value add(Value rValue)
   {
-    return _array.add(rValue);
+    return getArray().add(rValue);
   }
 
   @Override
   public Iterator<Map.Entry<Value, Value>> getIterator(Env env)
   {
-    return _array.getIterator(env);
+    return getArray().getIterator(env);
   }
 
   @Override
   public Iterator<Value> getKeyIterator(Env env)
   {
-    return _array.getKeyIterator(env);
+    return getArray().getKeyIterator(env);
   }
 
   @Override
   public Iterator<Value> getValueIterator(Env env)
   {
-    return _array.getValueIterator(env);
+    return getArray().getValueIterator(env);
   }
 }
 
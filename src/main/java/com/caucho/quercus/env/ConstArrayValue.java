@@ -29,6 +29,9 @@
 
 package com.caucho.quercus.env;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 /**
  * Represents a PHP array value.
  */
@@ -44,6 +47,9 @@ public class ConstArrayValue
   
   private Value []_keysArray;
   private Value []_valuesArray;
+
+  // true if a value is itself an array, see ArrayValueImpl(ConstArrayValue)
+  private boolean _hasNestedArray;
   
   public ConstArrayValue(ArrayValueImpl source)
   {
@@ -51,6 +57,8 @@ public class ConstArrayValue
       source._isDirty = true;
     
     _size = source._size;
+    _isPacked = source._isPacked;
+    _packed = source._packed;
     _entries = source._entries;
     _hashMask = source._hashMask;
 
@@ -58,18 +66,60 @@ public class ConstArrayValue
     _current = source._current;
     _tail = source._tail;
     _nextAvailableIndex = source._nextAvailableIndex;
+
+    // constant arrays are shared between threads, so they must not
+    // be unpacked lazily
+    unpack();
+
+    initNestedArray();
   }
   
   public ConstArrayValue(ArrayValueComponent[] components)
   {
     super(components);
+
+    unpack();
+
+    initNestedArray();
   }
 
   public ConstArrayValue(Value []keys, Value []values)
   {
     super(keys, values);
+
+    unpack();
+
+    initNestedArray();
   }
   
+  private void readObject(ObjectInputStream in)
+    throws ClassNotFoundException, IOException
+  {
+    in.defaultReadObject();
+
+    unpack();
+
+    initNestedArray();
+  }
+  
+  private void initNestedArray()
+  {
+    for (Entry ptr = _head; ptr != null; ptr = ptr._next) {
+      if (ptr._value instanceof ArrayValue) {
+        _hasNestedArray = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns true if some value is an array.
+   */
+  boolean hasNestedArray()
+  {
+    return _hasNestedArray;
+  }
+
   /**
    * Copy for assignment.
    */
@@ -134,6 +134,17 @@ public class CopyObjectExtValue extends ObjectExtValue
 
     return super.putThisField(env, name, value);
   }
+
+  /**
+   * Sets a declared field by slot.
+   */
+  @Override
+  public boolean putSlotValue(int slot, Value value)
+  {
+    _root.setModified();
+
+    return super.putSlotValue(slot, value);
+  }
   
   protected Value putFieldExt(Env env, StringValue name, Value value)
   {
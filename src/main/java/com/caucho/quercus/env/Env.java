@@ -31,6 +31,7 @@ package com.caucho.quercus.env;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.URL;
@@ -64,6 +65,7 @@ import com.caucho.quercus.QuercusExitException;
 import com.caucho.quercus.QuercusModuleException;
 import com.caucho.quercus.QuercusRuntimeException;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.expr.VarInfo;
 import com.caucho.quercus.function.AbstractFunction;
 import com.caucho.quercus.lib.ErrorModule;
 import com.caucho.quercus.lib.OptionsModule;
@@ -80,11 +82,13 @@ import com.caucho.quercus.module.ModuleContext;
 import com.caucho.quercus.module.ModuleStartupListener;
 import com.caucho.quercus.page.QuercusPage;
 import com.caucho.quercus.program.ClassDef;
+import com.caucho.quercus.program.FunctionInfo;
 import com.caucho.quercus.program.JavaClassDef;
 import com.caucho.quercus.program.QuercusProgram;
 import com.caucho.quercus.program.UndefinedFunction;
 import com.caucho.quercus.resources.StreamContextResource;
 import com.caucho.util.CharBuffer;
+import com.caucho.util.CurrentTime;
 import com.caucho.util.FreeList;
 import com.caucho.util.IntMap;
 import com.caucho.util.L10N;
@@ -95,7 +99,9 @@ import com.caucho.vfs.MemoryPath;
 import com.caucho.vfs.NullPath;
 import com.caucho.vfs.Path;
 import com.caucho.vfs.ReadStream;
+import com.caucho.vfs.StreamImpl;
 import com.caucho.vfs.TempBuffer;
+import com.caucho.vfs.VfsStream;
 import com.caucho.vfs.WriteStream;
 import com.caucho.vfs.i18n.EncodingReader;
 
@@ -216,6 +222,10 @@ public class Env {
   // Current env
   private Map<String, EnvVar> _map = _globalMap;
 
+  // Reusable function call frames, in call-stack order
+  private LocalVarMap []_framePool = new LocalVarMap[16];
+  private int _frameTop;
+
   private HashMap<String, Value> _iniMap;
 
   // specialMap is used for implicit resources like the mysql link
@@ -972,13 +982,12 @@ public class Env {
   }
 
   /**
-   * Checks for the program timeout.
+   * Checks for the program timeout.  Uses the shared low-resolution
+   * clock, since this runs on every loop iteration and call.
    */
   public final void checkTimeout()
   {
-    long now = System.currentTimeMillis();
-
-    if (_endTime < now)
+    if (_endTime < CurrentTime.getCurrentTime())
       throw new QuercusRuntimeException(L.l("script timed out"));
   }
 
@@ -1004,6 +1013,32 @@ public class Env {
     return _originalOut;
   }
 
+  /**
+   * Flushes the output and returns the stream beneath it, or null if
+   * an output buffer is active or the output isn't a plain stream.
+   * Used to send large files without copying them through the buffers.
+   */
+  public OutputStream getRawOutputStream()
+    throws IOException
+  {
+    WriteStream out = _originalOut;
+
+    if (_outputBuffer != null || _out != out || out == null)
+      return null;
+
+    StreamImpl source = out.getSource();
+
+    if (! (source instanceof VfsStream))
+      return null;
+
+    OutputStream os = ((VfsStream) source).getOutputStream();
+
+    if (os != null)
+      out.flush();
+
+    return os;
+  }
+
   /**
    * Flushes the output buffer.
    */
@@ -1415,14 +1450,7 @@ public class Env {
     _session = session;
 
     if (session != null) {
-      Value var = getGlobalVar("_SESSION");
-      
-      if (! (var instanceof SessionVar)) {
-        var = new SessionVar();
-        setGlobalValue("_SESSION", var);
-      }
-
-      var.set(session);
+      getGlobalVar("_SESSION").set(session);
 
       setGlobalValue("HTTP_SESSION_VARS", session);
 
@@ -1810,6 +1838,25 @@ public class Env {
     return envVar;
   }
 
+  /**
+   * Gets a variable, using the local frame slot when available.
+   *
+   * @param var the parsed variable
+   */
+  public final EnvVar getEnvVar(VarInfo var)
+  {
+    Map<String,EnvVar> map = _map;
+
+    if (map instanceof LocalVarMap) {
+      EnvVar envVar = ((LocalVarMap) map).getSlot(var);
+
+      if (envVar != null)
+        return envVar;
+    }
+
+    return getEnvVar(var.getName(), true);
+  }
+
   /**
    * Gets a variable
    *
@@ -1884,6 +1931,44 @@ public class Env {
     _map = oldEnv;
   }
 
+  /**
+   * Allocates a slot-indexed frame for a function call.  Frames are
+   * reused in call-stack order and must be released with freeFrame().
+   */
+  public final LocalVarMap allocateFrame(FunctionInfo info, int size)
+  {
+    int top = _frameTop;
+
+    if (_framePool.length <= top) {
+      LocalVarMap []framePool = new LocalVarMap[2 * _framePool.length];
+      System.arraycopy(_framePool, 0, framePool, 0, _framePool.length);
+      _framePool = framePool;
+    }
+
+    LocalVarMap frame = _framePool[top];
+
+    if (frame == null) {
+      frame = new LocalVarMap(top);
+      _framePool[top] = frame;
+    }
+
+    frame.init(info, size);
+
+    _frameTop = top + 1;
+
+    return frame;
+  }
+
+  /**
+   * Releases a frame allocated by allocateFrame().
+   */
+  public final void freeFrame(LocalVarMap frame)
+  {
+    frame.clear();
+
+    _frameTop = frame.getDepth();
+  }
+
   /**
    * Returns the current environment.
    */
@@ -3172,6 +3257,26 @@ public class Env {
     return null;
   }
   
+  /**
+   * Returns the function with the given id, or null if it isn't defined
+   * in this environment.
+   *
+   * @param id the function id from Quercus.findFunctionId
+   */
+  public final AbstractFunction findFunction(int id)
+  {
+    AbstractFunction []funs = _fun;
+
+    if (id < funs.length) {
+      AbstractFunction fun = funs[id];
+
+      if (! (fun instanceof UndefinedFunction))
+        return fun;
+    }
+
+    return null;
+  }
+  
   public AbstractFunction getFunction(String name)
   {
     AbstractFunction fun = findFunction(name);
@@ -3723,7 +3828,8 @@ public class Env {
                          _const,
                          _globalMap,
                          _includeMap,
-                         _importMap);
+                         _importMap,
+                         _autoloadList);
   }
 
   EnvVar []getGlobalList()
@@ -3776,10 +3882,12 @@ public class Env {
 
     IntMap globalNameMap = saveState.getGlobalNameMap();
     Value []globalList = saveState.getGlobalList();
+    String [][]globalAliasList = saveState.getGlobalAliasList();
 
     Map<String,EnvVar> oldGlobal = _globalMap;
 
-    _globalMap = new LazySymbolMap(globalNameMap, globalList);
+    _globalMap = new LazySymbolMap(globalNameMap, globalList,
+                                   globalAliasList);
     _map = _globalMap;
 
     // php/4045 - set the vars for any active EnvVar entries
@@ -3798,7 +3906,44 @@ public class Env {
     
     // php/404l
     // XXX: import and namespaces
-    _importMap = saveState.getImportMap().copy();
+    ImportMap importMap = saveState.getImportMap();
+
+    if (importMap != null)
+      _importMap = importMap.copy();
+    else
+      _importMap = null;
+
+    ArrayList<Callback> autoloadList = saveState.getAutoloadList();
+
+    if (autoloadList != null)
+      _autoloadList = new ArrayList<Callback>(autoloadList);
+    else
+      _autoloadList = null;
+  }
+
+  /**
+   * Starts the request from a preloaded state, keeping the definitions
+   * of the request's own page.
+   */
+  public void restorePreloadState(SaveState saveState)
+  {
+    int funLength = saveState.getFunctionList().length;
+    int classLength = saveState.getClassDefList().length;
+    
+    restoreState(saveState);
+
+    // the page's definitions were imported when the env was created
+    for (int i = funLength; i < _fun.length; i++)
+      _fun[i] = null;
+
+    for (int i = classLength; i < _classDef.length; i++)
+      _classDef[i] = null;
+
+    if (_page != null && _includeMap.get(_selfPath) == null) {
+      pageInit(_page);
+
+      _includeMap.put(_selfPath, _page);
+    }
   }
 
   /**
@@ -6335,6 +6480,12 @@ public class Env {
       }
     }
 
+    try {
+      _quercus.closeLeakedConnections(this);
+    } catch (Throwable e) {
+      log.log(Level.FINER, e.toString(), e);
+    }
+
     _threadEnv.set(_oldThreadEnv);
 
     for (int i = 0; _removePaths != null && i < _removePaths.size(); i++) {
@@ -6417,6 +6568,14 @@ public class Env {
     _session = null;
 
     if (session != null) {
+      // $_SESSION = array(...) replaces the contents of the session
+      Value sessionValue = getGlobalValue("_SESSION");
+
+      if (sessionValue != session && sessionValue instanceof ArrayValue) {
+        session.clear();
+        session.putAll((ArrayValue) sessionValue);
+      }
+
       SessionCallback callback = getSessionCallback();
 
       if (callback != null) {
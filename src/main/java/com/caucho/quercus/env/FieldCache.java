@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.env;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inline cache for a field access site.  The cache remembers the slot of
+ * the field in the layout of the last few receiver classes, so a
+ * declared field is read without hashing its name.  Like MethodCache, a
+ * site that keeps missing backs off to the normal lookup for a while.
+ */
+public final class FieldCache {
+  // receiver classes remembered by one site
+  private static final int MAX_ENTRIES = 4;
+  // misses before the site backs off
+  private static final int MAX_MISS_COUNT = 8;
+  // lookups a backed-off site skips before it caches again
+  private static final int BACKOFF_COUNT = 1024;
+
+  private static final Entry []NULL_ENTRIES = new Entry[0];
+
+  private static final AtomicLong _totalMissCount = new AtomicLong();
+  private static final AtomicLong _totalInvalidationCount = new AtomicLong();
+  private static final AtomicLong _totalBackoffCount = new AtomicLong();
+
+  private final StringValue _name;
+
+  // true for $this->field, which may read private fields unchecked
+  private final boolean _isThis;
+
+  private volatile Entry []_entries = NULL_ENTRIES;
+
+  // unsynchronized, since the counts only steer the heuristic
+  private int _missCount;
+  private int _backoffCount;
+
+  public FieldCache(StringValue name, boolean isThis)
+  {
+    _name = name;
+    _isThis = isThis;
+  }
+
+  /**
+   * Returns the slot of the field in the object's layout, or -1 if the
+   * caller must use the normal lookup, e.g. for a dynamic field, a private
+   * field outside $this, or a backed-off site.
+   */
+  public int findSlot(ObjectExtValue obj)
+  {
+    QuercusClass cl = obj.getQuercusClass();
+    ObjectShape shape = obj.getShape();
+
+    Entry []entries = _entries;
+
+    for (int i = 0; i < entries.length; i++) {
+      Entry entry = entries[i];
+
+      if (entry._class == cl) {
+        if (entry._shape == shape)
+          return entry._slot;
+
+        _totalInvalidationCount.incrementAndGet();
+        break;
+      }
+    }
+
+    if (_backoffCount > 0) {
+      _backoffCount--;
+
+      return -1;
+    }
+
+    _totalMissCount.incrementAndGet();
+
+    int slot = shape.findSlot(_name);
+
+    // private access is checked by the normal lookup
+    if (slot >= 0
+        && ! _isThis
+        && shape.getVisibility(slot) == FieldVisibility.PRIVATE)
+      slot = -1;
+
+    if (MAX_MISS_COUNT <= ++_missCount) {
+      _totalBackoffCount.incrementAndGet();
+
+      _entries = NULL_ENTRIES;
+      _missCount = 0;
+      _backoffCount = BACKOFF_COUNT;
+    }
+    else
+      _entries = add(entries, new Entry(cl, shape, slot));
+
+    return slot;
+  }
+
+  /**
+   * Returns the entries with the new entry appended, replacing any old
+   * entry for its class and dropping the oldest entry if full.
+   */
+  private static Entry []add(Entry []entries, Entry newEntry)
+  {
+    Entry []newEntries = new Entry[MAX_ENTRIES];
+    int size = 0;
+
+    for (Entry entry : entries) {
+      if (entry._class != newEntry._class)
+        newEntries[size++] = entry;
+    }
+
+    if (size == MAX_ENTRIES) {
+      size--;
+      System.arraycopy(newEntries, 1, newEntries, 0, size);
+    }
+
+    newEntries[size++] = newEntry;
+
+    return Arrays.copyOf(newEntries, size);
+  }
+
+  /**
+   * Returns the number of lookups all field sites have made.
+   */
+  public static long getTotalMissCount()
+  {
+    return _totalMissCount.get();
+  }
+
+  /**
+   * Returns the number of entries found stale after a layout changed.
+   */
+  public static long getTotalInvalidationCount()
+  {
+    return _totalInvalidationCount.get();
+  }
+
+  /**
+   * Returns the number of times a site backed off.
+   */
+  public static long getTotalBackoffCount()
+  {
+    return _totalBackoffCount.get();
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _name + "]";
+  }
+
+  static final class Entry {
+    final QuercusClass _class;
+    final ObjectShape _shape;
+    final int _slot;
+
+    Entry(QuercusClass cl, ObjectShape shape, int slot)
+    {
+      _class = cl;
+      _shape = shape;
+      _slot = slot;
+    }
+  }
+}
@@ -38,6 +38,8 @@ import java.lang.reflect.*;
  * Represents the introspected static function information.
  */
 public class JavaConstructor extends JavaInvoker {
+  private static final long serialVersionUID = 1L;
+
   private final Constructor _constructor;
   private final int _argLength;
 
@@ -50,6 +50,8 @@ import java.util.logging.Level;
 abstract public class JavaInvoker
   extends AbstractJavaMethod
 {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(JavaInvoker.class);
   private static final Logger log = Logger.getLogger(JavaInvoker.class.getName());
 
@@ -267,6 +269,17 @@ abstract public class JavaInvoker
     return _hasEnv;
   }
 
+  /**
+   * Returns true if the first non-env argument is the @This object.
+   */
+  public boolean getHasThis()
+  {
+    if (! _isInit)
+      init();
+    
+    return _hasThis;
+  }
+
   /**
    * Returns true if the environment has rest-style arguments.
    */
@@ -638,46 +651,65 @@ abstract public class JavaInvoker
 
       if (i < args.length && args[i] != null)
         javaArgs[k] = _marshalArgs[i].marshal(env, args[i], _param[k]);
-      else if (_defaultExprs[i] != null) {
-        javaArgs[k] = _marshalArgs[i].marshal(env,
-                                              _defaultExprs[i],
-                                              _param[k]);
-      } else {
-        env.warning(L.l("function '{0}' has {1} required arguments, but only {2} were provided",
-                        _name, _minArgumentLength, args.length));
-
-        //return NullValue.NULL;
-
-        javaArgs[k] = _marshalArgs[i].marshal(env, NullValue.NULL, _param[k]);
-      }
+      else
+        javaArgs[k] = marshalDefaultArg(env, i, args.length);
 
       k++;
     }
 
-    if (_hasRestArgs) {
-      Value []rest;
+    if (_hasRestArgs)
+      javaArgs[k++] = createRestArgs(args);
 
-      int restLen = args.length - _marshalArgs.length;
+    Object result = invoke(obj, javaArgs);
 
-      if (restLen <= 0)
-        rest = NULL_VALUES;
-      else {
-        rest = new Value[restLen];
+    return _unmarshalReturn.unmarshal(env, result);
+  }
 
-        for (int i = _marshalArgs.length; i < args.length; i++) {
-          if (_isRestReference)
-            rest[i - _marshalArgs.length] = args[i];
-          else
-            rest[i - _marshalArgs.length] = args[i].toValue();
-        }
-      }
+  /**
+   * Marshals the default value of an argument missing from the call.
+   *
+   * @param i the index of the PHP argument
+   * @param argLength the number of arguments passed
+   */
+  public Object marshalDefaultArg(Env env, int i, int argLength)
+  {
+    if (! _isInit)
+      init();
 
-      javaArgs[k++] = rest;
-    }
+    int k = i + (_hasEnv ? 1 : 0) + (_hasThis ? 1 : 0);
 
-    Object result = invoke(obj, javaArgs);
+    if (_defaultExprs[i] != null)
+      return _marshalArgs[i].marshal(env, _defaultExprs[i], _param[k]);
 
-    return _unmarshalReturn.unmarshal(env, result);
+    env.warning(L.l("function '{0}' has {1} required arguments, but only {2} were provided",
+                    _name, _minArgumentLength, argLength));
+
+    return _marshalArgs[i].marshal(env, NullValue.NULL, _param[k]);
+  }
+
+  /**
+   * Returns the rest arguments of a call.
+   */
+  public Value []createRestArgs(Value []args)
+  {
+    if (! _isInit)
+      init();
+
+    int restLen = args.length - _marshalArgs.length;
+
+    if (restLen <= 0)
+      return NULL_VALUES;
+
+    Value []rest = new Value[restLen];
+
+    for (int i = _marshalArgs.length; i < args.length; i++) {
+      if (_isRestReference)
+        rest[i - _marshalArgs.length] = args[i];
+      else
+        rest[i - _marshalArgs.length] = args[i].toValue();
+    }
+
+    return rest;
   }
 
   abstract public Object invoke(Object obj, Object []args);
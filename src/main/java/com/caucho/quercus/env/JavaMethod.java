@@ -39,6 +39,8 @@ import java.lang.reflect.Method;
  * Represents a function created from a java method.
  */
 public class JavaMethod extends JavaInvoker {
+  private static final long serialVersionUID = 1L;
+
   private final Method _method;
 
   /**
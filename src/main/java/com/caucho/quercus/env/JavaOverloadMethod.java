@@ -40,6 +40,8 @@ import com.caucho.util.L10N;
  * Represents the introspected static function information.
  */
 public class JavaOverloadMethod extends AbstractJavaMethod {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(JavaOverloadMethod.class);
   private static final Logger log = Logger.getLogger(JavaOverloadMethod.class.getName());
   
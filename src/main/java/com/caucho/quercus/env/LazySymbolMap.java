@@ -39,13 +39,27 @@ import java.util.*;
 public class LazySymbolMap extends AbstractMap<String,EnvVar> {
   private final IntMap _intMap;
   private final Value []_values;
+  private final String [][]_aliases;
   
   private HashMap<String,EnvVar> _extMap = new HashMap<String,EnvVar>();
 
+  // ids of saved values that were removed and must not be copied in again
+  private final BitSet _removed = new BitSet();
+
   public LazySymbolMap(IntMap intMap, Value []values)
+  {
+    this(intMap, values, null);
+  }
+
+  /**
+   * Creates the map.  Globals with the same aliases array share a
+   * single var, which is copied in for all of them on first access.
+   */
+  public LazySymbolMap(IntMap intMap, Value []values, String [][]aliases)
   {
     _intMap = intMap;
     _values = values;
+    _aliases = aliases;
   }
 
   /**
@@ -66,7 +80,7 @@ public class LazySymbolMap extends AbstractMap<String,EnvVar> {
     if (envVar == null) {
       int id = _intMap.get(key);
 
-      if (id >= 0 && _values[id] != null) {
+      if (id >= 0 && _values[id] != null && ! _removed.get(id)) {
         Var var = new Var();
         var.setGlobal();
         
@@ -78,6 +92,16 @@ public class LazySymbolMap extends AbstractMap<String,EnvVar> {
         Value value = _values[id].copy(env);
 
         envVar.set(value);
+
+        String []aliases = _aliases != null ? _aliases[id] : null;
+
+        if (aliases != null) {
+          for (String alias : aliases) {
+            if (_extMap.get(alias) == null
+                && ! _removed.get(_intMap.get(alias)))
+              _extMap.put(alias, new EnvVarImpl(var));
+          }
+        }
       }
     }
     
@@ -93,8 +117,45 @@ public class LazySymbolMap extends AbstractMap<String,EnvVar> {
     return _extMap.put(key, newVar);
   }
 
+  /**
+   * Removes the value, keeping any saved value from being copied in again.
+   */
+  @Override
+  public EnvVar remove(Object key)
+  {
+    EnvVar envVar = get(key);
+
+    int id = _intMap.get((String) key);
+
+    if (id >= 0)
+      _removed.set(id);
+
+    _extMap.remove(key);
+
+    return envVar;
+  }
+
+  /**
+   * Removes all values, including the saved ones.
+   */
+  @Override
+  public void clear()
+  {
+    _removed.set(0, _values.length);
+
+    _extMap.clear();
+  }
+
   public Set<Map.Entry<String,EnvVar>> entrySet()
   {
+    // saved values are copied in on first access, so iteration,
+    // e.g. $GLOBALS or get_defined_vars(), needs all of them
+    Iterator<Object> iter = _intMap.iterator();
+
+    while (iter.hasNext()) {
+      get((String) iter.next());
+    }
+    
     return _extMap.entrySet();
   }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.env;
+
+import com.caucho.quercus.expr.VarInfo;
+import com.caucho.quercus.program.FunctionInfo;
+
+import java.util.*;
+
+/**
+ * Slot-indexed symbol table for a function call.  Variables known at
+ * parse time live in an array indexed by their VarInfo slot; any other
+ * names spill into a hash map.
+ */
+public class LocalVarMap extends AbstractMap<String,EnvVar> {
+  private final int _depth;
+
+  private FunctionInfo _info;
+  private EnvVar []_slots = new EnvVar[8];
+  private int _size;
+
+  private HashMap<String,EnvVar> _extMap;
+
+  LocalVarMap(int depth)
+  {
+    _depth = depth;
+  }
+
+  /**
+   * Prepares the frame for a call to the given function.
+   */
+  void init(FunctionInfo info, int size)
+  {
+    _info = info;
+
+    if (_slots.length < size)
+      _slots = new EnvVar[size];
+
+    _size = size;
+  }
+
+  /**
+   * Returns the frame's position in the Env's frame pool.
+   */
+  int getDepth()
+  {
+    return _depth;
+  }
+
+  /**
+   * Returns the function owning the frame.
+   */
+  public FunctionInfo getFunctionInfo()
+  {
+    return _info;
+  }
+
+  /**
+   * Returns the slot for a parsed variable, or null if the variable
+   * belongs to another function or is not yet set.
+   */
+  public final EnvVar getSlot(VarInfo var)
+  {
+    int index = var.getIndex();
+
+    if (var.getFunction() == _info && index < _size)
+      return _slots[index];
+    else
+      return null;
+  }
+
+  /**
+   * Returns the matching value, or null.
+   */
+  @Override
+  public EnvVar get(Object key)
+  {
+    int index = _info.getVarIndex((String) key);
+
+    if (0 <= index && index < _size)
+      return _slots[index];
+    else if (_extMap != null)
+      return _extMap.get(key);
+    else
+      return null;
+  }
+
+  /**
+   * Sets the matching value.
+   */
+  @Override
+  public EnvVar put(String key, EnvVar envVar)
+  {
+    int index = _info.getVarIndex(key);
+
+    if (0 <= index && index < _size) {
+      EnvVar oldVar = _slots[index];
+
+      _slots[index] = envVar;
+
+      return oldVar;
+    }
+
+    if (_extMap == null)
+      _extMap = new HashMap<String,EnvVar>();
+
+    return _extMap.put(key, envVar);
+  }
+
+  /**
+   * Removes the matching value.
+   */
+  @Override
+  public EnvVar remove(Object key)
+  {
+    int index = _info.getVarIndex((String) key);
+
+    if (0 <= index && index < _size) {
+      EnvVar oldVar = _slots[index];
+
+      _slots[index] = null;
+
+      return oldVar;
+    }
+    else if (_extMap != null)
+      return _extMap.remove(key);
+    else
+      return null;
+  }
+
+  @Override
+  public boolean containsKey(Object key)
+  {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size()
+  {
+    int size = 0;
+
+    for (int i = 0; i < _size; i++) {
+      if (_slots[i] != null)
+        size++;
+    }
+
+    if (_extMap != null)
+      size += _extMap.size();
+
+    return size;
+  }
+
+  /**
+   * Clears the frame so it can be reused.
+   */
+  @Override
+  public void clear()
+  {
+    for (int i = 0; i < _size; i++)
+      _slots[i] = null;
+
+    _extMap = null;
+  }
+
+  /**
+   * Returns a snapshot of the defined variables.
+   */
+  public Set<Map.Entry<String,EnvVar>> entrySet()
+  {
+    LinkedHashMap<String,EnvVar> map = new LinkedHashMap<String,EnvVar>();
+
+    for (int i = 0; i < _size; i++) {
+      if (_slots[i] != null)
+        map.put(_info.getVar(i).getName(), _slots[i]);
+    }
+
+    if (_extMap != null)
+      map.putAll(_extMap);
+
+    return map.entrySet();
+  }
+}
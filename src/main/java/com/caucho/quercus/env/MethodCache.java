@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.env;
+
+import com.caucho.quercus.function.AbstractFunction;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inline cache for a method call site.  The cache remembers the methods
+ * resolved for the last few receiver classes, so a monomorphic or
+ * lightly polymorphic site skips the MethodMap lookup.  A site that keeps
+ * missing backs off to the normal lookup for a while, then tries again.
+ */
+public final class MethodCache {
+  // receiver classes remembered by one site
+  private static final int MAX_ENTRIES = 4;
+  // misses before the site backs off
+  private static final int MAX_MISS_COUNT = 8;
+  // lookups a backed-off site skips before it caches again
+  private static final int BACKOFF_COUNT = 1024;
+
+  private static final Entry []NULL_ENTRIES = new Entry[0];
+
+  private static final AtomicLong _totalMissCount = new AtomicLong();
+  private static final AtomicLong _totalInvalidationCount = new AtomicLong();
+  private static final AtomicLong _totalBackoffCount = new AtomicLong();
+
+  private final int _hash;
+  private final char []_name;
+
+  private volatile Entry []_entries = NULL_ENTRIES;
+
+  // unsynchronized, since the counts only steer the heuristic
+  private int _missCount;
+  private int _backoffCount;
+
+  public MethodCache(int hash, char []name)
+  {
+    _hash = hash;
+    _name = name;
+  }
+
+  /**
+   * Returns the method for the receiver class, or null if the caller
+   * must use the normal lookup, e.g. for __call or a backed-off site.
+   */
+  public AbstractFunction find(QuercusClass cl)
+  {
+    MethodMap<AbstractFunction> methodMap = cl.getMethodMap();
+    int version = methodMap.getVersion();
+
+    Entry []entries = _entries;
+
+    for (int i = 0; i < entries.length; i++) {
+      Entry entry = entries[i];
+
+      if (entry._class == cl) {
+        if (entry._version == version)
+          return entry._fun;
+
+        _totalInvalidationCount.incrementAndGet();
+        break;
+      }
+    }
+
+    if (_backoffCount > 0) {
+      _backoffCount--;
+
+      return null;
+    }
+
+    _totalMissCount.incrementAndGet();
+
+    AbstractFunction fun = methodMap.get(_hash, _name, _name.length);
+
+    if (MAX_MISS_COUNT <= ++_missCount) {
+      _totalBackoffCount.incrementAndGet();
+
+      _entries = NULL_ENTRIES;
+      _missCount = 0;
+      _backoffCount = BACKOFF_COUNT;
+    }
+    else
+      _entries = add(entries, new Entry(cl, version, fun));
+
+    return fun;
+  }
+
+  /**
+   * Returns the entries with the new entry appended, replacing any old
+   * entry for its class and dropping the oldest entry if full.
+   */
+  private static Entry []add(Entry []entries, Entry newEntry)
+  {
+    Entry []newEntries = new Entry[MAX_ENTRIES];
+    int size = 0;
+
+    for (Entry entry : entries) {
+      if (entry._class != newEntry._class)
+        newEntries[size++] = entry;
+    }
+
+    if (size == MAX_ENTRIES) {
+      size--;
+      System.arraycopy(newEntries, 1, newEntries, 0, size);
+    }
+
+    newEntries[size++] = newEntry;
+
+    return Arrays.copyOf(newEntries, size);
+  }
+
+  /**
+   * Returns the number of lookups all method sites have made.
+   */
+  public static long getTotalMissCount()
+  {
+    return _totalMissCount.get();
+  }
+
+  /**
+   * Returns the number of entries found stale after a class changed.
+   */
+  public static long getTotalInvalidationCount()
+  {
+    return _totalInvalidationCount.get();
+  }
+
+  /**
+   * Returns the number of times a site backed off.
+   */
+  public static long getTotalBackoffCount()
+  {
+    return _totalBackoffCount.get();
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + new String(_name) + "]";
+  }
+
+  static final class Entry {
+    final QuercusClass _class;
+    final int _version;
+    final AbstractFunction _fun;
+
+    Entry(QuercusClass cl, int version, AbstractFunction fun)
+    {
+      _class = cl;
+      _version = version;
+      _fun = fun;
+    }
+  }
+}
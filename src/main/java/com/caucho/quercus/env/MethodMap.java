@@ -39,12 +39,17 @@ public class MethodMap<V>
 {
   private Entry<V> []_entries = (Entry<V>[])new Entry[16];
   private int _size;
+
+  // incremented on each put, for call-site caches
+  private volatile int _version;
     
   public void put(char []buffer, int length, V value)
   {
     if (_entries.length <= _size * 4)
       resize();
     
+    _version++;
+
     int hash = hash(buffer, length);
 
     char []key = new char[length];
@@ -69,6 +74,14 @@ public class MethodMap<V>
 
   }
 
+  /**
+   * Returns the map version, which changes whenever a value is put.
+   */
+  public int getVersion()
+  {
+    return _version;
+  }
+
   public boolean containsKey(String key)
   {
     return get(key) != null;
@@ -41,6 +41,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -60,8 +61,15 @@ public class ObjectExtValue extends ObjectValue
 
   private static final int DEFAULT_SIZE = 16;
 
+  private static final Value []NULL_SLOTS = new Value[0];
+
   private MethodMap<AbstractFunction> _methodMap;
 
+  // declared fields, laid out by the class shape; a null slot is unset
+  private ObjectShape _shape;
+  private Value []_slots;
+
+  // dynamic fields, allocated on first use
   private Entry []_entries;
   private int _hashMask;
 
@@ -74,8 +82,8 @@ public class ObjectExtValue extends ObjectValue
 
     _methodMap = cl.getMethodMap();
 
-    _entries = new Entry[DEFAULT_SIZE];
-    _hashMask = _entries.length - 1;
+    _shape = cl.getObjectShape();
+    _slots = createSlots(_shape);
   }
 
   public ObjectExtValue(Env env, ObjectExtValue copy, CopyRoot root)
@@ -88,24 +96,44 @@ public class ObjectExtValue extends ObjectValue
 
     _size = copy._size;
     _isFieldInit = copy._isFieldInit;
+
+    _shape = copy._shape;
+    _slots = createSlots(_shape);
+
+    Value []copySlots = copy._slots;
+
+    for (int i = 0; i < copySlots.length; i++) {
+      Value value = copySlots[i];
+
+      if (value != null) {
+        Value valueCopy = root.getCopy(value);
+
+        if (valueCopy == null)
+          valueCopy = value.copyTree(env, root);
+
+        _slots[i] = valueCopy;
+      }
+    }
     
     Entry []copyEntries = copy._entries;
-    
-    _entries = new Entry[copyEntries.length];
-    _hashMask = copy._hashMask;
 
-    int len = copyEntries.length;
-    for (int i = 0; i < len; i++) {
-      Entry entry = copyEntries[i];
+    if (copyEntries != null) {
+      _entries = new Entry[copyEntries.length];
+      _hashMask = copy._hashMask;
 
-      for (; entry != null; entry = entry._next) {
-        Entry entryCopy = entry.copyTree(env, root);
+      int len = copyEntries.length;
+      for (int i = 0; i < len; i++) {
+        Entry entry = copyEntries[i];
 
-        entryCopy._next = _entries[i];
-        if (_entries[i] != null)
-          _entries[i]._prev = entryCopy;
+        for (; entry != null; entry = entry._next) {
+          Entry entryCopy = entry.copyTree(env, root);
 
-        _entries[i] = entryCopy;
+          entryCopy._next = _entries[i];
+          if (_entries[i] != null)
+            _entries[i]._prev = entryCopy;
+
+          _entries[i] = entryCopy;
+        }
       }
     }
     
@@ -122,24 +150,38 @@ public class ObjectExtValue extends ObjectValue
 
     _size = copy._size;
     _isFieldInit = copy._isFieldInit;
+
+    _shape = copy._shape;
+    _slots = createSlots(_shape);
+
+    Value []copySlots = copy._slots;
+
+    for (int i = 0; i < copySlots.length; i++) {
+      Value value = copySlots[i];
+
+      if (value != null)
+        _slots[i] = value.copy(env, copyMap);
+    }
     
     Entry []copyEntries = copy._entries;
-    
-    _entries = new Entry[copyEntries.length];
-    _hashMask = copy._hashMask;
 
-    int len = copyEntries.length;
-    for (int i = 0; i < len; i++) {
-      Entry entry = copyEntries[i];
+    if (copyEntries != null) {
+      _entries = new Entry[copyEntries.length];
+      _hashMask = copy._hashMask;
+
+      int len = copyEntries.length;
+      for (int i = 0; i < len; i++) {
+        Entry entry = copyEntries[i];
 
-      for (; entry != null; entry = entry._next) {
-        Entry entryCopy = new Entry(env, copyMap, entry);
+        for (; entry != null; entry = entry._next) {
+          Entry entryCopy = new Entry(env, copyMap, entry);
 
-        entryCopy._next = _entries[i];
-        if (_entries[i] != null)
-          _entries[i]._prev = entryCopy;
+          entryCopy._next = _entries[i];
+          if (_entries[i] != null)
+            _entries[i]._prev = entryCopy;
 
-        _entries[i] = entryCopy;
+          _entries[i] = entryCopy;
+        }
       }
     }
     
@@ -148,10 +190,22 @@ public class ObjectExtValue extends ObjectValue
 
   private void init()
   {
-    _entries = new Entry[DEFAULT_SIZE];
-    _hashMask = _entries.length - 1;
+    _shape = ObjectShape.EMPTY;
+    _slots = NULL_SLOTS;
+    _entries = null;
+    _hashMask = 0;
     _size = 0;
   }
+
+  private static Value []createSlots(ObjectShape shape)
+  {
+    int size = shape.getSize();
+
+    if (size == 0)
+      return NULL_SLOTS;
+    else
+      return new Value[size];
+  }
   
   @Override
   protected void setQuercusClass(QuercusClass cl)
@@ -159,6 +213,20 @@ public class ObjectExtValue extends ObjectValue
     super.setQuercusClass(cl);
     
     _methodMap = cl.getMethodMap();
+
+    ObjectShape shape = cl.getObjectShape();
+
+    if (shape != _shape) {
+      // move the fields into the new class's layout
+      ArrayList<Entry> fields = getFieldEntries();
+
+      _shape = shape;
+      clearFields();
+
+      for (Entry field : fields) {
+        initFieldImpl(field._key, field._value, field._visibility);
+      }
+    }
   }
   
   /*
@@ -169,26 +237,42 @@ public class ObjectExtValue extends ObjectValue
   {
     setQuercusClass(cls);
     
-    Entry []entries = _entries;
-    
-    _entries = new Entry[_entries.length];
-    _hashMask = _entries.length - 1;
-    _size = 0;
+    ArrayList<Entry> fields = getFieldEntries();
+
+    clearFields();
     
     cls.initObject(env, this);
     
-    EntryIterator iter = new EntryIterator(entries);
-    
+    for (Entry field : fields) {
+      initField(field._key, field._value, field._visibility);
+    }
+  }
+
+  /**
+   * Returns a snapshot of the fields.
+   */
+  private ArrayList<Entry> getFieldEntries()
+  {
+    ArrayList<Entry> fields = new ArrayList<Entry>(_size);
+
+    EntryIterator iter = new EntryIterator(this);
+
     while (iter.hasNext()) {
-      Entry newField = iter.next();
-      
-      Entry entry = getThisEntry(newField._key);
-      
-      if (entry != null)
-        entry._value = newField._value;
-      else
-        initField(newField._key, newField._value, newField._visibility);
+      fields.add(iter.next());
     }
+
+    return fields;
+  }
+
+  /**
+   * Removes all fields, keeping the current shape.
+   */
+  private void clearFields()
+  {
+    _slots = createSlots(_shape);
+    _entries = null;
+    _hashMask = 0;
+    _size = 0;
   }
 
   /**
@@ -206,6 +290,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public final Value getField(Env env, StringValue name)
   {
+    int slot = getSlot(env, name);
+
+    if (slot >= 0)
+      return _slots[slot].toValue();
+
     Entry entry = getEntry(env, name);
     
     if (entry != null)
@@ -220,6 +309,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value getThisField(Env env, StringValue name)
   {
+    int slot = getThisSlot(name);
+
+    if (slot >= 0)
+      return _slots[slot].toValue();
+
     Entry entry = getThisEntry(name);
     
     if (entry != null)
@@ -242,6 +336,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Var getFieldRef(Env env, StringValue name)
   {
+    int slot = getSlot(env, name);
+
+    if (slot >= 0)
+      return toSlotVar(slot);
+
     Entry entry = getEntry(env, name);
 
     if (entry != null) {
@@ -266,18 +365,7 @@ public class ObjectExtValue extends ObjectValue
     }
     
     // php/3d28
-    entry = createEntry(name, FieldVisibility.PUBLIC);
-
-    value = entry._value;
-
-    if (value instanceof Var)
-      return (Var) value;
-
-    Var var = new Var(value);
-
-    entry.setValue(var);
-
-    return var;
+    return createFieldVar(name);
   }
 
   /**
@@ -286,6 +374,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Var getThisFieldRef(Env env, StringValue name)
   {
+    int slot = getThisSlot(name);
+
+    if (slot >= 0)
+      return toSlotVar(slot);
+
     Entry entry = getThisEntry(name);
     
     if (entry != null) {
@@ -309,18 +402,7 @@ public class ObjectExtValue extends ObjectValue
         return new Var(value);
     }
     
-    entry = createEntry(name, FieldVisibility.PUBLIC);
-
-    value = entry._value;
-
-    if (value instanceof Var)
-      return (Var) value;
-
-    Var var = new Var(value);
-
-    entry.setValue(var);
-
-    return var;
+    return createFieldVar(name);
   }
 
   /**
@@ -329,6 +411,17 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value getFieldArg(Env env, StringValue name, boolean isTop)
   {
+    int slot = getSlot(env, name);
+
+    if (slot >= 0) {
+      Value value = _slots[slot].toValue();
+
+      if (isTop || ! value.isset())
+        return toSlotVar(slot);
+      else
+        return value;
+    }
+
     Entry entry = getEntry(env, name);
 
     if (entry != null) {
@@ -354,6 +447,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value getThisFieldArg(Env env, StringValue name)
   {
+    int slot = getThisSlot(name);
+
+    if (slot >= 0)
+      return toSlotVar(slot);
+
     Entry entry = getThisEntry(name);
 
     if (entry != null)
@@ -373,6 +471,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value getFieldArgRef(Env env, StringValue name)
   {
+    int slot = getSlot(env, name);
+
+    if (slot >= 0)
+      return toSlotVar(slot);
+
     Entry entry = getEntry(env, name);
 
     if (entry != null)
@@ -392,6 +495,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value getThisFieldArgRef(Env env, StringValue name)
   {
+    int slot = getThisSlot(name);
+
+    if (slot >= 0)
+      return toSlotVar(slot);
+
     Entry entry = getThisEntry(name);
 
     if (entry != null)
@@ -411,6 +519,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value putField(Env env, StringValue name, Value value)
   {
+    int slot = getSlot(env, name);
+
+    if (slot >= 0)
+      return setSlot(slot, value);
+
     Entry entry = getEntry(env, name);
 
     if (entry == null) {
@@ -432,26 +545,7 @@ public class ObjectExtValue extends ObjectValue
       }
     }
     
-    entry = createEntry(name, FieldVisibility.PUBLIC);
-
-    Value oldValue = entry._value;
-
-    if (value instanceof Var) {
-      Var var = (Var) value;
-
-      // for function return optimization
-      var.setReference();
-
-      entry._value = var;
-    }
-    else if (oldValue instanceof Var) {
-      oldValue.set(value);
-    }
-    else {
-      entry._value = value;
-    }
-
-    return value;
+    return setField(name, value);
   }
 
   /**
@@ -460,6 +554,11 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public Value putThisField(Env env, StringValue name, Value value)
   {
+    int slot = getThisSlot(name);
+
+    if (slot >= 0)
+      return setSlot(slot, value);
+
     Entry entry = getThisEntry(name);
 
     if (entry == null) {
@@ -483,26 +582,7 @@ public class ObjectExtValue extends ObjectValue
       }
     }
     
-    entry = createEntry(name, FieldVisibility.PUBLIC);
-
-    Value oldValue = entry._value;
-
-    if (value instanceof Var) {
-      Var var = (Var) value;
-
-      // for function return optimization
-      var.setReference();
-
-      entry._value = var;
-    }
-    else if (oldValue instanceof Var) {
-      oldValue.set(value);
-    }
-    else {
-      entry._value = value;
-    }
-
-    return value;
+    return setField(name, value);
   }
   
   protected Value putFieldExt(Env env, StringValue name, Value value)
@@ -518,6 +598,23 @@ public class ObjectExtValue extends ObjectValue
                         Value value,
                         FieldVisibility visibility)
   {
+    initFieldImpl(key, value, visibility);
+  }
+
+  private void initFieldImpl(StringValue key,
+                             Value value,
+                             FieldVisibility visibility)
+  {
+    int slot = _shape.findSlot(key);
+
+    if (slot >= 0) {
+      if (_slots[slot] == null)
+        _size++;
+
+      _slots[slot] = value;
+      return;
+    }
+
     Entry entry = createEntry(key, visibility);
 
     entry._value = value;
@@ -529,6 +626,20 @@ public class ObjectExtValue extends ObjectValue
   @Override
   public void unsetField(StringValue name)
   {
+    int slot = _shape.findSlot(name);
+
+    if (slot >= 0) {
+      if (_slots[slot] != null) {
+        _slots[slot] = null;
+        _size--;
+      }
+
+      return;
+    }
+
+    if (_entries == null)
+      return;
+
     int hash = name.hashCode() & _hashMask;
 
     for (Entry entry = _entries[hash];
@@ -553,25 +664,203 @@ public class ObjectExtValue extends ObjectValue
     }
   }
 
+  /**
+   * Returns the declared-field layout, for call-site caches.
+   */
+  public final ObjectShape getShape()
+  {
+    return _shape;
+  }
+
+  /**
+   * Returns a declared field by its slot in getShape(), or null if the
+   * field is unset.
+   */
+  public final Value getSlotValue(int slot)
+  {
+    Value value = _slots[slot];
+
+    if (value != null)
+      return value.toValue();
+    else
+      return null;
+  }
+
+  /**
+   * Sets a declared field by its slot in getShape().  Returns false if
+   * the field is unset, leaving __set handling to putField.
+   */
+  public boolean putSlotValue(int slot, Value value)
+  {
+    if (_slots[slot] == null)
+      return false;
+
+    setSlot(slot, value);
+
+    return true;
+  }
+
+  /**
+   * Returns the slot of a set declared field, or -1.
+   */
+  private int getSlot(Env env, StringValue name)
+  {
+    int slot = _shape.findSlot(name);
+
+    if (slot < 0 || _slots[slot] == null)
+      return -1;
+
+    if (_shape.getVisibility(slot) == FieldVisibility.PRIVATE)
+      checkPrivateAccess(env, name);
+
+    return slot;
+  }
+
+  /**
+   * Returns the slot of a set declared field, or -1.
+   */
+  private int getThisSlot(StringValue name)
+  {
+    int slot = _shape.findSlot(name);
+
+    if (slot < 0 || _slots[slot] == null)
+      return -1;
+
+    return slot;
+  }
+
+  /**
+   * Returns the slot's value as a Var, converting it if necessary.
+   */
+  private Var toSlotVar(int slot)
+  {
+    Value value = _slots[slot];
+
+    if (value instanceof Var)
+      return (Var) value;
+
+    Var var = new Var(value);
+    _slots[slot] = var;
+
+    return var;
+  }
+
+  /**
+   * Sets a declared field.
+   */
+  private Value setSlot(int slot, Value value)
+  {
+    Value oldValue = _slots[slot];
+
+    if (oldValue == null)
+      _size++;
+
+    if (value instanceof Var) {
+      Var var = (Var) value;
+
+      // for function return optimization
+      var.setReference();
+
+      _slots[slot] = var;
+    }
+    else if (oldValue instanceof Var) {
+      oldValue.set(value);
+    }
+    else {
+      _slots[slot] = value;
+    }
+
+    return value;
+  }
+
+  /**
+   * Sets a field, creating it if necessary.
+   */
+  private Value setField(StringValue name, Value value)
+  {
+    int slot = _shape.findSlot(name);
+
+    if (slot >= 0)
+      return setSlot(slot, value);
+
+    Entry entry = createEntry(name, FieldVisibility.PUBLIC);
+
+    Value oldValue = entry._value;
+
+    if (value instanceof Var) {
+      Var var = (Var) value;
+
+      // for function return optimization
+      var.setReference();
+
+      entry._value = var;
+    }
+    else if (oldValue instanceof Var) {
+      oldValue.set(value);
+    }
+    else {
+      entry._value = value;
+    }
+
+    return value;
+  }
+
+  /**
+   * Creates a field as a Var.
+   */
+  private Var createFieldVar(StringValue name)
+  {
+    int slot = _shape.findSlot(name);
+
+    if (slot >= 0) {
+      if (_slots[slot] == null) {
+        _slots[slot] = NullValue.NULL;
+        _size++;
+      }
+
+      return toSlotVar(slot);
+    }
+
+    Entry entry = createEntry(name, FieldVisibility.PUBLIC);
+
+    Value value = entry._value;
+
+    if (value instanceof Var)
+      return (Var) value;
+
+    Var var = new Var(value);
+
+    entry.setValue(var);
+
+    return var;
+  }
+
+  private void checkPrivateAccess(Env env, StringValue name)
+  {
+    QuercusClass cls = env.getCallingClass();
+          
+    // XXX: this really only checks access from outside of class scope
+    // php/091m
+    if (cls != _quercusClass) {
+      env.error(L.l("Can't access private field '{0}::${1}'",
+                    _quercusClass.getName(), name));
+    }
+  }
+
   /**
    * Gets a new value.
    */
   private Entry getEntry(Env env, StringValue name)
   {
+    if (_entries == null)
+      return null;
+
     int hash = name.hashCode() & _hashMask;
 
     for (Entry entry = _entries[hash]; entry != null; entry = entry._next) {
       if (name.equals(entry._key)) {
-        if (entry._visibility == FieldVisibility.PRIVATE) {
-          QuercusClass cls = env.getCallingClass();
-          
-          // XXX: this really only checks access from outside of class scope
-          // php/091m
-          if (cls != _quercusClass) {
-                env.error(L.l("Can't access private field '{0}::${1}'",
-                        _quercusClass.getName(), name));
-          }
-        }
+        if (entry._visibility == FieldVisibility.PRIVATE)
+          checkPrivateAccess(env, name);
         
         return entry;
       }
@@ -585,6 +874,9 @@ public class ObjectExtValue extends ObjectValue
    */
   private Entry getThisEntry(StringValue name)
   {
+    if (_entries == null)
+      return null;
+
     int hash = name.hashCode() & _hashMask;
 
     for (Entry entry = _entries[hash]; entry != null; entry = entry._next) {
@@ -596,10 +888,15 @@ public class ObjectExtValue extends ObjectValue
   }
 
   /**
-   * Creates the entry for a key.
+   * Creates the entry for a dynamic key.
    */
   private Entry createEntry(StringValue name, FieldVisibility visibility)
   {
+    if (_entries == null) {
+      _entries = new Entry[DEFAULT_SIZE];
+      _hashMask = _entries.length - 1;
+    }
+
     int hash = name.hashCode() & _hashMask;
 
     for (Entry entry = _entries[hash];
@@ -718,7 +1015,7 @@ public class ObjectExtValue extends ObjectValue
     if (delegate != null)
       return delegate.getIterator(env, this);
     else
-      return new KeyValueIterator(_entries);
+      return new KeyValueIterator(this);
   }
 
   /**
@@ -732,7 +1029,7 @@ public class ObjectExtValue extends ObjectValue
     if (delegate != null)
       return delegate.getKeyIterator(env, this);
 
-    return new KeyIterator(_entries);
+    return new KeyIterator(this);
   }
 
   /**
@@ -746,7 +1043,7 @@ public class ObjectExtValue extends ObjectValue
     if (delegate != null)
       return delegate.getValueIterator(env, this);
 
-    return new ValueIterator(_entries);
+    return new ValueIterator(this);
   }
 
   //
@@ -1323,10 +1620,27 @@ public class ObjectExtValue extends ObjectValue
   {
     ObjectExtValue newObject = new ObjectExtValue(_quercusClass);
 
-    for (Map.Entry<Value,Value> entry : entrySet()) {
-      newObject.putThisField(null,
-                             (StringValue) entry.getKey(),
-                             entry.getValue());
+    // both objects share the class shape, so slots copy across directly
+    Value []slots = _slots;
+
+    for (int i = 0; i < slots.length; i++) {
+      Value value = slots[i];
+
+      if (value != null)
+        newObject.setSlot(i, value.toValue());
+    }
+
+    Entry []entries = _entries;
+
+    if (entries != null) {
+      for (Entry entry : entries) {
+        for (; entry != null; entry = entry._next) {
+          Entry newEntry = newObject.createEntry(entry._key,
+                                                 entry._visibility);
+
+          newEntry._value = entry.getValue();
+        }
+      }
     }
 
     return newObject;
@@ -1365,43 +1679,64 @@ public class ObjectExtValue extends ObjectValue
     sb.append(getSize());
     sb.append(":{");
 
-    Iterator<Entry> iter = new EntryIterator(_entries);
-    
-    while (iter.hasNext()) {
-      Entry entry = iter.next();
-      
-      sb.append("s:");
+    Value []slots = _slots;
+
+    for (int i = 0; i < slots.length; i++) {
+      Value value = slots[i];
+
+      if (value != null) {
+        serializeField(env, sb, serializeMap,
+                       _shape.getName(i), _shape.getVisibility(i), value);
+      }
+    }
+
+    Entry []entries = _entries;
+
+    if (entries != null) {
+      for (Entry entry : entries) {
+        for (; entry != null; entry = entry._next) {
+          serializeField(env, sb, serializeMap,
+                         entry._key, entry._visibility, entry._value);
+        }
+      }
+    }
+
+    sb.append("}");
+  }
+
+  private static void serializeField(Env env,
+                                     StringBuilder sb,
+                                     SerializeMap serializeMap,
+                                     StringValue key,
+                                     FieldVisibility visibility,
+                                     Value value)
+  {
+    sb.append("s:");
       
-      Value key = entry.getKey();
-      int len = key.length();
+    int len = key.length();
       
-      if (entry._visibility == FieldVisibility.PROTECTED) {
-        sb.append(len + 3);
+    if (visibility == FieldVisibility.PROTECTED) {
+      sb.append(len + 3);
         
-        sb.append(":\"");
-        sb.append("\u0000*\u0000");
-      }
-      else if (entry._visibility == FieldVisibility.PRIVATE) {
-        sb.append(len + 3);
+      sb.append(":\"");
+      sb.append("\u0000*\u0000");
+    }
+    else if (visibility == FieldVisibility.PRIVATE) {
+      sb.append(len + 3);
         
-        sb.append(":\"");
-        sb.append("\u0000A\u0000");
-      }
-      else {
-        sb.append(len);
+      sb.append(":\"");
+      sb.append("\u0000A\u0000");
+    }
+    else {
+      sb.append(len);
         
-        sb.append(":\"");
-      }
-      
-      sb.append(key);
-      sb.append("\";");
-
-      Value value = ((Entry) entry).getRawValue();
-      
-      value.serialize(env, sb, serializeMap);
+      sb.append(":\"");
     }
+      
+    sb.append(key);
+    sb.append("\";");
 
-    sb.append("}");
+    value.serialize(env, sb, serializeMap);
   }
 
   /**
@@ -1697,26 +2032,43 @@ public class ObjectExtValue extends ObjectValue
     @Override
     public Iterator<Map.Entry<Value,Value>> iterator()
     {
-      return new KeyValueIterator(ObjectExtValue.this._entries);
+      return new KeyValueIterator(ObjectExtValue.this);
     }
   }
   
-  public static class EntryIterator
-    implements Iterator<Entry>
+  /**
+   * Iterates over the declared slots, then the dynamic fields.
+   */
+  abstract static class FieldIterator<T>
+    implements Iterator<T>
   {
+    private final ObjectShape _shape;
+    private final Value []_slots;
     private final Entry []_list;
+    
+    private int _slot;
     private int _index;
     private Entry _entry;
 
-    EntryIterator(Entry []list)
+    FieldIterator(ObjectExtValue obj)
     {
-      _list = list;
+      _shape = obj._shape;
+      _slots = obj._slots;
+      _list = obj._entries;
     }
 
     public boolean hasNext()
     {
+      for (; _slot < _slots.length; _slot++) {
+        if (_slots[_slot] != null)
+          return true;
+      }
+
       if (_entry != null)
         return true;
+
+      if (_list == null)
+        return false;
       
       for (; _index < _list.length && _list[_index] == null; _index++) {
       }
@@ -1724,181 +2076,121 @@ public class ObjectExtValue extends ObjectValue
       return _index < _list.length;
     }
 
-    public Entry next()
+    public T next()
     {
-      if (_entry != null) {
-        Entry entry = _entry;
-        _entry = entry._next;
+      if (! hasNext())
+        return null;
 
-        return entry;
-      }
+      if (_slot < _slots.length) {
+        int slot = _slot++;
 
-      for (; _index < _list.length && _list[_index] == null; _index++) {
+        return nextSlot(_shape.getName(slot),
+                        _shape.getVisibility(slot),
+                        _slots[slot]);
       }
 
-      if (_list.length <= _index)
-        return null;
+      Entry entry = _entry;
+
+      if (entry == null)
+        entry = _list[_index++];
 
-      Entry entry = _list[_index++];
       _entry = entry._next;
 
-      return entry;
+      return nextEntry(entry);
     }
 
+    abstract T nextSlot(StringValue key,
+                        FieldVisibility visibility,
+                        Value value);
+
+    abstract T nextEntry(Entry entry);
+
     public void remove()
     {
       throw new UnsupportedOperationException();
     }
   }
 
-  public static class KeyValueIterator
-    implements Iterator<Map.Entry<Value,Value>>
+  /**
+   * Iterates over the fields.  Declared fields are returned as
+   * detached entries.
+   */
+  public static class EntryIterator
+    extends FieldIterator<Entry>
   {
-    private final Entry []_list;
-    private int _index;
-    private Entry _entry;
-
-    KeyValueIterator(Entry []list)
+    EntryIterator(ObjectExtValue obj)
     {
-      _list = list;
+      super(obj);
     }
 
-    public boolean hasNext()
+    Entry nextSlot(StringValue key, FieldVisibility visibility, Value value)
     {
-      if (_entry != null)
-        return true;
-      
-      for (; _index < _list.length && _list[_index] == null; _index++) {
-      }
-
-      return _index < _list.length;
+      return new Entry(key, value, visibility);
     }
 
-    public Map.Entry<Value,Value> next()
+    Entry nextEntry(Entry entry)
     {
-      if (_entry != null) {
-        Entry entry = _entry;
-        _entry = entry._next;
-
-        return entry;
-      }
-
-      for (; _index < _list.length && _list[_index] == null; _index++) {
-      }
-
-      if (_list.length <= _index)
-        return null;
+      return entry;
+    }
+  }
 
-      Entry entry = _list[_index++];
-      _entry = entry._next;
+  public static class KeyValueIterator
+    extends FieldIterator<Map.Entry<Value,Value>>
+  {
+    KeyValueIterator(ObjectExtValue obj)
+    {
+      super(obj);
+    }
 
-      return entry;
+    Map.Entry<Value,Value> nextSlot(StringValue key,
+                                    FieldVisibility visibility,
+                                    Value value)
+    {
+      return new Entry(key, value, visibility);
     }
 
-    public void remove()
+    Map.Entry<Value,Value> nextEntry(Entry entry)
     {
-      throw new UnsupportedOperationException();
+      return entry;
     }
   }
 
   public static class ValueIterator
-    implements Iterator<Value>
+    extends FieldIterator<Value>
   {
-    private final Entry []_list;
-    private int _index;
-    private Entry _entry;
-
-    ValueIterator(Entry []list)
+    ValueIterator(ObjectExtValue obj)
     {
-      _list = list;
+      super(obj);
     }
 
-    public boolean hasNext()
+    Value nextSlot(StringValue key, FieldVisibility visibility, Value value)
     {
-      if (_entry != null)
-        return true;
-      
-      for (; _index < _list.length && _list[_index] == null; _index++) {
-      }
-
-      return _index < _list.length;
+      return value;
     }
 
-    public Value next()
+    Value nextEntry(Entry entry)
     {
-      if (_entry != null) {
-        Entry entry = _entry;
-        _entry = entry._next;
-
-        return entry._value;
-      }
-
-      for (; _index < _list.length && _list[_index] == null; _index++) {
-      }
-
-      if (_list.length <= _index)
-        return null;
-
-      Entry entry = _list[_index++];
-      _entry = entry._next;
-
       return entry._value;
     }
-
-    public void remove()
-    {
-      throw new UnsupportedOperationException();
-    }
   }
 
   public static class KeyIterator
-    implements Iterator<Value>
+    extends FieldIterator<Value>
   {
-    private final Entry []_list;
-    private int _index;
-    private Entry _entry;
-
-    KeyIterator(Entry []list)
+    KeyIterator(ObjectExtValue obj)
     {
-      _list = list;
+      super(obj);
     }
 
-    public boolean hasNext()
+    Value nextSlot(StringValue key, FieldVisibility visibility, Value value)
     {
-      if (_entry != null)
-        return true;
-      
-      for (; _index < _list.length && _list[_index] == null; _index++) {
-      }
-
-      return _index < _list.length;
+      return key;
     }
 
-    public Value next()
+    Value nextEntry(Entry entry)
     {
-      if (_entry != null) {
-        Entry entry = _entry;
-        _entry = entry._next;
-
-        return entry._key;
-      }
-
-      for (; _index < _list.length && _list[_index] == null; _index++) {
-      }
-
-      if (_list.length <= _index)
-        return null;
-
-      Entry entry = _list[_index++];
-      _entry = entry._next;
-
       return entry._key;
     }
-
-    public void remove()
-    {
-      throw new UnsupportedOperationException();
-    }
   }
 
   public final static class Entry
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.env;
+
+/**
+ * The declared-field layout shared by all objects of a class.  Each
+ * declared field has a fixed slot, so an ObjectExtValue can keep its
+ * declared fields in a plain Value[] and only spill dynamic fields
+ * into its hash.
+ *
+ * Shapes are immutable; adding a field returns a new shape.
+ */
+public final class ObjectShape {
+  public static final ObjectShape EMPTY
+    = new ObjectShape(new StringValue[0], new FieldVisibility[0]);
+
+  private final StringValue []_names;
+  private final FieldVisibility []_visibility;
+
+  // open-addressed slot table, holding slot + 1
+  private final int []_table;
+  private final int _mask;
+
+  private ObjectShape(StringValue []names, FieldVisibility []visibility)
+  {
+    _names = names;
+    _visibility = visibility;
+
+    int size = 2;
+    while (size < 2 * names.length)
+      size *= 2;
+
+    _table = new int[size];
+    _mask = size - 1;
+
+    for (int i = 0; i < names.length; i++) {
+      int hash = names[i].hashCode() & _mask;
+
+      while (_table[hash] != 0)
+        hash = (hash + 1) & _mask;
+
+      _table[hash] = i + 1;
+    }
+  }
+
+  /**
+   * Returns a shape with the field appended.  The first declaration
+   * of a name wins, matching the order fields are initialized in.
+   */
+  public ObjectShape addField(StringValue name, FieldVisibility visibility)
+  {
+    if (findSlot(name) >= 0)
+      return this;
+
+    int size = _names.length;
+
+    StringValue []names = new StringValue[size + 1];
+    FieldVisibility []visibilities = new FieldVisibility[size + 1];
+
+    System.arraycopy(_names, 0, names, 0, size);
+    System.arraycopy(_visibility, 0, visibilities, 0, size);
+
+    names[size] = name;
+    visibilities[size] = visibility;
+
+    return new ObjectShape(names, visibilities);
+  }
+
+  /**
+   * Returns the number of declared fields.
+   */
+  public int getSize()
+  {
+    return _names.length;
+  }
+
+  /**
+   * Returns the name of the field in the slot.
+   */
+  public StringValue getName(int slot)
+  {
+    return _names[slot];
+  }
+
+  /**
+   * Returns the visibility of the field in the slot.
+   */
+  public FieldVisibility getVisibility(int slot)
+  {
+    return _visibility[slot];
+  }
+
+  /**
+   * Returns the slot for the field, or -1 if it is not declared.
+   */
+  public int findSlot(StringValue name)
+  {
+    int []table = _table;
+    int hash = name.hashCode() & _mask;
+
+    while (true) {
+      int slot = table[hash] - 1;
+
+      if (slot < 0)
+        return -1;
+      else if (name.equals(_names[slot]))
+        return slot;
+
+      hash = (hash + 1) & _mask;
+    }
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _names.length + "]";
+  }
+}
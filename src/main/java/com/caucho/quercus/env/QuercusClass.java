@@ -93,6 +93,8 @@ public class QuercusClass {
   private final IntMap _fieldMap;
   
   private final HashMap<StringValue,Expr> _fieldInitMap;
+
+  private ObjectShape _objectShape = ObjectShape.EMPTY;
   
   private final MethodMap<AbstractFunction> _methodMap;
 
@@ -266,6 +268,7 @@ public class QuercusClass {
     _fieldNames = cacheClass._fieldNames;
     _fieldMap = cacheClass._fieldMap;
     _fieldInitMap = cacheClass._fieldInitMap;
+    _objectShape = cacheClass._objectShape;
     _methodMap = cacheClass._methodMap;
     _constMap = cacheClass._constMap;
     _staticFieldExprMap = cacheClass._staticFieldExprMap;
@@ -528,6 +531,8 @@ public class QuercusClass {
     _fieldNames.add(name);
     _fieldMap.put(name, index);
     _fieldInitMap.put(name, initExpr);
+
+    _objectShape = _objectShape.addField(name, visibility);
   }
 
   /**
@@ -652,6 +657,14 @@ public class QuercusClass {
     return _fieldNames.size();
   }
 
+  /**
+   * Returns the declared-field layout for objects of this class.
+   */
+  public ObjectShape getObjectShape()
+  {
+    return _objectShape;
+  }
+
   /**
    * Returns the field index.
    */
@@ -1209,6 +1222,52 @@ public class QuercusClass {
     }
   }  
 
+  /**
+   * Calls a method already resolved for this class, e.g. by a call-site
+   * cache.
+   */
+  public Value callMethod(Env env, Value thisValue,
+                          AbstractFunction fun, Value []args)
+  {
+    QuercusClass oldClass = env.setCallingClass(this);
+
+    try {
+      return fun.callMethod(env, thisValue, args);
+    } finally {
+      env.setCallingClass(oldClass);
+    }
+  }
+
+  /**
+   * Calls a method already resolved for this class, returning a reference.
+   */
+  public Value callMethodRef(Env env, Value thisValue,
+                             AbstractFunction fun, Value []args)
+  {
+    QuercusClass oldClass = env.setCallingClass(this);
+
+    try {
+      return fun.callMethodRef(env, thisValue, args);
+    } finally {
+      env.setCallingClass(oldClass);
+    }
+  }
+
+  /**
+   * Calls a method already resolved for this class, returning a reference.
+   */
+  public Value callMethodRef(Env env, Value thisValue,
+                             AbstractFunction fun, Expr []args)
+  {
+    QuercusClass oldClass = env.setCallingClass(this);
+
+    try {
+      return fun.callMethodRef(env, thisValue, args);
+    } finally {
+      env.setCallingClass(oldClass);
+    }
+  }
+
   /**
    * calls the function.
    */
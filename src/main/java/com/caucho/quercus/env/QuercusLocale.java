@@ -29,17 +29,24 @@
 
 package com.caucho.quercus.env;
 
+import java.text.DecimalFormatSymbols;
 import java.util.Locale;
 
 public class QuercusLocale
 {
   private final Locale _locale;
   private final String _charset;
+  private final boolean _isDecimalPoint;
 
   public QuercusLocale(Locale locale, String charset)
   {
     _locale = locale;
     _charset = charset;
+
+    DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+
+    _isDecimalPoint = (symbols.getZeroDigit() == '0'
+                       && symbols.getDecimalSeparator() == '.');
   }
 
   public Locale getLocale()
@@ -51,6 +58,15 @@ public class QuercusLocale
   {
     return _charset;
   }
+
+  /**
+   * Returns true if numbers are formatted with ASCII digits and a '.'
+   * decimal point, as in the C locale.
+   */
+  public boolean isDecimalPoint()
+  {
+    return _isDecimalPoint;
+  }
   
   public String toString()
   {
@@ -38,7 +38,9 @@ import com.caucho.quercus.env.EnvVar;
 import com.caucho.util.IntMap;
 import com.caucho.vfs.Path;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -54,10 +56,13 @@ public class SaveState {
 
   private IntMap _globalNameMap = new IntMap();
   private Value []_globalValues;
+  private String [][]_globalAliases;
   
   private HashMap<Path,QuercusPage> _includeMap;
   private ImportMap _importMap;
 
+  private ArrayList<Callback> _autoloadList;
+
   /**
    * Creates a new save state.
    */
@@ -68,7 +73,8 @@ public class SaveState {
             Value []constants,
             Map<String,EnvVar> globalMap,
             HashMap<Path,QuercusPage> includeMap,
-            ImportMap importMap)
+            ImportMap importMap,
+            ArrayList<Callback> autoloadList)
   {
     _fun = new AbstractFunction[fun.length];
     System.arraycopy(fun, 0, _fun, 0, fun.length);
@@ -85,7 +91,12 @@ public class SaveState {
     saveGlobals(env, globalMap);
     
     _includeMap = new HashMap<Path,QuercusPage>(includeMap);
-    _importMap = importMap.copy();
+
+    if (importMap != null)
+      _importMap = importMap.copy();
+
+    if (autoloadList != null)
+      saveAutoloadList(autoloadList);
   }
 
   /**
@@ -135,6 +146,15 @@ public class SaveState {
   {
     return _globalValues;
   }
+
+  /**
+   * Returns the names of the globals sharing each global's var, e.g.
+   * after $a = &$b, or null for a global with no aliases.
+   */
+  public String [][]getGlobalAliasList()
+  {
+    return _globalAliases;
+  }
   
   /**
    * Returns the list of included pages.
@@ -145,31 +165,86 @@ public class SaveState {
   }
   
   /**
-   * Returns the import statements.
+   * Returns the import statements, or null.
    */
   public ImportMap getImportMap()
   {
     return _importMap;
   }
   
+  /**
+   * Returns the registered SPL autoload functions, or null.
+   */
+  public ArrayList<Callback> getAutoloadList()
+  {
+    return _autoloadList;
+  }
+
+  /**
+   * Returns true if any of the saved pages has changed.
+   */
   public boolean isModified()
   {
+    for (QuercusPage page : _includeMap.values()) {
+      if (page.isModified())
+        return true;
+    }
+
     return false;
   }
 
   private void saveGlobals(Env env, Map<String,EnvVar> globalMap)
   {
     _globalValues = new Value[globalMap.size()];
+    _globalAliases = new String[globalMap.size()][];
+
+    // globals which are references to the same var
+    IdentityHashMap<Var,ArrayList<String>> varMap
+      = new IdentityHashMap<Var,ArrayList<String>>();
 
     for (Map.Entry<String,EnvVar> entry : globalMap.entrySet()) {
       if (env.isSpecialVar(entry.getKey()))
         continue;
 
-      EnvVar envVar = entry.getValue();
+      Var var = entry.getValue().getRef();
+
+      ArrayList<String> names = varMap.get(var);
+
+      if (names == null) {
+        names = new ArrayList<String>();
+        varMap.put(var, names);
+      }
+
+      names.add(entry.getKey());
+    }
+
+    for (Map.Entry<Var,ArrayList<String>> entry : varMap.entrySet()) {
+      ArrayList<String> names = entry.getValue();
+
+      Value value = entry.getKey().toValue().copy(env);
 
-      int id = addGlobalName(entry.getKey());
+      String []aliases = null;
+
+      if (names.size() > 1)
+        aliases = names.toArray(new String[names.size()]);
+
+      for (String name : names) {
+        int id = addGlobalName(name);
+
+        _globalValues[id] = value;
+        _globalAliases[id] = aliases;
+      }
+    }
+  }
+
+  private void saveAutoloadList(ArrayList<Callback> autoloadList)
+  {
+    _autoloadList = new ArrayList<Callback>(autoloadList);
 
-      _globalValues[id] = envVar.get().copy(env);
+    // resolve named callbacks while the saving env is still alive
+    for (Callback cb : _autoloadList) {
+      if (cb instanceof CallbackFunction)
+        ((CallbackFunction) cb).getFunction();
     }
   }
 
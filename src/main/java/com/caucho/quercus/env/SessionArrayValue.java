@@ -65,6 +65,12 @@ public class SessionArrayValue extends ArrayValueWrapper
 
   private boolean _isValid;
 
+  // encoded contents not yet decoded, or null once the array is live
+  private volatile String _encoded;
+
+  // encoded contents as last loaded from or saved to the store
+  private String _storedData = "";
+
   public SessionArrayValue(String id, long now, 
                            long maxInactiveInterval)
   {
@@ -98,6 +104,67 @@ public class SessionArrayValue extends ArrayValueWrapper
     _id = id;
   }
 
+  /**
+   * Returns the session array, decoding the stored data on first access.
+   */
+  @Override
+  public ArrayValue getArray()
+  {
+    String encoded = _encoded;
+
+    if (encoded != null) {
+      synchronized (this) {
+        encoded = _encoded;
+
+        if (encoded != null) {
+          ArrayValue array = super.getArray();
+
+          _encoded = null;
+
+          decode(Env.getInstance(), array, encoded);
+        }
+      }
+    }
+
+    return super.getArray();
+  }
+
+  /**
+   * Replaces the contents with encoded data, which is only decoded when
+   * the session is first accessed.
+   */
+  public void setData(String data)
+  {
+    synchronized (this) {
+      setArray(new ArrayValueImpl());
+
+      _encoded = data;
+      _storedData = data;
+    }
+  }
+
+  /**
+   * Returns the encoded contents, without decoding if the session
+   * was never accessed.
+   */
+  public String getData(Env env)
+  {
+    String encoded = _encoded;
+
+    if (encoded != null)
+      return encoded;
+    else
+      return encode(env);
+  }
+
+  /**
+   * Returns the encoded contents as last loaded or saved.
+   */
+  public String getStoredData()
+  {
+    return _storedData;
+  }
+
   /**
    * Converts to an object.
    */
@@ -113,10 +180,23 @@ public class SessionArrayValue extends ArrayValueWrapper
   {
     long accessTime = _accessTime;
 
+    String encoded = _encoded;
+
+    if (encoded != null) {
+      SessionArrayValue copy
+        = new SessionArrayValue(_id, accessTime, _maxInactiveInterval);
+
+      copy.setData(encoded);
+
+      return copy;
+    }
+
     SessionArrayValue copy = 
       new SessionArrayValue(_id, accessTime, _maxInactiveInterval,
                             (ArrayValue) getArray().copy(env, map));
 
+    copy._storedData = _storedData;
+
     return copy;
   }
 
@@ -147,8 +227,11 @@ public class SessionArrayValue extends ArrayValueWrapper
    */
   public boolean decode(Env env, String encoded)
   {
-    ArrayValue array = getArray();
+    return decode(env, getArray(), encoded);
+  }
 
+  private static boolean decode(Env env, ArrayValue array, String encoded)
+  {
     try {
       UnserializeReader is = new UnserializeReader(encoded);
 
@@ -286,6 +369,9 @@ public class SessionArrayValue extends ArrayValueWrapper
   {
     setValid(true);
     setAccess(now);
+
+    _encoded = null;
+
     clear();
   }
 
@@ -320,6 +406,8 @@ public class SessionArrayValue extends ArrayValueWrapper
     try {
       remove();
 
+      _encoded = null;
+
       clear();
     } finally {
       _isValid = false;
@@ -332,7 +420,12 @@ public class SessionArrayValue extends ArrayValueWrapper
   
   public boolean isEmpty()
   {
-    return getSize() == 0;
+    String encoded = _encoded;
+
+    if (encoded != null)
+      return encoded.length() == 0;
+    else
+      return getSize() == 0;
   }
 
   /**
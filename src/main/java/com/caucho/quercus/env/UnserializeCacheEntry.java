@@ -30,23 +30,50 @@
 package com.caucho.quercus.env;
 
 import java.lang.ref.*;
+import java.util.Map;
 import com.caucho.util.*;
 
 /**
  * Cache entry root
+ *
+ * Values made only of arrays, strings and scalars are frozen into
+ * ConstArrayValue trees, which are shared by all fetches.  A fetch
+ * copies the top array, and copying a ConstArrayValue copies its
+ * nested arrays in turn, so writes never reach the frozen tree.
+ * Other values are deep-copied on fetch.
  */
 public class UnserializeCacheEntry
 {
+  // deeper arrays are copied instead of frozen
+  private static final int MAX_FREEZE_DEPTH = 64;
+
   private FreeList<SoftReference<CopyRoot>> _freeList;
   private SoftReference<Value> _valueRef;
+  private boolean _isFrozen;
 
   public UnserializeCacheEntry(Value value)
   {
+    Value frozenValue = freeze(value, 0);
+
+    if (frozenValue != null) {
+      _isFrozen = true;
+      value = frozenValue;
+    }
+
     _valueRef = new SoftReference<Value>(value);
   }
 
   public UnserializeCacheEntry(Env env, Value value)
   {
+    Value frozenValue = freeze(value, 0);
+
+    if (frozenValue != null) {
+      _isFrozen = true;
+      _valueRef = new SoftReference<Value>(frozenValue);
+
+      return;
+    }
+
     CopyRoot root = new CopyRoot(this);
 
     value = value.copyTree(env, root);
@@ -54,8 +81,27 @@ public class UnserializeCacheEntry
     _valueRef = new SoftReference<Value>(value);
   }
 
+  /**
+   * Returns true if the value is frozen, i.e. has no objects.
+   */
+  public boolean isFrozen()
+  {
+    return _isFrozen;
+  }
+
   public Value getValue(Env env)
   {
+    if (_isFrozen) {
+      SoftReference<Value> valueRef = _valueRef;
+      Value value = valueRef != null ? valueRef.get() : null;
+
+      // nested arrays are copied with the top one, see ConstArrayValue
+      if (value != null)
+        return value.copy();
+      else
+        return null;
+    }
+
     SoftReference<CopyRoot> copyRef = null;
 
     if (_freeList != null)
@@ -91,6 +137,41 @@ public class UnserializeCacheEntry
       return null;
   }
 
+  /**
+   * Returns an immutable copy of the value, or null if it contains
+   * objects or other values which can't be shared.
+   */
+  private static Value freeze(Value value, int depth)
+  {
+    value = value.toValue();
+
+    if (value instanceof ArrayValue) {
+      if (MAX_FREEZE_DEPTH <= depth)
+        return null;
+
+      ArrayValueImpl array = new ArrayValueImpl();
+
+      for (Map.Entry<Value,Value> entry : ((ArrayValue) value).entrySet()) {
+        Value item = freeze(entry.getValue(), depth + 1);
+
+        if (item == null)
+          return null;
+
+        array.append(entry.getKey(), item);
+      }
+
+      return new ConstArrayValue(array);
+    }
+    else if (value instanceof StringValue
+             || value instanceof LongValue
+             || value instanceof DoubleValue
+             || value instanceof BooleanValue
+             || value instanceof NullValue)
+      return value;
+    else
+      return null;
+  }
+
   public void clear()
   {
     _valueRef = null;
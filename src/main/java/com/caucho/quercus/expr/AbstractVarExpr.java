@@ -39,6 +39,8 @@ import com.caucho.quercus.statement.Statement;
  * Represents an expression that is assignable
  */
 abstract public class AbstractVarExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   public AbstractVarExpr(Location location)
   {
     super(location);
@@ -29,15 +29,20 @@
 
 package com.caucho.quercus.expr;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a logical and expression.
  */
 public class AndExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public AndExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -83,6 +88,39 @@ public class AndExpr extends BinaryExpr {
     return _left.evalBoolean(env) && _right.evalBoolean(env);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBoolean(gen);
+    gen.generateToBooleanValue();
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+
+    Label shortLabel = code.createLabel();
+    Label endLabel = code.createLabel();
+
+    _left.generateBoolean(gen);
+    code.branch(CodeWriter.IFEQ, shortLabel);
+
+    _right.generateBoolean(gen);
+    code.gotoLabel(endLabel);
+
+    code.mark(shortLabel);
+    code.pushInt(0);
+
+    code.mark(endLabel);
+  }
+
   public String toString()
   {
     return "(" + _left + " && " + _right + ")";
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  */
 public class AppendExpr extends Expr
 {
+  private static final long serialVersionUID = 1L;
+
   private final Expr _value;
   private AppendExpr _next;
 
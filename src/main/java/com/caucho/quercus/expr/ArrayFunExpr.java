@@ -41,6 +41,8 @@ import java.util.ArrayList;
  * Represents the array function
  */
 public class ArrayFunExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr []_keys;
   protected final Expr []_values;
 
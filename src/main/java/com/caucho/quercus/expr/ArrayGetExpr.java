@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP array reference expression.
  */
 public class ArrayGetExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
   protected final Expr _index;
 
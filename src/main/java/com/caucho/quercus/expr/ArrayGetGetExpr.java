@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP array reference expression.
  */
 public class ArrayGetGetExpr extends ArrayGetExpr {
+  private static final long serialVersionUID = 1L;
+
   public ArrayGetGetExpr(Location location, Expr expr, Expr index)
   {
     super(location, expr, index);
@@ -39,6 +39,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP array is set expression.
  */
 public class ArrayIsSetExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
   protected final Expr _index;
 
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.expr;
+
+import com.caucho.quercus.Location;
+import com.caucho.quercus.env.ConstArrayValue;
+import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.Value;
+
+/**
+ * Represents an array() whose keys and values are all literals.  The
+ * array is built once at parse time and each evaluation returns a
+ * copy-on-write copy.
+ */
+public class ArrayLiteralExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
+  private final ConstArrayValue _value;
+
+  public ArrayLiteralExpr(Location location, ConstArrayValue value)
+  {
+    super(location);
+
+    _value = value;
+  }
+
+  public ArrayLiteralExpr(ConstArrayValue value)
+  {
+    this(Location.UNKNOWN, value);
+  }
+
+  /**
+   * Returns true if the expression evaluates to an array.
+   */
+  public boolean isArray()
+  {
+    return true;
+  }
+
+  /**
+   * Returns true for a constant array.
+   */
+  public boolean isConstant()
+  {
+    return true;
+  }
+
+  /**
+   * Evaluates the expression as a constant.
+   *
+   * @return the shared array, which must not be modified.
+   */
+  public Value evalConstant()
+  {
+    return _value;
+  }
+
+  /**
+   * Evaluates the expression.
+   *
+   * @param env the calling environment.
+   *
+   * @return the expression value.
+   */
+  public Value eval(Env env)
+  {
+    return _value.copy();
+  }
+
+  public String toString()
+  {
+    return "array()";
+  }
+}
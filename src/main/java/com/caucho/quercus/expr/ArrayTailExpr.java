@@ -39,6 +39,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP array[] reference expression.
  */
 public class ArrayTailExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
 
   public ArrayTailExpr(Location location, Expr expr)
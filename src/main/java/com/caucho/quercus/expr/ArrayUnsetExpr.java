@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP array unset expression.
  */
 public class ArrayUnsetExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
   protected final Expr _index;
 
@@ -29,14 +29,18 @@
 
 package com.caucho.quercus.expr;
 
+import com.caucho.bytecode.CodeWriter;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP assignment expression.
  */
 public class AssignExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final AbstractVarExpr _var;
   protected final Expr _value;
 
@@ -119,6 +123,50 @@ public class AssignExpr extends Expr {
     return value;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+
+    _value.generateCopy(gen);
+
+    // stack: value, var, env, value
+    code.dup();
+    gen.loadConstant(_var, "com/caucho/quercus/expr/AbstractVarExpr");
+    code.swap();
+    gen.loadEnv();
+    code.swap();
+
+    code.invokeVirtual("com/caucho/quercus/expr/AbstractVarExpr",
+                       "evalAssign",
+                       "(" + PhpGenerator.L_ENV + PhpGenerator.L_VALUE + ")V");
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "copy",
+                                "()" + PhpGenerator.L_VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    generate(gen);
+    gen.generateToBoolean();
+  }
+
   public String toString()
   {
     return _var + "=" + _value;
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP assignment expression.
  */
 public class AssignRefExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final AbstractVarExpr _var;
   protected final Expr _value;
 
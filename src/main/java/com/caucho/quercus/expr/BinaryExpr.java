@@ -35,6 +35,8 @@ import com.caucho.quercus.Location;
  * Common analysis for a PHP binary expression.
  */
 abstract public class BinaryExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _left;
   protected final Expr _right;
 
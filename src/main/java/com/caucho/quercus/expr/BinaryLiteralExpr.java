@@ -37,6 +37,8 @@ import com.caucho.quercus.env.BinaryBuilderValue;
  */
 public class BinaryLiteralExpr extends StringLiteralExpr
 {
+  private static final long serialVersionUID = 1L;
+
   public BinaryLiteralExpr(Location location, byte[] bytes)
   {
     super(location, new BinaryBuilderValue(bytes));
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP bitwise and expression.
  */
 public class BitAndExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public BitAndExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
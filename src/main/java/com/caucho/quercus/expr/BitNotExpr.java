@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP bitwise not expression.
  */
 public class BitNotExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public BitNotExpr(Location location, Expr expr)
   {
     super(location, expr);
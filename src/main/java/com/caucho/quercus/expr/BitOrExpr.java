@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP bitwise or expression.
  */
 public class BitOrExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public BitOrExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP bitwise xor expression.
  */
 public class BitXorExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public BitXorExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
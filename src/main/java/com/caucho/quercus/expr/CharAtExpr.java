@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents the character at expression
  */
 public class CharAtExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _objExpr;
   protected final Expr _indexExpr;
 
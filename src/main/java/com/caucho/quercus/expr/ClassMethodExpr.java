@@ -42,6 +42,8 @@ import java.util.ArrayList;
  * Represents a PHP parent:: method call expression.
  */
 public class ClassMethodExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(ClassMethodExpr.class);
 
   protected final String _className;
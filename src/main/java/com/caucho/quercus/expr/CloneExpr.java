@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP clone
  */
 public class CloneExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public CloneExpr(Location location, Expr expr)
   {
     super(location, expr);
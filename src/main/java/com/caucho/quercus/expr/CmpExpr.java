@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP comparison expression.
  */
 public final class CmpExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private final Expr _left;
   private final Expr _right;
 
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a comma expression.
  */
 public class CommaExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public CommaExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -29,14 +29,19 @@
 
 package com.caucho.quercus.expr;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a conditional expression.
  */
 public class ConditionalExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _test;
   protected final Expr _trueExpr;
   protected final Expr _falseExpr;
@@ -103,6 +108,62 @@ public class ConditionalExpr extends Expr {
       return _falseExpr.evalCopy(env);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBranch(gen, 0);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generateBranch(gen, 1);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    generateBranch(gen, 2);
+  }
+
+  private void generateBranch(PhpGenerator gen, int mode)
+  {
+    CodeWriter code = gen.getCode();
+
+    Label falseLabel = code.createLabel();
+    Label endLabel = code.createLabel();
+
+    _test.generateBoolean(gen);
+    code.branch(CodeWriter.IFEQ, falseLabel);
+
+    generateValue(gen, _trueExpr, mode);
+    code.gotoLabel(endLabel);
+
+    code.mark(falseLabel);
+    generateValue(gen, _falseExpr, mode);
+
+    code.mark(endLabel);
+  }
+
+  private static void generateValue(PhpGenerator gen, Expr expr, int mode)
+  {
+    if (mode == 0)
+      expr.generate(gen);
+    else if (mode == 1)
+      expr.generateCopy(gen);
+    else
+      expr.generateBoolean(gen);
+  }
+
   public String toString()
   {
     return "(" + _test + " ? " + _trueExpr + " : " + _falseExpr + ")";
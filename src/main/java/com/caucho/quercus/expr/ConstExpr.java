@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP constant expression.
  */
 public class ConstExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final String _var;
 
   public ConstExpr(Location location, String var)
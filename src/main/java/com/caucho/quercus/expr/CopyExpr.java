@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP variable assignment
  */
 public class CopyExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public CopyExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP default expression.
  */
 public class DefaultExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   public DefaultExpr(Location location)
   {
     super(location);
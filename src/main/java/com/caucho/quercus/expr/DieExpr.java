@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents the die expression
  */
 public class DieExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected Expr _value;
 
   public DieExpr(Location location, Expr value)
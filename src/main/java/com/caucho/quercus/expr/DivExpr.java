@@ -32,11 +32,14 @@ package com.caucho.quercus.expr;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP division expression.
  */
 public class DivExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public DivExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -70,6 +73,39 @@ public class DivExpr extends BinaryExpr {
     return lValue.div(rValue);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    _left.generate(gen);
+    _right.generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "div",
+                                "(" + PhpGenerator.L_VALUE + ")"
+                                + PhpGenerator.L_VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    generate(gen);
+    gen.generateToBoolean();
+  }
+
   public String toString()
   {
     return "(" + _left + " / " + _right + ")";
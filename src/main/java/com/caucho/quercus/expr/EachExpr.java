@@ -41,6 +41,8 @@ import java.io.IOException;
  * Represents a PHP each expression.
  */
 public class EachExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public EachExpr(Location location, Expr expr)
     throws IOException
   {
@@ -33,12 +33,15 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP equality testing expression.
  */
 public class EqExpr extends BinaryExpr
 {
+  private static final long serialVersionUID = 1L;
+
   public EqExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -73,6 +76,29 @@ public class EqExpr extends BinaryExpr
     return lValue.eq(rValue);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBoolean(gen);
+    gen.generateToBooleanValue();
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    _left.generate(gen);
+    _right.generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "eq",
+                                "(" + PhpGenerator.L_VALUE + ")Z");
+  }
+
   public String toString()
   {
     return "(" + _left + " == " + _right + ")";
@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP equality testing expression.
  */
 public class EqualsExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public EqualsExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -72,6 +75,29 @@ public class EqualsExpr extends BinaryExpr {
     return lValue.eql(rValue);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBoolean(gen);
+    gen.generateToBooleanValue();
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    _left.generate(gen);
+    _right.generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "eql",
+                                "(" + PhpGenerator.L_VALUE + ")Z");
+  }
+
   public String toString()
   {
     return "(" + _left + " === " + _right + ")";
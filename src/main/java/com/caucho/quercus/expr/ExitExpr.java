@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents the exit expression
  */
 public class ExitExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _value;
 
   public ExitExpr(Location location, Expr value)
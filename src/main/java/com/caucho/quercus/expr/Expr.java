@@ -31,6 +31,7 @@ package com.caucho.quercus.expr;
 
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.*;
+import com.caucho.quercus.gen.PhpGenerator;
 import com.caucho.quercus.parser.QuercusParser;
 import com.caucho.quercus.statement.Statement;
 import com.caucho.util.L10N;
@@ -40,7 +41,9 @@ import java.io.IOException;
 /**
  * Represents a PHP expression.
  */
-abstract public class Expr {
+abstract public class Expr implements java.io.Serializable {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(Expr.class);
 
   public static final int COMPILE_ARG_MAX = 5;
@@ -523,6 +526,44 @@ abstract public class Expr {
     return eval(env).toDouble();
   }
 
+  //
+  // bytecode generation
+  //
+
+  /**
+   * Generates code leaving the <code>eval</code> value on the stack.
+   * The default calls the interpreted <code>eval</code>.
+   */
+  public void generate(PhpGenerator gen)
+  {
+    gen.generateEval(this);
+  }
+
+  /**
+   * Generates code leaving the <code>evalCopy</code> value on the stack.
+   */
+  public void generateCopy(PhpGenerator gen)
+  {
+    gen.generateEvalCopy(this);
+  }
+
+  /**
+   * Generates code leaving the <code>evalRef</code> value on the stack.
+   */
+  public void generateRef(PhpGenerator gen)
+  {
+    gen.generateEvalRef(this);
+  }
+
+  /**
+   * Generates code leaving the <code>evalBoolean</code> result on the
+   * stack as an int.
+   */
+  public void generateBoolean(PhpGenerator gen)
+  {
+    gen.generateEvalBoolean(this);
+  }
+
   /**
    * Prints to the output as an echo.
    */
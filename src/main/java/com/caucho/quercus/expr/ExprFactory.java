@@ -49,6 +49,9 @@ public class ExprFactory {
   private static final Logger log
     = Logger.getLogger(ExprFactory.class.getName());
 
+  private Quercus _quercus;
+  private boolean _isOptimize;
+
   public ExprFactory()
   {
   }
@@ -66,6 +69,30 @@ public class ExprFactory {
     }
   }
 
+  /**
+   * Sets the engine whose module constants may be folded.
+   */
+  public void setQuercus(Quercus quercus)
+  {
+    _quercus = quercus;
+  }
+
+  /**
+   * Enables folding of literal expressions and dead branches while parsing.
+   */
+  public void setOptimize(boolean isOptimize)
+  {
+    _isOptimize = isOptimize;
+  }
+
+  /**
+   * Returns true if literal expressions are folded while parsing.
+   */
+  public boolean isOptimize()
+  {
+    return _isOptimize;
+  }
+
   /**
    * Creates a null literal expression.
    */
@@ -155,8 +182,20 @@ public class ExprFactory {
   /**
    * Creates a const expression.
    */
-  public ConstExpr createConst(String name)
+  public Expr createConst(String name)
   {
+    if (_isOptimize && _quercus != null) {
+      // module constants are copied into each Env and can't be redefined
+      Value value = _quercus.getConstant(_quercus.getConstantId(name));
+
+      if (value != null) {
+        Expr literal = createConstant(value);
+
+        if (literal != null)
+          return literal;
+      }
+    }
+
     return new ConstExpr(name);
   }
 
@@ -305,7 +344,7 @@ public class ExprFactory {
    */
   public Expr createMinus(Expr expr)
   {
-    return new MinusExpr(expr);
+    return fold(new MinusExpr(expr), expr, null);
   }
 
   /**
@@ -313,7 +352,7 @@ public class ExprFactory {
    */
   public Expr createPlus(Expr expr)
   {
-    return new PlusExpr(expr);
+    return fold(new PlusExpr(expr), expr, null);
   }
 
   /**
@@ -321,7 +360,7 @@ public class ExprFactory {
    */
   public Expr createNot(Expr expr)
   {
-    return new NotExpr(expr);
+    return fold(new NotExpr(expr), expr, null);
   }
 
   /**
@@ -329,7 +368,7 @@ public class ExprFactory {
    */
   public Expr createBitNot(Expr expr)
   {
-    return new BitNotExpr(expr);
+    return fold(new BitNotExpr(expr), expr, null);
   }
 
   /**
@@ -345,6 +384,14 @@ public class ExprFactory {
    */
   public Expr createCopy(Expr expr)
   {
+    // literals and array() already evaluate to a fresh or immutable value
+    if (_isOptimize
+        && (expr.isLiteral()
+            || expr instanceof CopyExpr
+            || expr instanceof ArrayFunExpr
+            || expr instanceof ArrayLiteralExpr))
+      return expr;
+
     return new CopyExpr(expr);
   }
 
@@ -361,7 +408,7 @@ public class ExprFactory {
    */
   public Expr createToBoolean(Expr expr)
   {
-    return new ToBooleanExpr(expr);
+    return fold(new ToBooleanExpr(expr), expr, null);
   }
 
   /**
@@ -369,7 +416,7 @@ public class ExprFactory {
    */
   public Expr createToLong(Expr expr)
   {
-    return new ToLongExpr(expr);
+    return fold(new ToLongExpr(expr), expr, null);
   }
 
   /**
@@ -377,7 +424,7 @@ public class ExprFactory {
    */
   public Expr createToDouble(Expr expr)
   {
-    return new ToDoubleExpr(expr);
+    return fold(new ToDoubleExpr(expr), expr, null);
   }
 
   /**
@@ -385,7 +432,7 @@ public class ExprFactory {
    */
   public Expr createToString(Expr expr)
   {
-    return new ToStringExpr(expr);
+    return fold(new ToStringExpr(expr), expr, null);
   }
 
   /**
@@ -393,7 +440,7 @@ public class ExprFactory {
    */
   public Expr createToUnicode(Expr expr)
   {
-    return new ToUnicodeExpr(expr);
+    return fold(new ToUnicodeExpr(expr), expr, null);
   }
 
   /**
@@ -401,7 +448,7 @@ public class ExprFactory {
    */
   public Expr createToBinary(Expr expr)
   {
-    return new ToBinaryExpr(expr);
+    return fold(new ToBinaryExpr(expr), expr, null);
   }
 
   /**
@@ -457,7 +504,7 @@ public class ExprFactory {
    */
   public Expr createAdd(Expr left, Expr right)
   {
-    return new AddExpr(left, right);
+    return fold(new AddExpr(left, right), left, right);
   }
 
   /**
@@ -465,7 +512,7 @@ public class ExprFactory {
    */
   public Expr createSub(Expr left, Expr right)
   {
-    return new SubExpr(left, right);
+    return fold(new SubExpr(left, right), left, right);
   }
 
   /**
@@ -473,7 +520,7 @@ public class ExprFactory {
    */
   public Expr createMul(Expr left, Expr right)
   {
-    return new MulExpr(left, right);
+    return fold(new MulExpr(left, right), left, right);
   }
 
   /**
@@ -481,7 +528,7 @@ public class ExprFactory {
    */
   public Expr createDiv(Expr left, Expr right)
   {
-    return new DivExpr(left, right);
+    return fold(new DivExpr(left, right), left, right);
   }
 
   /**
@@ -489,7 +536,7 @@ public class ExprFactory {
    */
   public Expr createMod(Expr left, Expr right)
   {
-    return new ModExpr(left, right);
+    return fold(new ModExpr(left, right), left, right);
   }
 
   /**
@@ -497,7 +544,7 @@ public class ExprFactory {
    */
   public Expr createLeftShift(Expr left, Expr right)
   {
-    return new LeftShiftExpr(left, right);
+    return fold(new LeftShiftExpr(left, right), left, right);
   }
 
   /**
@@ -505,7 +552,7 @@ public class ExprFactory {
    */
   public Expr createRightShift(Expr left, Expr right)
   {
-    return new RightShiftExpr(left, right);
+    return fold(new RightShiftExpr(left, right), left, right);
   }
 
   /**
@@ -513,7 +560,7 @@ public class ExprFactory {
    */
   public Expr createBitAnd(Expr left, Expr right)
   {
-    return new BitAndExpr(left, right);
+    return fold(new BitAndExpr(left, right), left, right);
   }
 
   /**
@@ -521,7 +568,7 @@ public class ExprFactory {
    */
   public Expr createBitOr(Expr left, Expr right)
   {
-    return new BitOrExpr(left, right);
+    return fold(new BitOrExpr(left, right), left, right);
   }
 
   /**
@@ -529,7 +576,7 @@ public class ExprFactory {
    */
   public Expr createBitXor(Expr left, Expr right)
   {
-    return new BitXorExpr(left, right);
+    return fold(new BitXorExpr(left, right), left, right);
   }
 
   /**
@@ -539,6 +586,11 @@ public class ExprFactory {
   {
     AppendExpr leftAppend;
 
+    if (_isOptimize) {
+      left = toStringLiteral(left);
+      right = toStringLiteral(right);
+    }
+
     // XXX: i18n binary vs unicode issues
     /*
     if (left instanceof ToStringExpr)
@@ -650,12 +702,27 @@ public class ExprFactory {
     return new AppendExpr(left, right);
   }
 
+  /**
+   * Converts an integer literal to a string literal so it can be combined
+   * with its neighbors in an append chain.
+   */
+  private Expr toStringLiteral(Expr expr)
+  {
+    if (! (expr instanceof LongLiteralExpr))
+      return expr;
+    else if (_quercus != null && _quercus.isUnicodeSemantics())
+      return expr;
+    else
+      return createString(new StringBuilderValue()
+                          .append(expr.evalConstant().toLong()));
+  }
+
   /**
    * Creates a lt expression.
    */
   public Expr createLt(Expr left, Expr right)
   {
-    return new LtExpr(left, right);
+    return fold(new LtExpr(left, right), left, right);
   }
 
   /**
@@ -663,7 +730,7 @@ public class ExprFactory {
    */
   public Expr createLeq(Expr left, Expr right)
   {
-    return new LeqExpr(left, right);
+    return fold(new LeqExpr(left, right), left, right);
   }
 
   /**
@@ -671,7 +738,7 @@ public class ExprFactory {
    */
   public Expr createGt(Expr left, Expr right)
   {
-    return new GtExpr(left, right);
+    return fold(new GtExpr(left, right), left, right);
   }
 
   /**
@@ -679,7 +746,7 @@ public class ExprFactory {
    */
   public Expr createGeq(Expr left, Expr right)
   {
-    return new GeqExpr(left, right);
+    return fold(new GeqExpr(left, right), left, right);
   }
 
   /**
@@ -687,7 +754,7 @@ public class ExprFactory {
    */
   public Expr createEq(Expr left, Expr right)
   {
-    return new EqExpr(left, right);
+    return fold(new EqExpr(left, right), left, right);
   }
 
   /**
@@ -695,7 +762,7 @@ public class ExprFactory {
    */
   public Expr createNeq(Expr left, Expr right)
   {
-    return new NeqExpr(left, right);
+    return fold(new NeqExpr(left, right), left, right);
   }
 
   /**
@@ -703,7 +770,7 @@ public class ExprFactory {
    */
   public Expr createEquals(Expr left, Expr right)
   {
-    return new EqualsExpr(left, right);
+    return fold(new EqualsExpr(left, right), left, right);
   }
 
   /**
@@ -735,7 +802,10 @@ public class ExprFactory {
    */
   public Expr createAnd(Expr left, Expr right)
   {
-    return new AndExpr(left, right);
+    if (_isOptimize && left.isLiteral() && ! left.evalConstant().toBoolean())
+      return createLiteral(BooleanValue.FALSE);
+
+    return fold(new AndExpr(left, right), left, right);
   }
 
   /**
@@ -743,7 +813,10 @@ public class ExprFactory {
    */
   public Expr createOr(Expr left, Expr right)
   {
-    return new OrExpr(left, right);
+    if (_isOptimize && left.isLiteral() && left.evalConstant().toBoolean())
+      return createLiteral(BooleanValue.TRUE);
+
+    return fold(new OrExpr(left, right), left, right);
   }
 
   /**
@@ -751,7 +824,7 @@ public class ExprFactory {
    */
   public Expr createXor(Expr left, Expr right)
   {
-    return new XorExpr(left, right);
+    return fold(new XorExpr(left, right), left, right);
   }
 
   /**
@@ -843,6 +916,9 @@ public class ExprFactory {
    */
   public Expr createConditional(Expr test, Expr left, Expr right)
   {
+    if (_isOptimize && test.isLiteral())
+      return test.evalConstant().toBoolean() ? left : right;
+
     return new ConditionalExpr(test, left, right);
   }
 
@@ -851,6 +927,13 @@ public class ExprFactory {
    */
   public Expr createArrayFun(ArrayList<Expr> keys, ArrayList<Expr> values)
   {
+    if (_isOptimize) {
+      Expr literal = createArrayLiteral(keys, values);
+
+      if (literal != null)
+        return literal;
+    }
+
     return new ArrayFunExpr(keys, values);
   }
 
@@ -1132,6 +1215,15 @@ public class ExprFactory {
                             Statement trueBlock,
                             Statement falseBlock)
   {
+    if (_isOptimize && test.isLiteral()) {
+      if (test.evalConstant().toBoolean())
+        return trueBlock;
+      else if (falseBlock != null)
+        return falseBlock;
+      else
+        return createNullStatement();
+    }
+
     return new IfStatement(loc, test, trueBlock, falseBlock);
   }
 
@@ -1185,6 +1277,9 @@ public class ExprFactory {
                                Statement block,
                                String label)
   {
+    if (_isOptimize && test.isLiteral() && ! test.evalConstant().toBoolean())
+      return createNullStatement();
+
     return new WhileStatement(loc, test, block, label);
   }
 
@@ -1360,5 +1455,76 @@ public class ExprFactory {
                                    name, parentName, ifaceList,
                                    index);
   }
-}
 
+  /**
+   * Returns the operator's value as a literal if all its operands are
+   * literals, otherwise the operator itself.
+   */
+  private Expr fold(Expr expr, Expr left, Expr right)
+  {
+    if (! _isOptimize
+        || ! left.isLiteral()
+        || right != null && ! right.isLiteral())
+      return expr;
+
+    try {
+      // operators on literal operands never use the Env
+      Expr literal = createConstant(expr.eval(null));
+
+      if (literal != null)
+        return literal;
+    } catch (RuntimeException e) {
+      log.log(Level.FINEST, e.toString(), e);
+    }
+
+    return expr;
+  }
+
+  /**
+   * Returns a literal expression for a scalar value, or null.
+   */
+  private Expr createConstant(Value value)
+  {
+    if (value instanceof LongValue)
+      return createLong(value.toLong());
+    else if (value.getClass() == StringBuilderValue.class)
+      return createString((StringValue) value);
+    else if (value instanceof NullValue)
+      return createNull();
+    else if (value instanceof StringValue
+             || value instanceof DoubleValue
+             || value instanceof BooleanValue)
+      return createLiteral(value);
+    else
+      return null;
+  }
+
+  /**
+   * Returns an array literal if every key and value of the array() is
+   * constant, or null.
+   */
+  private Expr createArrayLiteral(ArrayList<Expr> keys, ArrayList<Expr> values)
+  {
+    ArrayValueImpl array = new ArrayValueImpl();
+
+    for (int i = 0; i < values.size(); i++) {
+      Expr keyExpr = keys.get(i);
+      Expr valueExpr = values.get(i);
+
+      if (keyExpr != null && ! keyExpr.isLiteral())
+        return null;
+      else if (! valueExpr.isLiteral()
+               && ! (valueExpr instanceof ArrayLiteralExpr))
+        return null;
+
+      Value value = valueExpr.evalConstant();
+
+      if (keyExpr != null)
+        array.put(keyExpr.evalConstant(), value);
+      else
+        array.put(value);
+    }
+
+    return new ArrayLiteralExpr(new ConstArrayValue(array));
+  }
+}
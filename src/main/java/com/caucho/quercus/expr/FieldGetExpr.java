@@ -31,6 +31,8 @@ package com.caucho.quercus.expr;
 
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.FieldCache;
+import com.caucho.quercus.env.ObjectExtValue;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.env.StringValue;
 
@@ -38,9 +40,13 @@ import com.caucho.quercus.env.StringValue;
  * Represents a PHP field reference.
  */
 public class FieldGetExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _objExpr;
   protected final StringValue _name;
 
+  private transient FieldCache _fieldCache;
+
   public FieldGetExpr(Location location, Expr objExpr, StringValue name)
   {
     super(location);
@@ -68,7 +74,7 @@ public class FieldGetExpr extends AbstractVarExpr {
   {
     Value obj = _objExpr.eval(env);
 
-    return obj.getField(env, _name);
+    return getField(env, obj);
   }
 
   /**
@@ -123,7 +129,7 @@ public class FieldGetExpr extends AbstractVarExpr {
   {
     Value obj = _objExpr.eval(env);
 
-    return obj.getField(env, _name).copy();
+    return getField(env, obj).copy();
   }
 
   /**
@@ -138,7 +144,7 @@ public class FieldGetExpr extends AbstractVarExpr {
   {
     Value obj = _objExpr.evalObject(env);
 
-    obj.putField(env, _name, value);
+    putField(env, obj, value);
   }
   
   /**
@@ -150,10 +156,10 @@ public class FieldGetExpr extends AbstractVarExpr {
     // php/09kp
     
     Value obj = _objExpr.evalObject(env);
-    Value value = obj.getField(env, _name);
+    Value value = getField(env, obj);
     
     value = value.postincr(incr);
-    obj.putField(env, _name, value);
+    putField(env, obj, value);
     
     return value;
   }
@@ -167,10 +173,10 @@ public class FieldGetExpr extends AbstractVarExpr {
     // php/09kq
     
     Value obj = _objExpr.evalObject(env);
-    Value value = obj.getField(env, _name);
+    Value value = getField(env, obj);
     
     value = value.preincr(incr);
-    obj.putField(env, _name, value);
+    putField(env, obj, value);
     
     return value;
   }
@@ -221,6 +227,57 @@ public class FieldGetExpr extends AbstractVarExpr {
     obj.unsetField(_name);
   }
 
+  /**
+   * Returns the field, reading a declared field through the site cache.
+   */
+  private Value getField(Env env, Value obj)
+  {
+    if (obj instanceof ObjectExtValue) {
+      ObjectExtValue object = (ObjectExtValue) obj;
+      int slot = getFieldCache().findSlot(object);
+
+      if (slot >= 0) {
+        Value value = object.getSlotValue(slot);
+
+        if (value != null)
+          return value;
+      }
+    }
+
+    return obj.getField(env, _name);
+  }
+
+  /**
+   * Sets the field, writing a declared field through the site cache.
+   */
+  private void putField(Env env, Value obj, Value value)
+  {
+    if (obj instanceof ObjectExtValue) {
+      ObjectExtValue object = (ObjectExtValue) obj;
+      int slot = getFieldCache().findSlot(object);
+
+      if (slot >= 0 && object.putSlotValue(slot, value))
+        return;
+    }
+
+    obj.putField(env, _name, value);
+  }
+
+  /**
+   * Returns the inline cache for this access site.
+   */
+  private FieldCache getFieldCache()
+  {
+    FieldCache cache = _fieldCache;
+
+    if (cache == null) {
+      cache = new FieldCache(_name, false);
+      _fieldCache = cache;
+    }
+
+    return cache;
+  }
+
   @Override
   public String toString()
   {
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP field reference.
  */
 public class FieldVarGetExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _objExpr;
   protected final Expr _nameExpr;
 
@@ -43,11 +43,18 @@ import java.util.ArrayList;
  * Represents a PHP function expression.
  */
 public class FunctionExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(FunctionExpr.class);
   
   protected final String _name;
   protected final Expr []_args;
 
+  // function id + 1 in the Quercus function map, or 0 if not yet resolved.
+  // The id of a name never changes, so only the Env's slot is checked
+  // on each call.
+  private transient int _funIdCode;
+
   public FunctionExpr(Location location, String name, ArrayList<Expr> args)
   {
     // quercus/120o
@@ -158,7 +165,7 @@ public class FunctionExpr extends Expr {
    */
   private Value evalImpl(Env env, boolean isRef, boolean isCopy)
   {
-    AbstractFunction fun = env.findFunction(_name);
+    AbstractFunction fun = findFunction(env);
 
     if (fun == null) {
       env.error(getLocationLine(), L.l("'{0}' is an unknown function.", _name));
@@ -192,7 +199,7 @@ public class FunctionExpr extends Expr {
 
   public Value []evalArguments(Env env)
   {
-    AbstractFunction fun = env.findFunction(_name);
+    AbstractFunction fun = findFunction(env);
 
     if (fun == null) {
       return null;
@@ -201,6 +208,27 @@ public class FunctionExpr extends Expr {
     return fun.evalArguments(env, this, _args);
   }
 
+  /**
+   * Returns the function for the call site, resolving the name to its
+   * function id on the first call.
+   */
+  private AbstractFunction findFunction(Env env)
+  {
+    int idCode = _funIdCode;
+
+    if (idCode == 0) {
+      int id = env.getQuercus().findFunctionId(_name);
+
+      if (id < 0)
+        return env.findFunction(_name);
+
+      idCode = id + 1;
+      _funIdCode = idCode;
+    }
+
+    return env.findFunction(idCode - 1);
+  }
+
   public String toString()
   {
     return _name + "()";
@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP comparison expression.
  */
 public class GeqExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public GeqExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -75,6 +78,29 @@ public class GeqExpr extends BinaryExpr {
     return lValue.geq(rValue);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBoolean(gen);
+    gen.generateToBooleanValue();
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    _left.generate(gen);
+    _right.generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "geq",
+                                "(" + PhpGenerator.L_VALUE + ")Z");
+  }
+
   public String toString()
   {
     return "(" + _left + " >= " + _right + ")";
@@ -39,6 +39,8 @@ import com.caucho.quercus.env.Value;
  */
 public class ImportExpr extends Expr
 {
+  private static final long serialVersionUID = 1L;
+
   protected final String _name;
   protected final boolean _isWildcard;
   
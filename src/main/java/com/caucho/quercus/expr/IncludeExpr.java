@@ -34,13 +34,20 @@ import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.NullValue;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.env.StringValue;
+import com.caucho.quercus.program.ProgramInputStream;
 import com.caucho.vfs.Path;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 /**
  * Represents a PHP include statement
  */
 public class IncludeExpr extends UnaryExpr {
-  protected Path _dir;
+  private static final long serialVersionUID = 1L;
+
+  // restored from the ProgramInputStream's source path
+  protected transient Path _dir;
   protected boolean _isRequire;
   
   public IncludeExpr(Location location, Path sourceFile, Expr expr)
@@ -90,6 +97,18 @@ public class IncludeExpr extends UnaryExpr {
     }
   }
   
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    if (in instanceof ProgramInputStream) {
+      Path sourceFile = ((ProgramInputStream) in).getSourcePath();
+
+      _dir = sourceFile.getParent();
+    }
+  }
+
   public String toString()
   {
     return _expr.toString();
@@ -34,13 +34,20 @@ import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.NullValue;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.env.StringValue;
+import com.caucho.quercus.program.ProgramInputStream;
 import com.caucho.vfs.Path;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 /**
  * Represents a PHP include statement
  */
 public class IncludeOnceExpr extends UnaryExpr {
-  protected Path _dir;
+  private static final long serialVersionUID = 1L;
+
+  // restored from the ProgramInputStream's source path
+  protected transient Path _dir;
   protected boolean _isRequire;
   
   public IncludeOnceExpr(Location location, Path sourceFile, Expr expr)
@@ -100,6 +107,19 @@ public class IncludeOnceExpr extends UnaryExpr {
     return _isRequire;
   }
   
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    if (in instanceof ProgramInputStream) {
+      Path sourceFile = ((ProgramInputStream) in).getSourcePath();
+
+      if (! sourceFile.getScheme().equals("string"))
+        _dir = sourceFile.getParent();
+    }
+  }
+
   public String toString()
   {
     return _expr.toString();
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP instanceof expression.
  */
 public class InstanceOfExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final String _right;
 
   public InstanceOfExpr(Location location, Expr left, String right)
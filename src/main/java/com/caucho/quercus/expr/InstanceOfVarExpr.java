@@ -39,6 +39,7 @@ import com.caucho.quercus.env.Value;
  * holding the string class name.
  */
 public class InstanceOfVarExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
 
   public InstanceOfVarExpr(Location location, Expr left, Expr right)
   {
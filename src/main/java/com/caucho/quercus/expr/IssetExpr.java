@@ -38,6 +38,8 @@ import com.caucho.quercus.env.BooleanValue;
  * Represents a PHP isset call
  */
 public class IssetExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public IssetExpr(Location location, Expr expr)
   {
     super(location, expr);
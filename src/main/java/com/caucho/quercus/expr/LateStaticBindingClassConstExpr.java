@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP parent::FOO constant call expression.
  */
 public class LateStaticBindingClassConstExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final String _name;
 
   public LateStaticBindingClassConstExpr(Location location, String name)
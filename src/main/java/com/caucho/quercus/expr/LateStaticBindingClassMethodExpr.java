@@ -44,6 +44,8 @@ import java.util.ArrayList;
  * XXX: better name?
  */
 public class LateStaticBindingClassMethodExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(LateStaticBindingClassMethodExpr.class);
 
   protected final String _name;
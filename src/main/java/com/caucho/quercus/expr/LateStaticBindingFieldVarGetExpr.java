@@ -40,6 +40,8 @@ import com.caucho.util.L10N;
  * Represents a PHP static field reference.
  */
 public class LateStaticBindingFieldVarGetExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L
     = new L10N(LateStaticBindingFieldVarGetExpr.class);
 
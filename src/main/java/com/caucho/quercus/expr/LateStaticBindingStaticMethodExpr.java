@@ -41,6 +41,8 @@ import java.util.ArrayList;
  * Represents a PHP static method expression.
  */
 public class LateStaticBindingStaticMethodExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L
     = new L10N(LateStaticBindingStaticMethodExpr.class);
   
@@ -51,7 +53,7 @@ public class LateStaticBindingStaticMethodExpr extends Expr {
 
   protected Expr []_fullArgs;
 
-  protected AbstractFunction _fun;
+  protected transient AbstractFunction _fun;
   protected boolean _isMethod;
 
   public LateStaticBindingStaticMethodExpr(Location location,
@@ -45,6 +45,8 @@ import java.util.ArrayList;
  * Represents a PHP static method expression.
  */
 public class LateStaticBindingStaticVarMethodExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L
     = new L10N(LateStaticBindingStaticMethodExpr.class);
   
@@ -53,7 +55,7 @@ public class LateStaticBindingStaticVarMethodExpr extends Expr {
 
   protected Expr []_fullArgs;
 
-  protected AbstractFunction _fun;
+  protected transient AbstractFunction _fun;
   protected boolean _isMethod;
 
   public LateStaticBindingStaticVarMethodExpr(Location location,
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP left shift expression.
  */
 public class LeftShiftExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public LeftShiftExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
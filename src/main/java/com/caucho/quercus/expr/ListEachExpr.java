@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP list() = each() assignment expression.
  */
 public class ListEachExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final AbstractVarExpr _keyVar;
   protected final AbstractVarExpr _valueVar;
   protected final Expr _value;
@@ -36,6 +36,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP list assignment expression.
  */
 public class ListExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final ListHeadExpr _listHead;
   protected final Expr _value;
 
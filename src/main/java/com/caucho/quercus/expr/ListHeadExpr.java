@@ -39,6 +39,8 @@ import java.util.ArrayList;
  * Represents a list assignment expression.
  */
 public class ListHeadExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr []_varList;
   protected final Value []_keyList;
 
@@ -34,11 +34,14 @@ import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.LongValue;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a literal expression.
  */
 public class LiteralExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private final Value _value;
 
   protected LiteralExpr(Location location, Value value)
@@ -137,6 +140,33 @@ public class LiteralExpr extends Expr {
     return _value;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    gen.loadConstant(_value, PhpGenerator.VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    gen.getCode().pushInt(_value.toBoolean() ? 1 : 0);
+  }
+
   public String toString()
   {
     return _value.toString();
@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.LongValue;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP long literal expression.
  */
 public class LongLiteralExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final long _value;
   protected final LongValue _objValue;
 
@@ -69,6 +72,16 @@ public class LongLiteralExpr extends Expr {
     return true;
   }
 
+  /**
+   * Evaluates the expression as a constant.
+   *
+   * @return the expression value.
+   */
+  public Value evalConstant()
+  {
+    return _objValue;
+  }
+
   /**
    * Evaluates the expression.
    *
@@ -81,6 +94,33 @@ public class LongLiteralExpr extends Expr {
     return _objValue;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    gen.loadConstant(_objValue, PhpGenerator.VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    gen.getCode().pushInt(_value != 0 ? 1 : 0);
+  }
+
   public String toString()
   {
     return String.valueOf(_value);
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP expression.
  */
 abstract public class LongValuedExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   public LongValuedExpr(Location location)
   {
     super(location);
@@ -31,14 +31,20 @@ package com.caucho.quercus.expr;
 
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.MethodCache;
 import com.caucho.quercus.env.MethodMap;
+import com.caucho.quercus.env.ObjectExtValue;
+import com.caucho.quercus.env.QuercusClass;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.function.AbstractFunction;
 import java.util.ArrayList;
 
 /**
  * Represents a PHP function expression.
  */
 public class MethodCallExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _objExpr;
   
   protected final String _methodName;
@@ -47,6 +53,8 @@ public class MethodCallExpr extends Expr {
   
   protected final Expr []_args;
 
+  private transient MethodCache _methodCache;
+
   public MethodCallExpr(Location location,
                         Expr objExpr,
                         String name,
@@ -97,6 +105,14 @@ public class MethodCallExpr extends Expr {
     try {
       env.checkTimeout();
 
+      if (obj instanceof ObjectExtValue) {
+        QuercusClass cl = ((ObjectExtValue) obj).getQuercusClass();
+        AbstractFunction fun = getMethodCache().find(cl);
+
+        if (fun != null)
+          return cl.callMethod(env, obj, fun, args);
+      }
+
       return obj.callMethod(env, _hash, _name, _name.length, args);
     } finally {
       env.popCall();
@@ -126,12 +142,35 @@ public class MethodCallExpr extends Expr {
     try {
       env.checkTimeout();
 
+      if (obj instanceof ObjectExtValue) {
+        QuercusClass cl = ((ObjectExtValue) obj).getQuercusClass();
+        AbstractFunction fun = getMethodCache().find(cl);
+
+        if (fun != null)
+          return cl.callMethodRef(env, obj, fun, args);
+      }
+
       return obj.callMethodRef(env, _hash, _name, _name.length, args);
     } finally {
       env.popCall();
     }
   }
   
+  /**
+   * Returns the inline cache for this call site.
+   */
+  private MethodCache getMethodCache()
+  {
+    MethodCache cache = _methodCache;
+
+    if (cache == null) {
+      cache = new MethodCache(_hash, _name);
+      _methodCache = cache;
+    }
+
+    return cache;
+  }
+  
   public String toString()
   {
     return _objExpr + "->" + _methodName + "()";
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP unary minus.
  */
 public class MinusExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public MinusExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -32,11 +32,14 @@ package com.caucho.quercus.expr;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP multiplication expression.
  */
 public class MulExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public MulExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -86,6 +89,39 @@ public class MulExpr extends BinaryExpr {
     return lValue.mul(rValue);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    _left.generate(gen);
+    _right.generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "mul",
+                                "(" + PhpGenerator.L_VALUE + ")"
+                                + PhpGenerator.L_VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    generate(gen);
+    gen.generateToBoolean();
+  }
+
   public String toString()
   {
     return "(" + _left + " * " + _right + ")";
@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP equality testing expression.
  */
 public class NeqExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public NeqExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
@@ -67,6 +70,32 @@ public class NeqExpr extends BinaryExpr {
     return ! lValue.eq(rValue);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBoolean(gen);
+    gen.generateToBooleanValue();
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    _left.generate(gen);
+    _right.generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "eq",
+                                "(" + PhpGenerator.L_VALUE + ")Z");
+
+    gen.getCode().pushInt(1);
+    gen.getCode().ixor();
+  }
+
   public String toString()
   {
     return "(" + _left + " != " + _right + ")";
@@ -40,6 +40,8 @@ import java.util.ArrayList;
  * Represents a PHP function expression of the form "new ClassName()".
  */
 public class NewExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final String _name;
   protected final Expr []_args;
 
@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BooleanValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP boolean negation
  */
 public class NotExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public NotExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -72,6 +75,28 @@ public class NotExpr extends UnaryExpr {
     return ! _expr.evalBoolean(env);
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    generateBoolean(gen);
+    gen.generateToBooleanValue();
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    _expr.generateBoolean(gen);
+
+    gen.getCode().pushInt(1);
+    gen.getCode().ixor();
+  }
+
   public String toString()
   {
     return "! " + _expr;
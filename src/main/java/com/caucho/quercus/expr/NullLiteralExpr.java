@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP null expression.
  */
 public class NullLiteralExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   public static final NullLiteralExpr NULL
     = new NullLiteralExpr(Location.UNKNOWN);
 
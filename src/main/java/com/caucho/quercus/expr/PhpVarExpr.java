@@ -35,6 +35,8 @@ import com.caucho.quercus.Location;
  * Represents a temp PHP variable expression.
  */
 public class PhpVarExpr extends VarExpr {
+  private static final long serialVersionUID = 1L;
+
   public PhpVarExpr(Location location, VarInfo var)
   {
     super(location, var);
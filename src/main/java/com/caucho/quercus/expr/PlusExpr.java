@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP unary plus.
  */
 public class PlusExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public PlusExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -32,11 +32,14 @@ package com.caucho.quercus.expr;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP post increment expression.
  */
 public class PostIncrementExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final int _incr;
 
   public PostIncrementExpr(Location location, Expr expr, int incr)
@@ -83,6 +86,24 @@ public class PostIncrementExpr extends UnaryExpr {
     return true;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    if (! (_expr instanceof VarExpr)) {
+      super.generate(gen);
+      return;
+    }
+
+    _expr.generateRef(gen);
+
+    gen.getCode().pushInt(_incr);
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "postincr",
+                                "(I)" + PhpGenerator.L_VALUE);
+  }
+
   public String toString()
   {
     if (_incr > 0)
@@ -32,11 +32,14 @@ package com.caucho.quercus.expr;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP pre increment expression.
  */
 public class PreIncrementExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final int _incr;
 
   public PreIncrementExpr(Location location, Expr expr, int incr)
@@ -84,6 +87,24 @@ public class PreIncrementExpr extends UnaryExpr {
     return true;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    if (! (_expr instanceof VarExpr)) {
+      super.generate(gen);
+      return;
+    }
+
+    _expr.generateRef(gen);
+
+    gen.getCode().pushInt(_incr);
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "preincr",
+                                "(I)" + PhpGenerator.L_VALUE);
+  }
+
   public String toString()
   {
     if (_incr > 0)
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents an expression generated by the create routines.
  */
 public class RawExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   @SuppressWarnings("unused")
   private String _code;
 
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP reference argument.
  */
 public class RefExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public RefExpr(Location location, Expr expr)
   {
     super(location, expr);
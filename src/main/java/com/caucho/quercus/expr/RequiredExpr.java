@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP required expression.
  */
 public class RequiredExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   public static final RequiredExpr REQUIRED
     = new RequiredExpr(Location.UNKNOWN);
 
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP right shift expression.
  */
 public class RightShiftExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public RightShiftExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
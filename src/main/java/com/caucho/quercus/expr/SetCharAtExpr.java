@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Dummy for code generation
  */
 public class SetCharAtExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private final Expr _objExpr;
   private final Expr _indexExpr;
   private final Expr _valueExpr;
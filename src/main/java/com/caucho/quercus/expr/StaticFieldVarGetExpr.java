@@ -38,6 +38,8 @@ import com.caucho.util.L10N;
  * Represents a PHP static field reference.
  */
 public class StaticFieldVarGetExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(StaticFieldVarGetExpr.class);
 
   protected final String _className;
@@ -41,6 +41,8 @@ import java.util.ArrayList;
  * Represents a PHP static method expression.
  */
 public class StaticMethodExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(StaticMethodExpr.class);
   
   protected final String _className;
@@ -51,7 +53,9 @@ public class StaticMethodExpr extends Expr {
 
   protected Expr []_fullArgs;
 
-  protected AbstractFunction _fun;
+  protected transient AbstractFunction _fun;
+
+  private transient MethodCache _methodCache;
   protected boolean _isMethod;
 
   public StaticMethodExpr(Location location, String className,
@@ -148,6 +152,11 @@ public class StaticMethodExpr extends Expr {
     try {
       env.checkTimeout();
 
+      AbstractFunction fun = getMethodCache().find(cl);
+
+      if (fun != null)
+        return cl.callMethod(env, thisValue, fun, args);
+
       return cl.callMethod(env, thisValue, _hash, _name, _name.length, args);
     } finally {
       env.popCall();
@@ -181,12 +190,32 @@ public class StaticMethodExpr extends Expr {
     try {
       env.checkTimeout();
 
+      AbstractFunction fun = getMethodCache().find(cl);
+
+      if (fun != null)
+        return cl.callMethodRef(env, thisValue, fun, _args);
+
       return cl.callMethodRef(env, thisValue, _hash, _name, _name.length, _args);
     } finally {
       //env.setCallingClass(oldClass);
     }
   }
   
+  /**
+   * Returns the inline cache for this call site.
+   */
+  private MethodCache getMethodCache()
+  {
+    MethodCache cache = _methodCache;
+
+    if (cache == null) {
+      cache = new MethodCache(_hash, _name);
+      _methodCache = cache;
+    }
+
+    return cache;
+  }
+  
   public String toString()
   {
     return _methodName + "()";
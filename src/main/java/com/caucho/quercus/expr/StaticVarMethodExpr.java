@@ -44,6 +44,8 @@ import java.util.ArrayList;
  * Represents a PHP static method expression.
  */
 public class StaticVarMethodExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(StaticMethodExpr.class);
   
   protected final String _className;
@@ -52,7 +54,7 @@ public class StaticVarMethodExpr extends Expr {
 
   protected Expr []_fullArgs;
 
-  protected AbstractFunction _fun;
+  protected transient AbstractFunction _fun;
   protected boolean _isMethod;
 
   public StaticVarMethodExpr(Location location,
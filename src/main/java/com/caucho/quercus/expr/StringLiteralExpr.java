@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.StringValue;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a PHP string literal expression.
  */
 public class StringLiteralExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final StringValue _value;
 
   public StringLiteralExpr(Location location, StringValue value)
@@ -102,6 +105,33 @@ public class StringLiteralExpr extends Expr {
     return _value;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    gen.loadConstant(_value, PhpGenerator.VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    gen.getCode().pushInt(_value.toBoolean() ? 1 : 0);
+  }
+
   public String toString()
   {
     return "\"" + _value + "\"";
@@ -40,6 +40,8 @@ import java.io.IOException;
  * Represents a PHP error suppression
  */
 public class SuppressErrorExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public SuppressErrorExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -37,6 +37,8 @@ import com.caucho.quercus.program.InterpretedClassDef;
  * Represents the 'this' expression.
  */
 public class ThisExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final InterpretedClassDef _quercusClass;
   
   public ThisExpr(Location location, InterpretedClassDef quercusClass)
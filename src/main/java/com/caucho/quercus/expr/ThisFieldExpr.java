@@ -31,6 +31,8 @@ package com.caucho.quercus.expr;
 
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.FieldCache;
+import com.caucho.quercus.env.ObjectExtValue;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.env.StringValue;
 import com.caucho.quercus.program.InterpretedClassDef;
@@ -39,10 +41,14 @@ import com.caucho.quercus.program.InterpretedClassDef;
  * Represents a PHP field reference.
  */
 public class ThisFieldExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final InterpretedClassDef _quercusClass;
   
   protected final StringValue _name;
 
+  private transient FieldCache _fieldCache;
+
   public ThisFieldExpr(Location location,
                        InterpretedClassDef quercusClass,
                        StringValue name)
@@ -81,7 +87,7 @@ public class ThisFieldExpr extends AbstractVarExpr {
     if (obj.isNull())
       return cannotUseThisError(env);
     
-    return obj.getThisField(env, _name);
+    return getThisField(env, obj);
   }
   
   /**
@@ -98,7 +104,7 @@ public class ThisFieldExpr extends AbstractVarExpr {
     if (obj.isNull())
       return cannotUseThisError(env);
     
-    return obj.getThisField(env, _name).copy();
+    return getThisField(env, obj).copy();
   }
 
   /**
@@ -150,7 +156,7 @@ public class ThisFieldExpr extends AbstractVarExpr {
     if (obj.isNull())
       cannotUseThisError(env);
     
-    obj.putThisField(env, _name, value);
+    putThisField(env, obj, value);
   }
 
   /**
@@ -203,6 +209,57 @@ public class ThisFieldExpr extends AbstractVarExpr {
     
     obj.unsetThisField(_name);
   }
+
+  /**
+   * Returns the field, reading a declared field through the site cache.
+   */
+  private Value getThisField(Env env, Value obj)
+  {
+    if (obj instanceof ObjectExtValue) {
+      ObjectExtValue object = (ObjectExtValue) obj;
+      int slot = getFieldCache().findSlot(object);
+
+      if (slot >= 0) {
+        Value value = object.getSlotValue(slot);
+
+        if (value != null)
+          return value;
+      }
+    }
+
+    return obj.getThisField(env, _name);
+  }
+
+  /**
+   * Sets the field, writing a declared field through the site cache.
+   */
+  private void putThisField(Env env, Value obj, Value value)
+  {
+    if (obj instanceof ObjectExtValue) {
+      ObjectExtValue object = (ObjectExtValue) obj;
+      int slot = getFieldCache().findSlot(object);
+
+      if (slot >= 0 && object.putSlotValue(slot, value))
+        return;
+    }
+
+    obj.putThisField(env, _name, value);
+  }
+
+  /**
+   * Returns the inline cache for this access site.
+   */
+  private FieldCache getFieldCache()
+  {
+    FieldCache cache = _fieldCache;
+
+    if (cache == null) {
+      cache = new FieldCache(_name, true);
+      _fieldCache = cache;
+    }
+
+    return cache;
+  }
   
   public String toString()
   {
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP field reference.
  */
 public class ThisFieldVarGetExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _nameExpr;
 
   public ThisFieldVarGetExpr(Location location, Expr nameExpr)
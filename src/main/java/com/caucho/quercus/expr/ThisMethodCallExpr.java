@@ -36,6 +36,8 @@ import java.util.ArrayList;
  * Represents a PHP method call expression from $this.
  */
 public class ThisMethodCallExpr extends MethodCallExpr {
+  private static final long serialVersionUID = 1L;
+
   public ThisMethodCallExpr(Location location, Expr objExpr, String name, ArrayList<Expr> args)
   {
     super(location, objExpr, name, args);
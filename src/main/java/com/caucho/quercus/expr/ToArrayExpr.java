@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Converts to an array
  */
 public class ToArrayExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToArrayExpr(Location location, Expr expr)
   {
     super(location, expr);
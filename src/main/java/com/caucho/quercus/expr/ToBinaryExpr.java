@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Converts to an string
  */
 public class ToBinaryExpr extends ToStringExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToBinaryExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Converts to a boolean
  */
 public class ToBooleanExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToBooleanExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Converts to a double
  */
 public class ToDoubleExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToDoubleExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Converts to a long
  */
 public class ToLongExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToLongExpr(Location location, Expr expr)
   {
     super(location, expr);
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Converts to an object
  */
 public class ToObjectExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToObjectExpr(Location location, Expr expr)
   {
     super(location, expr);
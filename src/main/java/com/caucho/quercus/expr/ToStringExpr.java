@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Converts to an string
  */
 public class ToStringExpr extends UnaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToStringExpr(Location location, Expr expr)
   {
     super(location, expr);
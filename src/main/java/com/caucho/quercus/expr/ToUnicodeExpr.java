@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Converts to an string
  */
 public class ToUnicodeExpr extends ToStringExpr {
+  private static final long serialVersionUID = 1L;
+
   public ToUnicodeExpr(Location location, Expr expr)
   {
     super(location, expr);
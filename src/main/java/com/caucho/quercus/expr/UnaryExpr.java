@@ -35,6 +35,8 @@ import com.caucho.quercus.Location;
  * Represents a PHP boolean negation
  */
 abstract public class UnaryExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
 
   protected UnaryExpr(Location location, Expr expr)
@@ -39,6 +39,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP string literal expression.
  */
 public class UnicodeLiteralExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final StringValue _value;
 
   public UnicodeLiteralExpr(Location location, String value)
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents unsetting a PHP variable
  */
 public class UnsetExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   private final AbstractVarExpr _var;
 
   public UnsetExpr(Location location, AbstractVarExpr var)
@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents unsetting a PHP variable
  */
 public class UnsetVarExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final AbstractVarExpr _var;
 
   public UnsetVarExpr(Location location, AbstractVarExpr var)
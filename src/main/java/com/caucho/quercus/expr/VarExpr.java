@@ -29,11 +29,16 @@
 
 package com.caucho.quercus.expr;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.ArrayValueImpl;
 import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.EnvVar;
 import com.caucho.quercus.env.NullValue;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.env.Var;
+import com.caucho.quercus.gen.PhpGenerator;
 import com.caucho.quercus.parser.QuercusParser;
 
 /**
@@ -42,8 +47,12 @@ import com.caucho.quercus.parser.QuercusParser;
 public class VarExpr
   extends AbstractVarExpr
 {
+  private static final long serialVersionUID = 1L;
+
   private static final NullValue NULL = NullValue.create();
 
+  private static final String ENV_VAR = "com/caucho/quercus/env/EnvVar";
+
   private final VarInfo _var;
   protected final String _name;
 
@@ -135,7 +144,7 @@ public class VarExpr
   {
     Value value;
 
-    value = env.getValue(_name);
+    value = env.getEnvVar(_var).get();
 
     if (value != null)
       return value;
@@ -188,7 +197,7 @@ public class VarExpr
       }
     */
     //} else {
-      value = env.getVar(_name);
+      value = env.getEnvVar(_var).getRef();
 
       if (value == null) {
         value = new ArrayValueImpl();
@@ -225,12 +234,14 @@ public class VarExpr
       }
     } else {
     */
-      value = env.getValue(_name);
+      EnvVar envVar = env.getEnvVar(_var);
+
+      value = envVar.get();
 
       if (value == null || value.isString() || value.isNull()) {
         value = env.createObject();
 
-        env.setValue(_name, value);
+        envVar.set(value);
       }
     //}
 
@@ -248,7 +259,7 @@ public class VarExpr
     //if (getVarInfo().isGlobal())
       //return env.getGlobalVar(_name);
     //else
-      return env.getVar(_name);
+      return env.getEnvVar(_var).getRef();
   }
 
   /**
@@ -266,7 +277,7 @@ public class VarExpr
     //if (getVarInfo().isGlobal())
       //return env.getGlobalVar(_name);
     //else
-      return env.getVar(_name);
+      return env.getEnvVar(_var).getRef();
   }
 
   /**
@@ -282,7 +293,12 @@ public class VarExpr
       env.setGlobalValue(_name, value);
     else
     */
-    env.setValue(_name, value);
+    EnvVar envVar = env.getEnvVar(_var);
+
+    if (value instanceof Var)
+      envVar.setRef((Var) value);
+    else
+      envVar.set(value);
   }
 
   /**
@@ -318,6 +334,69 @@ public class VarExpr
     return _var == var._var;
   }
 
+  /**
+   * Generates code for the expression.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+    Label endLabel = code.createLabel();
+
+    generateEnvVar(gen);
+    code.invokeVirtual(ENV_VAR, "get", "()" + PhpGenerator.L_VALUE);
+
+    code.dup();
+    code.branch(CodeWriter.IFNONNULL, endLabel);
+    code.pop();
+    code.getStatic("com/caucho/quercus/env/NullValue", "NULL",
+                   "Lcom/caucho/quercus/env/NullValue;");
+
+    code.mark(endLabel);
+  }
+
+  /**
+   * Generates code for the expression as a copy.
+   */
+  @Override
+  public void generateCopy(PhpGenerator gen)
+  {
+    generate(gen);
+
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "copy",
+                                "()" + PhpGenerator.L_VALUE);
+  }
+
+  /**
+   * Generates code for the expression as a reference.
+   */
+  @Override
+  public void generateRef(PhpGenerator gen)
+  {
+    generateEnvVar(gen);
+    gen.getCode().invokeVirtual(ENV_VAR, "getRef",
+                                "()Lcom/caucho/quercus/env/Var;");
+  }
+
+  /**
+   * Generates code for the expression as a boolean.
+   */
+  @Override
+  public void generateBoolean(PhpGenerator gen)
+  {
+    generate(gen);
+    gen.generateToBoolean();
+  }
+
+  private void generateEnvVar(PhpGenerator gen)
+  {
+    gen.loadEnv();
+    gen.loadConstant(_var, "com/caucho/quercus/expr/VarInfo");
+    gen.getCode().invokeVirtual(PhpGenerator.ENV, "getEnvVar",
+                                "(Lcom/caucho/quercus/expr/VarInfo;)"
+                                + "L" + ENV_VAR + ";");
+  }
+
   public String toString()
   {
     return "$" + _name;
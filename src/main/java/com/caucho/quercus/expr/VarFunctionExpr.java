@@ -41,6 +41,8 @@ import java.util.ArrayList;
  * Represents a PHP function expression.
  */
 public class VarFunctionExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _name;
   protected final Expr []_args;
 
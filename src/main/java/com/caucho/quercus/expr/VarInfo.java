@@ -34,10 +34,14 @@ import com.caucho.quercus.program.FunctionInfo;
 /**
  * Information about a variable's use in a function.
  */
-public class VarInfo {
+public class VarInfo implements java.io.Serializable {
+  private static final long serialVersionUID = 1L;
+
   private final FunctionInfo _function;
 
   private final String _name;
+
+  private int _index = -1;
   
   public VarInfo(String name, FunctionInfo function)
   {
@@ -53,6 +57,22 @@ public class VarInfo {
     return _name;
   }
 
+  /**
+   * Returns the variable's slot in the function's local frame.
+   */
+  public int getIndex()
+  {
+    return _index;
+  }
+
+  /**
+   * Sets the variable's slot in the function's local frame.
+   */
+  public void setIndex(int index)
+  {
+    _index = index;
+  }
+
   /**
    * Returns the owning function.
    */
@@ -37,6 +37,8 @@ import java.util.ArrayList;
  * Represents a PHP function expression.
  */
 public class VarMethodCallExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _objExpr;
   
   protected final Expr _name;
@@ -40,6 +40,8 @@ import java.util.ArrayList;
  * Represents a PHP function expression of the form "new $a()".
  */
 public class VarNewExpr extends Expr {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _name;
   protected final Expr []_args;
 
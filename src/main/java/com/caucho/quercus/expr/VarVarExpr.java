@@ -40,6 +40,8 @@ import com.caucho.quercus.env.Value;
  * Represents a PHP variable expression.
  */
 public class VarVarExpr extends AbstractVarExpr {
+  private static final long serialVersionUID = 1L;
+
   private static final NullValue NULL = NullValue.create();
 
   protected final Expr _var;
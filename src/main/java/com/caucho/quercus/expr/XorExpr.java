@@ -38,6 +38,8 @@ import com.caucho.quercus.env.Value;
  * Represents a logical xor expression.
  */
 public class XorExpr extends BinaryExpr {
+  private static final long serialVersionUID = 1L;
+
   public XorExpr(Location location, Expr left, Expr right)
   {
     super(location, left, right);
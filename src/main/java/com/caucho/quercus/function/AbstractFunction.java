@@ -42,7 +42,9 @@ import com.caucho.util.L10N;
 /**
  * Represents a function
  */
-abstract public class AbstractFunction {
+abstract public class AbstractFunction implements java.io.Serializable {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(AbstractFunction.class);
 
   private static final Arg []NULL_ARGS = new Arg[0];
@@ -57,7 +59,7 @@ abstract public class AbstractFunction {
   protected Visibility _visibility = Visibility.PUBLIC;
   protected String _declaringClassName;
   
-  protected QuercusClass _bindingClass;
+  protected transient QuercusClass _bindingClass;
   
   protected int _parseIndex;
   
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.gen;
+
+import com.caucho.quercus.QuercusExitException;
+import com.caucho.quercus.QuercusModuleException;
+import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.Value;
+import com.caucho.quercus.marshal.Marshal;
+import com.caucho.quercus.module.StaticFunction;
+
+/**
+ * Base class for the direct invokers generated by the InvokerGenerator.
+ * A generated invoker unmarshals the PHP arguments into typed locals and
+ * calls the module method without reflection.
+ */
+abstract public class CompiledInvoker {
+  protected final StaticFunction _fun;
+  protected final Object _module;
+  protected final Marshal []_marshalArgs;
+  protected final Class<?> []_param;
+  protected final Marshal _unmarshalReturn;
+
+  // index of the first marshaled argument in the Java parameters
+  private final int _paramOffset;
+
+  protected CompiledInvoker(StaticFunction fun, Marshal []marshalArgs)
+  {
+    _fun = fun;
+    _module = fun.getModule();
+    _marshalArgs = marshalArgs;
+    _param = fun.getMethod().getParameterTypes();
+    _unmarshalReturn = fun.getUnmarshalReturn();
+
+    _paramOffset = _param.length - marshalArgs.length
+                   - (fun.getHasRestArgs() ? 1 : 0);
+  }
+
+  /**
+   * Returns the function this invoker calls.
+   */
+  public StaticFunction getFunction()
+  {
+    return _fun;
+  }
+
+  /**
+   * Calls the function with evaluated arguments.
+   */
+  abstract public Value call(Env env, Value []args);
+
+  /**
+   * Marshals an argument the generated code has no inline conversion for.
+   *
+   * @param value the PHP argument
+   * @param env the calling environment
+   * @param i the index of the PHP argument
+   */
+  protected final Object marshalArg(Value value, Env env, int i)
+  {
+    return _marshalArgs[i].marshal(env, value, _param[_paramOffset + i]);
+  }
+
+  /**
+   * Wraps an exception thrown by the module method the same way as the
+   * reflective StaticFunction.invoke.
+   */
+  protected static RuntimeException wrapException(Throwable e)
+  {
+    if (e instanceof QuercusExitException)
+      return (QuercusExitException) e;
+    else
+      return QuercusModuleException.create(e);
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _fun.getName() + "]";
+  }
+}
@@ -27,55 +27,47 @@
  * @author Scott Ferguson
  */
 
-package com.caucho.quercus.env;
+package com.caucho.quercus.gen;
 
-import com.caucho.quercus.QuercusModuleException;
+import com.caucho.quercus.statement.Statement;
 
 /**
- * Represents a PHP variable value.
+ * Base class for statements generated by the ProgramCompiler.
  */
-public class SessionVar extends Value {
-  /**
-   * 
-   */
+abstract public class CompiledStatement extends Statement {
   private static final long serialVersionUID = 1L;
-  private Value _value;
-  
-  /**
-   * Sets the value.
-   */
-  public Value set(Value value)
-  {
-    if (value instanceof SessionArrayValue) {
-      _value = value;
-      
-      return value;
-    }
-    else if (value instanceof ArrayValue) {
-      ArrayValue arrayValue = (ArrayValue) value;
-      ArrayValue sessionValue = (ArrayValue) _value;
 
-      sessionValue.clear();
+  private final Statement _source;
+
+  protected final Object []_constants;
 
-      sessionValue.putAll(arrayValue);
+  protected CompiledStatement(Statement source, Object []constants)
+  {
+    super(source.getLocation());
 
-      return value;
-    }
-    else if (! value.isset()) {
-      _value = value;
-      
-      return value;
-    }
-    else
-      throw new QuercusModuleException(L.l("Can't set this variable"));
+    _source = source;
+    _constants = constants;
   }
 
   /**
-   * Sets the value.
+   * Returns the interpreted statement this code was generated from.
    */
-  protected Value setRaw(Value value)
+  public Statement getSource()
   {
-    throw new QuercusModuleException(L.l("Can't set this variable"));
+    return _source;
   }
-}
 
+  /**
+   * Returns true if the statement can fallthrough.
+   */
+  @Override
+  public int fallThrough()
+  {
+    return _source.fallThrough();
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _source + "]";
+  }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.gen;
+
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.JavaClassWriter;
+import com.caucho.bytecode.Label;
+import com.caucho.quercus.marshal.BooleanMarshal;
+import com.caucho.quercus.marshal.DoubleMarshal;
+import com.caucho.quercus.marshal.IntegerMarshal;
+import com.caucho.quercus.marshal.LongMarshal;
+import com.caucho.quercus.marshal.Marshal;
+import com.caucho.quercus.marshal.StringValueMarshal;
+import com.caucho.quercus.marshal.ValueMarshal;
+import com.caucho.quercus.marshal.VoidMarshal;
+import com.caucho.quercus.module.StaticFunction;
+import com.caucho.util.L10N;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates a CompiledInvoker class for a module function.  The generated
+ * call() converts long, int, double, boolean, Value and StringValue
+ * arguments inline and calls the method directly, so the common builtins
+ * need neither an Object[] nor boxing.  Other arguments go through their
+ * Marshal as in the reflective JavaInvoker.
+ */
+public class InvokerGenerator {
+  private static final Logger log
+    = Logger.getLogger(InvokerGenerator.class.getName());
+  private static final L10N L = new L10N(InvokerGenerator.class);
+
+  private static final String COMPILED_INVOKER
+    = "com/caucho/quercus/gen/CompiledInvoker";
+  private static final String STATIC_FUNCTION
+    = "com/caucho/quercus/module/StaticFunction";
+  private static final String MARSHAL
+    = "com/caucho/quercus/marshal/Marshal";
+  private static final String BOOLEAN_VALUE
+    = "com/caucho/quercus/env/BooleanValue";
+  private static final String DOUBLE_VALUE
+    = "com/caucho/quercus/env/DoubleValue";
+  private static final String LONG_VALUE
+    = "com/caucho/quercus/env/LongValue";
+  private static final String NULL_VALUE
+    = "com/caucho/quercus/env/NullValue";
+  private static final String STRING_VALUE
+    = "com/caucho/quercus/env/StringValue";
+
+  private static final String VALUE = PhpGenerator.VALUE;
+  private static final String OBJECT = PhpGenerator.OBJECT;
+
+  private static final String L_ENV = PhpGenerator.L_ENV;
+  private static final String L_VALUE = PhpGenerator.L_VALUE;
+  private static final String L_OBJECT = "L" + OBJECT + ";";
+
+  // locals of the generated call(Env, Value [])
+  private static final int ENV_LOCAL = 1;
+  private static final int ARGS_LOCAL = 2;
+
+  private static int _invokerId;
+
+  private final HashMap<ClassLoader,ProgramCompiler.GeneratedClassLoader>
+    _loaderMap = new HashMap<ClassLoader,ProgramCompiler.GeneratedClassLoader>();
+
+  /**
+   * Generates and instantiates the invoker for the function.
+   *
+   * @return the invoker, or null if the method can't be called directly
+   */
+  public CompiledInvoker generate(StaticFunction fun, Marshal []marshalArgs)
+    throws Exception
+  {
+    Method method = fun.getMethod();
+
+    if (! isSupported(fun, marshalArgs)) {
+      if (log.isLoggable(Level.FINER))
+        log.finer(L.l("{0} has no direct invoker", method));
+
+      return null;
+    }
+
+    Class<?> cl = method.getDeclaringClass();
+
+    String className = "_quercus/invoke/" + ProgramCompiler.mangle(cl.getSimpleName())
+                       + "$" + ProgramCompiler.mangle(fun.getName())
+                       + "$" + nextInvokerId();
+
+    JavaClassWriter jClass = new JavaClassWriter(className, COMPILED_INVOKER);
+
+    String ctorDescriptor = "(L" + STATIC_FUNCTION + ";[L" + MARSHAL + ";)V";
+
+    CodeWriter ctor = jClass.addMethod(JavaClassWriter.ACC_PUBLIC,
+                                       "<init>", ctorDescriptor);
+    ctor.loadLocal(0);
+    ctor.loadLocal(1);
+    ctor.loadLocal(2);
+    ctor.invokeSpecial(COMPILED_INVOKER, "<init>", ctorDescriptor);
+    ctor.returnVoid();
+
+    CodeWriter code = jClass.addMethod(JavaClassWriter.ACC_PUBLIC,
+                                       "call",
+                                       "(" + L_ENV + "[" + L_VALUE + ")"
+                                       + L_VALUE);
+
+    generateCall(code, fun, marshalArgs);
+
+    byte []bytecode = jClass.toByteArray();
+
+    Class<?> invokerClass
+      = getLoader(cl.getClassLoader()).define(className.replace('/', '.'),
+                                              bytecode);
+
+    Constructor<?> ctorMethod
+      = invokerClass.getConstructor(StaticFunction.class, Marshal[].class);
+
+    return (CompiledInvoker) ctorMethod.newInstance(fun, marshalArgs);
+  }
+
+  /**
+   * Returns true if the generated class can link to the method and
+   * convert its return value.
+   */
+  private boolean isSupported(StaticFunction fun, Marshal []marshalArgs)
+  {
+    Method method = fun.getMethod();
+
+    if (! Modifier.isPublic(method.getModifiers())
+        || ! isPublic(method.getDeclaringClass()))
+      return false;
+
+    for (Class<?> param : method.getParameterTypes()) {
+      if (! isPublic(param))
+        return false;
+    }
+
+    Class<?> retType = method.getReturnType();
+
+    if (! isPublic(retType))
+      return false;
+    else if (! retType.isPrimitive() || retType == void.class)
+      return true;
+    else
+      return isInlineReturn(retType, fun.getUnmarshalReturn());
+  }
+
+  private static boolean isPublic(Class<?> cl)
+  {
+    while (cl.isArray())
+      cl = cl.getComponentType();
+
+    for (; cl != null; cl = cl.getDeclaringClass()) {
+      if (! cl.isPrimitive() && ! Modifier.isPublic(cl.getModifiers()))
+        return false;
+    }
+
+    return true;
+  }
+
+  private static boolean isInlineReturn(Class<?> retType, Marshal marshal)
+  {
+    Class<?> marshalClass = marshal.getClass();
+
+    if (retType == long.class)
+      return marshalClass == LongMarshal.class;
+    else if (retType == int.class)
+      return marshalClass == IntegerMarshal.class;
+    else if (retType == double.class)
+      return marshalClass == DoubleMarshal.class;
+    else if (retType == boolean.class)
+      return marshalClass == BooleanMarshal.class;
+    else
+      return false;
+  }
+
+  private void generateCall(CodeWriter code,
+                            StaticFunction fun,
+                            Marshal []marshalArgs)
+  {
+    Method method = fun.getMethod();
+    Class<?> []param = method.getParameterTypes();
+    String owner = getInternalName(method.getDeclaringClass());
+    boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+    if (! isStatic) {
+      code.loadLocal(0);
+      code.getField(COMPILED_INVOKER, "_module", L_OBJECT);
+      code.checkCast(owner);
+    }
+
+    int k = 0;
+
+    if (fun.getHasEnv()) {
+      code.loadLocal(ENV_LOCAL);
+      k++;
+    }
+
+    if (fun.getHasThis()) {
+      // call() is never a method call, so @This is always null
+      code.pushNull();
+      k++;
+    }
+
+    for (int i = 0; i < marshalArgs.length; i++) {
+      generateArg(code, marshalArgs[i], param[k], i);
+      k++;
+    }
+
+    if (fun.getHasRestArgs()) {
+      loadFunction(code);
+      code.loadLocal(ARGS_LOCAL);
+      code.invokeVirtual(STATIC_FUNCTION, "createRestArgs",
+                         "([" + L_VALUE + ")[" + L_VALUE);
+    }
+
+    Label start = code.createLabel();
+    Label end = code.createLabel();
+    Label handler = code.createLabel();
+
+    code.addExceptionHandler(start, end, handler, null);
+
+    code.mark(start);
+
+    String descriptor = getDescriptor(method);
+
+    if (isStatic)
+      code.invokeStatic(owner, method.getName(), descriptor);
+    else
+      code.invokeVirtual(owner, method.getName(), descriptor);
+
+    code.mark(end);
+
+    generateReturn(code, method.getReturnType(), fun.getUnmarshalReturn());
+
+    // exceptions from the method itself are wrapped like the reflective
+    // InvocationTargetException in StaticFunction.invoke
+    code.mark(handler);
+    code.invokeStatic(COMPILED_INVOKER, "wrapException",
+                      "(Ljava/lang/Throwable;)Ljava/lang/RuntimeException;");
+    code.throwException();
+  }
+
+  /**
+   * Pushes the i-th PHP argument converted to the parameter type, or its
+   * default if the argument is missing.
+   */
+  private void generateArg(CodeWriter code, Marshal marshal,
+                           Class<?> type, int i)
+  {
+    Label popDefault = code.createLabel();
+    Label isDefault = code.createLabel();
+    Label end = code.createLabel();
+
+    code.loadLocal(ARGS_LOCAL);
+    code.arrayLength();
+    code.pushInt(i);
+    code.branch(CodeWriter.IF_ICMPLE, isDefault);
+
+    code.loadLocal(ARGS_LOCAL);
+    code.pushInt(i);
+    code.aaload();
+    code.dup();
+    code.branch(CodeWriter.IFNULL, popDefault);
+
+    generateMarshal(code, marshal, type, i);
+    code.gotoLabel(end);
+
+    code.mark(popDefault);
+    code.pop();
+
+    code.mark(isDefault);
+    loadFunction(code);
+    code.loadLocal(ENV_LOCAL);
+    code.pushInt(i);
+    code.loadLocal(ARGS_LOCAL);
+    code.arrayLength();
+    code.invokeVirtual(STATIC_FUNCTION, "marshalDefaultArg",
+                       "(" + L_ENV + "II)" + L_OBJECT);
+    generateUnbox(code, type);
+
+    code.mark(end);
+  }
+
+  /**
+   * Converts the Value on the stack to the parameter type.
+   */
+  private void generateMarshal(CodeWriter code, Marshal marshal,
+                               Class<?> type, int i)
+  {
+    Class<?> marshalClass = marshal.getClass();
+
+    if (marshalClass == LongMarshal.class && type == long.class)
+      code.invokeVirtual(VALUE, "toLong", "()J");
+    else if (marshalClass == IntegerMarshal.class && type == int.class) {
+      code.invokeVirtual(VALUE, "toLong", "()J");
+      code.l2i();
+    }
+    else if (marshalClass == DoubleMarshal.class && type == double.class)
+      code.invokeVirtual(VALUE, "toDouble", "()D");
+    else if (marshalClass == BooleanMarshal.class && type == boolean.class)
+      code.invokeVirtual(VALUE, "toBoolean", "()Z");
+    else if (marshal == ValueMarshal.MARSHAL_PASS_THRU) {
+    }
+    else if (marshal == ValueMarshal.MARSHAL)
+      code.invokeVirtual(VALUE, "toValue", "()" + L_VALUE);
+    else if (marshalClass == StringValueMarshal.class) {
+      code.loadLocal(ENV_LOCAL);
+      code.invokeVirtual(VALUE, "toStringValue",
+                         "(" + L_ENV + ")L" + STRING_VALUE + ";");
+    }
+    else {
+      code.loadLocal(0);
+      code.swap();
+      code.loadLocal(ENV_LOCAL);
+      code.pushInt(i);
+      code.invokeVirtual(COMPILED_INVOKER, "marshalArg",
+                         "(" + L_VALUE + L_ENV + "I)" + L_OBJECT);
+      generateUnbox(code, type);
+    }
+  }
+
+  /**
+   * Casts or unboxes the marshaled Object on the stack.
+   */
+  private void generateUnbox(CodeWriter code, Class<?> type)
+  {
+    if (type == Object.class)
+      return;
+    else if (type == boolean.class) {
+      code.checkCast("java/lang/Boolean");
+      code.invokeVirtual("java/lang/Boolean", "booleanValue", "()Z");
+    }
+    else if (type == char.class) {
+      code.checkCast("java/lang/Character");
+      code.invokeVirtual("java/lang/Character", "charValue", "()C");
+    }
+    else if (type.isPrimitive()) {
+      String desc = getDescriptor(type);
+
+      code.checkCast("java/lang/Number");
+      code.invokeVirtual("java/lang/Number", type.getName() + "Value",
+                         "()" + desc);
+    }
+    else
+      code.checkCast(getInternalName(type));
+  }
+
+  /**
+   * Converts the method's result to a Value and returns it.
+   */
+  private void generateReturn(CodeWriter code, Class<?> retType,
+                              Marshal unmarshal)
+  {
+    if (retType == void.class && unmarshal.getClass() == VoidMarshal.class) {
+      code.getStatic(NULL_VALUE, "NULL", "L" + NULL_VALUE + ";");
+      code.returnValue();
+    }
+    else if (retType == void.class) {
+      code.loadLocal(0);
+      code.getField(COMPILED_INVOKER, "_unmarshalReturn", "L" + MARSHAL + ";");
+      code.loadLocal(ENV_LOCAL);
+      code.pushNull();
+      code.invokeVirtual(MARSHAL, "unmarshal",
+                         "(" + L_ENV + L_OBJECT + ")" + L_VALUE);
+      code.returnValue();
+    }
+    else if (retType == long.class || retType == int.class) {
+      if (retType == int.class)
+        code.i2l();
+
+      code.invokeStatic(LONG_VALUE, "create", "(J)L" + LONG_VALUE + ";");
+      code.returnValue();
+    }
+    else if (retType == double.class) {
+      code.invokeStatic(DOUBLE_VALUE, "create", "(D)L" + DOUBLE_VALUE + ";");
+      code.returnValue();
+    }
+    else if (retType == boolean.class) {
+      Label isFalse = code.createLabel();
+
+      code.branch(CodeWriter.IFEQ, isFalse);
+      code.getStatic(BOOLEAN_VALUE, "TRUE", "L" + BOOLEAN_VALUE + ";");
+      code.returnValue();
+
+      code.mark(isFalse);
+      code.getStatic(BOOLEAN_VALUE, "FALSE", "L" + BOOLEAN_VALUE + ";");
+      code.returnValue();
+    }
+    else if (unmarshal.getClass() == ValueMarshal.class) {
+      // ValueMarshal.unmarshal is the identity
+      code.returnValue();
+    }
+    else {
+      code.loadLocal(0);
+      code.getField(COMPILED_INVOKER, "_unmarshalReturn", "L" + MARSHAL + ";");
+      code.swap();
+      code.loadLocal(ENV_LOCAL);
+      code.swap();
+      code.invokeVirtual(MARSHAL, "unmarshal",
+                         "(" + L_ENV + L_OBJECT + ")" + L_VALUE);
+      code.returnValue();
+    }
+  }
+
+  private void loadFunction(CodeWriter code)
+  {
+    code.loadLocal(0);
+    code.getField(COMPILED_INVOKER, "_fun", "L" + STATIC_FUNCTION + ";");
+  }
+
+  private synchronized ProgramCompiler.GeneratedClassLoader
+    getLoader(ClassLoader parent)
+  {
+    if (parent == null)
+      parent = CompiledInvoker.class.getClassLoader();
+
+    ProgramCompiler.GeneratedClassLoader loader = _loaderMap.get(parent);
+
+    if (loader == null) {
+      loader = new ProgramCompiler.GeneratedClassLoader(parent);
+      _loaderMap.put(parent, loader);
+    }
+
+    return loader;
+  }
+
+  private static synchronized int nextInvokerId()
+  {
+    return _invokerId++;
+  }
+
+  private static String getInternalName(Class<?> cl)
+  {
+    if (cl.isArray())
+      return getDescriptor(cl);
+    else
+      return cl.getName().replace('.', '/');
+  }
+
+  private static String getDescriptor(Method method)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append('(');
+
+    for (Class<?> param : method.getParameterTypes())
+      sb.append(getDescriptor(param));
+
+    sb.append(')');
+    sb.append(getDescriptor(method.getReturnType()));
+
+    return sb.toString();
+  }
+
+  private static String getDescriptor(Class<?> cl)
+  {
+    if (cl.isArray())
+      return "[" + getDescriptor(cl.getComponentType());
+    else if (cl == void.class)
+      return "V";
+    else if (cl == boolean.class)
+      return "Z";
+    else if (cl == byte.class)
+      return "B";
+    else if (cl == char.class)
+      return "C";
+    else if (cl == short.class)
+      return "S";
+    else if (cl == int.class)
+      return "I";
+    else if (cl == long.class)
+      return "J";
+    else if (cl == float.class)
+      return "F";
+    else if (cl == double.class)
+      return "D";
+    else
+      return "L" + cl.getName().replace('.', '/') + ";";
+  }
+}
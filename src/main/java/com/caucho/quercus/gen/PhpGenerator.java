@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.gen;
+
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
+import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.statement.Statement;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Generates the bytecode for a single statement tree.  Nodes without
+ * a specialized generator fall back to calling their interpreted
+ * <code>eval</code> or <code>execute</code> methods.
+ */
+public class PhpGenerator {
+  public static final String OBJECT = "java/lang/Object";
+  public static final String ENV = "com/caucho/quercus/env/Env";
+  public static final String VALUE = "com/caucho/quercus/env/Value";
+  public static final String EXPR = "com/caucho/quercus/expr/Expr";
+  public static final String STATEMENT = "com/caucho/quercus/statement/Statement";
+
+  public static final String L_ENV = "L" + ENV + ";";
+  public static final String L_VALUE = "L" + VALUE + ";";
+
+  private static final String BOOLEAN_VALUE
+    = "com/caucho/quercus/env/BooleanValue";
+  private static final String BREAK_VALUE
+    = "com/caucho/quercus/env/BreakValue";
+  private static final String CONTINUE_VALUE
+    = "com/caucho/quercus/env/ContinueValue";
+  private static final String COMPILED_STATEMENT
+    = "com/caucho/quercus/gen/CompiledStatement";
+
+  private static final int ENV_SLOT = 1;
+  private static final int CONSTANTS_SLOT = 2;
+  private static final int RESULT_SLOT = 3;
+
+  private final CodeWriter _code;
+
+  private final ArrayList<Object> _constants = new ArrayList<Object>();
+  private final IdentityHashMap<Object,Integer> _constantMap
+    = new IdentityHashMap<Object,Integer>();
+
+  private final Label _returnLabel;
+
+  private Loop _loop;
+
+  PhpGenerator(CodeWriter code)
+  {
+    _code = code;
+    _returnLabel = code.createLabel();
+  }
+
+  /**
+   * Returns the code writer.
+   */
+  public CodeWriter getCode()
+  {
+    return _code;
+  }
+
+  /**
+   * Returns the constants referenced by the generated code.
+   */
+  Object []getConstants()
+  {
+    Object []constants = new Object[_constants.size()];
+
+    _constants.toArray(constants);
+
+    return constants;
+  }
+
+  /**
+   * Generates the body of <code>execute(Env)</code>.
+   */
+  void generateExecuteMethod(Statement stmt)
+  {
+    CodeWriter code = _code;
+
+    code.loadLocal(0);
+    code.getField(COMPILED_STATEMENT, "_constants", "[L" + OBJECT + ";");
+    code.storeLocal(CONSTANTS_SLOT);
+
+    code.pushNull();
+    code.storeLocal(RESULT_SLOT);
+
+    stmt.generate(this);
+
+    if (code.isReachable()) {
+      code.pushNull();
+      code.returnValue();
+    }
+
+    if (_returnLabel.isUsed()) {
+      code.mark(_returnLabel);
+      code.loadLocal(RESULT_SLOT);
+      code.returnValue();
+    }
+  }
+
+  //
+  // values
+  //
+
+  /**
+   * Pushes the Env.
+   */
+  public void loadEnv()
+  {
+    _code.loadLocal(ENV_SLOT);
+  }
+
+  /**
+   * Pushes a constant object, e.g. a literal value or a node, cast to
+   * the given internal class name.
+   */
+  public void loadConstant(Object value, String className)
+  {
+    Integer index = _constantMap.get(value);
+
+    if (index == null) {
+      index = _constants.size();
+
+      _constants.add(value);
+      _constantMap.put(value, index);
+    }
+
+    _code.loadLocal(CONSTANTS_SLOT);
+    _code.pushInt(index);
+    _code.aaload();
+
+    if (! OBJECT.equals(className))
+      _code.checkCast(className);
+  }
+
+  /**
+   * Converts the boolean on the stack to BooleanValue.TRUE or FALSE.
+   */
+  public void generateToBooleanValue()
+  {
+    Label falseLabel = _code.createLabel();
+    Label endLabel = _code.createLabel();
+
+    String type = "L" + BOOLEAN_VALUE + ";";
+
+    _code.branch(CodeWriter.IFEQ, falseLabel);
+    _code.getStatic(BOOLEAN_VALUE, "TRUE", type);
+    _code.gotoLabel(endLabel);
+    _code.mark(falseLabel);
+    _code.getStatic(BOOLEAN_VALUE, "FALSE", type);
+    _code.mark(endLabel);
+  }
+
+  /**
+   * Converts the Value on the stack to a boolean.
+   */
+  public void generateToBoolean()
+  {
+    _code.invokeVirtual(VALUE, "toBoolean", "()Z");
+  }
+
+  //
+  // interpreted fallback
+  //
+
+  /**
+   * Calls the expression's <code>eval</code>.
+   */
+  public void generateEval(Expr expr)
+  {
+    loadConstant(expr, EXPR);
+    loadEnv();
+    _code.invokeVirtual(EXPR, "eval", "(" + L_ENV + ")" + L_VALUE);
+  }
+
+  /**
+   * Calls the expression's <code>evalCopy</code>.
+   */
+  public void generateEvalCopy(Expr expr)
+  {
+    loadConstant(expr, EXPR);
+    loadEnv();
+    _code.invokeVirtual(EXPR, "evalCopy", "(" + L_ENV + ")" + L_VALUE);
+  }
+
+  /**
+   * Calls the expression's <code>evalRef</code>.
+   */
+  public void generateEvalRef(Expr expr)
+  {
+    loadConstant(expr, EXPR);
+    loadEnv();
+    _code.invokeVirtual(EXPR, "evalRef", "(" + L_ENV + ")" + L_VALUE);
+  }
+
+  /**
+   * Calls the expression's <code>evalBoolean</code>.
+   */
+  public void generateEvalBoolean(Expr expr)
+  {
+    loadConstant(expr, EXPR);
+    loadEnv();
+    _code.invokeVirtual(EXPR, "evalBoolean", "(" + L_ENV + ")Z");
+  }
+
+  /**
+   * Calls the statement's <code>execute</code>, passing any break,
+   * continue or return value to the enclosing loop or method.
+   */
+  public void generateExecute(Statement stmt)
+  {
+    loadConstant(stmt, STATEMENT);
+    loadEnv();
+    _code.invokeVirtual(STATEMENT, "execute", "(" + L_ENV + ")" + L_VALUE);
+
+    _code.dup();
+    _code.storeLocal(RESULT_SLOT);
+    _code.branch(CodeWriter.IFNONNULL, getResultLabel());
+  }
+
+  /**
+   * Calls Env.checkTimeout().
+   */
+  public void generateCheckTimeout()
+  {
+    loadEnv();
+    _code.invokeVirtual(ENV, "checkTimeout", "()V");
+  }
+
+  //
+  // loops
+  //
+
+  /**
+   * Returns the break label of the innermost compiled loop, or null.
+   */
+  public Label getBreakLabel()
+  {
+    return _loop != null ? _loop._breakLabel : null;
+  }
+
+  /**
+   * Returns the continue label of the innermost compiled loop, or null.
+   */
+  public Label getContinueLabel()
+  {
+    return _loop != null ? _loop._continueLabel : null;
+  }
+
+  private Label getResultLabel()
+  {
+    return _loop != null ? _loop._resultLabel : _returnLabel;
+  }
+
+  /**
+   * Starts a loop body.  Exceptions from the loop are rethrown with
+   * the loop's location, matching the interpreted loops.
+   */
+  public void beginLoop(Statement stmt, Label breakLabel, Label continueLabel)
+  {
+    _loop = new Loop(_loop, stmt, breakLabel, continueLabel);
+
+    _code.mark(_loop._startLabel);
+  }
+
+  /**
+   * Finishes the loop started by <code>beginLoop</code>.  Normal flow
+   * must not reach this point.
+   */
+  public void endLoop()
+  {
+    Loop loop = _loop;
+    CodeWriter code = _code;
+
+    _loop = loop._next;
+
+    Label endLabel = code.createLabel();
+    code.mark(endLabel);
+
+    if (loop._resultLabel.isUsed())
+      generateLoopResult(loop);
+
+    if (endLabel.getOffset() == loop._startLabel.getOffset())
+      return;
+
+    Label catchLabel = code.createLabel();
+    int exn = code.allocateLocal();
+
+    code.addExceptionHandler(loop._startLabel, endLabel, catchLabel,
+                             "java/lang/RuntimeException");
+
+    code.mark(catchLabel);
+    code.storeLocal(exn);
+
+    loadConstant(loop._stmt, STATEMENT);
+    code.loadLocal(exn);
+    code.invokeVirtual(STATEMENT, "rethrowRuntime",
+                       "(Ljava/lang/RuntimeException;)V");
+
+    code.loadLocal(exn);
+    code.throwException();
+  }
+
+  /**
+   * Dispatches a non-null statement result inside a loop: BreakValue and
+   * ContinueValue target the loop, anything else is passed outward.
+   */
+  private void generateLoopResult(Loop loop)
+  {
+    CodeWriter code = _code;
+    Label outerLabel = getResultLabel();
+    Label continueLabel = code.createLabel();
+    int target = code.allocateLocal();
+
+    code.mark(loop._resultLabel);
+
+    code.loadLocal(RESULT_SLOT);
+    code.instanceOf(BREAK_VALUE);
+    code.branch(CodeWriter.IFEQ, continueLabel);
+
+    code.loadLocal(RESULT_SLOT);
+    code.checkCast(BREAK_VALUE);
+    code.invokeVirtual(BREAK_VALUE, "getTarget", "()I");
+    code.storeIntLocal(target);
+
+    code.loadIntLocal(target);
+    code.pushInt(1);
+    code.branch(CodeWriter.IF_ICMPLE, loop._breakLabel);
+
+    generateNewTarget(BREAK_VALUE, target);
+    code.gotoLabel(outerLabel);
+
+    code.mark(continueLabel);
+    code.loadLocal(RESULT_SLOT);
+    code.instanceOf(CONTINUE_VALUE);
+    code.branch(CodeWriter.IFEQ, outerLabel);
+
+    code.loadLocal(RESULT_SLOT);
+    code.checkCast(CONTINUE_VALUE);
+    code.invokeVirtual(CONTINUE_VALUE, "getTarget", "()I");
+    code.storeIntLocal(target);
+
+    code.loadIntLocal(target);
+    code.pushInt(1);
+    code.branch(CodeWriter.IF_ICMPLE, loop._continueLabel);
+
+    generateNewTarget(CONTINUE_VALUE, target);
+    code.gotoLabel(outerLabel);
+  }
+
+  private void generateNewTarget(String className, int target)
+  {
+    CodeWriter code = _code;
+
+    code.newInstance(className);
+    code.dup();
+    code.loadIntLocal(target);
+    code.pushInt(1);
+    code.isub();
+    code.invokeSpecial(className, "<init>", "(I)V");
+    code.storeLocal(RESULT_SLOT);
+  }
+
+  static class Loop {
+    final Loop _next;
+    final Statement _stmt;
+
+    final Label _startLabel = new Label();
+    final Label _resultLabel = new Label();
+    final Label _breakLabel;
+    final Label _continueLabel;
+
+    Loop(Loop next, Statement stmt, Label breakLabel, Label continueLabel)
+    {
+      _next = next;
+      _stmt = stmt;
+      _breakLabel = breakLabel;
+      _continueLabel = continueLabel;
+    }
+  }
+}
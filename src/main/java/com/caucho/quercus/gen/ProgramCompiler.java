@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.gen;
+
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.JavaClassWriter;
+import com.caucho.quercus.function.AbstractFunction;
+import com.caucho.quercus.program.Function;
+import com.caucho.quercus.program.InterpretedClassDef;
+import com.caucho.quercus.program.QuercusProgram;
+import com.caucho.quercus.statement.Statement;
+import com.caucho.util.L10N;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiles a parsed program's statements into generated classes and
+ * swaps them into the program and its functions.
+ */
+public class ProgramCompiler {
+  private static final Logger log
+    = Logger.getLogger(ProgramCompiler.class.getName());
+  private static final L10N L = new L10N(ProgramCompiler.class);
+
+  private static final String COMPILED_STATEMENT
+    = "com/caucho/quercus/gen/CompiledStatement";
+
+  private static int _pageId;
+
+  private final QuercusProgram _program;
+  private final GeneratedClassLoader _loader;
+  private final String _prefix;
+
+  private int _classId;
+
+  public ProgramCompiler(QuercusProgram program)
+  {
+    _program = program;
+
+    _loader = new GeneratedClassLoader(CompiledStatement.class.getClassLoader());
+
+    _prefix = "_quercus/" + mangle(getPageName(program)) + "$" + nextPageId();
+  }
+
+  /**
+   * Compiles the top-level statement, the functions and the class methods.
+   * The interpreted statements are replaced only if all of them compile.
+   */
+  public void compile()
+    throws Exception
+  {
+    ArrayList<Function> funList = new ArrayList<Function>();
+
+    if (_program.getFunctionList() != null)
+      funList.addAll(_program.getFunctionList());
+
+    if (_program.getClassList() != null) {
+      for (InterpretedClassDef cl : _program.getClassList()) {
+        for (Map.Entry<String,AbstractFunction> entry : cl.functionSet()) {
+          if (entry.getValue() instanceof Function)
+            funList.add((Function) entry.getValue());
+        }
+      }
+    }
+
+    Statement main = compile(_program.getStatement(), "main");
+
+    Statement []funStatements = new Statement[funList.size()];
+
+    for (int i = 0; i < funList.size(); i++) {
+      Function fun = funList.get(i);
+
+      funStatements[i] = compile(fun.getStatement(), fun.getName());
+    }
+
+    _program.setStatement(main);
+
+    for (int i = 0; i < funList.size(); i++) {
+      funList.get(i).setStatement(funStatements[i]);
+    }
+
+    if (log.isLoggable(Level.FINE))
+      log.fine(L.l("Quercus[{0}] compiled {1} functions",
+                   _program.getSourcePath(), funList.size()));
+  }
+
+  /**
+   * Generates and instantiates the class for a single statement.
+   */
+  private Statement compile(Statement stmt, String name)
+    throws Exception
+  {
+    if (stmt == null || stmt instanceof CompiledStatement)
+      return stmt;
+
+    String className = _prefix + "$" + mangle(name) + "$" + _classId++;
+
+    JavaClassWriter jClass = new JavaClassWriter(className, COMPILED_STATEMENT);
+
+    String ctorDescriptor = "(L" + PhpGenerator.STATEMENT + ";[L"
+                            + PhpGenerator.OBJECT + ";)V";
+
+    CodeWriter ctor = jClass.addMethod(JavaClassWriter.ACC_PUBLIC,
+                                       "<init>", ctorDescriptor);
+    ctor.loadLocal(0);
+    ctor.loadLocal(1);
+    ctor.loadLocal(2);
+    ctor.invokeSpecial(COMPILED_STATEMENT, "<init>", ctorDescriptor);
+    ctor.returnVoid();
+
+    CodeWriter code = jClass.addMethod(JavaClassWriter.ACC_PUBLIC,
+                                       "execute",
+                                       "(" + PhpGenerator.L_ENV + ")"
+                                       + PhpGenerator.L_VALUE);
+
+    PhpGenerator gen = new PhpGenerator(code);
+    gen.generateExecuteMethod(stmt);
+
+    byte []bytecode = jClass.toByteArray();
+
+    Class<?> cl = _loader.define(className.replace('/', '.'), bytecode);
+
+    Constructor<?> ctorMethod
+      = cl.getConstructor(Statement.class, Object[].class);
+
+    return (Statement) ctorMethod.newInstance(stmt, gen.getConstants());
+  }
+
+  private static String getPageName(QuercusProgram program)
+  {
+    if (program.getSourcePath() != null)
+      return program.getSourcePath().getTail();
+    else
+      return "page";
+  }
+
+  private static synchronized int nextPageId()
+  {
+    return _pageId++;
+  }
+
+  /**
+   * Converts a name to a valid class name segment.
+   */
+  static String mangle(String name)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < name.length(); i++) {
+      char ch = name.charAt(i);
+
+      if (Character.isJavaIdentifierPart(ch) && ch != '$')
+        sb.append(ch);
+      else
+        sb.append('_');
+    }
+
+    return sb.toString();
+  }
+
+  static class GeneratedClassLoader extends ClassLoader {
+    GeneratedClassLoader(ClassLoader parent)
+    {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte []bytecode)
+    {
+      return defineClass(name, bytecode, 0, bytecode.length);
+    }
+  }
+}
@@ -30,11 +30,11 @@
 package com.caucho.quercus.lib;
 
 import com.caucho.quercus.annotation.Optional;
+import com.caucho.quercus.annotation.Reference;
 import com.caucho.quercus.env.*;
 import com.caucho.quercus.module.AbstractQuercusModule;
 import com.caucho.quercus.module.IniDefinitions;
 import com.caucho.quercus.module.IniDefinition;
-import com.caucho.util.LruCache;
 import com.caucho.vfs.Path;
 
 import java.io.IOException;
@@ -52,8 +52,10 @@ public class ApcModule extends AbstractQuercusModule
   private static final IniDefinitions _iniDefinitions = new IniDefinitions();
 
   private static final int _defaultSize = 4096;
+
+  private static final long MEGABYTE = 1024 * 1024L;
   
-  private LruCache<String,Entry> _cache;
+  private volatile ApcStore _store;
 
   private HashMap<String,Value> _constMap = new HashMap<String,Value>();
 
@@ -73,6 +75,79 @@ public class ApcModule extends AbstractQuercusModule
     return _iniDefinitions;
   }
 
+  /**
+   * Returns the user cache, creating it on first use.
+   */
+  private ApcStore getStore(Env env)
+  {
+    ApcStore store = _store;
+
+    if (store == null) {
+      synchronized (this) {
+        store = _store;
+
+        if (store == null) {
+          long capacity = env.getIniLong("apc.user_entries_hint");
+
+          if (capacity <= 0)
+            capacity = _defaultSize;
+
+          store = new ApcStore((int) capacity, getMemoryBudget(env));
+          _store = store;
+        }
+      }
+    }
+
+    return store;
+  }
+
+  /**
+   * Stops the user cache's sweeper thread.
+   */
+  @Override
+  public void close()
+  {
+    ApcStore store = _store;
+
+    if (store != null)
+      store.close();
+  }
+
+  /**
+   * Returns the configured memory budget in bytes.
+   */
+  private static long getMemoryBudget(Env env)
+  {
+    long segments = env.getIniLong("apc.shm_segments");
+    long size;
+
+    // as in APC, a size without a unit is in megabytes
+    if (isDigits(env.getIniString("apc.shm_size")))
+      size = env.getIniLong("apc.shm_size") * MEGABYTE;
+    else
+      size = env.getIniBytes("apc.shm_size", 30 * MEGABYTE);
+
+    if (segments <= 0)
+      segments = 1;
+
+    return segments * size;
+  }
+
+  private static boolean isDigits(String value)
+  {
+    if (value == null || value.length() == 0)
+      return false;
+
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+
+      if (ch < '0' || '9' < ch)
+        return false;
+    }
+
+    return true;
+  }
+
   /**
    * Returns cache information.
    */
@@ -82,54 +157,54 @@ public class ApcModule extends AbstractQuercusModule
   {
     ArrayValue value = new ArrayValueImpl();
 
-    if (_cache != null) {
-      value.put("num_slots", _cache.getCapacity());
-      value.put("ttl", 0);
-      value.put("num_hits", _cache.getHitCount());
-      value.put("num_misses", _cache.getMissCount());
-      value.put("start_time", 0);
+    ApcStore store = _store;
+
+    if (store != null) {
+      value.put("num_slots", store.getCapacity());
+      value.put("ttl", env.getIniLong("apc.user_ttl"));
+      value.put("num_hits", store.getHitCount());
+      value.put("num_misses", store.getMissCount());
+      value.put("num_inserts", store.getInsertCount());
+      value.put("num_entries", store.getEntryCount());
+      value.put("expunges", store.getExpungeCount());
+      value.put("start_time", store.getStartTime());
+      value.put("mem_size", store.getMemSize());
     }
     else {
       value.put("num_slots", 0);
       value.put("ttl", 0);
       value.put("num_hits", 0);
       value.put("num_misses", 0);
+      value.put("num_inserts", 0);
+      value.put("num_entries", 0);
+      value.put("expunges", 0);
       value.put("start_time", 0);
+      value.put("mem_size", 0);
     }
 
+    value.put(env.createStringOld("memory_type"), env.createStringOld("java"));
+
     ArrayValueImpl cacheList = new ArrayValueImpl();
     value.put(env.createStringOld("cache_list"), cacheList);
 
-    if ("user".equals(type) && _cache != null && ! limited) {
-      ArrayList<String> keys = new ArrayList<String>();
-      ArrayList<Entry> values = new ArrayList<Entry>();
-
-      synchronized (_cache) {
-        Iterator<LruCache.Entry<String,Entry>> iter = _cache.iterator();
-
-        while (iter.hasNext()) {
-          LruCache.Entry<String,Entry> lruEntry = iter.next();
-          
-          keys.add(lruEntry.getKey());
-          values.add(lruEntry.getValue());
-        }
-      }
-
-      for (int i = 0; i < keys.size(); i++) {
-        String key = keys.get(i);
-        Entry entryValue = values.get(i);
-
-        if (entryValue.isValid()) {
-          ArrayValueImpl array = new ArrayValueImpl();
-          cacheList.put(array);
-
-          array.put(env.createStringOld("info"), env.createStringOld(key));
-          array.put(env.createStringOld("ttl"),
-                    LongValue.create(entryValue.getTTL()));
-          array.put(env.createStringOld("type"), env.createStringOld("user"));
-          array.put(env.createStringOld("num_hits"),
-                    LongValue.create(entryValue.getHitCount()));
-        }
+    if ("user".equals(type) && store != null && ! limited) {
+      for (ApcStore.Entry entry : store.getEntries()) {
+        ArrayValueImpl array = new ArrayValueImpl();
+        cacheList.put(array);
+
+        array.put(env.createStringOld("info"),
+                  env.createStringOld(entry.getKey()));
+        array.put(env.createStringOld("ttl"),
+                  LongValue.create(entry.getTTL()));
+        array.put(env.createStringOld("type"), env.createStringOld("user"));
+        array.put(env.createStringOld("num_hits"),
+                  LongValue.create(entry.getHitCount()));
+        array.put(env.createStringOld("creation_time"),
+                  LongValue.create(entry.getCreateTime()));
+        array.put(env.createStringOld("access_time"),
+                  LongValue.create(entry.getAccessTime() / 1000L));
+        array.put(env.createStringOld("mem_size"),
+                  LongValue.create(entry.getSize()));
       }
     }
 
@@ -141,8 +216,10 @@ public class ApcModule extends AbstractQuercusModule
    */
   public boolean apc_clear_cache(Env env, @Optional String type)
   {
-    if (_cache != null)
-      _cache.clear();
+    ApcStore store = _store;
+
+    if (store != null)
+      store.clear();
 
     return true;
   }
@@ -185,10 +262,12 @@ public class ApcModule extends AbstractQuercusModule
    */
   public boolean apc_delete(Env env, String key)
   {
-    if (_cache == null)
+    ApcStore store = _store;
+
+    if (store == null)
       return false;
     
-    return _cache.remove(key) != null;
+    return store.remove(key);
   }
 
   /**
@@ -196,24 +275,31 @@ public class ApcModule extends AbstractQuercusModule
    */
   public Value apc_fetch(Env env, String key)
   {
-    if (_cache == null)
+    ApcStore store = _store;
+
+    if (store == null)
       return BooleanValue.FALSE;
     
-    Entry entry = _cache.get(key);
+    ApcStore.Entry entry = store.get(key);
 
     if (entry == null)
       return BooleanValue.FALSE;
 
     Value value = entry.getValue(env);
     
-    if (value != null)
+    // frozen values have no objects to update
+    if (value != null && ! entry.isFrozen())
       initObject(env, new IdentityHashMap<Value,Value>(), value);
 
     if (value != null) {
       return value;
     }
-    else
+    else {
+      // the soft reference was cleared, so release the slot
+      store.remove(entry);
+
       return BooleanValue.FALSE;
+    }
   }
   
   /*
@@ -287,83 +373,88 @@ public class ApcModule extends AbstractQuercusModule
   {
     ArrayValue value = new ArrayValueImpl();
 
+    ApcStore store = getStore(env);
+
+    long maxSize = store.getMaxSize();
+
     value.put("num_seg", 1);
-    value.put("seg_size", 1024 * 1024);
-    value.put("avail_mem", 1024 * 1024);
+    value.put("seg_size", maxSize);
+    value.put("avail_mem", Math.max(0, maxSize - store.getMemSize()));
     value.put(env.createStringOld("block_lists"), new ArrayValueImpl());
 
     return value;
   }
 
   /**
-   * Returns a value.
+   * Stores a value.
    */
   public Value apc_store(Env env, String key, Value value,
                          @Optional("0") int ttl)
   {
-    if (_cache == null) {
-      long size = env.getIniLong("apc.user_entries_hint");
+    return BooleanValue.create(getStore(env).put(env, key, value, ttl));
+  }
 
-      if (size <= 0)
-        size = _defaultSize;
+  /**
+   * Stores a value if the key isn't already cached.
+   */
+  public Value apc_add(Env env, String key, Value value,
+                       @Optional("0") int ttl)
+  {
+    return BooleanValue.create(getStore(env).add(env, key, value, ttl));
+  }
 
-      _cache = new LruCache<String,Entry>((int) size);
-    }
-    
-    _cache.put(key, new Entry(env, value, ttl));
+  /**
+   * Atomically increments a stored long.
+   */
+  public Value apc_inc(Env env, String key,
+                       @Optional("1") long step,
+                       @Optional @Reference Value success)
+  {
+    return increment(env, key, step, success);
+  }
 
-    return BooleanValue.TRUE;
+  /**
+   * Atomically decrements a stored long.
+   */
+  public Value apc_dec(Env env, String key,
+                       @Optional("1") long step,
+                       @Optional @Reference Value success)
+  {
+    return increment(env, key, - step, success);
   }
 
-  static class Entry extends UnserializeCacheEntry {
-    private long _expire;
-    private int _hitCount;
+  private Value increment(Env env, String key, long step, Value success)
+  {
+    ApcStore store = _store;
 
-    Entry(Env env, Value value, int ttl)
-    {
-      super(env, value);
+    Value value = null;
 
-      if (ttl <= 0)
-        _expire = Long.MAX_VALUE / 2;
-      else
-        _expire = System.currentTimeMillis() + ttl * 1000L;
-    }
+    if (store != null)
+      value = store.increment(env, key, step);
 
-    public long getTTL()
-    {
-      if (_expire >= Long.MAX_VALUE / 2)
-        return 0;
-      else
-        return (_expire - System.currentTimeMillis()) / 1000L;
+    if (value != null) {
+      success.set(BooleanValue.TRUE);
+
+      return value;
     }
+    else {
+      success.set(BooleanValue.FALSE);
 
-    public long getHitCount()
-    {
-      return _hitCount;
+      return BooleanValue.FALSE;
     }
+  }
 
-    public boolean isValid()
-    {
-      if (System.currentTimeMillis() <= _expire)
-        return true;
-      else {
-        clear();
+  /**
+   * Atomically replaces a stored long if it has the old value.
+   */
+  public boolean apc_cas(Env env, String key, long oldValue, long newValue)
+  {
+    ApcStore store = _store;
 
-        return false;
-      }
-    }
+    if (store == null)
+      return false;
 
-    public Value getValue(Env env)
-    {
-      if (System.currentTimeMillis() <= _expire) {
-        _hitCount++;
-        
-        return super.getValue(env);
-      }
-      else {
-        return null;
-      }
-    }
+    return store.compareAndSet(env, key, oldValue, newValue);
   }
 
   static final IniDefinition INI_APC_ENABLED
@@ -0,0 +1,771 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib;
+
+import com.caucho.quercus.env.*;
+import com.caucho.util.CurrentTime;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The APC user cache, shared by all requests of a Quercus instance.
+ *
+ * Entries are budgeted by their estimated size in bytes rather than by
+ * count.  When the budget is exceeded, entries are evicted by sampling:
+ * a cursor walks the map in small batches and drops the expired or
+ * least recently used entry of each batch, so an overflow costs a few
+ * batches rather than a sort of the whole cache.  A daemon thread
+ * sweeps expired entries periodically until close(); if threads are
+ * not allowed, or after close, the sweep runs from store() instead.
+ *
+ * Counters are updated with compare-and-set on the map, so apc_inc and
+ * apc_cas never lock.
+ */
+public class ApcStore
+{
+  private static final Logger log
+    = Logger.getLogger(ApcStore.class.getName());
+
+  // interval between expiry sweeps
+  private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+  // eviction frees down to this fraction of the budget
+  private static final double LOW_WATER = 0.75;
+
+  // fixed per-entry overhead: map node, entry and key
+  private static final long ENTRY_OVERHEAD = 128;
+
+  // entries compared per eviction
+  private static final int EVICT_SAMPLE = 8;
+
+  // nested arrays and objects deeper than this are sized as references
+  private static final int MAX_SIZE_DEPTH = 64;
+
+  private final ConcurrentHashMap<String,Entry> _map;
+
+  private final long _maxSize;
+  private final AtomicLong _memSize = new AtomicLong();
+
+  private final AtomicLong _hitCount = new AtomicLong();
+  private final AtomicLong _missCount = new AtomicLong();
+  private final AtomicLong _insertCount = new AtomicLong();
+  private final AtomicLong _expungeCount = new AtomicLong();
+
+  private final long _startTime;
+  private final int _capacity;
+
+  private volatile Thread _sweeperThread;
+  private volatile long _nextSweepTime;
+
+  // only one thread evicts at a time; it owns _evictIterator
+  private final AtomicBoolean _isEvicting = new AtomicBoolean();
+  private Iterator<Entry> _evictIterator;
+
+  public ApcStore(int capacity, long maxSize)
+  {
+    _capacity = capacity;
+    _maxSize = maxSize;
+
+    _map = new ConcurrentHashMap<String,Entry>(capacity);
+
+    _startTime = CurrentTime.getCurrentTime();
+    _nextSweepTime = _startTime + SWEEP_INTERVAL;
+
+    startSweeper();
+  }
+
+  private void startSweeper()
+  {
+    try {
+      Thread thread = new Thread(new Sweeper(this), "apc-sweeper");
+      thread.setDaemon(true);
+
+      _sweeperThread = thread;
+
+      thread.start();
+    } catch (SecurityException e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      _sweeperThread = null;
+    }
+  }
+
+  /**
+   * Stops the sweeper thread.  The store stays usable, sweeping from
+   * store() instead.
+   */
+  public void close()
+  {
+    Thread thread = _sweeperThread;
+    _sweeperThread = null;
+
+    if (thread != null)
+      thread.interrupt();
+  }
+
+  /**
+   * Returns the memory budget in bytes.
+   */
+  public long getMaxSize()
+  {
+    return _maxSize;
+  }
+
+  /**
+   * Returns the estimated memory used in bytes.
+   */
+  public long getMemSize()
+  {
+    return _memSize.get();
+  }
+
+  public int getCapacity()
+  {
+    return _capacity;
+  }
+
+  public int getEntryCount()
+  {
+    return _map.size();
+  }
+
+  public long getHitCount()
+  {
+    return _hitCount.get();
+  }
+
+  public long getMissCount()
+  {
+    return _missCount.get();
+  }
+
+  public long getInsertCount()
+  {
+    return _insertCount.get();
+  }
+
+  public long getExpungeCount()
+  {
+    return _expungeCount.get();
+  }
+
+  /**
+   * Returns the creation time in seconds.
+   */
+  public long getStartTime()
+  {
+    return _startTime / 1000L;
+  }
+
+  /**
+   * Returns the live entry for the key, counting the hit or miss.
+   */
+  public Entry get(String key)
+  {
+    Entry entry = _map.get(key);
+
+    if (entry != null) {
+      long now = CurrentTime.getCurrentTime();
+
+      if (entry.isValid(now)) {
+        entry.access(now);
+        _hitCount.incrementAndGet();
+
+        return entry;
+      }
+
+      remove(key, entry);
+    }
+
+    _missCount.incrementAndGet();
+
+    return null;
+  }
+
+  /**
+   * Returns the entry for the key without updating statistics.
+   */
+  private Entry getLive(String key, long now)
+  {
+    Entry entry = _map.get(key);
+
+    if (entry != null && ! entry.isValid(now)) {
+      remove(key, entry);
+
+      return null;
+    }
+
+    return entry;
+  }
+
+  /**
+   * Stores the value, returning false if it can't fit the budget.
+   */
+  public boolean put(Env env, String key, Value value, int ttl)
+  {
+    Entry entry = createEntry(env, key, value, ttl);
+
+    if (entry == null)
+      return false;
+
+    Entry oldEntry = _map.put(key, entry);
+
+    _memSize.addAndGet(entry.getSize());
+
+    if (oldEntry != null)
+      _memSize.addAndGet(- oldEntry.getSize());
+
+    _insertCount.incrementAndGet();
+
+    afterPut();
+
+    return true;
+  }
+
+  /**
+   * Stores the value only if the key has no live entry.
+   */
+  public boolean add(Env env, String key, Value value, int ttl)
+  {
+    Entry entry = createEntry(env, key, value, ttl);
+
+    if (entry == null)
+      return false;
+
+    long now = CurrentTime.getCurrentTime();
+
+    while (true) {
+      Entry oldEntry = _map.putIfAbsent(key, entry);
+
+      if (oldEntry == null)
+        break;
+      else if (oldEntry.isValid(now))
+        return false;
+      else if (_map.replace(key, oldEntry, entry)) {
+        _memSize.addAndGet(- oldEntry.getSize());
+        break;
+      }
+    }
+
+    _memSize.addAndGet(entry.getSize());
+    _insertCount.incrementAndGet();
+
+    afterPut();
+
+    return true;
+  }
+
+  /**
+   * Atomically adds to a long value, returning the new value or null
+   * if the key has no live long value.
+   */
+  public Value increment(Env env, String key, long step)
+  {
+    long now = CurrentTime.getCurrentTime();
+
+    while (true) {
+      Entry entry = getLive(key, now);
+
+      if (entry == null)
+        return null;
+
+      Value value = entry.getLongValue();
+
+      if (value == null)
+        return null;
+
+      Value newValue = LongValue.create(value.toLong() + step);
+
+      if (replace(key, entry, entry.create(newValue)))
+        return newValue;
+    }
+  }
+
+  /**
+   * Atomically replaces a long value if it matches the old value.
+   */
+  public boolean compareAndSet(Env env, String key, long oldValue, long newValue)
+  {
+    long now = CurrentTime.getCurrentTime();
+
+    while (true) {
+      Entry entry = getLive(key, now);
+
+      if (entry == null)
+        return false;
+
+      Value value = entry.getLongValue();
+
+      if (value == null || value.toLong() != oldValue)
+        return false;
+
+      if (replace(key, entry, entry.create(LongValue.create(newValue))))
+        return true;
+    }
+  }
+
+  /**
+   * Removes the entry, returning true if it existed.
+   */
+  public boolean remove(String key)
+  {
+    Entry entry = _map.remove(key);
+
+    if (entry == null)
+      return false;
+
+    _memSize.addAndGet(- entry.getSize());
+
+    return true;
+  }
+
+  /**
+   * Removes the entry if it is still the current one for its key.
+   */
+  public boolean remove(Entry entry)
+  {
+    return remove(entry.getKey(), entry);
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear()
+  {
+    for (Map.Entry<String,Entry> mapEntry : _map.entrySet()) {
+      remove(mapEntry.getKey(), mapEntry.getValue());
+    }
+  }
+
+  /**
+   * Returns a snapshot of the live entries.
+   */
+  public ArrayList<Entry> getEntries()
+  {
+    long now = CurrentTime.getCurrentTime();
+
+    ArrayList<Entry> entries = new ArrayList<Entry>();
+
+    for (Entry entry : _map.values()) {
+      if (entry.isValid(now))
+        entries.add(entry);
+    }
+
+    return entries;
+  }
+
+  /**
+   * Removes the expired entries.
+   */
+  public void sweep()
+  {
+    long now = CurrentTime.getCurrentTime();
+
+    _nextSweepTime = now + SWEEP_INTERVAL;
+
+    for (Entry entry : _map.values()) {
+      if (! entry.isValid(now) && remove(entry.getKey(), entry))
+        _expungeCount.incrementAndGet();
+    }
+  }
+
+  private Entry createEntry(Env env, String key, Value value, int ttl)
+  {
+    long size = ENTRY_OVERHEAD + 2L * key.length() + estimateSize(value);
+
+    if (_maxSize < size) {
+      if (log.isLoggable(Level.FINE))
+        log.fine(this + " value for '" + key + "' is too large (" + size + " bytes)");
+
+      return null;
+    }
+
+    return new Entry(env, key, value, ttl, size);
+  }
+
+  private boolean replace(String key, Entry oldEntry, Entry newEntry)
+  {
+    if (! _map.replace(key, oldEntry, newEntry))
+      return false;
+
+    _memSize.addAndGet(newEntry.getSize() - oldEntry.getSize());
+
+    return true;
+  }
+
+  private boolean remove(String key, Entry entry)
+  {
+    if (! _map.remove(key, entry))
+      return false;
+
+    _memSize.addAndGet(- entry.getSize());
+
+    return true;
+  }
+
+  private void afterPut()
+  {
+    if (_maxSize < _memSize.get())
+      evict();
+
+    if (_sweeperThread == null
+        && _nextSweepTime < CurrentTime.getCurrentTime())
+      sweep();
+  }
+
+  /**
+   * Frees memory down to the low-water mark.  Each round drops the
+   * expired or least recently used entry of the next sample; a thread
+   * finding an eviction already running leaves it to that thread.
+   */
+  private void evict()
+  {
+    if (! _isEvicting.compareAndSet(false, true))
+      return;
+
+    try {
+      long lowWater = (long) (_maxSize * LOW_WATER);
+      long now = CurrentTime.getCurrentTime();
+
+      while (lowWater < _memSize.get()) {
+        Entry victim = sample(now);
+
+        if (victim == null)
+          break;
+
+        if (remove(victim.getKey(), victim))
+          _expungeCount.incrementAndGet();
+      }
+    } finally {
+      _isEvicting.set(false);
+    }
+  }
+
+  /**
+   * Returns the eviction candidate among the next EVICT_SAMPLE entries,
+   * preferring an expired one, or null if the map is empty.
+   */
+  private Entry sample(long now)
+  {
+    Entry victim = null;
+    boolean isRestarted = false;
+
+    for (int i = 0; i < EVICT_SAMPLE; i++) {
+      if (_evictIterator == null || ! _evictIterator.hasNext()) {
+        // a second wrap means the map has fewer entries than the sample
+        if (isRestarted)
+          break;
+
+        _evictIterator = _map.values().iterator();
+        isRestarted = true;
+
+        if (! _evictIterator.hasNext())
+          break;
+      }
+
+      Entry entry = _evictIterator.next();
+
+      if (! entry.isValid(now))
+        return entry;
+
+      if (victim == null || entry.getAccessTime() < victim.getAccessTime())
+        victim = entry;
+    }
+
+    return victim;
+  }
+
+  /**
+   * Returns the estimated heap size of a value in bytes.  Arrays and
+   * objects are walked breadth-first with an explicit queue so deep
+   * nesting can't overflow the stack; past MAX_SIZE_DEPTH levels a
+   * container counts as a reference.
+   */
+  static long estimateSize(Value value)
+  {
+    IdentityHashMap<Value,Value> seen = new IdentityHashMap<Value,Value>();
+    ArrayDeque<Value> queue = new ArrayDeque<Value>();
+    ArrayDeque<Integer> depthQueue = new ArrayDeque<Integer>();
+
+    long size = 0;
+
+    queue.add(value);
+    depthQueue.add(0);
+
+    while (! queue.isEmpty()) {
+      value = queue.poll().toValue();
+      int depth = depthQueue.poll();
+
+      if (value instanceof StringValue)
+        size += 40 + 2L * value.length();
+      else if (value instanceof ArrayValue || value instanceof ObjectValue) {
+        if (MAX_SIZE_DEPTH <= depth || seen.put(value, value) != null) {
+          size += 8;
+          continue;
+        }
+
+        size += 64;
+
+        Iterable<? extends Map.Entry<Value,Value>> entries;
+
+        if (value instanceof ArrayValue)
+          entries = ((ArrayValue) value).entrySet();
+        else
+          entries = ((ObjectValue) value).entrySet();
+
+        for (Map.Entry<Value,Value> entry : entries) {
+          size += 32;
+
+          queue.add(entry.getKey());
+          depthQueue.add(depth + 1);
+
+          queue.add(entry.getValue());
+          depthQueue.add(depth + 1);
+        }
+      }
+      else
+        size += 24;
+    }
+
+    return size;
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _map.size() + "," + _memSize + "/" + _maxSize + "]";
+  }
+
+  /**
+   * A cached value.  Long, double, boolean and null values are held
+   * directly so counters survive memory pressure; other values are
+   * copied through UnserializeCacheEntry.
+   */
+  public static class Entry extends UnserializeCacheEntry {
+    private final String _key;
+    private final Value _scalar;
+    private final long _size;
+
+    private final long _createTime;
+    private final long _expire;
+
+    private volatile long _accessTime;
+    private volatile int _hitCount;
+
+    Entry(Env env, String key, Value value, int ttl, long size)
+    {
+      super(env, value);
+
+      _key = key;
+      _scalar = toScalar(value);
+      _size = size;
+
+      _createTime = CurrentTime.getCurrentTime();
+      _accessTime = _createTime;
+
+      if (ttl <= 0)
+        _expire = Long.MAX_VALUE / 2;
+      else
+        _expire = _createTime + ttl * 1000L;
+    }
+
+    private Entry(Entry entry, Value scalar)
+    {
+      super(scalar);
+
+      _key = entry._key;
+      _scalar = scalar;
+      _size = entry._size;
+
+      _createTime = entry._createTime;
+      _accessTime = CurrentTime.getCurrentTime();
+      _expire = entry._expire;
+
+      _hitCount = entry._hitCount;
+    }
+
+    private static Value toScalar(Value value)
+    {
+      value = value.toValue();
+
+      if (value instanceof LongValue
+          || value instanceof DoubleValue
+          || value instanceof BooleanValue
+          || value instanceof NullValue)
+        return value;
+      else
+        return null;
+    }
+
+    /**
+     * Returns a copy of this entry with a new scalar value.
+     */
+    Entry create(Value scalar)
+    {
+      return new Entry(this, scalar);
+    }
+
+    public String getKey()
+    {
+      return _key;
+    }
+
+    /**
+     * Returns the estimated size in bytes.
+     */
+    public long getSize()
+    {
+      return _size;
+    }
+
+    /**
+     * Returns the remaining time to live in seconds, 0 for no expiry.
+     */
+    public long getTTL()
+    {
+      if (_expire >= Long.MAX_VALUE / 2)
+        return 0;
+      else
+        return (_expire - CurrentTime.getCurrentTime()) / 1000L;
+    }
+
+    public long getHitCount()
+    {
+      return _hitCount;
+    }
+
+    /**
+     * Returns the creation time in seconds.
+     */
+    public long getCreateTime()
+    {
+      return _createTime / 1000L;
+    }
+
+    /**
+     * Returns the last access time in milliseconds.
+     */
+    public long getAccessTime()
+    {
+      return _accessTime;
+    }
+
+    public boolean isValid()
+    {
+      return isValid(CurrentTime.getCurrentTime());
+    }
+
+    boolean isValid(long now)
+    {
+      return now <= _expire;
+    }
+
+    void access(long now)
+    {
+      _accessTime = now;
+      _hitCount++;
+    }
+
+    /**
+     * Returns the value if it's a long, otherwise null.
+     */
+    Value getLongValue()
+    {
+      if (_scalar instanceof LongValue)
+        return _scalar;
+      else
+        return null;
+    }
+
+    @Override
+    public Value getValue(Env env)
+    {
+      if (_scalar != null)
+        return _scalar;
+      else
+        return super.getValue(env);
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _key + "]";
+    }
+  }
+
+  /**
+   * Sweeps expired entries until the store is closed or no longer
+   * referenced.
+   */
+  static class Sweeper implements Runnable {
+    private final WeakReference<ApcStore> _storeRef;
+
+    Sweeper(ApcStore store)
+    {
+      _storeRef = new WeakReference<ApcStore>(store);
+    }
+
+    public void run()
+    {
+      try {
+        do {
+          Thread.sleep(SWEEP_INTERVAL);
+        } while (sweep());
+      } catch (InterruptedException e) {
+        log.log(Level.FINER, e.toString(), e);
+      }
+    }
+
+    /**
+     * Sweeps the store, returning false once it has been closed or
+     * collected.
+     */
+    private boolean sweep()
+    {
+      ApcStore store = _storeRef.get();
+
+      if (store == null || store._sweeperThread != Thread.currentThread())
+        return false;
+
+      store.sweep();
+
+      return true;
+    }
+  }
+}
@@ -30,30 +30,74 @@
 package com.caucho.quercus.lib;
 
 import com.caucho.quercus.annotation.Optional;
-import com.caucho.quercus.env.BooleanValue;
-import com.caucho.quercus.env.Env;
-import com.caucho.quercus.env.Value;
-import com.caucho.util.LruCache;
+import com.caucho.quercus.annotation.ReturnNullAsFalse;
+import com.caucho.quercus.env.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * memcache object oriented API facade
+ *
+ * Talks the memcached text protocol.  Keys are spread over the added
+ * servers with a consistent hash ring, and connections are pooled per
+ * server across requests.  Strings and numbers are stored as their
+ * string value, anything else is serialized; values over the compress
+ * threshold are stored zlib compressed.
  */
 public class Memcache {
-  private Cache _cache;
+  // flag bits shared with the pecl extension
+  static final int FLAG_SERIALIZED = 1;
+  static final int FLAG_COMPRESSED = 2;
+
+  private static final int DEFAULT_PORT = 11211;
+
+  // longest key memcached accepts
+  private static final int MAX_KEY_LENGTH = 250;
+
+  private final ArrayList<MemcacheServer> _servers
+    = new ArrayList<MemcacheServer>();
+  private final ArrayList<Integer> _weights = new ArrayList<Integer>();
+
+  private MemcacheRing _ring;
+
+  private int _compressThreshold;
+  private double _minSavings = 0.2;
 
   /**
    * Adds a server.
    */
   public boolean addServer(Env env,
                            String host,
-                           @Optional int port,
-                           @Optional boolean persistent,
-                           @Optional int weight,
-                           @Optional int timeout,
-                           @Optional int retryInterval)
+                           @Optional("11211") int port,
+                           @Optional("true") boolean persistent,
+                           @Optional("1") int weight,
+                           @Optional("1") int timeout,
+                           @Optional("15") int retryInterval)
   {
-    if (_cache == null)
-      connect(env, host, port, timeout);
+    if (port <= 0)
+      port = DEFAULT_PORT;
+
+    MemcacheServer server
+      = MemcacheServer.create(env.getQuercus(), host, port);
+
+    if (timeout > 0)
+      server.setTimeout(timeout * 1000);
+
+    server.setRetryInterval(retryInterval < 0 ? -1 : retryInterval * 1000L);
+
+    if (! _servers.contains(server)) {
+      _servers.add(server);
+      _weights.add(weight > 0 ? weight : 1);
+
+      _ring = null;
+    }
 
     return true;
   }
@@ -63,42 +107,255 @@ public class Memcache {
    */
   public boolean connect(Env env,
                          String host,
-                         @Optional int port,
+                         @Optional("11211") int port,
                          @Optional("1") int timeout)
   {
-    // Always true since this is a local copy
-
-    String name = "memcache::" + host + ":" + port;
+    if (port <= 0)
+      port = DEFAULT_PORT;
 
-    _cache = (Cache) env.getQuercus().getSpecial(name);
+    addServer(env, host, port, true, 1, timeout, 15);
 
-    if (_cache == null) {
-      _cache = new Cache();
+    MemcacheServer server
+      = MemcacheServer.create(env.getQuercus(), host, port);
 
-      env.getQuercus().setSpecial(name, _cache);
-    }
-
-    return true;
+    return server.getVersion() != null;
   }
 
   /**
-   * Returns a value.
+   * Returns a value, or an array of the found values for an array of
+   * keys.
    */
   public Value get(Env env, Value keys)
   {
     if (keys.isArray())
-      return BooleanValue.FALSE;
+      return getMulti(env, keys.toArrayValue(env));
 
     String key = keys.toString();
 
-    Value value = _cache.get(key);
+    if (! isValidKey(key))
+      return BooleanValue.FALSE;
+
+    MemcacheServer server = getServer(key);
 
-    if (value != null)
-      return value.copy(env);
+    if (server == null)
+      return BooleanValue.FALSE;
+
+    ArrayList<String> keyList = new ArrayList<String>(1);
+    keyList.add(key);
+
+    HashMap<String,MemcacheServer.Item> items
+      = new HashMap<String,MemcacheServer.Item>();
+
+    server.get(keyList, items);
+
+    MemcacheServer.Item item = items.get(key);
+
+    if (item != null)
+      return decode(env, item);
     else
       return BooleanValue.FALSE;
   }
-  
+
+  /**
+   * Fetches several keys with one request per server.
+   */
+  private Value getMulti(Env env, ArrayValue keys)
+  {
+    LinkedHashMap<MemcacheServer,ArrayList<String>> keysByServer
+      = new LinkedHashMap<MemcacheServer,ArrayList<String>>();
+
+    ArrayList<String> keyList = new ArrayList<String>();
+
+    for (Value keyValue : keys.values()) {
+      String key = keyValue.toString();
+
+      if (! isValidKey(key))
+        continue;
+
+      MemcacheServer server = getServer(key);
+
+      if (server == null)
+        continue;
+
+      ArrayList<String> serverKeys = keysByServer.get(server);
+
+      if (serverKeys == null) {
+        serverKeys = new ArrayList<String>();
+        keysByServer.put(server, serverKeys);
+      }
+
+      serverKeys.add(key);
+      keyList.add(key);
+    }
+
+    HashMap<String,MemcacheServer.Item> items
+      = new HashMap<String,MemcacheServer.Item>();
+
+    for (Map.Entry<MemcacheServer,ArrayList<String>> entry
+           : keysByServer.entrySet()) {
+      entry.getKey().get(entry.getValue(), items);
+    }
+
+    ArrayValue result = new ArrayValueImpl();
+
+    for (String key : keyList) {
+      MemcacheServer.Item item = items.get(key);
+
+      if (item != null)
+        result.put(env.createStringOld(key), decode(env, item));
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds a value, unless the key already exists.
+   */
+  public boolean add(Env env,
+                     String key,
+                     Value value,
+                     @Optional int flag,
+                     @Optional int expire)
+  {
+    return store(env, "add", key, value, flag, expire);
+  }
+
+  /**
+   * Replaces a value, if the key exists.
+   */
+  public boolean replace(Env env,
+                         String key,
+                         Value value,
+                         @Optional int flag,
+                         @Optional int expire)
+  {
+    return store(env, "replace", key, value, flag, expire);
+  }
+
+  /**
+   * Sets a value.
+   */
+  public boolean set(Env env,
+                     String key,
+                     Value value,
+                     @Optional int flag,
+                     @Optional int expire)
+  {
+    return store(env, "set", key, value, flag, expire);
+  }
+
+  /**
+   * Sets the key/value pairs of an array, pipelining the commands to
+   * each server.  Returns true if every value was stored.
+   */
+  public boolean setMulti(Env env,
+                          ArrayValue values,
+                          @Optional int flag,
+                          @Optional int expire)
+  {
+    LinkedHashMap<MemcacheServer,ArrayList<String>> keysByServer
+      = new LinkedHashMap<MemcacheServer,ArrayList<String>>();
+    HashMap<MemcacheServer,ArrayList<MemcacheServer.Item>> itemsByServer
+      = new HashMap<MemcacheServer,ArrayList<MemcacheServer.Item>>();
+
+    boolean isAllStored = true;
+    int count = 0;
+
+    for (Map.Entry<Value,Value> entry : values.entrySet()) {
+      String key = entry.getKey().toString();
+
+      MemcacheServer server = isValidKey(key) ? getServer(key) : null;
+
+      if (server == null) {
+        isAllStored = false;
+        continue;
+      }
+
+      ArrayList<String> serverKeys = keysByServer.get(server);
+      ArrayList<MemcacheServer.Item> serverItems = itemsByServer.get(server);
+
+      if (serverKeys == null) {
+        serverKeys = new ArrayList<String>();
+        serverItems = new ArrayList<MemcacheServer.Item>();
+
+        keysByServer.put(server, serverKeys);
+        itemsByServer.put(server, serverItems);
+      }
+
+      serverKeys.add(key);
+      serverItems.add(encode(env, entry.getValue().toValue(), flag));
+      count++;
+    }
+
+    int storedCount = 0;
+
+    for (Map.Entry<MemcacheServer,ArrayList<String>> entry
+           : keysByServer.entrySet()) {
+      MemcacheServer server = entry.getKey();
+
+      storedCount += server.store("set", entry.getValue(),
+                                  itemsByServer.get(server), expire);
+    }
+
+    return isAllStored && storedCount == count;
+  }
+
+  private boolean store(Env env,
+                        String cmd,
+                        String key,
+                        Value value,
+                        int flag,
+                        int expire)
+  {
+    if (! isValidKey(key))
+      return false;
+
+    MemcacheServer server = getServer(key);
+
+    if (server == null)
+      return false;
+
+    return server.store(cmd, key, encode(env, value, flag), expire);
+  }
+
+  /**
+   * Increments a numeric value, returning the new value.
+   */
+  public Value increment(Env env,
+                         String key,
+                         @Optional("1") long value)
+  {
+    return increment("incr", key, value);
+  }
+
+  /**
+   * Decrements a numeric value, returning the new value.
+   */
+  public Value decrement(Env env,
+                         String key,
+                         @Optional("1") long value)
+  {
+    return increment("decr", key, value);
+  }
+
+  private Value increment(String cmd, String key, long value)
+  {
+    if (! isValidKey(key) || value < 0)
+      return BooleanValue.FALSE;
+
+    MemcacheServer server = getServer(key);
+
+    if (server == null)
+      return BooleanValue.FALSE;
+
+    long result = server.increment(cmd, key, value);
+
+    if (result < 0)
+      return BooleanValue.FALSE;
+    else
+      return LongValue.create(result);
+  }
+
   /*
    * Removes a value.
    */
@@ -106,9 +363,12 @@ public class Memcache {
                         String key,
                         @Optional int timeout)
   {
-    _cache.remove(key);
-    
-    return true;
+    if (! isValidKey(key))
+      return false;
+
+    MemcacheServer server = getServer(key);
+
+    return server != null && server.delete(key);
   }
 
   /*
@@ -116,17 +376,56 @@ public class Memcache {
    */
   public boolean flush(Env env)
   {
-    _cache.clear();
-    
-    return true;
+    if (_servers.size() == 0)
+      return false;
+
+    boolean isFlushed = true;
+
+    for (MemcacheServer server : _servers) {
+      if (! server.flushAll())
+        isFlushed = false;
+    }
+
+    return isFlushed;
   }
-  
+
   /**
    * Returns version information.
    */
+  @ReturnNullAsFalse
   public String getVersion()
   {
-    return "1.0";
+    for (MemcacheServer server : _servers) {
+      String version = server.getVersion();
+
+      if (version != null)
+        return version;
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the statistics of the first reachable server.
+   */
+  public Value getStats(Env env)
+  {
+    for (MemcacheServer server : _servers) {
+      LinkedHashMap<String,String> stats = new LinkedHashMap<String,String>();
+
+      if (server.getStats(stats)) {
+        ArrayValue result = new ArrayValueImpl();
+
+        for (Map.Entry<String,String> entry : stats.entrySet()) {
+          result.put(env.createStringOld(entry.getKey()),
+                     env.createStringOld(entry.getValue()));
+        }
+
+        return result;
+      }
+    }
+
+    return BooleanValue.FALSE;
   }
 
   /**
@@ -134,73 +433,188 @@ public class Memcache {
    */
   public boolean pconnect(Env env,
                           String host,
-                          @Optional int port,
+                          @Optional("11211") int port,
                           @Optional("1") int timeout)
   {
     return connect(env, host, port, timeout);
   }
 
   /**
-   * Sets a value.
+   * Sets the compression threshold
    */
-  public boolean set(Env env,
-                     String key,
-                     Value value,
-                     @Optional int flag,
-                     @Optional int expire)
+  public boolean setCompressThreshold(int threshold,
+                                      @Optional("0.2") double minSavings)
   {
-    _cache.set(key, value.copy(env));
+    if (threshold < 0 || minSavings < 0 || minSavings > 1)
+      return false;
+
+    _compressThreshold = threshold;
+    _minSavings = minSavings;
 
     return true;
   }
 
   /**
-   * Sets the compression threshold
+   * Closes the connection.
    */
-  public boolean setCompressThreshold(int threshold,
-                                      @Optional double minSavings)
+  public boolean close()
   {
+    // connections are pooled per server and outlive the request
     return true;
   }
 
   /**
-   * Closes the connection.
+   * Returns the server owning the key.
    */
-  public boolean close()
+  private MemcacheServer getServer(String key)
   {
-    return true;
+    if (_servers.size() == 0)
+      return null;
+    else if (_servers.size() == 1)
+      return _servers.get(0);
+
+    if (_ring == null)
+      _ring = new MemcacheRing(_servers, _weights);
+
+    return _ring.get(key);
   }
 
-  public String toString()
+  /**
+   * Returns true for keys the text protocol can carry.
+   */
+  private static boolean isValidKey(String key)
   {
-    return "Memcache[]";
+    int len = key.length();
+
+    if (len == 0 || MAX_KEY_LENGTH < len)
+      return false;
+
+    for (int i = 0; i < len; i++) {
+      char ch = key.charAt(i);
+
+      if (ch <= ' ' || ch == 0x7f || 0xff < ch)
+        return false;
+    }
+
+    return true;
   }
 
-  static class Cache extends Value {
-    /**
-     * 
-     */
-    private static final long serialVersionUID = 1L;
-    private LruCache<String,Value> _map = new LruCache<String,Value>(256);
+  /**
+   * Converts a value to the stored bytes and flags.
+   */
+  private MemcacheServer.Item encode(Env env, Value value, int flag)
+  {
+    int flags = flag & ~(FLAG_SERIALIZED | FLAG_COMPRESSED);
+    byte []data;
 
-    public Value get(String key)
-    {
-      return _map.get(key);
+    if (value instanceof StringValue
+        || value instanceof LongValue
+        || value instanceof DoubleValue
+        || value instanceof BooleanValue) {
+      data = value.toStringValue(env).toBinaryValue(env).toBytes();
     }
+    else {
+      String s = VariableModule.serialize(env, value);
 
-    public void set(String key, Value value)
-    {
-      _map.put(key, value);
+      data = new byte[s.length()];
+      for (int i = 0; i < data.length; i++)
+        data[i] = (byte) s.charAt(i);
+
+      flags |= FLAG_SERIALIZED;
     }
-    
-    public Value remove(String key)
-    {
-      return _map.remove(key);
+
+    boolean isCompress = (flag & FLAG_COMPRESSED) != 0;
+
+    if (isCompress
+        || (_compressThreshold > 0 && _compressThreshold <= data.length)) {
+      byte []compressed = deflate(data);
+
+      double savings = isCompress ? 0 : _minSavings;
+
+      if (compressed.length < data.length * (1 - savings)) {
+        data = compressed;
+        flags |= FLAG_COMPRESSED;
+      }
     }
-    
-    public void clear()
-    {
-      _map.clear();
+
+    return new MemcacheServer.Item(flags, data);
+  }
+
+  /**
+   * Converts stored bytes back to a value.
+   */
+  private Value decode(Env env, MemcacheServer.Item item)
+  {
+    int flags = item.getFlags();
+    byte []data = item.getData();
+
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      data = inflate(data);
+
+      if (data == null)
+        return BooleanValue.FALSE;
     }
+
+    StringValue s = env.createBinaryBuilder(data);
+
+    if ((flags & FLAG_SERIALIZED) != 0)
+      return VariableModule.unserialize(env, s);
+    else
+      return s;
+  }
+
+  private static byte []deflate(byte []data)
+  {
+    Deflater deflater = new Deflater();
+
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2);
+      byte []buffer = new byte[4096];
+
+      while (! deflater.finished()) {
+        int len = deflater.deflate(buffer);
+
+        bos.write(buffer, 0, len);
+      }
+
+      return bos.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte []inflate(byte []data)
+  {
+    Inflater inflater = new Inflater();
+
+    try {
+      inflater.setInput(data);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(2 * data.length);
+      byte []buffer = new byte[4096];
+
+      while (! inflater.finished()) {
+        int len = inflater.inflate(buffer);
+
+        if (len == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          return null;
+
+        bos.write(buffer, 0, len);
+      }
+
+      return bos.toByteArray();
+    } catch (DataFormatException e) {
+      return null;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  public String toString()
+  {
+    return "Memcache" + _servers;
   }
 }
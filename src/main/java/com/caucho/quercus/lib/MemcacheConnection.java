@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A single socket to a memcached server speaking the text protocol.
+ */
+class MemcacheConnection
+{
+  private static final byte []CRLF = new byte[] { '\r', '\n' };
+
+  private final MemcacheServer _server;
+  private final Socket _socket;
+  private final InputStream _is;
+  private final OutputStream _os;
+
+  private final StringBuilder _line = new StringBuilder();
+
+  // true if the connection was returned to the idle pool and nothing
+  // has been read since it was taken out again
+  private boolean _isPooled;
+
+  MemcacheConnection(MemcacheServer server)
+    throws IOException
+  {
+    _server = server;
+
+    _socket = new Socket();
+
+    int timeout = server.getTimeout();
+
+    try {
+      _socket.connect(new InetSocketAddress(server.getHost(),
+                                            server.getPort()),
+                      timeout);
+      _socket.setSoTimeout(timeout);
+      _socket.setTcpNoDelay(true);
+
+      _is = new BufferedInputStream(_socket.getInputStream());
+      _os = new BufferedOutputStream(_socket.getOutputStream());
+    } catch (IOException e) {
+      _socket.close();
+
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the owning server.
+   */
+  MemcacheServer getServer()
+  {
+    return _server;
+  }
+
+  /**
+   * Marks the connection as returned to the idle pool.
+   */
+  void setIdle()
+  {
+    _isPooled = true;
+  }
+
+  /**
+   * Returns true if the error means a pooled connection was dead
+   * before this request: nothing was read back and it didn't time out.
+   */
+  boolean isStale(Exception e)
+  {
+    return _isPooled && ! (e instanceof SocketTimeoutException);
+  }
+
+  /**
+   * Writes a command line, without flushing.
+   */
+  void writeLine(String line)
+    throws IOException
+  {
+    writeAscii(line);
+    _os.write(CRLF);
+  }
+
+  /**
+   * Writes a storage command and its data block, without flushing.
+   */
+  void writeStorage(String cmd, String key,
+                    int flags, int expire, byte []data)
+    throws IOException
+  {
+    writeAscii(cmd);
+    _os.write(' ');
+    writeAscii(key);
+    _os.write(' ');
+    writeAscii(String.valueOf(flags));
+    _os.write(' ');
+    writeAscii(String.valueOf(expire));
+    _os.write(' ');
+    writeAscii(String.valueOf(data.length));
+    _os.write(CRLF);
+    _os.write(data);
+    _os.write(CRLF);
+  }
+
+  /**
+   * Sends the buffered commands.
+   */
+  void flush()
+    throws IOException
+  {
+    _os.flush();
+  }
+
+  /**
+   * Reads a response line, without the trailing CRLF.
+   */
+  String readLine()
+    throws IOException
+  {
+    StringBuilder sb = _line;
+    sb.setLength(0);
+
+    int ch;
+    while ((ch = _is.read()) >= 0) {
+      _isPooled = false;
+
+      if (ch == '\n') {
+        int len = sb.length();
+
+        if (len > 0 && sb.charAt(len - 1) == '\r')
+          sb.setLength(len - 1);
+
+        return sb.toString();
+      }
+
+      sb.append((char) ch);
+    }
+
+    throw new EOFException("memcache: unexpected end of stream from "
+                           + _server);
+  }
+
+  /**
+   * Reads a data block of the given length and its trailing CRLF.
+   */
+  byte []readData(int length)
+    throws IOException
+  {
+    byte []data = new byte[length];
+
+    int offset = 0;
+    while (offset < length) {
+      int sublen = _is.read(data, offset, length - offset);
+
+      if (sublen < 0)
+        throw new EOFException("memcache: unexpected end of stream from "
+                               + _server);
+
+      offset += sublen;
+    }
+
+    if (_is.read() != '\r' || _is.read() != '\n')
+      throw new IOException("memcache: malformed data block from " + _server);
+
+    return data;
+  }
+
+  /**
+   * Closes the socket.
+   */
+  void close()
+  {
+    try {
+      _socket.close();
+    } catch (IOException e) {
+    }
+  }
+
+  private void writeAscii(String s)
+    throws IOException
+  {
+    int len = s.length();
+
+    for (int i = 0; i < len; i++)
+      _os.write(s.charAt(i));
+  }
+
+  public String toString()
+  {
+    return "MemcacheConnection[" + _server + "]";
+  }
+}
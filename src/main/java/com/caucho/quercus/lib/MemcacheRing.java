@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring over memcached servers, in the manner of ketama.
+ *
+ * Each server owns a number of points on the ring proportional to its
+ * weight, so adding or removing a server only moves the keys of its
+ * neighbours.  A key belongs to the first point at or after its hash;
+ * if that server is down, the next available server on the ring is
+ * used instead.
+ */
+class MemcacheRing
+{
+  // MD5 digests per unit of weight, each digest yields four points
+  private static final int DIGESTS_PER_WEIGHT = 40;
+
+  private final long []_points;
+  private final MemcacheServer []_owners;
+
+  MemcacheRing(List<MemcacheServer> servers, List<Integer> weights)
+  {
+    int count = 0;
+    for (int i = 0; i < servers.size(); i++)
+      count += 4 * DIGESTS_PER_WEIGHT * weights.get(i);
+
+    long []points = new long[count];
+    MemcacheServer []owners = new MemcacheServer[count];
+
+    // sort key: the point in the high 32 bits, the owner in the low ones
+    for (int i = 0, k = 0; i < servers.size(); i++) {
+      MemcacheServer server = servers.get(i);
+      String prefix = server.getHost() + ":" + server.getPort() + "-";
+
+      int digests = DIGESTS_PER_WEIGHT * weights.get(i);
+      for (int j = 0; j < digests; j++) {
+        byte []digest = md5(prefix + j);
+
+        for (int h = 0; h < 4; h++)
+          points[k++] = (point(digest, h) << 32) | i;
+      }
+    }
+
+    Arrays.sort(points);
+
+    for (int i = 0; i < count; i++) {
+      owners[i] = servers.get((int) (points[i] & 0xffffffffL));
+      points[i] = points[i] >>> 32;
+    }
+
+    _points = points;
+    _owners = owners;
+  }
+
+  /**
+   * Returns the server for the key.
+   */
+  MemcacheServer get(String key)
+  {
+    long []points = _points;
+    int length = points.length;
+
+    if (length == 0)
+      return null;
+
+    long hash = point(md5(key), 0);
+
+    int i = Arrays.binarySearch(points, hash);
+
+    if (i < 0)
+      i = -(i + 1);
+
+    if (i == length)
+      i = 0;
+
+    MemcacheServer primary = _owners[i];
+
+    if (primary.isAvailable())
+      return primary;
+
+    for (int j = 1; j < length; j++) {
+      MemcacheServer server = _owners[(i + j) % length];
+
+      if (server != primary && server.isAvailable())
+        return server;
+    }
+
+    return primary;
+  }
+
+  private static long point(byte []digest, int h)
+  {
+    return (((digest[3 + h * 4] & 0xffL) << 24)
+            | ((digest[2 + h * 4] & 0xffL) << 16)
+            | ((digest[1 + h * 4] & 0xffL) << 8)
+            | (digest[h * 4] & 0xffL));
+  }
+
+  private static byte []md5(String s)
+  {
+    int len = s.length();
+    byte []bytes = new byte[len];
+
+    for (int i = 0; i < len; i++)
+      bytes[i] = (byte) s.charAt(i);
+
+    try {
+      return MessageDigest.getInstance("MD5").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
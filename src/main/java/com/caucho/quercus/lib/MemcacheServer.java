@@ -0,0 +1,542 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib;
+
+import com.caucho.quercus.Quercus;
+import com.caucho.util.CurrentTime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A memcached server and its pool of idle connections.
+ *
+ * Servers are shared by all requests of a Quercus instance, so a
+ * connection opened by one request is reused by the next one.  When a
+ * server cannot be reached it is skipped until its retry interval has
+ * passed.
+ *
+ * A pooled connection can go stale when the server restarts.  If one
+ * fails before any response arrives, the request is retried once on a
+ * fresh connection and the rest of the idle pool is dropped.
+ */
+public class MemcacheServer
+{
+  private static final Logger log
+    = Logger.getLogger(MemcacheServer.class.getName());
+
+  // idle connections kept per server
+  private static final int MAX_IDLE = 16;
+
+  // keys sent per get command in a multi-get
+  private static final int MAX_GET_KEYS = 100;
+
+  // storage commands written before their responses are read, so
+  // neither side blocks on a full socket buffer
+  private static final int MAX_PIPELINE = 64;
+
+  private final String _host;
+  private final int _port;
+
+  private volatile int _timeout = 1000;
+  private volatile long _retryInterval = 15000L;
+
+  private volatile long _failTime;
+
+  private final ArrayList<MemcacheConnection> _idle
+    = new ArrayList<MemcacheConnection>();
+
+  private MemcacheServer(String host, int port)
+  {
+    _host = host;
+    _port = port;
+  }
+
+  /**
+   * Returns the shared server for the host and port.
+   */
+  public static MemcacheServer create(Quercus quercus, String host, int port)
+  {
+    String name = "memcache::" + host + ":" + port;
+
+    synchronized (quercus) {
+      MemcacheServer server = (MemcacheServer) quercus.getSpecial(name);
+
+      if (server == null) {
+        server = new MemcacheServer(host, port);
+
+        quercus.setSpecial(name, server);
+      }
+
+      return server;
+    }
+  }
+
+  /**
+   * Returns the host name.
+   */
+  public String getHost()
+  {
+    return _host;
+  }
+
+  /**
+   * Returns the port.
+   */
+  public int getPort()
+  {
+    return _port;
+  }
+
+  /**
+   * Returns the connect and read timeout in milliseconds.
+   */
+  public int getTimeout()
+  {
+    return _timeout;
+  }
+
+  /**
+   * Sets the connect and read timeout in milliseconds.
+   */
+  public void setTimeout(int timeout)
+  {
+    if (timeout > 0)
+      _timeout = timeout;
+  }
+
+  /**
+   * Sets the time in milliseconds before a failed server is retried,
+   * or a negative value to never retry.
+   */
+  public void setRetryInterval(long retryInterval)
+  {
+    _retryInterval = retryInterval;
+  }
+
+  /**
+   * Returns true unless the server failed within its retry interval.
+   */
+  public boolean isAvailable()
+  {
+    long failTime = _failTime;
+
+    if (failTime == 0)
+      return true;
+    else if (_retryInterval < 0)
+      return false;
+    else
+      return failTime + _retryInterval <= CurrentTime.getCurrentTime();
+  }
+
+  /**
+   * Fetches the items for the keys into the result map.  Each get
+   * command's response is read before the next command is sent.
+   */
+  public void get(List<String> keys, Map<String,Item> result)
+  {
+    for (int retry = 0; retry < 2; retry++) {
+      MemcacheConnection conn = open(retry > 0);
+
+      if (conn == null)
+        return;
+
+      try {
+        int size = keys.size();
+
+        for (int i = 0; i < size; i += MAX_GET_KEYS) {
+          StringBuilder sb = new StringBuilder("get");
+
+          int end = Math.min(size, i + MAX_GET_KEYS);
+          for (int j = i; j < end; j++) {
+            sb.append(' ');
+            sb.append(keys.get(j));
+          }
+
+          conn.writeLine(sb.toString());
+          conn.flush();
+
+          readValues(conn, result);
+        }
+
+        free(conn);
+
+        return;
+      } catch (IOException e) {
+        if (! close(conn, e))
+          return;
+      } catch (NumberFormatException e) {
+        close(conn, e);
+
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the VALUE blocks of a get response up to its END.
+   */
+  private void readValues(MemcacheConnection conn, Map<String,Item> result)
+    throws IOException
+  {
+    String line;
+
+    while (! (line = conn.readLine()).equals("END")) {
+      if (! line.startsWith("VALUE "))
+        throw new IOException("memcache: unexpected response '"
+                              + line + "' from " + this);
+
+      String []parts = line.split(" ");
+
+      if (parts.length < 4)
+        throw new IOException("memcache: unexpected response '"
+                              + line + "' from " + this);
+
+      String key = parts[1];
+      int flags = (int) Long.parseLong(parts[2]);
+      int length = Integer.parseInt(parts[3]);
+
+      result.put(key, new Item(flags, conn.readData(length)));
+    }
+  }
+
+  /**
+   * Stores an item with the given storage command, e.g. "set" or "add".
+   */
+  public boolean store(String cmd, String key, Item item, int expire)
+  {
+    for (int retry = 0; retry < 2; retry++) {
+      MemcacheConnection conn = open(retry > 0);
+
+      if (conn == null)
+        return false;
+
+      try {
+        conn.writeStorage(cmd, key, item.getFlags(), expire, item.getData());
+        conn.flush();
+
+        String line = conn.readLine();
+
+        free(conn);
+
+        return line.equals("STORED");
+      } catch (IOException e) {
+        if (! close(conn, e))
+          return false;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Stores several items, pipelining up to MAX_PIPELINE commands per
+   * round trip, and returns the number stored.
+   */
+  public int store(String cmd, List<String> keys, List<Item> items,
+                   int expire)
+  {
+    for (int retry = 0; retry < 2; retry++) {
+      MemcacheConnection conn = open(retry > 0);
+
+      if (conn == null)
+        return 0;
+
+      int count = 0;
+
+      try {
+        int size = keys.size();
+
+        for (int i = 0; i < size; i += MAX_PIPELINE) {
+          int end = Math.min(size, i + MAX_PIPELINE);
+
+          for (int j = i; j < end; j++) {
+            Item item = items.get(j);
+
+            conn.writeStorage(cmd, keys.get(j),
+                              item.getFlags(), expire, item.getData());
+          }
+
+          conn.flush();
+
+          for (int j = i; j < end; j++) {
+            if (conn.readLine().equals("STORED"))
+              count++;
+          }
+        }
+
+        free(conn);
+
+        return count;
+      } catch (IOException e) {
+        if (! close(conn, e))
+          return count;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Deletes an item.
+   */
+  public boolean delete(String key)
+  {
+    String line = command("delete " + key);
+
+    return "DELETED".equals(line);
+  }
+
+  /**
+   * Applies "incr" or "decr" to an item, returning the new value or
+   * -1 if the item does not exist.
+   */
+  public long increment(String cmd, String key, long delta)
+  {
+    String line = command(cmd + " " + key + " " + delta);
+
+    if (line == null || line.length() == 0
+        || line.charAt(0) < '0' || '9' < line.charAt(0))
+      return -1;
+
+    try {
+      return Long.parseLong(line.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Invalidates all items.
+   */
+  public boolean flushAll()
+  {
+    return "OK".equals(command("flush_all"));
+  }
+
+  /**
+   * Returns the server version, or null on failure.
+   */
+  public String getVersion()
+  {
+    String line = command("version");
+
+    if (line != null && line.startsWith("VERSION "))
+      return line.substring("VERSION ".length());
+    else
+      return null;
+  }
+
+  /**
+   * Fetches the server statistics into the result map, returning false
+   * on failure.
+   */
+  public boolean getStats(Map<String,String> result)
+  {
+    for (int retry = 0; retry < 2; retry++) {
+      MemcacheConnection conn = open(retry > 0);
+
+      if (conn == null)
+        return false;
+
+      try {
+        conn.writeLine("stats");
+        conn.flush();
+
+        String line;
+        while (! (line = conn.readLine()).equals("END")) {
+          if (! line.startsWith("STAT "))
+            throw new IOException("memcache: unexpected response '"
+                                  + line + "' from " + this);
+
+          int p = line.indexOf(' ', "STAT ".length());
+
+          if (p > 0)
+            result.put(line.substring("STAT ".length(), p),
+                       line.substring(p + 1));
+        }
+
+        free(conn);
+
+        return true;
+      } catch (IOException e) {
+        if (! close(conn, e))
+          return false;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Sends a command with a single line response.
+   */
+  private String command(String command)
+  {
+    for (int retry = 0; retry < 2; retry++) {
+      MemcacheConnection conn = open(retry > 0);
+
+      if (conn == null)
+        return null;
+
+      try {
+        conn.writeLine(command);
+        conn.flush();
+
+        String line = conn.readLine();
+
+        free(conn);
+
+        return line;
+      } catch (IOException e) {
+        if (! close(conn, e))
+          return null;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns an idle connection or opens a new one, or null if the
+   * server is not reachable.
+   *
+   * @param isFresh true to skip the idle pool
+   */
+  private MemcacheConnection open(boolean isFresh)
+  {
+    if (! isFresh) {
+      synchronized (_idle) {
+        int size = _idle.size();
+
+        if (size > 0)
+          return _idle.remove(size - 1);
+      }
+    }
+
+    if (! isAvailable())
+      return null;
+
+    try {
+      MemcacheConnection conn = new MemcacheConnection(this);
+
+      _failTime = 0;
+
+      return conn;
+    } catch (IOException e) {
+      log.log(Level.FINE, e.toString(), e);
+
+      _failTime = CurrentTime.getCurrentTime();
+
+      return null;
+    }
+  }
+
+  /**
+   * Returns a connection to the idle pool.
+   */
+  private void free(MemcacheConnection conn)
+  {
+    conn.setIdle();
+
+    synchronized (_idle) {
+      if (_idle.size() < MAX_IDLE) {
+        _idle.add(conn);
+        return;
+      }
+    }
+
+    conn.close();
+  }
+
+  /**
+   * Discards a connection after an error, since its stream may be out
+   * of sync with the server.  Returns true if the request should be
+   * retried on a fresh connection: the connection came from the pool
+   * and failed before any response, so the server likely restarted
+   * and never ran the command.
+   */
+  private boolean close(MemcacheConnection conn, Exception e)
+  {
+    log.log(Level.FINE, e.toString(), e);
+
+    conn.close();
+
+    if (! conn.isStale(e))
+      return false;
+
+    // connections pooled at the same time are probably stale too
+    ArrayList<MemcacheConnection> idle;
+
+    synchronized (_idle) {
+      idle = new ArrayList<MemcacheConnection>(_idle);
+      _idle.clear();
+    }
+
+    for (MemcacheConnection idleConn : idle)
+      idleConn.close();
+
+    return true;
+  }
+
+  public String toString()
+  {
+    return "MemcacheServer[" + _host + ":" + _port + "]";
+  }
+
+  /**
+   * A stored item: the client flags and the raw data.
+   */
+  public static class Item
+  {
+    private final int _flags;
+    private final byte []_data;
+
+    public Item(int flags, byte []data)
+    {
+      _flags = flags;
+      _data = data;
+    }
+
+    public int getFlags()
+    {
+      return _flags;
+    }
+
+    public byte []getData()
+    {
+      return _data;
+    }
+  }
+}
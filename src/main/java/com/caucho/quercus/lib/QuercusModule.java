@@ -30,9 +30,14 @@
 package com.caucho.quercus.lib;
 
 import com.caucho.quercus.Quercus;
+import com.caucho.quercus.env.ArrayValue;
+import com.caucho.quercus.env.ArrayValueImpl;
 import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.FieldCache;
+import com.caucho.quercus.env.MethodCache;
 import com.caucho.quercus.module.AbstractQuercusModule;
 import com.caucho.quercus.annotation.Name;
+import com.caucho.vfs.HttpStreamPool;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -70,6 +75,61 @@ public class QuercusModule extends AbstractQuercusModule
     return env.getQuercus().getVersion();
   }
   
+  /**
+   * Returns the connection pool statistics.
+   */
+  @Name("quercus_db_pool_stats")
+  public static ArrayValue db_pool_stats(Env env)
+  {
+    return env.getQuercus().getConnectionPoolStats(env);
+  }
+  
+  /**
+   * Returns the HTTP keepalive pool statistics.
+   */
+  @Name("quercus_http_pool_stats")
+  public static ArrayValue http_pool_stats(Env env)
+  {
+    HttpStreamPool pool = HttpStreamPool.getPool();
+
+    ArrayValue stats = new ArrayValueImpl();
+
+    stats.put("idle", pool.getIdleCount());
+    stats.put("hit", pool.getHitCount());
+    stats.put("miss", pool.getMissCount());
+    stats.put("stale", pool.getStaleCount());
+    stats.put("max_idle", pool.getMaxIdle());
+    stats.put("max_idle_per_host", pool.getMaxIdlePerHost());
+
+    return stats;
+  }
+  
+  /**
+   * Returns the call-site inline cache statistics.
+   */
+  @Name("quercus_inline_cache_stats")
+  public static ArrayValue inline_cache_stats(Env env)
+  {
+    ArrayValue method = new ArrayValueImpl();
+
+    method.put("miss", MethodCache.getTotalMissCount());
+    method.put("invalidation", MethodCache.getTotalInvalidationCount());
+    method.put("backoff", MethodCache.getTotalBackoffCount());
+
+    ArrayValue field = new ArrayValueImpl();
+
+    field.put("miss", FieldCache.getTotalMissCount());
+    field.put("invalidation", FieldCache.getTotalInvalidationCount());
+    field.put("backoff", FieldCache.getTotalBackoffCount());
+
+    ArrayValue stats = new ArrayValueImpl();
+
+    stats.put(env.createStringOld("method"), method);
+    stats.put(env.createStringOld("field"), field);
+
+    return stats;
+  }
+  
   /**
    * Returns true if this is the Professional version.
    */
@@ -39,7 +39,7 @@ import com.caucho.quercus.annotation.UsesSymbolTable;
 import com.caucho.quercus.env.*;
 import com.caucho.quercus.module.AbstractQuercusModule;
 import com.caucho.util.L10N;
-import com.caucho.util.LruCache;
+import com.caucho.util.SegmentedLruCache;
 import com.caucho.vfs.StringWriter;
 import com.caucho.vfs.WriteStream;
 
@@ -59,8 +59,8 @@ public class VariableModule extends AbstractQuercusModule {
   private static final L10N L = new L10N(VariableModule.class);
 
   private static final
-    LruCache<UnserializeKey,UnserializeCacheEntry> _unserializeCache
-    = new LruCache<UnserializeKey,UnserializeCacheEntry>(256);
+    SegmentedLruCache<UnserializeKey,UnserializeCacheEntry> _unserializeCache
+    = new SegmentedLruCache<UnserializeKey,UnserializeCacheEntry>(256);
 
   /**
    * Returns a constant
@@ -30,7 +30,6 @@
 package com.caucho.quercus.lib.curl;
 
 import com.caucho.quercus.QuercusModuleException;
-import com.caucho.quercus.UnimplementedException;
 import com.caucho.quercus.annotation.NotNull;
 import com.caucho.quercus.annotation.Optional;
 import com.caucho.quercus.annotation.Reference;
@@ -46,6 +45,7 @@ import com.caucho.vfs.ReadStream;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 public class CurlModule
@@ -282,11 +282,45 @@ public class CurlModule
   public static final int CURLPROXY_HTTP                      = 203;
   public static final int CURLPROXY_SOCKS5                    = 204;
 
+  // pool for curl_multi transfers, shut down when the engine closes
+  private ExecutorService _multiExecutor;
+  private boolean _isClosed;
+
   public String []getLoadedExtensions()
   {
     return new String[] { "curl" };
   }
 
+  /**
+   * Returns the pool for curl_multi transfers, or null after close.
+   */
+  synchronized ExecutorService getMultiExecutor()
+  {
+    if (_multiExecutor == null && ! _isClosed)
+      _multiExecutor = CurlMultiResource.createExecutor();
+
+    return _multiExecutor;
+  }
+
+  /**
+   * Shuts down the curl_multi pool.
+   */
+  @Override
+  public void close()
+  {
+    ExecutorService executor;
+
+    synchronized (this) {
+      _isClosed = true;
+
+      executor = _multiExecutor;
+      _multiExecutor = null;
+    }
+
+    if (executor != null)
+      executor.shutdown();
+  }
+
   /**
    * Closes this cURL object.
    *
@@ -538,105 +572,159 @@ public class CurlModule
   }
 
   /**
-   * XXX: not documented by PHP
+   * Adds a cURL handle to a multi handle.
    *
    * @param env
    * @param curls
    * @param curl
    */
   public static LongValue curl_multi_add_handle(Env env,
-                              Value curls,
+                              @NotNull CurlMultiResource curls,
                               Value curl)
   {
-    throw new UnimplementedException("curl_multi_add_handle");
+    CurlResource curlResource = toCurlResource(env, curl);
+
+    if (curls == null || curlResource == null)
+      return LongValue.create(CURLM_BAD_HANDLE);
+
+    return LongValue.create(curls.addHandle(env, curlResource, curl));
   }
 
   /**
-   * XXX: not documented by PHP
+   * Closes a multi handle, abandoning any running transfers.
    *
    * @param env
    * @param curls
    */
-  public static LongValue curl_multi_close(Env env,
-                              Value curls)
+  public static void curl_multi_close(Env env,
+                              @NotNull CurlMultiResource curls)
   {
-    throw new UnimplementedException("curl_multi_close");
+    if (curls == null)
+      return;
+
+    curls.close();
   }
 
   /**
-   * XXX: not documented by PHP
+   * Starts the transfers of newly-added handles and completes
+   * finished ones.
    *
    * @param env
    * @param curls
    * @param stillRunning
    */
   public static LongValue curl_multi_exec(Env env,
-                              Value curls,
+                              @NotNull CurlMultiResource curls,
                               @Reference Value stillRunning)
   {
-    throw new UnimplementedException("curl_multi_exec");
+    if (curls == null)
+      return LongValue.create(CURLM_BAD_HANDLE);
+
+    int running = curls.execute(env);
+
+    stillRunning.set(LongValue.create(running));
+
+    return LongValue.create(CURLM_OK);
   }
 
   /**
-   * XXX: not documented by PHP
+   * Returns the content of a handle executed by curl_multi_exec
+   * with CURLOPT_RETURNTRANSFER.
    *
    * @param env
    * @param curl
    */
-  public static StringValue curl_multi_getcontent(Env env,
-                              Value curl)
+  public static Value curl_multi_getcontent(Env env,
+                              @NotNull CurlResource curl)
   {
-    throw new UnimplementedException("curl_multi_getcontent");
+    if (curl == null)
+      return NullValue.NULL;
+
+    Value content = curl.getMultiContent();
+
+    if (content == null)
+      return NullValue.NULL;
+
+    return content;
   }
 
   /**
-   * XXX: not documented by PHP
+   * Returns the next completed transfer, or false if there is none.
    *
    * @param env
    * @param curls
    */
-  public static ArrayValue curl_multi_info_read(Env env,
-                              Value curls)
+  public static Value curl_multi_info_read(Env env,
+                              @NotNull CurlMultiResource curls)
   {
-    throw new UnimplementedException("curl_multi_info_read");
+    if (curls == null)
+      return BooleanValue.FALSE;
+
+    return curls.readInfo(env);
   }
 
   /**
-   * XXX: not documented by PHP
+   * Returns a cURL multi handle.
    *
    * @param env
    */
-  public static Value curl_multi_init(Env env)
+  public CurlMultiResource curl_multi_init(Env env)
   {
-    throw new UnimplementedException("curl_multi_init");
+    CurlMultiResource curls = new CurlMultiResource(this);
+
+    env.addCleanup(curls);
+
+    return curls;
   }
 
   /**
-   * XXX: not documented by PHP
+   * Removes a cURL handle from a multi handle.
    *
    * @param env
    * @param curls
    * @param curl
    */
   public static LongValue curl_multi_remove_handle(Env env,
-                              Value curls,
+                              @NotNull CurlMultiResource curls,
                               Value curl)
   {
-    throw new UnimplementedException("curl_multi_remove_handle");
+    CurlResource curlResource = toCurlResource(env, curl);
+
+    if (curls == null || curlResource == null)
+      return LongValue.create(CURLM_BAD_HANDLE);
+
+    return LongValue.create(curls.removeHandle(env, curlResource));
   }
 
   /**
-   * XXX: not documented by PHP
+   * Waits until a transfer of the multi handle completes.
    *
    * @param env
    * @param curls
-   * @param timeout
+   * @param timeout in seconds, defaults to 1.0
    */
   public static LongValue curl_multi_select(Env env,
-                              Value curls,
-                              @Optional Value timeout)
+                              @NotNull CurlMultiResource curls,
+                              @Optional("1.0") double timeout)
+  {
+    if (curls == null)
+      return LongValue.MINUS_ONE;
+
+    long timeoutMs = (long) (timeout * 1000);
+
+    return LongValue.create(curls.select(env, timeoutMs));
+  }
+
+  private static CurlResource toCurlResource(Env env, Value curl)
   {
-    throw new UnimplementedException("curl_multi_select");
+    Object obj = curl.toJavaObject();
+
+    if (obj instanceof CurlResource)
+      return (CurlResource) obj;
+
+    env.warning(L.l("'{0}' is not a valid cURL handle", curl));
+
+    return null;
   }
 
   /**
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.curl;
+
+import com.caucho.quercus.env.ArrayValue;
+import com.caucho.quercus.env.ArrayValueImpl;
+import com.caucho.quercus.env.BooleanValue;
+import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.EnvCleanup;
+import com.caucho.quercus.env.LongValue;
+import com.caucho.quercus.env.Value;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A curl_multi handle.  Transfers run concurrently on the CurlModule's
+ * bounded thread pool; their results are completed on the request thread
+ * by curl_multi_exec.
+ */
+public class CurlMultiResource
+  implements EnvCleanup
+{
+  private static final Logger log
+    = Logger.getLogger(CurlMultiResource.class.getName());
+
+  private static final int MAX_THREADS = 16;
+  private static final long THREAD_IDLE_TIMEOUT = 60000L;
+
+  private final CurlModule _module;
+
+  private final IdentityHashMap<CurlResource,Value> _handles
+    = new IdentityHashMap<CurlResource,Value>();
+
+  private final ArrayList<CurlResource> _pendingList
+    = new ArrayList<CurlResource>();
+
+  private final IdentityHashMap<CurlResource,Transfer> _runningMap
+    = new IdentityHashMap<CurlResource,Transfer>();
+
+  private final LinkedBlockingDeque<Transfer> _completedQueue
+    = new LinkedBlockingDeque<Transfer>();
+
+  private final LinkedList<CurlResource> _messageList
+    = new LinkedList<CurlResource>();
+
+  public CurlMultiResource(CurlModule module)
+  {
+    _module = module;
+  }
+
+  /**
+   * Adds a handle.  The handle value is kept so curl_multi_info_read
+   * returns the same PHP value.
+   */
+  public int addHandle(Env env, CurlResource curl, Value handle)
+  {
+    if (_handles.containsKey(curl))
+      return CurlModule.CURLM_BAD_EASY_HANDLE;
+
+    _handles.put(curl, handle);
+    _pendingList.add(curl);
+
+    return CurlModule.CURLM_OK;
+  }
+
+  /**
+   * Removes a handle, abandoning its transfer if it is still running.
+   */
+  public int removeHandle(Env env, CurlResource curl)
+  {
+    if (_handles.remove(curl) == null)
+      return CurlModule.CURLM_BAD_EASY_HANDLE;
+
+    _pendingList.remove(curl);
+    _messageList.remove(curl);
+
+    Transfer transfer = _runningMap.remove(curl);
+
+    if (transfer != null) {
+      transfer.cancel();
+      _completedQueue.remove(transfer);
+    }
+
+    return CurlModule.CURLM_OK;
+  }
+
+  /**
+   * Starts any newly-added transfers and completes finished ones.
+   *
+   * @return the number of transfers still running
+   */
+  public int execute(Env env)
+  {
+    if (_pendingList.size() > 0) {
+      ArrayList<CurlResource> pendingList
+        = new ArrayList<CurlResource>(_pendingList);
+
+      _pendingList.clear();
+
+      for (CurlResource curl : pendingList) {
+        start(env, curl);
+      }
+    }
+
+    Transfer transfer;
+
+    while ((transfer = _completedQueue.poll()) != null) {
+      complete(env, transfer);
+    }
+
+    return _runningMap.size();
+  }
+
+  /**
+   * Waits until at least one transfer has completed.
+   *
+   * @return the number of completed transfers, or -1 if nothing is running
+   */
+  public int select(Env env, long timeout)
+  {
+    if (_completedQueue.size() > 0)
+      return _completedQueue.size();
+    else if (_runningMap.size() == 0)
+      return -1;
+
+    try {
+      Transfer transfer
+        = _completedQueue.poll(timeout, TimeUnit.MILLISECONDS);
+
+      if (transfer == null)
+        return 0;
+
+      _completedQueue.putFirst(transfer);
+    }
+    catch (InterruptedException e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      return 0;
+    }
+
+    return _completedQueue.size();
+  }
+
+  /**
+   * Returns the next completion message, or false if there is none.
+   */
+  public Value readInfo(Env env)
+  {
+    if (_messageList.size() == 0)
+      return BooleanValue.FALSE;
+
+    CurlResource curl = _messageList.removeFirst();
+
+    ArrayValue info = new ArrayValueImpl();
+
+    info.put(env.createStringOld("msg"),
+             LongValue.create(CurlModule.CURLMSG_DONE));
+    info.put(env.createStringOld("result"),
+             LongValue.create(curl.getErrorCode()));
+    info.put(env.createStringOld("handle"), _handles.get(curl));
+
+    return info;
+  }
+
+  /**
+   * Abandons all running transfers.
+   */
+  public void close()
+  {
+    for (Transfer transfer : _runningMap.values()) {
+      transfer.cancel();
+    }
+
+    _runningMap.clear();
+    _completedQueue.clear();
+    _pendingList.clear();
+    _messageList.clear();
+    _handles.clear();
+  }
+
+  public void cleanup()
+  {
+    close();
+  }
+
+  /**
+   * Starts a transfer, on the pool if possible and otherwise inline.
+   */
+  private void start(Env env, CurlResource curl)
+  {
+    curl.setMultiContent(null);
+
+    Transfer transfer = new Transfer(env, curl, curl.createRequest(env));
+
+    _runningMap.put(curl, transfer);
+
+    ExecutorService executor = _module.getMultiExecutor();
+
+    if (curl.isConcurrent() && executor != null) {
+      try {
+        transfer.setFuture(executor.submit(transfer));
+
+        return;
+      }
+      catch (RejectedExecutionException e) {
+        log.log(Level.FINE, e.toString(), e);
+      }
+      catch (SecurityException e) {
+        // thread creation may be forbidden, e.g. on restricted hosts
+        log.log(Level.FINE, e.toString(), e);
+      }
+    }
+
+    transfer.run();
+  }
+
+  /**
+   * Completes a finished transfer on the request thread.
+   */
+  private void complete(Env env, Transfer transfer)
+  {
+    CurlResource curl = transfer.getCurl();
+
+    if (_runningMap.get(curl) != transfer)
+      return;
+
+    _runningMap.remove(curl);
+
+    RuntimeException exn = transfer.getException();
+
+    if (exn != null)
+      throw exn;
+
+    Value content = curl.finishRequest(env, transfer.isSuccess());
+
+    if (content.isString())
+      curl.setMultiContent(content);
+
+    _messageList.add(curl);
+  }
+
+  /**
+   * Creates the transfer pool.  Idle threads time out, so an unused pool
+   * holds no threads.
+   */
+  static ExecutorService createExecutor()
+  {
+    ThreadPoolExecutor executor
+      = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                               THREAD_IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+                               new LinkedBlockingQueue<Runnable>(),
+                               new TransferThreadFactory());
+
+    executor.allowCoreThreadTimeOut(true);
+
+    return executor;
+  }
+
+  /**
+   * A single transfer.  Only the HTTP exchange runs on the pool thread;
+   * the request, including any post body, is prepared by start().
+   */
+  class Transfer implements Runnable
+  {
+    private final Env _env;
+    private final CurlResource _curl;
+    private final HttpRequest _request;
+
+    private volatile Future<?> _future;
+    private volatile boolean _isSuccess;
+    private volatile RuntimeException _exception;
+
+    Transfer(Env env, CurlResource curl, HttpRequest request)
+    {
+      _env = env;
+      _curl = curl;
+      _request = request;
+    }
+
+    CurlResource getCurl()
+    {
+      return _curl;
+    }
+
+    boolean isSuccess()
+    {
+      return _isSuccess;
+    }
+
+    RuntimeException getException()
+    {
+      return _exception;
+    }
+
+    void setFuture(Future<?> future)
+    {
+      _future = future;
+    }
+
+    void cancel()
+    {
+      Future<?> future = _future;
+
+      if (future != null)
+        future.cancel(true);
+
+      _request.cleanup();
+    }
+
+    public void run()
+    {
+      try {
+        _isSuccess = _request.execute(_env);
+      }
+      catch (RuntimeException e) {
+        _exception = e;
+      }
+      finally {
+        _completedQueue.add(this);
+      }
+    }
+  }
+
+  static class TransferThreadFactory implements ThreadFactory
+  {
+    private final AtomicInteger _count = new AtomicInteger();
+
+    public Thread newThread(Runnable task)
+    {
+      Thread thread = new Thread(task, "quercus-curl-multi-"
+                                 + _count.incrementAndGet());
+
+      thread.setDaemon(true);
+
+      return thread;
+    }
+  }
+}
@@ -103,6 +103,8 @@ public class CurlResource
   private Callback _readCallback;
   private Callback _writeCallback;
 
+  private Value _multiContent;
+
   public CurlResource()
   {
   }
@@ -739,6 +741,17 @@ public class CurlResource
    * Executes this request.
    */
   public Value execute(Env env)
+  {
+    HttpRequest httpRequest = createRequest(env);
+
+    return finishRequest(env, httpRequest.execute(env));
+  }
+
+  /**
+   * Creates and prepares the request for this handle and registers it
+   * for cleanup.
+   */
+  HttpRequest createRequest(Env env)
   {
     init();
 
@@ -746,7 +759,18 @@ public class CurlResource
 
     env.addCleanup(httpRequest);
 
-    if (! httpRequest.execute(env))
+    httpRequest.prepare(env);
+
+    return httpRequest;
+  }
+
+  /**
+   * Completes an executed request, saving cookies and returning or
+   * printing the response.
+   */
+  Value finishRequest(Env env, boolean isSuccess)
+  {
+    if (! isSuccess)
       return BooleanValue.FALSE;
 
     //if (hasError())
@@ -758,6 +782,36 @@ public class CurlResource
     return getReturnValue(env);
   }
 
+  /**
+   * Returns true if the transfer can run off the request thread, i.e.
+   * it has no PHP callbacks, no verbose warnings and no PHP upload file.
+   */
+  boolean isConcurrent()
+  {
+    return (_headerCallback == null
+            && _passwordCallback == null
+            && _readCallback == null
+            && _writeCallback == null
+            && _uploadFile == null
+            && ! _isVerbose);
+  }
+
+  /**
+   * Returns the content saved by curl_multi_exec.
+   */
+  Value getMultiContent()
+  {
+    return _multiContent;
+  }
+
+  /**
+   * Saves the content of a request completed by curl_multi_exec.
+   */
+  void setMultiContent(Value content)
+  {
+    _multiContent = content;
+  }
+
   /**
    * Returns headers and/or body of the last request.
    */
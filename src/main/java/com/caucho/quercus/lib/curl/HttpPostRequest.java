@@ -48,6 +48,16 @@ public class HttpPostRequest
     super(curlResource);
   }
 
+  /**
+   * Creates the body, which looks up files and reads the PHP post value,
+   * on the request thread.
+   */
+  protected void prepare(Env env)
+  {
+    CurlResource curl = getCurlResource();
+    _body = PostBody.create(env, curl.getPostBody());
+  }
+
   /**
    * Initializes the connection.
    */
@@ -57,9 +67,6 @@ public class HttpPostRequest
     if (! super.init(env))
       return false;
     
-    CurlResource curl = getCurlResource();
-    _body = PostBody.create(env, curl.getPostBody());
-    
     if (_body == null)
       return false;
     
@@ -87,6 +87,14 @@ public class HttpRequest
       return new HttpRequest(curl);
   }
 
+  /**
+   * Prepares the request on the request thread, before execute() which
+   * may run on a curl_multi pool thread.
+   */
+  protected void prepare(Env env)
+  {
+  }
+
   /**
    * Opens the connection.
    */
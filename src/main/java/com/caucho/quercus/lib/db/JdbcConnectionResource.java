@@ -68,6 +68,8 @@ public abstract class JdbcConnectionResource
   private JdbcResultResource _rs;
   private int _affectedRows;
 
+  private boolean _isUnbufferedQuery;
+
   private String _errorMessage = null;
   private int _errorCode;
   private SQLWarning _warnings;
@@ -92,6 +94,9 @@ public abstract class JdbcConnectionResource
   // php/144b, php/1464, php/1465
   protected static final String ENCODING = "ISO8859_1";
 
+  // rows the driver reads ahead for an unbuffered query
+  protected static final int UNBUFFERED_FETCH_SIZE = 1024;
+
   public JdbcConnectionResource(Env env)
   {
     _env = env;
@@ -597,6 +602,44 @@ public abstract class JdbcConnectionResource
     return this;
   }
 
+  /**
+   * Execute a single query, streaming the result rows from the driver
+   * instead of reading them all into memory.  The result can only be
+   * read forward.
+   */
+  protected Value realUnbufferedQuery(Env env, String sql)
+  {
+    _isUnbufferedQuery = true;
+
+    try {
+      return realQuery(env, sql);
+    } finally {
+      _isUnbufferedQuery = false;
+    }
+  }
+
+  /**
+   * Returns true while an unbuffered query is executing.
+   */
+  boolean isUnbufferedQuery()
+  {
+    return _isUnbufferedQuery;
+  }
+
+  /**
+   * Creates a forward-only statement for an unbuffered query.
+   */
+  protected Statement createUnbufferedStatement(Connection conn)
+    throws SQLException
+  {
+    Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                          ResultSet.CONCUR_READ_ONLY);
+
+    stmt.setFetchSize(UNBUFFERED_FETCH_SIZE);
+
+    return stmt;
+  }
+
   /**
    * Execute a single query.
    */
@@ -606,8 +649,12 @@ public abstract class JdbcConnectionResource
 
     _rs = null;
 
-    Statement stmt = _freeStmt;
-    _freeStmt = null;
+    Statement stmt = null;
+
+    if (! _isUnbufferedQuery) {
+      stmt = _freeStmt;
+      _freeStmt = null;
+    }
 
     try {
       Connection conn = getConnection(env);
@@ -619,7 +666,12 @@ public abstract class JdbcConnectionResource
         return BooleanValue.TRUE;
 
       // statement reuse does not gain performance significantly (< 1%)
-      if (stmt == null) {
+      if (_isUnbufferedQuery) {
+        stmt = createUnbufferedStatement(conn);
+
+        stmt.setEscapeProcessing(false);
+      }
+      else if (stmt == null) {
         // XXX: test for performance
         boolean canSeek = true;
         if (canSeek)
@@ -667,6 +719,10 @@ public abstract class JdbcConnectionResource
         if (keepStatementOpen()) {
           _savedStmt = stmt;
         }
+        else if (_isUnbufferedQuery) {
+          // the streaming settings shouldn't leak into later queries
+          JdbcUtil.close(stmt);
+        }
         else {
           // _warnings = stmt.getWarnings();
           _freeStmt = stmt;
@@ -30,6 +30,8 @@
 package com.caucho.quercus.lib.db;
 
 import com.caucho.quercus.env.*;
+import com.caucho.util.L10N;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -50,6 +52,8 @@ import java.util.logging.Logger;
 public class JdbcResultResource {
   private static final Logger log
     = Logger.getLogger(JdbcResultResource.class.getName());
+  private static final L10N L = new L10N(JdbcResultResource.class);
+  
   public static final int FETCH_ASSOC = 0x1;
   public static final int FETCH_NUM = 0x2;
   public static final int FETCH_BOTH = FETCH_ASSOC | FETCH_NUM;
@@ -79,6 +83,10 @@ public class JdbcResultResource {
 
   private String _resultEncoding;
 
+  // forward-only result streamed from the driver
+  private boolean _isUnbuffered;
+  private int _fetchCount;
+
   /**
    * Constructor for JdbcResultResource
    *
@@ -96,6 +104,8 @@ public class JdbcResultResource {
     _stmt = stmt;
     _rs = rs;
     _conn = conn;
+
+    _isUnbuffered = conn != null && conn.isUnbufferedQuery();
   }
 
   /**
@@ -162,6 +172,7 @@ public class JdbcResultResource {
       
       if (_rs.next()) {
         _isValid = true;
+        _fetchCount++;
         
         ArrayValue array = new ArrayValueImpl();
 
@@ -303,6 +314,7 @@ public class JdbcResultResource {
     try {
       if (_rs.next()) {
         _isValid = true;
+        _fetchCount++;
         
         Value result = env.createObject();
 
@@ -1152,9 +1164,22 @@ public class JdbcResultResource {
    */
   public int getNumRows()
   {
+    // php - an unbuffered result only knows the rows read so far
+    if (_isUnbuffered)
+      return _fetchCount;
+    
     return getNumRows(_rs);
   }
 
+  /**
+   * Returns true if the rows are streamed from the driver, i.e. the
+   * result can't seek.
+   */
+  public boolean isUnbuffered()
+  {
+    return _isUnbuffered;
+  }
+
   /**
    * Returns number of rows returned in query.
    * last() call is efficient for Mysql because the driver just adjusts
@@ -1216,6 +1241,12 @@ public class JdbcResultResource {
         return BooleanValue.FALSE;
       }
 
+      if (_isUnbuffered) {
+        env.warning(L.l("row {0} can't be read from an unbuffered result",
+                        row));
+        return BooleanValue.FALSE;
+      }
+
       int currentRow = _rs.getRow();
 
       if ((row < 0) || (!_rs.absolute(row + 1)) || _rs.isAfterLast()) {
@@ -1308,6 +1339,9 @@ public class JdbcResultResource {
    */
   public boolean setRowNumber(int rowNumber)
   {
+    if (_isUnbuffered)
+      return false;
+    
     return setRowNumber(_rs, rowNumber);
   }
 
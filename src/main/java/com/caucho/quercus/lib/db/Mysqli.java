@@ -762,7 +762,7 @@ public class Mysqli extends JdbcConnectionResource {
    *
    * @param env the PHP executing environment
    * @param sql the escaped query string (can contain escape sequences like `\n' and `\Z')
-   * @param resultMode ignored
+   * @param resultMode MYSQLI_USE_RESULT for an unbuffered query
    *
    * @return a {@link JdbcResultResource}, or null for failure
    */
@@ -771,8 +771,11 @@ public class Mysqli extends JdbcConnectionResource {
                      @Optional("MYSQLI_STORE_RESULT") int resultMode)
   {
     String sql = sqlToString(env, sqlV);
-    
-    return realQuery(env, sql);
+
+    if (resultMode == MysqliModule.MYSQLI_USE_RESULT)
+      return realUnbufferedQuery(env, sql);
+    else
+      return realQuery(env, sql);
   }
   
   private static String sqlToString(Env env, StringValue sql)
@@ -1248,6 +1251,22 @@ public class Mysqli extends JdbcConnectionResource {
     return ((Mysqli) validateConnection()).getWarningCount(env);
   }
 
+  /**
+   * Creates a streaming statement.  Connector/J only streams rows
+   * for a forward-only statement with a fetch size of MIN_VALUE.
+   */
+  @Override
+  protected Statement createUnbufferedStatement(Connection conn)
+    throws SQLException
+  {
+    Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                          ResultSet.CONCUR_READ_ONLY);
+
+    stmt.setFetchSize(Integer.MIN_VALUE);
+
+    return stmt;
+  }
+
   /**
    * Creates a database-specific result.
    */
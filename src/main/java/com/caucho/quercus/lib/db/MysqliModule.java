@@ -921,10 +921,7 @@ public class MysqliModule extends AbstractQuercusModule {
                                    StringValue sql,
                                    @Optional("MYSQLI_STORE_RESULT") int resultMode)
   {
-    // ERRATUM: <i>resultMode</i> is ignored, MYSQLI_USE_RESULT would represent
-    //  an unbuffered query, but that is not supported.
-
-    Value value = query(env, conn, sql);
+    Value value = query(env, conn, sql, resultMode);
 
     if (value == null) {
       return BooleanValue.FALSE;
@@ -936,11 +933,19 @@ public class MysqliModule extends AbstractQuercusModule {
   private static Value query(Env env,
                              Mysqli conn,
                              StringValue sql)
+  {
+    return query(env, conn, sql, MYSQLI_STORE_RESULT);
+  }
+
+  private static Value query(Env env,
+                             Mysqli conn,
+                             StringValue sql,
+                             int resultMode)
   {
     Value value = null;
 
     try {
-      value = conn.query(env, sql, MYSQLI_STORE_RESULT);
+      value = conn.query(env, sql, resultMode);
     } catch (Exception e) {
       log.log(Level.FINE, e.toString(), e);
     }
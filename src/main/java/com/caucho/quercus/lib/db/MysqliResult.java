@@ -72,7 +72,8 @@ public class MysqliResult extends JdbcResultResource {
     super(env, stmt, rs, conn, "UTF-8" /* XXX */);
 
     // getNumRows() is efficient for MySQL
-    _resultSetSize = getNumRows();
+    if (! isUnbuffered())
+      _resultSetSize = getNumRows();
   }
 
   /**
@@ -920,6 +921,9 @@ public class MysqliResult extends JdbcResultResource {
    */
   public int num_rows()
   {
+    if (isUnbuffered())
+      return getNumRows();
+    
     return _resultSetSize;
   }
 
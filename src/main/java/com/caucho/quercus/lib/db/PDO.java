@@ -83,6 +83,8 @@ public class PDO implements EnvCleanup {
   public static final int ATTR_STRINGIFY_FETCHES = 17;
   public static final int ATTR_MAX_COLUMN_LEN = 18;
 
+  public static final int MYSQL_ATTR_USE_BUFFERED_QUERY = 1000;
+
   public static final int CASE_NATURAL = 0;
   public static final int CASE_UPPER = 1;
   public static final int CASE_LOWER = 2;
@@ -147,6 +149,8 @@ public class PDO implements EnvCleanup {
   private String _lastInsertId;
 
   private boolean _inTransaction;
+
+  private boolean _isBufferedQuery = true;
   
   private static String ENCODING = "ISO8859_1";
 
@@ -165,6 +169,14 @@ public class PDO implements EnvCleanup {
     // XXX: following would be better as annotation on destroy() method
     _env.addCleanup(this);
 
+    if (options != null) {
+      Value buffered
+        = options.get(LongValue.create(MYSQL_ATTR_USE_BUFFERED_QUERY));
+
+      if (buffered.isset())
+        _isBufferedQuery = buffered.toBoolean();
+    }
+
     try {
       DataSource ds = getDataSource(env, dsn);
 
@@ -381,6 +393,8 @@ public class PDO implements EnvCleanup {
         return StringValue.create(getServerVersion());
       case ATTR_TIMEOUT:
         return LongValue.create(getTimeout());
+      case MYSQL_ATTR_USE_BUFFERED_QUERY:
+        return BooleanValue.create(_isBufferedQuery);
 
       default:
         _error.unsupportedAttribute(attribute);
@@ -509,7 +523,8 @@ public class PDO implements EnvCleanup {
       closeStatements();
 
       PDOStatement pdoStatement
-        = new PDOStatement(_env, _conn, statement, true, driverOptions);
+        = new PDOStatement(_env, _conn, statement, true, driverOptions,
+                           isUnbufferedQuery());
       
       _lastPDOStatement = pdoStatement;
 
@@ -532,7 +547,9 @@ public class PDO implements EnvCleanup {
     try {
       closeStatements();
 
-      PDOStatement pdoStatement = new PDOStatement(_env, _conn, query, false, null);
+      PDOStatement pdoStatement
+        = new PDOStatement(_env, _conn, query, false, null,
+                           isUnbufferedQuery());
       _lastPDOStatement = pdoStatement;
       return _env.wrapJava(pdoStatement);
     } catch (SQLException e) {
@@ -649,6 +666,10 @@ public class PDO implements EnvCleanup {
 
       case ATTR_STATEMENT_CLASS:
         return setStatementClass(value);
+
+      case MYSQL_ATTR_USE_BUFFERED_QUERY:
+        _isBufferedQuery = value.toBoolean();
+        return true;
     }
 
     if (isInit) {
@@ -739,6 +760,15 @@ public class PDO implements EnvCleanup {
     }
   }
 
+  /**
+   * Returns true if query rows should be streamed from the driver,
+   * i.e. a mysql connection with buffering turned off.
+   */
+  private boolean isUnbufferedQuery()
+  {
+    return ! _isBufferedQuery && _dsn.startsWith("mysql:");
+  }
+
   private boolean setPersistent(boolean isPersistent)
   {
     return true;
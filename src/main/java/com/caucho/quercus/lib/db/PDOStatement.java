@@ -88,6 +88,9 @@ public class PDOStatement
   private boolean _resultSetExhausted = true;
   private String _lastInsertId;
 
+  // rows are streamed from the driver and can't be scrolled
+  private final boolean _isUnbuffered;
+
   private int _fetchMode = PDO.FETCH_BOTH;
   private Value[] _fetchModeArgs = NULL_VALUES;
   private ArrayList<BindColumn> _bindColumns;
@@ -98,8 +101,17 @@ public class PDOStatement
                String query, boolean isPrepared,
                ArrayValue options)
     throws SQLException
+  {
+    this(env, conn, query, isPrepared, options, false);
+  }
+
+  PDOStatement(Env env, Connection conn,
+               String query, boolean isPrepared,
+               ArrayValue options, boolean isUnbuffered)
+    throws SQLException
   {
     _env = env;
+    _isUnbuffered = isUnbuffered;
     _error = new PDOError(_env);
 
     _query = query;
@@ -123,6 +135,15 @@ public class PDOStatement
           && ((ch = query.charAt(3)) == 'l' || ch == 'L')) {
         _preparedStatement = conn.prepareCall(query);
       }
+      else if (isUnbuffered) {
+        _preparedStatement
+          = conn.prepareStatement(query,
+                                  ResultSet.TYPE_FORWARD_ONLY,
+                                  ResultSet.CONCUR_READ_ONLY);
+
+        // Connector/J streams rows for a fetch size of MIN_VALUE
+        _preparedStatement.setFetchSize(Integer.MIN_VALUE);
+      }
       else
         _preparedStatement = conn.prepareStatement(query);
 
@@ -135,7 +156,14 @@ public class PDOStatement
       Statement statement = null;
 
       try {
-        statement = conn.createStatement();
+        if (isUnbuffered) {
+          statement = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                           ResultSet.CONCUR_READ_ONLY);
+          statement.setFetchSize(Integer.MIN_VALUE);
+        }
+        else
+          statement = conn.createStatement();
+        
         statement.setEscapeProcessing(false);
 
         if (statement.execute(query)) {
@@ -1163,6 +1191,10 @@ public class PDOStatement
     if (_resultSet == null)
       return 0;
 
+    // a streamed result can't be scrolled to count its rows
+    if (_isUnbuffered)
+      return 0;
+
     try {
       int row = _resultSet.getRow();
 
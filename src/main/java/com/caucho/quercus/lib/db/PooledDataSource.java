@@ -0,0 +1,721 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.db;
+
+import com.caucho.quercus.env.ArrayValue;
+import com.caucho.quercus.env.ArrayValueImpl;
+import com.caucho.quercus.env.Env;
+import com.caucho.util.L10N;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * javax.sql.DataSource adapter for java.sql.Driver which keeps idle
+ * connections for reuse by later requests.
+ *
+ * Connections are handed out as proxies whose close() returns the
+ * physical connection to the pool.  Each user/password pair has its own
+ * pool.
+ */
+public class PooledDataSource implements javax.sql.DataSource
+{
+  private static final Logger log
+    = Logger.getLogger(PooledDataSource.class.getName());
+  private static final L10N L = new L10N(PooledDataSource.class);
+
+  private final Driver _driver;
+  private final String _url;
+
+  private int _maxConnections = 32;
+  private long _maxIdleTime = 60000L;
+  private long _maxWaitTime = 10000L;
+  private String _validationQuery;
+
+  private final HashMap<String,Pool> _poolMap
+    = new HashMap<String,Pool>();
+
+  public PooledDataSource(Driver driver, String url)
+  {
+    _driver = driver;
+    _url = url;
+  }
+
+  /**
+   * Returns the JDBC url.
+   */
+  public String getURL()
+  {
+    return _url;
+  }
+
+  /**
+   * Sets the maximum number of open connections for each user.
+   */
+  public void setMaxConnections(int max)
+  {
+    _maxConnections = max;
+  }
+
+  /**
+   * Returns the maximum number of open connections for each user.
+   */
+  public int getMaxConnections()
+  {
+    return _maxConnections;
+  }
+
+  /**
+   * Sets the time in milliseconds an idle connection is kept.
+   */
+  public void setMaxIdleTime(long ms)
+  {
+    _maxIdleTime = ms;
+  }
+
+  /**
+   * Returns the time in milliseconds an idle connection is kept.
+   */
+  public long getMaxIdleTime()
+  {
+    return _maxIdleTime;
+  }
+
+  /**
+   * Sets the time in milliseconds to wait for a free connection.
+   */
+  public void setMaxWaitTime(long ms)
+  {
+    _maxWaitTime = ms;
+  }
+
+  /**
+   * Sets the query used to check an idle connection before reuse.
+   */
+  public void setValidationQuery(String query)
+  {
+    if (query != null && query.length() == 0)
+      query = null;
+    
+    _validationQuery = query;
+  }
+
+  /**
+   * Returns the validation query, or null.
+   */
+  public String getValidationQuery()
+  {
+    return _validationQuery;
+  }
+  
+  public Connection getConnection()
+    throws SQLException
+  {
+    return getConnection("", "");
+  }
+  
+  public Connection getConnection(String user, String password)
+    throws SQLException
+  {
+    if (user == null)
+      user = "";
+    
+    if (password == null)
+      password = "";
+
+    return getPool(user, password).allocate();
+  }
+
+  private Pool getPool(String user, String password)
+  {
+    String key = user + '\u0000' + password;
+    
+    synchronized (_poolMap) {
+      Pool pool = _poolMap.get(key);
+
+      if (pool == null) {
+        pool = new Pool(user, password);
+        _poolMap.put(key, pool);
+      }
+
+      return pool;
+    }
+  }
+
+  /**
+   * Closes any connections still allocated to the env, logging
+   * each one as a leak.
+   */
+  public void closeLeakedConnections(Env env)
+  {
+    ArrayList<Pool> poolList;
+    
+    synchronized (_poolMap) {
+      poolList = new ArrayList<Pool>(_poolMap.values());
+    }
+
+    for (Pool pool : poolList) {
+      pool.closeLeaked(env);
+    }
+  }
+
+  /**
+   * Returns the pool statistics, keyed by user.
+   */
+  public ArrayValue getStats(Env env)
+  {
+    ArrayValue result = new ArrayValueImpl();
+    
+    synchronized (_poolMap) {
+      for (Pool pool : _poolMap.values()) {
+        result.put(env.createStringOld(pool.getUser()), pool.getStats());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Marks a pooled connection to be closed instead of returned to the
+   * pool, e.g. after a mysql temporary table.
+   */
+  public static void markForPoolRemoval(Connection conn)
+  {
+    PooledConnection pConn = getPooledConnection(conn);
+
+    if (pConn != null)
+      pConn.markForPoolRemoval();
+  }
+
+  /**
+   * Returns the physical connection of a pooled connection.
+   */
+  public static Connection getPhysicalConnection(Connection conn)
+  {
+    PooledConnection pConn = getPooledConnection(conn);
+
+    if (pConn != null)
+      return pConn.getPhysicalConnection();
+    else
+      return conn;
+  }
+
+  private static PooledConnection getPooledConnection(Connection conn)
+  {
+    if (conn == null || ! Proxy.isProxyClass(conn.getClass()))
+      return null;
+
+    Object handler = Proxy.getInvocationHandler(conn);
+
+    if (handler instanceof PooledConnection)
+      return (PooledConnection) handler;
+    else
+      return null;
+  }
+  
+  /**
+   * Returns 0, i.e. the driver's default login timeout.
+   */
+  public int getLoginTimeout()
+  {
+    return 0;
+  }
+  
+  /**
+   * Returns null, since the pool logs to java.util.logging.
+   */
+  public PrintWriter getLogWriter()
+  {
+    return null;
+  }
+  
+  public void setLoginTimeout(int seconds)
+  {
+  }
+  
+  public void setLogWriter(PrintWriter out)
+  {
+  }
+  
+  public <T> T unwrap(Class<T> iface)
+    throws SQLException
+  {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  public boolean isWrapperFor(Class<?> iface)
+    throws SQLException
+  {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _url + "]";
+  }
+
+  /**
+   * The connections for a single user.
+   */
+  class Pool {
+    private final String _user;
+    private final String _password;
+
+    private final ArrayList<PooledConnection> _idleList
+      = new ArrayList<PooledConnection>();
+    private final ArrayList<PooledConnection> _activeList
+      = new ArrayList<PooledConnection>();
+
+    private int _connectingCount;
+
+    private long _createCount;
+    private long _reuseCount;
+    private long _leakCount;
+
+    Pool(String user, String password)
+    {
+      _user = user;
+      _password = password;
+    }
+
+    String getUser()
+    {
+      return _user;
+    }
+
+    Connection allocate()
+      throws SQLException
+    {
+      Env env = Env.getCurrent();
+      
+      long expire = System.currentTimeMillis() + _maxWaitTime;
+
+      while (true) {
+        PooledConnection pConn = null;
+        ArrayList<PooledConnection> expiredList;
+
+        synchronized (this) {
+          expiredList = removeExpired(System.currentTimeMillis());
+        }
+
+        closePhysical(expiredList);
+        
+        synchronized (this) {
+          long now = System.currentTimeMillis();
+
+          if (_idleList.size() > 0) {
+            pConn = _idleList.remove(_idleList.size() - 1);
+          }
+          else if (_activeList.size() + _connectingCount < _maxConnections) {
+            _connectingCount++;
+          }
+          else if (now < expire) {
+            try {
+              wait(expire - now);
+            } catch (InterruptedException e) {
+              throw new SQLException(L.l("interrupted waiting for a connection to {0}",
+                                         _url));
+            }
+
+            continue;
+          }
+          else {
+            throw new SQLException(L.l("connection pool for {0} is full with {1} connections",
+                                       _url, _maxConnections));
+          }
+        }
+
+        if (pConn == null)
+          return create(env);
+        else if (isValid(pConn)) {
+          synchronized (this) {
+            _reuseCount++;
+            _activeList.add(pConn);
+          }
+
+          return pConn.open(env);
+        }
+        else
+          pConn.closePhysical();
+      }
+    }
+
+    private Connection create(Env env)
+      throws SQLException
+    {
+      Connection conn = null;
+      
+      try {
+        Properties props = new Properties();
+        props.put("user", _user);
+        props.put("password", _password);
+
+        conn = _driver.connect(_url, props);
+
+        if (conn == null)
+          throw new SQLException(L.l("'{0}' is not a valid url for {1}",
+                                     _url, _driver));
+      } finally {
+        synchronized (this) {
+          _connectingCount--;
+
+          if (conn == null)
+            notifyAll();
+        }
+      }
+
+      PooledConnection pConn = new PooledConnection(this, conn);
+
+      synchronized (this) {
+        _createCount++;
+        _activeList.add(pConn);
+      }
+
+      return pConn.open(env);
+    }
+
+    private boolean isValid(PooledConnection pConn)
+    {
+      Connection conn = pConn.getPhysicalConnection();
+      
+      try {
+        if (conn.isClosed())
+          return false;
+        else if (_validationQuery == null)
+          return true;
+
+        Statement stmt = conn.createStatement();
+
+        try {
+          stmt.execute(_validationQuery);
+        } finally {
+          stmt.close();
+        }
+
+        return true;
+      } catch (SQLException e) {
+        log.log(Level.FINE, e.toString(), e);
+
+        return false;
+      }
+    }
+
+    /**
+     * Returns the connection to the idle list.
+     */
+    void free(PooledConnection pConn, boolean isReusable)
+    {
+      ArrayList<PooledConnection> expiredList = null;
+
+      synchronized (this) {
+        _activeList.remove(pConn);
+
+        if (isReusable) {
+          _idleList.add(pConn);
+
+          expiredList = removeExpired(System.currentTimeMillis());
+        }
+
+        notifyAll();
+      }
+
+      if (! isReusable)
+        pConn.closePhysical();
+
+      closePhysical(expiredList);
+    }
+
+    /**
+     * Removes the connections idle longer than the max idle time.  The
+     * caller holds the pool lock and closes them after releasing it.
+     *
+     * @return the removed connections, or null if there are none
+     */
+    private ArrayList<PooledConnection> removeExpired(long now)
+    {
+      ArrayList<PooledConnection> expiredList = null;
+
+      // oldest connections are at the front of the list
+      while (_idleList.size() > 0) {
+        PooledConnection pConn = _idleList.get(0);
+
+        if (now < pConn.getIdleStartTime() + _maxIdleTime)
+          break;
+
+        _idleList.remove(0);
+
+        if (expiredList == null)
+          expiredList = new ArrayList<PooledConnection>();
+
+        expiredList.add(pConn);
+      }
+
+      return expiredList;
+    }
+
+    /**
+     * Closes the removed connections, outside the pool lock.
+     */
+    private void closePhysical(ArrayList<PooledConnection> list)
+    {
+      if (list == null)
+        return;
+
+      for (PooledConnection pConn : list) {
+        pConn.closePhysical();
+      }
+    }
+
+    void closeLeaked(Env env)
+    {
+      ArrayList<PooledConnection> leakList = null;
+
+      synchronized (this) {
+        for (PooledConnection pConn : _activeList) {
+          if (pConn.getEnv() == env) {
+            if (leakList == null)
+              leakList = new ArrayList<PooledConnection>();
+
+            leakList.add(pConn);
+          }
+        }
+
+        if (leakList != null)
+          _leakCount += leakList.size();
+      }
+
+      if (leakList == null)
+        return;
+
+      for (PooledConnection pConn : leakList) {
+        log.warning(L.l("{0} was not closed by the script", pConn));
+
+        pConn.markForPoolRemoval();
+        pConn.close();
+      }
+    }
+
+    synchronized ArrayValue getStats()
+    {
+      ArrayValue stats = new ArrayValueImpl();
+
+      stats.put("active", _activeList.size());
+      stats.put("idle", _idleList.size());
+      stats.put("max", _maxConnections);
+      stats.put("created", _createCount);
+      stats.put("reused", _reuseCount);
+      stats.put("leaked", _leakCount);
+
+      return stats;
+    }
+  }
+
+  /**
+   * The proxy handler for a pooled connection.
+   */
+  class PooledConnection implements InvocationHandler {
+    private final Pool _pool;
+    private final Connection _conn;
+
+    private Connection _proxy;
+    private Env _env;
+    
+    private boolean _isActive;
+    private boolean _isRemove;
+    private boolean _isAutoCommitChanged;
+    private String _catalog;
+    private boolean _isCatalogChanged;
+
+    private long _idleStartTime;
+
+    PooledConnection(Pool pool, Connection conn)
+    {
+      _pool = pool;
+      _conn = conn;
+    }
+
+    Connection getPhysicalConnection()
+    {
+      return _conn;
+    }
+
+    Env getEnv()
+    {
+      return _env;
+    }
+
+    long getIdleStartTime()
+    {
+      return _idleStartTime;
+    }
+
+    void markForPoolRemoval()
+    {
+      _isRemove = true;
+    }
+
+    Connection open(Env env)
+    {
+      _env = env;
+      _isActive = true;
+      
+      // a new proxy for each use so a stale close() can't free it twice
+      _proxy = (Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(),
+        new Class[] { Connection.class },
+        this);
+
+      return _proxy;
+    }
+
+    public Object invoke(Object proxy, Method method, Object []args)
+      throws Throwable
+    {
+      String name = method.getName();
+
+      if (proxy != _proxy || ! _isActive) {
+        if ("close".equals(name))
+          return null;
+        else if ("isClosed".equals(name))
+          return Boolean.TRUE;
+        else if ("equals".equals(name))
+          return proxy == args[0];
+        else if ("hashCode".equals(name))
+          return System.identityHashCode(proxy);
+        else if ("toString".equals(name))
+          return toString();
+        
+        throw new SQLException(L.l("{0} is closed", this));
+      }
+
+      if ("close".equals(name)) {
+        close();
+        return null;
+      }
+      else if ("equals".equals(name))
+        return proxy == args[0];
+      else if ("hashCode".equals(name))
+        return System.identityHashCode(proxy);
+      else if ("toString".equals(name))
+        return toString();
+      else if ("setAutoCommit".equals(name))
+        _isAutoCommitChanged = true;
+      else if ("setCatalog".equals(name)) {
+        if (! _isCatalogChanged) {
+          _catalog = _conn.getCatalog();
+          _isCatalogChanged = true;
+        }
+      }
+      else if ("setReadOnly".equals(name)
+               || "setTransactionIsolation".equals(name)
+               || "setTypeMap".equals(name)
+               || "setHoldability".equals(name))
+        _isRemove = true;
+
+      try {
+        return method.invoke(_conn, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    /**
+     * Returns the connection to the pool, resetting any per-request
+     * state.
+     */
+    void close()
+    {
+      if (! _isActive)
+        return;
+
+      _isActive = false;
+      _env = null;
+
+      boolean isReusable = ! _isRemove;
+
+      try {
+        if (isReusable && _conn.isClosed())
+          isReusable = false;
+        
+        if (isReusable && _isAutoCommitChanged) {
+          if (! _conn.getAutoCommit()) {
+            _conn.rollback();
+            _conn.setAutoCommit(true);
+          }
+
+          _isAutoCommitChanged = false;
+        }
+
+        if (isReusable && _isCatalogChanged) {
+          _conn.setCatalog(_catalog);
+          _isCatalogChanged = false;
+        }
+
+        if (isReusable)
+          _conn.clearWarnings();
+      } catch (SQLException e) {
+        log.log(Level.FINE, e.toString(), e);
+
+        isReusable = false;
+      }
+
+      _idleStartTime = System.currentTimeMillis();
+
+      _pool.free(this, isReusable);
+    }
+
+    void closePhysical()
+    {
+      try {
+        _conn.close();
+      } catch (SQLException e) {
+        log.log(Level.FINER, e.toString(), e);
+      }
+    }
+
+    public String toString()
+    {
+      return (getClass().getSimpleName()
+              + "[" + _url + ", user=" + _pool.getUser() + "]");
+    }
+  }
+}
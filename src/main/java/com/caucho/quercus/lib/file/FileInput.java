@@ -32,11 +32,20 @@ package com.caucho.quercus.lib.file;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.EnvCleanup;
 import com.caucho.quercus.env.Value;
+import com.caucho.vfs.FilePath;
 import com.caucho.vfs.Path;
 import com.caucho.vfs.ReadStream;
 import com.caucho.vfs.LockableStream;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Represents a Quercus file open for reading
@@ -44,6 +53,12 @@ import java.io.IOException;
 public class FileInput extends ReadStreamInput
     implements LockableStream, EnvCleanup
 {
+  private static final Logger log
+    = Logger.getLogger(FileInput.class.getName());
+
+  // largest chunk sent per channel call
+  private static final int TRANSFER_CHUNK = 64 * 1024;
+
   protected Env _env;
   protected Path _path;
   protected ReadStream _is;
@@ -112,6 +127,95 @@ public class FileInput extends ReadStreamInput
       return position;
   }
 
+  /**
+   * Writes up to length bytes from the current position, or the rest of
+   * the file if length is negative, straight from the file channel to
+   * the output stream.  Returns the number of bytes written, or -1 if
+   * the file isn't a local file.
+   */
+  public long transferTo(OutputStream os, long length)
+    throws IOException
+  {
+    if (! (_path instanceof FilePath))
+      return -1;
+
+    RandomAccessFile file;
+
+    try {
+      file = new RandomAccessFile(_path.getNativePath(), "r");
+    } catch (IOException e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      return -1;
+    } catch (SecurityException e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      return -1;
+    }
+
+    try {
+      FileChannel channel = file.getChannel();
+
+      long start = getPosition();
+      long end = channel.size();
+
+      if (length >= 0 && start + length < end)
+        end = start + length;
+
+      long offset = start;
+
+      WritableByteChannel out = null;
+
+      if (os instanceof WritableByteChannel)
+        out = (WritableByteChannel) os;
+      else if (os instanceof FileOutputStream)
+        out = ((FileOutputStream) os).getChannel();
+
+      if (out != null) {
+        // the output is a channel: let the kernel copy
+
+        while (offset < end) {
+          long sublen = channel.transferTo(offset,
+                                           Math.min(end - offset,
+                                                    TRANSFER_CHUNK),
+                                           out);
+
+          if (sublen <= 0)
+            break;
+
+          offset += sublen;
+        }
+      }
+      else if (offset < end) {
+        byte []buffer = new byte[(int) Math.min(end - offset,
+                                                TRANSFER_CHUNK)];
+        ByteBuffer buf = ByteBuffer.wrap(buffer);
+
+        while (offset < end) {
+          buf.clear();
+
+          if (end - offset < buffer.length)
+            buf.limit((int) (end - offset));
+
+          int sublen = channel.read(buf, offset);
+
+          if (sublen <= 0)
+            break;
+
+          os.write(buffer, 0, sublen);
+
+          offset += sublen;
+        }
+      }
+
+      setPosition(offset);
+
+      return offset - start;
+    } finally {
+      file.close();
+    }
+  }
+
   /**
    * Lock the shared advisory lock.
    */
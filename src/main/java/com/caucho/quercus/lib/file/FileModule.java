@@ -47,6 +47,7 @@ import com.caucho.vfs.LockableStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -108,6 +109,9 @@ public class FileModule extends AbstractQuercusModule {
   public static final int SEEK_CUR = BinaryStream.SEEK_CUR;
   public static final int SEEK_END = BinaryStream.SEEK_END;
   
+  // smallest remainder fpassthru sends past the output buffers
+  private static final long DIRECT_TRANSFER_MIN = 32 * 1024L;
+
   private static final IniDefinitions _iniDefinitions = new IniDefinitions();
 
   private static final HashMap<String,Value> _constMap
@@ -1488,6 +1492,22 @@ public class FileModule extends AbstractQuercusModule {
       if (is == null)
         return BooleanValue.FALSE;
 
+      if (is instanceof FileInput) {
+        FileInput file = (FileInput) is;
+
+        // large local files bypass the output buffers when none is active
+        if (DIRECT_TRANSFER_MIN <= file.getLength() - file.getPosition()) {
+          OutputStream os = env.getRawOutputStream();
+
+          if (os != null) {
+            long length = file.transferTo(os, -1);
+
+            if (length >= 0)
+              return LongValue.create(length);
+          }
+        }
+      }
+
       WriteStream out = env.getOut();
 
       long writeLength = out.writeStream(is.getInputStream());
@@ -45,6 +45,7 @@ import com.caucho.quercus.module.AbstractQuercusModule;
 import com.caucho.quercus.module.IniDefinitions;
 import com.caucho.quercus.module.IniDefinition;
 import com.caucho.util.L10N;
+import com.caucho.util.LruCache;
 import com.caucho.vfs.Encoding;
 
 import java.io.UnsupportedEncodingException;
@@ -66,6 +67,9 @@ public class MbstringModule
   
   private static final IniDefinitions _iniDefinitions = new IniDefinitions();
 
+  private static final LruCache<String,Boolean> _singleByteCache
+    = new LruCache<String,Boolean>(64);
+
   public static final int MB_CASE_UPPER = 0;
   public static final int MB_CASE_LOWER = 1;
   public static final int MB_CASE_TITLE = 2;
@@ -1028,13 +1032,22 @@ public class MbstringModule
   {
     encoding = getEncoding(env, encoding);
 
+    if (! str.isUnicode()) {
+      if (Utf8Utility.isUtf8(encoding))
+        return LongValue.create(Utf8Utility.getLength(str));
+      else if (isSingleByte(encoding))
+        return LongValue.create(str.length());
+    }
+
     str = str.convertToUnicode(env, encoding);
 
     return LongValue.create(str.length());
   }
 
   /**
-   * Multibyte version of strpos.
+   * Multibyte version of strpos.  As in PHP 5, a negative offset is not
+   * contained in the string and returns FALSE for every encoding,
+   * rather than counting from the end or being clamped to 0.
    */
   public static Value mb_strpos(Env env,
                               StringValue haystack,
@@ -1042,8 +1055,37 @@ public class MbstringModule
                               @Optional("0") int offset,
                               @Optional("") String encoding)
   {
+    // checked once here so the byte and decoding paths can't disagree
+    if (offset < 0)
+      return BooleanValue.FALSE;
+
     encoding = getEncoding(env, encoding);
 
+    if (! haystack.isUnicode() && ! needle.isUnicode()) {
+      if (Utf8Utility.isUtf8(encoding)) {
+        if (Utf8Utility.isWellFormed(needle)) {
+          int head = Utf8Utility.skip(haystack, 0, offset);
+
+          int pos = Utf8Utility.indexOf(haystack, needle, head);
+
+          if (pos < 0)
+            return BooleanValue.FALSE;
+          else
+            return LongValue.create(offset
+                                    + Utf8Utility.getLength(haystack,
+                                                            head, pos));
+        }
+      }
+      else if (isSingleByte(encoding)) {
+        int pos = Utf8Utility.indexOf(haystack, needle, offset);
+
+        if (pos < 0)
+          return BooleanValue.FALSE;
+        else
+          return LongValue.create(pos);
+      }
+    }
+
     haystack = haystack.convertToUnicode(env, encoding);
     needle = needle.convertToUnicode(env, encoding);
 
@@ -1061,6 +1103,33 @@ public class MbstringModule
   {
     encoding = getEncoding(env, encoding);
 
+    if (! haystack.isUnicode() && ! needle.isUnicode()) {
+      boolean isUtf8 = Utf8Utility.isUtf8(encoding);
+
+      if (isUtf8 && Utf8Utility.isWellFormed(needle)
+          || ! isUtf8 && isSingleByte(encoding)) {
+        int tail;
+
+        if (offsetV.isDefault())
+          tail = haystack.length();
+        else if (offsetV.toInt() < 0)
+          tail = -1;
+        else if (isUtf8)
+          tail = Utf8Utility.skip(haystack, 0, offsetV.toInt());
+        else
+          tail = offsetV.toInt();
+
+        int pos = Utf8Utility.lastIndexOf(haystack, needle, tail);
+
+        if (pos < 0)
+          return BooleanValue.FALSE;
+        else if (isUtf8)
+          return LongValue.create(Utf8Utility.getLength(haystack, 0, pos));
+        else
+          return LongValue.create(pos);
+      }
+    }
+
     haystack = haystack.convertToUnicode(env, encoding);
     needle = needle.convertToUnicode(env, encoding);
 
@@ -1106,6 +1175,13 @@ public class MbstringModule
   {
     encoding = getEncoding(env, encoding);
 
+    if (! str.isUnicode()) {
+      if (Utf8Utility.isUtf8(encoding))
+        return LongValue.create(Utf8Utility.getLength(str));
+      else if (isSingleByte(encoding))
+        return LongValue.create(str.length());
+    }
+
     str = str.convertToUnicode(env, encoding);
 
     return LongValue.create(str.length());
@@ -1149,6 +1225,23 @@ public class MbstringModule
   {
     encoding = getEncoding(env, encoding);
 
+    if (! haystack.isUnicode() && ! needle.isUnicode()
+        && (Utf8Utility.isUtf8(encoding)
+            ? Utf8Utility.isWellFormed(needle)
+            : isSingleByte(encoding))) {
+      int count = 0;
+      int sublen = needle.length();
+
+      int i = Utf8Utility.indexOf(haystack, needle, 0);
+
+      while (i >= 0) {
+        i = Utf8Utility.indexOf(haystack, needle, i + sublen);
+        count++;
+      }
+
+      return LongValue.create(count);
+    }
+
     haystack = haystack.convertToUnicode(env, encoding);
     needle = needle.convertToUnicode(env, encoding);
 
@@ -1176,6 +1269,19 @@ public class MbstringModule
   {
     encoding = getEncoding(env, encoding);
 
+    if (! str.isUnicode()) {
+      if (Utf8Utility.isUtf8(encoding))
+        return substrUtf8(str, start, lengthV);
+      else if (isSingleByte(encoding)) {
+        Value val = StringModule.substr(env, str, start, lengthV);
+
+        if (val == BooleanValue.FALSE)
+          return StringValue.EMPTY;
+
+        return val.toStringValue(env);
+      }
+    }
+
     StringValue unicodeStr = str.convertToUnicode(env, encoding);
 
     Value val = StringModule.substr(env, unicodeStr, start, lengthV);
@@ -1189,6 +1295,73 @@ public class MbstringModule
 
   // Private helper functions
 
+  /**
+   * Returns the substring of an undecoded UTF-8 string, with the same
+   * offset rules as substr().
+   */
+  private static StringValue substrUtf8(StringValue str,
+                                        int start,
+                                        Value lengthV)
+  {
+    boolean isLength = ! lengthV.isDefault();
+    int len = lengthV.toInt();
+
+    if (isLength && len == 0)
+      return StringValue.EMPTY;
+
+    if (start < 0 || isLength && len < 0) {
+      int strLen = Utf8Utility.getLength(str);
+
+      if (start < 0)
+        start += strLen;
+
+      if (start < 0)
+        return StringValue.EMPTY;
+
+      if (isLength && len < 0) {
+        len = strLen + len - start;
+
+        if (len <= 0)
+          return StringValue.EMPTY;
+      }
+    }
+
+    int head = Utf8Utility.skip(str, 0, start);
+
+    if (str.length() <= head)
+      return StringValue.EMPTY;
+    else if (! isLength)
+      return str.substring(head);
+    else
+      return str.substring(head, Utf8Utility.skip(str, head, len));
+  }
+
+  /**
+   * Returns true if every character of the encoding is a single byte,
+   * so character offsets are byte offsets.
+   */
+  private static boolean isSingleByte(String encoding)
+  {
+    Boolean isSingleByte = _singleByteCache.get(encoding);
+
+    if (isSingleByte == null) {
+      try {
+        Charset charset = Charset.forName(encoding);
+
+        isSingleByte = charset.newEncoder().maxBytesPerChar() == 1.0f
+                       && charset.newDecoder().maxCharsPerByte() == 1.0f;
+      } catch (Exception e) {
+        log.log(Level.FINEST, e.toString(), e);
+
+        isSingleByte = Boolean.FALSE;
+      }
+
+      _singleByteCache.put(encoding, isSingleByte);
+    }
+
+    return isSingleByte;
+  }
+
   /**
    * Returns string with words capitalized and intermediate letters are
    * made lower-case.
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.i18n;
+
+import com.caucho.quercus.env.StringValue;
+
+/**
+ * Character scanning over undecoded UTF-8 byte strings.
+ *
+ * Sequences are split the same way as Utf8Decoder splits them, except
+ * that a four-byte sequence counts as a single character.  Any byte
+ * that doesn't start a complete sequence counts as one character.
+ */
+final class Utf8Utility
+{
+  private Utf8Utility()
+  {
+  }
+
+  /**
+   * Returns true if the encoding name is UTF-8.
+   */
+  static boolean isUtf8(String encoding)
+  {
+    return encoding.equalsIgnoreCase("utf-8")
+           || encoding.equalsIgnoreCase("utf8");
+  }
+
+  /**
+   * Returns the number of bytes in the character starting at offset.
+   */
+  static int getCharLength(StringValue str, int offset, int len)
+  {
+    int ch = str.charAt(offset);
+
+    if (ch <= 0x7F)
+      return 1;
+    else if (0xC2 <= ch && ch <= 0xDF) {
+      if (offset + 1 < len && isTrail(str.charAt(offset + 1)))
+        return 2;
+    }
+    else if (0xE0 <= ch && ch <= 0xEF) {
+      if (offset + 2 < len
+          && isTrail(str.charAt(offset + 1))
+          && isTrail(str.charAt(offset + 2)))
+        return 3;
+    }
+    else if (0xF0 <= ch && ch <= 0xF4) {
+      if (offset + 3 < len
+          && isTrail(str.charAt(offset + 1))
+          && isTrail(str.charAt(offset + 2))
+          && isTrail(str.charAt(offset + 3)))
+        return 4;
+    }
+
+    return -1;
+  }
+
+  private static boolean isTrail(int ch)
+  {
+    return 0x80 <= ch && ch <= 0xBF;
+  }
+
+  /**
+   * Returns the number of characters in the string.
+   */
+  static int getLength(StringValue str)
+  {
+    return getLength(str, 0, str.length());
+  }
+
+  /**
+   * Returns the number of characters between the byte offsets.
+   */
+  static int getLength(StringValue str, int offset, int end)
+  {
+    int len = str.length();
+    int count = 0;
+
+    while (offset < end) {
+      if (str.charAt(offset) <= 0x7F)
+        offset++;
+      else {
+        int charLength = getCharLength(str, offset, len);
+
+        offset += charLength > 0 ? charLength : 1;
+      }
+
+      count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the byte offset after skipping count characters from offset,
+   * or the string length if the string ends first.
+   */
+  static int skip(StringValue str, int offset, int count)
+  {
+    int len = str.length();
+
+    for (; count > 0 && offset < len; count--) {
+      if (str.charAt(offset) <= 0x7F)
+        offset++;
+      else {
+        int charLength = getCharLength(str, offset, len);
+
+        offset += charLength > 0 ? charLength : 1;
+      }
+    }
+
+    return offset;
+  }
+
+  /**
+   * Returns true if the string is a non-empty sequence of complete
+   * characters.  Byte matches of such a string always start and end on
+   * character boundaries.
+   */
+  static boolean isWellFormed(StringValue str)
+  {
+    int len = str.length();
+
+    if (len == 0)
+      return false;
+
+    for (int offset = 0; offset < len; ) {
+      int charLength = getCharLength(str, offset, len);
+
+      if (charLength < 0)
+        return false;
+
+      offset += charLength;
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the first byte offset of the match at or after head.
+   */
+  static int indexOf(StringValue str, StringValue match, int head)
+  {
+    int matchLength = match.length();
+
+    if (matchLength <= 0 || head < 0)
+      return -1;
+
+    int end = str.length() - matchLength;
+    char first = match.charAt(0);
+
+    loop:
+    for (; head <= end; head++) {
+      if (str.charAt(head) != first)
+        continue;
+
+      for (int i = 1; i < matchLength; i++) {
+        if (str.charAt(head + i) != match.charAt(i))
+          continue loop;
+      }
+
+      return head;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the last byte offset of the match at or before tail.
+   */
+  static int lastIndexOf(StringValue str, StringValue match, int tail)
+  {
+    int matchLength = match.length();
+
+    if (matchLength <= 0 || tail < 0)
+      return -1;
+
+    if (tail > str.length() - matchLength)
+      tail = str.length() - matchLength;
+
+    char first = match.charAt(0);
+
+    loop:
+    for (; tail >= 0; tail--) {
+      if (str.charAt(tail) != first)
+        continue;
+
+      for (int i = 1; i < matchLength; i++) {
+        if (str.charAt(tail + i) != match.charAt(i))
+          continue loop;
+      }
+
+      return tail;
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.session;
+
+import com.caucho.util.CurrentTime;
+import com.caucho.vfs.Path;
+import com.caucho.vfs.ReadStream;
+import com.caucho.vfs.WriteStream;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Session store keeping one <code>sess_</code> file per session in a
+ * directory, like PHP's files handler.
+ *
+ * Writes are queued and flushed in batches by a daemon thread, so a
+ * session saved by several requests in a row is only written once.
+ * Loads see the queued data before it reaches the disk.  If threads are
+ * not allowed, or once the store is closed, writes go straight to the
+ * file instead.
+ */
+public class FileSessionStore implements SessionStore
+{
+  private static final Logger log
+    = Logger.getLogger(FileSessionStore.class.getName());
+
+  // interval between batched writes
+  private static final long FLUSH_INTERVAL = 1000L;
+
+  // interval between expiry sweeps
+  private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+  private static final String PREFIX = "sess_";
+
+  // longest session id mapped to a file
+  private static final int MAX_ID_LENGTH = 128;
+
+  // queued marker for a session that was accessed but not changed
+  private static final Object TOUCH = new Object();
+
+  private final Path _dir;
+  private final long _maxIdleTime;
+
+  // pending writes: the encoded session or TOUCH
+  private final ConcurrentHashMap<String,Object> _pending
+    = new ConcurrentHashMap<String,Object>();
+
+  private volatile Thread _flusherThread;
+
+  private volatile long _nextSweepTime;
+
+  public FileSessionStore(Path dir, long maxIdleTime)
+  {
+    _dir = dir;
+    _maxIdleTime = maxIdleTime;
+
+    try {
+      dir.mkdirs();
+    } catch (IOException e) {
+      log.log(Level.FINE, e.toString(), e);
+    }
+
+    _nextSweepTime = CurrentTime.getCurrentTime() + SWEEP_INTERVAL;
+
+    startFlusher();
+  }
+
+  private void startFlusher()
+  {
+    try {
+      Thread thread = new Thread(new Flusher(this), "session-flusher");
+      thread.setDaemon(true);
+
+      _flusherThread = thread;
+
+      thread.start();
+    } catch (SecurityException e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      _flusherThread = null;
+    }
+  }
+
+  /**
+   * Returns the session directory.
+   */
+  public Path getPath()
+  {
+    return _dir;
+  }
+
+  public String load(String id)
+  {
+    Object pending = _pending.get(id);
+
+    if (pending instanceof String)
+      return (String) pending;
+
+    Path path = lookup(id);
+
+    if (path == null || ! path.exists())
+      return null;
+
+    if (path.getLastModified() + _maxIdleTime < CurrentTime.getCurrentTime())
+      return null;
+
+    ReadStream is = null;
+
+    try {
+      is = path.openRead();
+
+      int length = (int) path.getLength();
+      byte []buffer = new byte[length];
+
+      int offset = 0;
+      while (offset < length) {
+        int sublen = is.read(buffer, offset, length - offset);
+
+        if (sublen <= 0)
+          break;
+
+        offset += sublen;
+      }
+
+      return new String(buffer, 0, offset, "UTF-8");
+    } catch (IOException e) {
+      log.log(Level.FINE, e.toString(), e);
+
+      return null;
+    } finally {
+      if (is != null)
+        is.close();
+    }
+  }
+
+  public void store(String id, String data)
+  {
+    if (lookup(id) == null)
+      return;
+
+    _pending.put(id, data);
+
+    if (_flusherThread == null)
+      flush();
+  }
+
+  public void touch(String id)
+  {
+    if (lookup(id) == null)
+      return;
+
+    _pending.putIfAbsent(id, TOUCH);
+
+    if (_flusherThread == null)
+      flush();
+  }
+
+  public void remove(String id)
+  {
+    Path path = lookup(id);
+
+    if (path == null)
+      return;
+
+    synchronized (this) {
+      _pending.remove(id);
+
+      try {
+        path.remove();
+      } catch (IOException e) {
+        log.log(Level.FINE, e.toString(), e);
+      }
+    }
+  }
+
+  /**
+   * Writes the queued sessions.
+   */
+  public void flush()
+  {
+    for (Map.Entry<String,Object> entry : _pending.entrySet()) {
+      String id = entry.getKey();
+      Object value = entry.getValue();
+
+      synchronized (this) {
+        // a later store or a remove supersedes this entry
+        if (_pending.get(id) != value)
+          continue;
+
+        if (value == TOUCH)
+          touchFile(id);
+        else
+          writeFile(id, (String) value);
+
+        _pending.remove(id, value);
+      }
+    }
+
+    if (_flusherThread == null && _nextSweepTime < CurrentTime.getCurrentTime())
+      sweep();
+  }
+
+  /**
+   * Stops the flusher thread and writes the queued sessions.
+   */
+  public void close()
+  {
+    Thread thread = _flusherThread;
+    _flusherThread = null;
+
+    if (thread != null)
+      thread.interrupt();
+
+    flush();
+  }
+
+  /**
+   * Removes the expired session files.
+   */
+  void sweep()
+  {
+    long now = CurrentTime.getCurrentTime();
+
+    _nextSweepTime = now + SWEEP_INTERVAL;
+
+    try {
+      String []list = _dir.list();
+
+      for (int i = 0; list != null && i < list.length; i++) {
+        String name = list[i];
+
+        if (! name.startsWith(PREFIX))
+          continue;
+
+        Path path = _dir.lookup(name);
+
+        if (path.getLastModified() + _maxIdleTime < now)
+          path.remove();
+      }
+    } catch (IOException e) {
+      log.log(Level.FINE, e.toString(), e);
+    }
+  }
+
+  private void writeFile(String id, String data)
+  {
+    Path path = lookup(id);
+    Path tmp = _dir.lookup(path.getTail() + ".tmp");
+
+    WriteStream os = null;
+
+    try {
+      byte []bytes = data.getBytes("UTF-8");
+
+      os = tmp.openWrite();
+      os.write(bytes, 0, bytes.length);
+      os.close();
+      os = null;
+
+      // the rename keeps readers from seeing a partial session
+      if (! tmp.renameTo(path)) {
+        path.remove();
+        tmp.renameTo(path);
+      }
+    } catch (IOException e) {
+      log.log(Level.WARNING, "can't save session " + path + ": " + e, e);
+    } finally {
+      if (os != null) {
+        try {
+          os.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  private void touchFile(String id)
+  {
+    Path path = lookup(id);
+
+    if (path.exists())
+      path.setLastModified(CurrentTime.getCurrentTime());
+  }
+
+  /**
+   * Returns the file for the session id, or null if the id can't be a
+   * session id.  Characters other than letters and digits are escaped,
+   * so ids can't name files outside the directory.
+   */
+  private Path lookup(String id)
+  {
+    int len = id.length();
+
+    if (len == 0 || MAX_ID_LENGTH < len)
+      return null;
+
+    StringBuilder sb = new StringBuilder(PREFIX.length() + 2 * len);
+    sb.append(PREFIX);
+
+    for (int i = 0; i < len; i++) {
+      char ch = id.charAt(i);
+
+      if ('a' <= ch && ch <= 'z' || 'A' <= ch && ch <= 'Z'
+          || '0' <= ch && ch <= '9') {
+        sb.append(ch);
+      }
+      else if (' ' < ch && ch < 0x7f) {
+        sb.append('_');
+        sb.append(Character.forDigit(ch >> 4, 16));
+        sb.append(Character.forDigit(ch & 0xf, 16));
+      }
+      else
+        return null;
+    }
+
+    return _dir.lookup(sb.toString());
+  }
+
+  public String toString()
+  {
+    return "FileSessionStore[" + _dir + "]";
+  }
+
+  static class Flusher implements Runnable {
+    private final WeakReference<FileSessionStore> _storeRef;
+
+    Flusher(FileSessionStore store)
+    {
+      _storeRef = new WeakReference<FileSessionStore>(store);
+    }
+
+    public void run()
+    {
+      try {
+        do {
+          Thread.sleep(FLUSH_INTERVAL);
+        } while (flush());
+      } catch (InterruptedException e) {
+        log.log(Level.FINER, e.toString(), e);
+      }
+    }
+
+    /**
+     * Flushes the store, returning false once it has been closed or
+     * collected.
+     */
+    private boolean flush()
+    {
+      FileSessionStore store = _storeRef.get();
+
+      if (store == null || store._flusherThread != Thread.currentThread())
+        return false;
+
+      store.flush();
+
+      if (store._nextSweepTime < CurrentTime.getCurrentTime())
+        store.sweep();
+
+      return true;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.session;
+
+import com.caucho.util.CurrentTime;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session store keeping the encoded sessions in memory.  It outlives
+ * the session manager's cache of live sessions, but not the JVM.
+ */
+public class MemorySessionStore implements SessionStore
+{
+  // interval between expiry sweeps
+  private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+  private final ConcurrentHashMap<String,Entry> _map
+    = new ConcurrentHashMap<String,Entry>();
+
+  private final long _maxIdleTime;
+
+  private volatile long _nextSweepTime;
+
+  public MemorySessionStore(long maxIdleTime)
+  {
+    _maxIdleTime = maxIdleTime;
+
+    _nextSweepTime = CurrentTime.getCurrentTime() + SWEEP_INTERVAL;
+  }
+
+  public String load(String id)
+  {
+    Entry entry = _map.get(id);
+
+    if (entry == null)
+      return null;
+
+    long now = CurrentTime.getCurrentTime();
+
+    if (entry._accessTime + _maxIdleTime < now) {
+      _map.remove(id, entry);
+
+      return null;
+    }
+
+    entry._accessTime = now;
+
+    return entry._data;
+  }
+
+  public void store(String id, String data)
+  {
+    long now = CurrentTime.getCurrentTime();
+
+    _map.put(id, new Entry(data, now));
+
+    if (_nextSweepTime < now)
+      sweep(now);
+  }
+
+  public void touch(String id)
+  {
+    Entry entry = _map.get(id);
+
+    if (entry != null)
+      entry._accessTime = CurrentTime.getCurrentTime();
+  }
+
+  public void remove(String id)
+  {
+    _map.remove(id);
+  }
+
+  public void flush()
+  {
+  }
+
+  public void close()
+  {
+  }
+
+  /**
+   * Removes the expired sessions.
+   */
+  private void sweep(long now)
+  {
+    _nextSweepTime = now + SWEEP_INTERVAL;
+
+    Iterator<Entry> iter = _map.values().iterator();
+
+    while (iter.hasNext()) {
+      Entry entry = iter.next();
+
+      if (entry._accessTime + _maxIdleTime < now)
+        iter.remove();
+    }
+  }
+
+  public String toString()
+  {
+    return "MemorySessionStore[" + _map.size() + "]";
+  }
+
+  static class Entry {
+    final String _data;
+    volatile long _accessTime;
+
+    Entry(String data, long accessTime)
+    {
+      _data = data;
+      _accessTime = accessTime;
+    }
+  }
+}
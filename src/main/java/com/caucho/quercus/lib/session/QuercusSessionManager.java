@@ -33,11 +33,13 @@ import com.caucho.config.ConfigException;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.SessionArrayValue;
 import com.caucho.util.*;
+import com.caucho.vfs.Path;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -67,6 +69,11 @@ public class QuercusSessionManager {
   protected ArrayList<SessionArrayValue> _sessionList 
     = new ArrayList<SessionArrayValue>();
 
+  // persistent stores, by session.save_path
+  private final HashMap<String,SessionStore> _storeMap
+    = new HashMap<String,SessionStore>();
+  private SessionStore _memoryStore;
+
   // maximum number of sessions
   protected int _sessionMax = 4096;
   private long _sessionTimeout = 30 * 60 * 1000L;
@@ -262,6 +269,10 @@ public class QuercusSessionManager {
   {
     _sessions.remove(sessionId);
 
+    for (SessionStore store : getSessionStores()) {
+      store.remove(sessionId);
+    }
+
     remove(sessionId);
   }
 
@@ -403,12 +414,80 @@ public class QuercusSessionManager {
 
   public void saveSession(Env env, SessionArrayValue session)
   {
-    SessionArrayValue copy = (SessionArrayValue) session.copy(env);
+    String id = session.getId();
+    String data = session.getData(env);
+
+    SessionStore store = getSessionStore(env);
+
+    // unchanged sessions are only touched, never rewritten
+    if (! data.equals(session.getStoredData()))
+      store.store(id, data);
+    else if (data.length() > 0)
+      store.touch(id);
+
+    SessionArrayValue copy
+      = createSessionValue(id, session.getAccessTime(), _sessionTimeout);
 
-    _sessions.put(session.getId(), copy);
+    copy.setData(data);
+    copy.setValid(true);
+
+    _sessions.put(id, copy);
     session.finish();
   }
 
+  /**
+   * Returns the store selected by session.save_handler and
+   * session.save_path: a directory of session files for the "files"
+   * handler with a save path, and memory otherwise.
+   */
+  protected SessionStore getSessionStore(Env env)
+  {
+    String handler = env.getIniString("session.save_handler");
+    String savePath = env.getIniString("session.save_path");
+
+    // the "N;MODE;/path" form only uses the path
+    if (savePath != null && savePath.lastIndexOf(';') >= 0)
+      savePath = savePath.substring(savePath.lastIndexOf(';') + 1);
+
+    synchronized (_storeMap) {
+      if (! "files".equals(handler)
+          || savePath == null || "".equals(savePath)) {
+        if (_memoryStore == null)
+          _memoryStore = new MemorySessionStore(_sessionTimeout);
+
+        return _memoryStore;
+      }
+
+      SessionStore store = _storeMap.get(savePath);
+
+      if (store == null) {
+        Path dir = env.getPwd().lookup(savePath);
+
+        store = new FileSessionStore(dir, _sessionTimeout);
+
+        _storeMap.put(savePath, store);
+      }
+
+      return store;
+    }
+  }
+
+  /**
+   * Returns the stores created so far.
+   */
+  private ArrayList<SessionStore> getSessionStores()
+  {
+    synchronized (_storeMap) {
+      ArrayList<SessionStore> stores
+        = new ArrayList<SessionStore>(_storeMap.values());
+
+      if (_memoryStore != null)
+        stores.add(_memoryStore);
+
+      return stores;
+    }
+  }
+
   /**
    * Creates a session.  It's already been established that the
    * key does not currently have a session.
@@ -457,7 +536,7 @@ public class QuercusSessionManager {
       else if (now <= 0) {
         return false;
       }
-      else if (session.load()) {
+      else if (session.load() && loadData(env, session)) {
         session.setAccess(now);
         return true;
       }
@@ -472,6 +551,23 @@ public class QuercusSessionManager {
     return false;
   }
 
+  /**
+   * Fills the session from the store, returning false if the store has
+   * no such session.  The data is only decoded on first access.
+   */
+  private boolean loadData(Env env, SessionArrayValue session)
+  {
+    String data = getSessionStore(env).load(session.getId());
+
+    if (data == null)
+      return false;
+
+    session.setData(data);
+    session.setValid(true);
+
+    return true;
+  }
+
   /**
    * Timeout for reaping old sessions.
    */
@@ -574,6 +670,14 @@ public class QuercusSessionManager {
         isError = true;
       }
     }
+
+    for (SessionStore store : getSessionStores()) {
+      try {
+        store.close();
+      } catch (Exception e) {
+        log.log(Level.WARNING, "Can't close " + store + ": " + e, e);
+      }
+    }
   }
 
   /**
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.session;
+
+/**
+ * Persistent backing store for PHP sessions.
+ *
+ * Sessions are handed to the store in their encoded
+ * <code>key|value</code> form, so a store never needs an Env.  The
+ * session manager only calls store() when the encoded form changed
+ * and touch() otherwise.
+ */
+public interface SessionStore
+{
+  /**
+   * Returns the encoded session, or null if the store has no live
+   * session for the id.
+   */
+  public String load(String id);
+
+  /**
+   * Saves the encoded session.
+   */
+  public void store(String id, String data);
+
+  /**
+   * Marks an unchanged session as accessed, so it doesn't expire.
+   */
+  public void touch(String id);
+
+  /**
+   * Removes the session.
+   */
+  public void remove(String id);
+
+  /**
+   * Writes any pending changes.
+   */
+  public void flush();
+
+  /**
+   * Writes any pending changes and releases the store.
+   */
+  public void close();
+}
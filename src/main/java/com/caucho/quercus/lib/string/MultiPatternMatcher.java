@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.string;
+
+import com.caucho.quercus.env.ArrayValue;
+import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.LongValue;
+import com.caucho.quercus.env.StringValue;
+import com.caucho.quercus.env.Value;
+import com.caucho.util.SegmentedLruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Trie over a set of search strings, used by strtr() and str_replace()
+ * to replace all of them in a single pass over the subject.  At each
+ * position the longest search string starting there is replaced.
+ *
+ * Matchers are cached by their search strings only.  The replacements
+ * are passed to each call, so templates filled with per-request values
+ * share one matcher and the cache never holds those values.
+ */
+class MultiPatternMatcher {
+  private static final SegmentedLruCache<Key,MultiPatternMatcher> _strtrCache
+    = new SegmentedLruCache<Key,MultiPatternMatcher>(256);
+
+  private static final SegmentedLruCache<Key,MultiPatternMatcher> _replaceCache
+    = new SegmentedLruCache<Key,MultiPatternMatcher>(256);
+
+  private final StringValue []_from;
+
+  // node 0 is the root.  The children of a node are the entries
+  // _childStart[node] to _childStart[node + 1] - 1, sorted by char.
+  private final int []_childStart;
+  private final char []_childChars;
+  private final int []_childNodes;
+
+  // index of the search string ending at the node, or -1
+  private final int []_match;
+
+  // children of the root for chars below 256
+  private final int []_rootNext = new int[256];
+
+  // true if str_replace() matches could overlap, so the order matters
+  private final boolean _isOverlapping;
+
+  private MultiPatternMatcher(StringValue []from, boolean isReplace)
+  {
+    _from = from;
+
+    int size = from.length;
+    int nodeCount = 1;
+
+    Integer []order = new Integer[size];
+
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+      nodeCount += from[i].length();
+    }
+
+    Arrays.sort(order, new PatternComparator(from));
+
+    _childStart = new int[nodeCount + 1];
+    _childChars = new char[nodeCount];
+    _childNodes = new int[nodeCount];
+    _match = new int[nodeCount];
+
+    // the patterns sharing each node's prefix, for the overlap check
+    int []passCount = new int[nodeCount];
+    int []passPattern = new int[nodeCount];
+
+    // breadth-first, so each node's children get consecutive entries.
+    // Each queued node covers the sorted patterns lo to hi - 1, which
+    // share its prefix of length depth.
+    int []queueLo = new int[nodeCount];
+    int []queueHi = new int[nodeCount];
+    int []queueDepth = new int[nodeCount];
+
+    queueHi[0] = size;
+
+    boolean isDuplicate = false;
+    int nodes = 1;
+    int children = 0;
+
+    for (int node = 0; node < nodes; node++) {
+      int lo = queueLo[node];
+      int hi = queueHi[node];
+      int depth = queueDepth[node];
+
+      passCount[node] = hi - lo;
+      passPattern[node] = hi > lo ? order[lo] : -1;
+
+      _match[node] = -1;
+      _childStart[node] = children;
+
+      // the shortest patterns sort first
+      for (; lo < hi && from[order[lo]].length() == depth; lo++) {
+        if (_match[node] < 0)
+          _match[node] = order[lo];
+        else
+          isDuplicate = true;
+      }
+
+      while (lo < hi) {
+        char ch = from[order[lo]].charAt(depth);
+
+        int end = lo + 1;
+        while (end < hi && from[order[end]].charAt(depth) == ch)
+          end++;
+
+        int child = nodes++;
+
+        queueLo[child] = lo;
+        queueHi[child] = end;
+        queueDepth[child] = depth + 1;
+
+        _childChars[children] = ch;
+        _childNodes[children] = child;
+        children++;
+
+        if (node == 0 && ch < _rootNext.length)
+          _rootNext[ch] = child;
+
+        lo = end;
+      }
+    }
+
+    _childStart[nodes] = children;
+
+    if (isReplace)
+      _isOverlapping = isDuplicate || isOverlapping(passCount, passPattern);
+    else
+      _isOverlapping = false;
+  }
+
+  /**
+   * Implements strtr() with an array, returning the string itself if
+   * the map has no non-empty keys.
+   */
+  static StringValue strtr(Env env, StringValue string, ArrayValue map)
+  {
+    ArrayList<StringValue> fromList = new ArrayList<StringValue>();
+    ArrayList<StringValue> toList = new ArrayList<StringValue>();
+
+    for (Map.Entry<Value,Value> entry : map.entrySet()) {
+      StringValue from = entry.getKey().toStringValue(env);
+
+      if (from.length() == 0)
+        continue;
+
+      fromList.add(from);
+      toList.add(entry.getValue().toStringValue(env));
+    }
+
+    if (fromList.size() == 0)
+      return string;
+
+    StringValue []from = toArray(fromList);
+    StringValue []to = toArray(toList);
+
+    return getMatcher(_strtrCache, from, false).replace(string, to, null);
+  }
+
+  /**
+   * Implements str_replace() with an array of search strings in a
+   * single pass, adding the number of replacements to count.  Returns
+   * null if replacing the strings one after another can give a
+   * different result than a single pass.
+   */
+  static StringValue strReplace(ArrayValue search,
+                                Value replace,
+                                StringValue subject,
+                                Value count)
+  {
+    if (search.getSize() < 2)
+      return null;
+
+    ArrayList<StringValue> fromList = new ArrayList<StringValue>();
+    ArrayList<StringValue> toList = new ArrayList<StringValue>();
+
+    Iterator<Value> replaceIter = null;
+    StringValue replaceString = null;
+
+    if (replace instanceof ArrayValue)
+      replaceIter = ((ArrayValue) replace).values().iterator();
+    else
+      replaceString = replace.toStringValue();
+
+    for (Value searchItem : search.values()) {
+      StringValue from = searchItem.toStringValue();
+
+      if (from.length() == 0)
+        return null;
+
+      fromList.add(from);
+
+      if (replaceIter == null)
+        toList.add(replaceString);
+      else if (replaceIter.hasNext())
+        toList.add(replaceIter.next().toStringValue());
+      else
+        toList.add(from.createStringBuilder());
+    }
+
+    StringValue []from = toArray(fromList);
+    StringValue []to = toArray(toList);
+
+    MultiPatternMatcher matcher = getMatcher(_replaceCache, from, true);
+
+    if (matcher._isOverlapping || isReplacementMatched(from, to))
+      return null;
+
+    return matcher.replace(subject, to, count);
+  }
+
+  private static MultiPatternMatcher
+    getMatcher(SegmentedLruCache<Key,MultiPatternMatcher> cache,
+               StringValue []from,
+               boolean isReplace)
+  {
+    Key key = new Key(from);
+
+    MultiPatternMatcher matcher = cache.get(key);
+
+    if (matcher == null) {
+      // the caller's strings may be modified in place later
+      StringValue []fromCopy = new StringValue[from.length];
+
+      for (int i = 0; i < from.length; i++)
+        fromCopy[i] = copy(from[i]);
+
+      matcher = new MultiPatternMatcher(fromCopy, isReplace);
+
+      cache.put(new Key(fromCopy), matcher);
+    }
+
+    return matcher;
+  }
+
+  private static StringValue []toArray(ArrayList<StringValue> list)
+  {
+    StringValue []array = new StringValue[list.size()];
+    list.toArray(array);
+
+    return array;
+  }
+
+  private static StringValue copy(StringValue value)
+  {
+    return value.createStringBuilder().append(value);
+  }
+
+  /**
+   * Replaces the matches in the subject, adding the number of
+   * replacements to count.
+   *
+   * @param to the replacement for each search string
+   * @param count the replacement count, or null
+   *
+   * @return the subject itself if nothing matched
+   */
+  private StringValue replace(StringValue subject,
+                              StringValue []to,
+                              Value count)
+  {
+    int length = subject.length();
+
+    StringValue result = null;
+    int head = 0;
+    int matches = 0;
+
+    int i = 0;
+    while (i < length) {
+      char ch = subject.charAt(i);
+
+      int node;
+
+      if (ch < _rootNext.length)
+        node = _rootNext[ch];
+      else
+        node = getChild(0, ch);
+
+      int match = -1;
+      int end = 0;
+      int j = i + 1;
+
+      while (node > 0) {
+        if (_match[node] >= 0) {
+          match = _match[node];
+          end = j;
+        }
+
+        if (j == length)
+          break;
+
+        node = getChild(node, subject.charAt(j++));
+      }
+
+      if (match < 0) {
+        i++;
+        continue;
+      }
+
+      if (result == null)
+        result = subject.createStringBuilder();
+
+      result = result.append(subject, head, i);
+      result = result.append(to[match]);
+
+      matches++;
+      head = i = end;
+    }
+
+    if (count != null && matches > 0)
+      count.set(LongValue.create(count.toLong() + matches));
+
+    if (result == null)
+      return subject;
+
+    if (head < length)
+      result = result.append(subject, head, length);
+
+    return result;
+  }
+
+  /**
+   * Returns the child of the node for the char, or 0.
+   */
+  private int getChild(int node, char ch)
+  {
+    int lo = _childStart[node];
+    int hi = _childStart[node + 1] - 1;
+
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      char midChar = _childChars[mid];
+
+      if (midChar < ch)
+        lo = mid + 1;
+      else if (ch < midChar)
+        hi = mid - 1;
+      else
+        return _childNodes[mid];
+    }
+
+    return 0;
+  }
+
+  /**
+   * Returns true if one search string contains another, or a suffix of
+   * one is a prefix of another.  Otherwise no two matches can overlap,
+   * and the order the strings are replaced in doesn't matter.
+   */
+  private boolean isOverlapping(int []passCount, int []passPattern)
+  {
+    for (int p = 0; p < _from.length; p++) {
+      StringValue from = _from[p];
+      int length = from.length();
+
+      for (int start = 0; start < length; start++) {
+        int node = 0;
+        int i = start;
+
+        for (; i < length; i++) {
+          node = getChild(node, from.charAt(i));
+
+          if (node == 0)
+            break;
+          else if (_match[node] >= 0 && _match[node] != p)
+            return true;
+        }
+
+        if (node != 0 && start > 0
+            && (passCount[node] > 1 || passPattern[node] != p))
+          return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns true if a search string could match text produced by an
+   * earlier replacement, which a single pass would miss.  This depends
+   * on the replacements, so it runs on every call.
+   */
+  private static boolean isReplacementMatched(StringValue []fromArray,
+                                              StringValue []toArray)
+  {
+    BitSet replacedChars = new BitSet();
+    boolean isRemoved = false;
+
+    for (int p = 0; p < fromArray.length; p++) {
+      StringValue from = fromArray[p];
+      int length = from.length();
+
+      // removing text joins its neighbors, which a longer string can span
+      if (isRemoved && length > 1)
+        return true;
+
+      for (int i = 0; i < length; i++) {
+        if (replacedChars.get(from.charAt(i)))
+          return true;
+      }
+
+      StringValue to = toArray[p];
+
+      if (to.length() == 0)
+        isRemoved = true;
+
+      for (int i = to.length() - 1; i >= 0; i--)
+        replacedChars.set(to.charAt(i));
+    }
+
+    return false;
+  }
+
+  static final class Key {
+    private final StringValue []_from;
+    private final int _hash;
+
+    Key(StringValue []from)
+    {
+      _from = from;
+
+      _hash = Arrays.hashCode(from);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return _hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (! (o instanceof Key))
+        return false;
+
+      Key key = (Key) o;
+
+      return _hash == key._hash && Arrays.equals(_from, key._from);
+    }
+  }
+
+  /**
+   * Sorts pattern indexes by their strings, shorter prefixes first.
+   */
+  static final class PatternComparator implements Comparator<Integer> {
+    private final StringValue []_from;
+
+    PatternComparator(StringValue []from)
+    {
+      _from = from;
+    }
+
+    public int compare(Integer aIndex, Integer bIndex)
+    {
+      StringValue a = _from[aIndex];
+      StringValue b = _from[bIndex];
+
+      int aLength = a.length();
+      int bLength = b.length();
+      int length = Math.min(aLength, bLength);
+
+      for (int i = 0; i < length; i++) {
+        char aChar = a.charAt(i);
+        char bChar = b.charAt(i);
+
+        if (aChar != bChar)
+          return aChar < bChar ? -1 : 1;
+      }
+
+      if (aLength != bLength)
+        return aLength < bLength ? -1 : 1;
+      else
+        return aIndex < bIndex ? -1 : aIndex > bIndex ? 1 : 0;
+    }
+  }
+}
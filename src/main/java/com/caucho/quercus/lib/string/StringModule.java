@@ -43,6 +43,7 @@ import com.caucho.util.CharBuffer;
 import com.caucho.util.FreeList;
 import com.caucho.util.L10N;
 import com.caucho.util.RandomUtil;
+import com.caucho.util.SegmentedLruCache;
 import com.caucho.vfs.ByteToChar;
 import com.caucho.vfs.Path;
 
@@ -53,8 +54,6 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Currency;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -95,6 +94,12 @@ public class StringModule extends AbstractQuercusModule {
 
   private static final DecimalFormatSymbols DEFAULT_DECIMAL_FORMAT_SYMBOLS ;
 
+  // longer formats are parsed on every call
+  private static final int PRINTF_CACHE_MAX_LENGTH = 1024;
+
+  private static final SegmentedLruCache<StringValue,PrintfSegment[]> _printfCache
+    = new SegmentedLruCache<StringValue,PrintfSegment[]>(1024);
+
   private static final FreeList<MessageDigest> _md5FreeList
     = new FreeList<MessageDigest>(16);
 
@@ -1859,18 +1864,32 @@ public class StringModule extends AbstractQuercusModule {
    */
   public static Value sprintf(Env env, StringValue format, Value []args)
   {
-    ArrayList<PrintfSegment> segments = parsePrintfFormat(env, format);
+    PrintfSegment []segments = _printfCache.get(format);
+
+    if (segments == null) {
+      segments = parsePrintfFormat(format);
+
+      if (format.length() <= PRINTF_CACHE_MAX_LENGTH) {
+        // the caller's format string may be modified in place later
+        StringValue key = format.createStringBuilder().append(format);
+
+        _printfCache.put(key, segments);
+      }
+    }
 
     StringValue sb = format.createStringBuilder();
 
     for (PrintfSegment segment : segments)
-      segment.apply(sb, args);
+      segment.apply(env, sb, args);
 
     return sb;
   }
 
-  private static ArrayList<PrintfSegment> parsePrintfFormat(Env env,
-                                                            StringValue format)
+  /**
+   * Parses a printf format into its segments.  The segments don't depend
+   * on the Env, so they can be shared by all requests.
+   */
+  private static PrintfSegment []parsePrintfFormat(StringValue format)
   { 
     ArrayList<PrintfSegment> segments = new ArrayList<PrintfSegment>();
 
@@ -1989,19 +2008,19 @@ public class StringModule extends AbstractQuercusModule {
    
             sb.append(ch);
 
-            segments.add(LongPrintfSegment.create(env, sb.toString(), index++));
+            segments.add(LongPrintfSegment.create(sb.toString(), index++));
             sb.setLength(0);
             i = j;
             break loop;
 
           case 'e': case 'E': case 'f': case 'g': case 'G':
           case 'F':
-            QuercusLocale locale = null;
+            boolean isLocale = true;
             
-            if (ch == 'F')
+            if (ch == 'F') {
               ch = 'f';
-            else
-              locale = env.getLocaleInfo().getNumeric();
+              isLocale = false;
+            }
             
             sb.setLength(sb.length() - 1);
             if (sb.length() > 0)
@@ -2034,7 +2053,7 @@ public class StringModule extends AbstractQuercusModule {
 
             segments.add(new DoublePrintfSegment(sb.toString(),
                                                  index++,
-                                                 locale));
+                                                 isLocale));
             sb.setLength(0);
             i = j;
             break loop;
@@ -2058,7 +2077,10 @@ public class StringModule extends AbstractQuercusModule {
     if (sb.length() > 0)
       segments.add(new TextPrintfSegment(sb));
 
-    return segments;
+    PrintfSegment []segmentArray = new PrintfSegment[segments.size()];
+    segments.toArray(segmentArray);
+
+    return segmentArray;
   }
   
   /**
@@ -2629,6 +2651,12 @@ public class StringModule extends AbstractQuercusModule {
                                       Value count,
                                       boolean isInsensitive)
   {
+    StringValue result = null;
+
+    if (search instanceof ArrayValue && ! isInsensitive)
+      result = MultiPatternMatcher.strReplace((ArrayValue) search, replace,
+                                              subject, count);
+
     if (! search.isArray()) {
       StringValue searchString = search.toStringValue(env);
 
@@ -2646,6 +2674,9 @@ public class StringModule extends AbstractQuercusModule {
                                count,
                                isInsensitive);
     }
+    else if (result != null) {
+      subject = result;
+    }
     else if (replace instanceof ArrayValue) {
       ArrayValue searchArray = (ArrayValue) search;
       ArrayValue replaceArray = (ArrayValue) replace;
@@ -3984,90 +4015,9 @@ public class StringModule extends AbstractQuercusModule {
    * @param string the source string
    * @param map the character map
    */
-  @SuppressWarnings("unchecked")
   private static StringValue strtrArray(Env env, StringValue string, ArrayValue map)
   {
-    int size = map.getSize();
-
-    StringValue []fromList = new StringValue[size];
-    StringValue []toList = new StringValue[size];
-
-    Map.Entry<Value,Value> [] entryArray = (Map.Entry<Value,Value>[])new Map.Entry[size];
-
-    int i = 0;
-    for (Map.Entry<Value,Value> entry : map.entrySet()) {
-      entryArray[i++] = entry;
-    }
-
-    // sort entries in descending fashion
-    Arrays.sort(entryArray, new StrtrComparator<Map.Entry<Value,Value>>());
-
-    boolean []charSet = new boolean[256];
-
-    for (i = 0; i < size; i++) {
-      fromList[i] = entryArray[i].getKey().toStringValue(env);
-      toList[i] = entryArray[i].getValue().toStringValue(env);
-
-      charSet[fromList[i].charAt(0)] = true;
-    }
-
-    StringValue result = string.createStringBuilder();
-    int len = string.length();
-    int head = 0;
-
-    top:
-    while (head < len) {
-      char ch = string.charAt(head);
-
-      if (charSet.length <= ch || charSet[ch]) {
-        fromLoop:
-        for (i = 0; i < fromList.length; i++) {
-          StringValue from = fromList[i];
-          int fromLen = from.length();
-        
-          if (head + fromLen > len)
-            continue;
-
-          if (ch != from.charAt(0))
-            continue;
-        
-          for (int j = 0; j < fromLen; j++) {
-            if (string.charAt(head + j) != from.charAt(j))
-              continue fromLoop;
-          }
-
-          result = result.append(toList[i]);
-          head = head + fromLen;
-
-          continue top;
-        }
-      }
-
-      result.append(ch);
-      head++;
-    }
-
-    return result;
-  }
-  
-  /*
-   * Comparator for sorting in descending fashion based on length.
-   */
-  static class StrtrComparator<T extends Map.Entry<Value,Value>>
-    implements Comparator<T>
-  {
-    public int compare(T a, T b)
-    {
-      int lenA = a.getKey().length();
-      int lenB = b.getKey().length();
-      
-      if (lenA < lenB)
-        return 1;
-      else if (lenA == lenB)
-        return 0;
-      else
-        return -1;
-    }
+    return MultiPatternMatcher.strtr(env, string, map);
   }
 
   /**
@@ -4564,7 +4514,7 @@ public class StringModule extends AbstractQuercusModule {
   }
 
   abstract static class PrintfSegment {
-    abstract public void apply(StringValue sb, Value []args);
+    abstract public void apply(Env env, StringValue sb, Value []args);
     
     static boolean hasIndex(String format)
     {
@@ -4593,6 +4543,37 @@ public class StringModule extends AbstractQuercusModule {
 
       return '%' + format.substring(p + 1);
     }
+
+    /**
+     * Returns the number of decimal digits of a non-negative long.
+     */
+    static int getDigitLength(long value)
+    {
+      int length = 1;
+
+      for (; value >= 10; value /= 10)
+        length++;
+
+      return length;
+    }
+
+    /**
+     * Appends a non-negative long as exactly length digits, padding
+     * with leading zeros.
+     */
+    static void appendDigits(StringValue sb, long value, int length)
+    {
+      long scale = 1;
+
+      for (int i = 1; i < length; i++)
+        scale *= 10;
+
+      for (; scale > 0; scale /= 10) {
+        sb.append((char) ('0' + value / scale));
+
+        value %= scale;
+      }
+    }
   }
 
   static class TextPrintfSegment extends PrintfSegment {
@@ -4605,7 +4586,7 @@ public class StringModule extends AbstractQuercusModule {
       text.getChars(0, _text.length, _text, 0);
     }
 
-    public void apply(StringValue sb, Value []args)
+    public void apply(Env env, StringValue sb, Value []args)
     {
       sb.append(_text, 0, _text.length);
     }
@@ -4614,16 +4595,45 @@ public class StringModule extends AbstractQuercusModule {
   static class LongPrintfSegment extends PrintfSegment {
     private final String _format;
     private final int _index;
-    private final QuercusLocale _locale;
 
-    private LongPrintfSegment(String format, int index, QuercusLocale locale)
+    // width and pad of a plain "%d", "%5d" or "%05d", or -1
+    private final int _min;
+    private final char _pad;
+
+    private LongPrintfSegment(String format, int index)
     {
       _format = format;
       _index = index;
-      _locale = locale;
+
+      int length = format.length();
+      int offset = 1;
+
+      char pad = ' ';
+
+      if (offset < length - 1 && format.charAt(offset) == '0') {
+        pad = '0';
+        offset++;
+      }
+
+      int min = 0;
+
+      if (format.charAt(length - 1) != 'd' || length > 6)
+        min = -1;
+
+      for (; min >= 0 && offset < length - 1; offset++) {
+        char ch = format.charAt(offset);
+
+        if ('0' <= ch && ch <= '9')
+          min = 10 * min + ch - '0';
+        else
+          min = -1;
+      }
+
+      _min = min;
+      _pad = pad;
     }
     
-    static PrintfSegment create(Env env, String format, int index)
+    static PrintfSegment create(String format, int index)
     {
       if (hasIndex(format)) {
         index = getIndex(format);
@@ -4657,11 +4667,10 @@ public class StringModule extends AbstractQuercusModule {
           return hex;
       }
 
-      return new LongPrintfSegment(format, index,
-                                   env.getLocaleInfo().getNumeric());
+      return new LongPrintfSegment(format, index);
     }
 
-    public void apply(StringValue sb, Value []args)
+    public void apply(Env env, StringValue sb, Value []args)
     {
       long value;
 
@@ -4670,7 +4679,31 @@ public class StringModule extends AbstractQuercusModule {
       else
         value = 0;
 
-      sb.append(String.format(_locale.getLocale(), _format, value));
+      QuercusLocale locale = env.getLocaleInfo().getNumeric();
+
+      if (_min < 0 || value == Long.MIN_VALUE || ! locale.isDecimalPoint()) {
+        sb.append(String.format(locale.getLocale(), _format, value));
+        return;
+      }
+
+      boolean isNegative = value < 0;
+
+      if (isNegative)
+        value = -value;
+
+      int length = getDigitLength(value);
+      int width = isNegative ? length + 1 : length;
+
+      if (isNegative && _pad == '0')
+        sb.append('-');
+
+      for (int i = width; i < _min; i++)
+        sb.append(_pad);
+
+      if (isNegative && _pad != '0')
+        sb.append('-');
+
+      appendDigits(sb, value, length);
     }
   }
 
@@ -4718,7 +4751,7 @@ public class StringModule extends AbstractQuercusModule {
       return new HexPrintfSegment(index, min, pad, isUpper);
     }
 
-    public void apply(StringValue sb, Value []args)
+    public void apply(Env env, StringValue sb, Value []args)
     {
       long value;
 
@@ -4754,11 +4787,19 @@ public class StringModule extends AbstractQuercusModule {
   }
 
   static class DoublePrintfSegment extends PrintfSegment {
+    private static final long []POWERS = {
+      1L, 10L, 100L, 1000L, 10000L, 100000L,
+      1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
     private final String _format;
     private final int _index;
-    private final QuercusLocale _locale;
+    private final boolean _isLocale;
+
+    // digits after the point of a plain "%f" or "%.2f", or -1
+    private final int _precision;
     
-    DoublePrintfSegment(String format, int index, QuercusLocale locale)
+    DoublePrintfSegment(String format, int index, boolean isLocale)
     {
       if (hasIndex(format)) {
         _index = getIndex(format);
@@ -4769,10 +4810,23 @@ public class StringModule extends AbstractQuercusModule {
         _index = index;
       }
       
-      _locale = locale;
+      _isLocale = isLocale;
+
+      int length = _format.length();
+      int precision = -1;
+
+      if (_format.equals("%f"))
+        precision = 6;
+      else if (length == 4
+               && _format.charAt(1) == '.'
+               && '0' <= _format.charAt(2) && _format.charAt(2) <= '9'
+               && _format.charAt(3) == 'f')
+        precision = _format.charAt(2) - '0';
+
+      _precision = precision;
     }
 
-    public void apply(StringValue sb, Value []args)
+    public void apply(Env env, StringValue sb, Value []args)
     {
       double value;
 
@@ -4781,14 +4835,66 @@ public class StringModule extends AbstractQuercusModule {
       else
         value = 0;
 
+      QuercusLocale locale = null;
+
+      if (_isLocale)
+        locale = env.getLocaleInfo().getNumeric();
+
+      if (_precision >= 0
+          && (locale == null || locale.isDecimalPoint())
+          && appendFixed(sb, value, _precision))
+        return;
+
       String s;
-      if (_locale == null)
+      if (locale == null)
         s = String.format(_format, value);
       else
-        s = String.format(_locale.getLocale(), _format, value);
+        s = String.format(locale.getLocale(), _format, value);
       
       sb.append(s);
     }
+
+    /**
+     * Appends the value with the given number of decimals, returning
+     * false if the rounding can't be decided without the exact decimal
+     * expansion that String.format uses.
+     */
+    private static boolean appendFixed(StringValue sb,
+                                       double value,
+                                       int precision)
+    {
+      boolean isNegative = value < 0 || value == 0 && 1 / value < 0;
+
+      long scale = POWERS[precision];
+      double scaled = Math.abs(value) * scale;
+
+      // also false for NaN and infinity
+      if (! (scaled < 1e12))
+        return false;
+
+      long units = (long) scaled;
+      double fraction = scaled - units;
+
+      if (Math.abs(fraction - 0.5) < 1e-3)
+        return false;
+      else if (fraction > 0.5)
+        units++;
+
+      if (isNegative)
+        sb.append('-');
+
+      long integer = units / scale;
+
+      appendDigits(sb, integer, getDigitLength(integer));
+
+      if (precision > 0) {
+        sb.append('.');
+
+        appendDigits(sb, units % scale, precision);
+      }
+
+      return true;
+    }
   }
 
   static class StringPrintfSegment extends PrintfSegment {
@@ -4843,10 +4949,14 @@ public class StringModule extends AbstractQuercusModule {
       _index = index;
     }
 
-    public void apply(StringValue sb, Value []args)
+    public void apply(Env env, StringValue sb, Value []args)
     {
       sb.append(_prefix, 0, _prefix.length);
 
+      if (_min == 0 && _max == Integer.MAX_VALUE && ! _isUpper
+          && appendValue(sb, args))
+        return;
+
       String value = toValue(args);
 
       int len = value.length();
@@ -4874,6 +4984,40 @@ public class StringModule extends AbstractQuercusModule {
       }
     }
 
+    /**
+     * Appends a plain %s argument without converting it to a
+     * java.lang.String, returning false if it needs conversion.
+     */
+    boolean appendValue(StringValue sb, Value []args)
+    {
+      if (args.length <= _index)
+        return true;
+
+      Value value = args[_index].toValue();
+
+      if (value instanceof StringValue) {
+        sb.append(value);
+
+        return true;
+      }
+      else if (value instanceof LongValue) {
+        long v = value.toLong();
+
+        if (v == Long.MIN_VALUE)
+          return false;
+        else if (v < 0) {
+          sb.append('-');
+          v = -v;
+        }
+
+        appendDigits(sb, v, getDigitLength(v));
+
+        return true;
+      }
+      else
+        return false;
+    }
+
     String toValue(Value []args)
     {
       if (_index < args.length)
@@ -4891,6 +5035,11 @@ public class StringModule extends AbstractQuercusModule {
       super(prefix, isLeft, isZero, isUpper, format, index);
     }
 
+    boolean appendValue(StringValue sb, Value []args)
+    {
+      return false;
+    }
+
     String toValue(Value []args)
     {
       if (args.length <= _index)
@@ -66,5 +66,12 @@ public class AbstractQuercusModule implements QuercusModule {
   {
     return new String[0];
   }
+
+  /**
+   * Releases the module's resources when the engine closes.
+   */
+  public void close()
+  {
+  }
 }
 
@@ -34,6 +34,8 @@ import com.caucho.quercus.Quercus;
 import com.caucho.quercus.QuercusRuntimeException;
 import com.caucho.quercus.env.*;
 import com.caucho.quercus.expr.ExprFactory;
+import com.caucho.quercus.gen.CompiledInvoker;
+import com.caucho.quercus.gen.InvokerGenerator;
 import com.caucho.quercus.marshal.Marshal;
 import com.caucho.quercus.marshal.MarshalFactory;
 import com.caucho.quercus.program.ClassDef;
@@ -92,6 +94,8 @@ public class ModuleContext
   protected MarshalFactory _marshalFactory;
   protected ExprFactory _exprFactory;
 
+  private final InvokerGenerator _invokerGenerator = new InvokerGenerator();
+
   /**
    * Constructor.
    */
@@ -487,6 +491,36 @@ public class ModuleContext
     return new StaticFunction(this, module, method);
   }
 
+  /**
+   * Returns the number of calls before a module function is given a
+   * generated direct invoker, or -1 if functions always use reflection.
+   */
+  public int getDirectInvokeThreshold()
+  {
+    if (_quercus != null)
+      return _quercus.getDirectInvokeThreshold();
+    else
+      return -1;
+  }
+
+  /**
+   * Generates the direct invoker for a module function.
+   *
+   * @return the invoker, or null if the function must use reflection
+   */
+  public CompiledInvoker createDirectInvoker(StaticFunction fun,
+                                             Marshal []marshalArgs)
+  {
+    try {
+      return _invokerGenerator.generate(fun, marshalArgs);
+    } catch (Throwable e) {
+      log.log(Level.FINE, L.l("{0}: can't generate direct invoker, using reflection: {1}",
+                              fun.getMethod(), e.toString()), e);
+
+      return null;
+    }
+  }
+
   public void init()
   {
     initStaticFunctions();
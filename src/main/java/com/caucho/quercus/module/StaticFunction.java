@@ -32,7 +32,10 @@ package com.caucho.quercus.module;
 import com.caucho.quercus.QuercusExitException;
 import com.caucho.quercus.QuercusModuleException;
 import com.caucho.quercus.annotation.Name;
+import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.JavaInvoker;
+import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.CompiledInvoker;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -40,10 +43,18 @@ import java.lang.reflect.Method;
  * Represents the introspected static function information.
  */
 public class StaticFunction extends JavaInvoker {
+  private static final long serialVersionUID = 1L;
+
   protected final QuercusModule _quercusModule;
   protected final Method _method;
   private final int _argLength;
 
+  private final ModuleContext _moduleContext;
+
+  private volatile CompiledInvoker _compiledInvoker;
+  // calls before the direct invoker is generated, -1 if it never will be
+  private int _callCount;
+
   /**
    * Creates the statically introspected function.
    *
@@ -63,6 +74,7 @@ public class StaticFunction extends JavaInvoker {
     _method = method;
     _argLength = method.getParameterTypes().length;
     _quercusModule = quercusModule;
+    _moduleContext = moduleContext;
   }
   
   /*
@@ -118,6 +130,57 @@ public class StaticFunction extends JavaInvoker {
     return _argLength;
   }
 
+  /**
+   * Returns the generated direct invoker, or null if the function is
+   * still called by reflection.
+   */
+  public CompiledInvoker getCompiledInvoker()
+  {
+    return _compiledInvoker;
+  }
+
+  /**
+   * Evaluates the function with the direct invoker once the function is
+   * hot, and by reflection until then.
+   */
+  @Override
+  public Value call(Env env, Value []args)
+  {
+    CompiledInvoker invoker = _compiledInvoker;
+
+    if (invoker == null && _callCount >= 0)
+      invoker = compileInvoker();
+
+    if (invoker != null)
+      return invoker.call(env, args);
+    else
+      return super.call(env, args);
+  }
+
+  private CompiledInvoker compileInvoker()
+  {
+    int threshold = _moduleContext.getDirectInvokeThreshold();
+
+    if (threshold < 0) {
+      _callCount = -1;
+      return null;
+    }
+    else if (_callCount++ < threshold)
+      return null;
+
+    synchronized (this) {
+      if (_compiledInvoker == null && _callCount >= 0) {
+        _compiledInvoker = _moduleContext.createDirectInvoker(this,
+                                                             getMarshalArgs());
+
+        if (_compiledInvoker == null)
+          _callCount = -1;
+      }
+
+      return _compiledInvoker;
+    }
+  }
+
   /**
    * Evalutes the function.
    */
@@ -30,10 +30,12 @@
 package com.caucho.quercus.page;
 
 import com.caucho.quercus.Quercus;
+import com.caucho.quercus.QuercusRuntimeException;
+import com.caucho.quercus.gen.ProgramCompiler;
 import com.caucho.quercus.parser.QuercusParser;
 import com.caucho.quercus.program.QuercusProgram;
 import com.caucho.util.L10N;
-import com.caucho.util.LruCache;
+import com.caucho.util.SegmentedLruCache;
 import com.caucho.vfs.IOExceptionWrapper;
 import com.caucho.vfs.Path;
 
@@ -56,11 +58,15 @@ public class PageManager
   private boolean _isLazyCompile;
   private boolean _isCompile;
   private boolean _isCompileFailover;
+  private int _compileThreshold = 8;
   private boolean _isRequireSource = true;
   private boolean _isAutoreloadingEnabled = true;
 
-  protected LruCache<Path,QuercusProgram> _programCache
-    = new LruCache<Path,QuercusProgram>(1024);
+  protected SegmentedLruCache<Path,QuercusProgram> _programCache
+    = new SegmentedLruCache<Path,QuercusProgram>(1024);
+
+  // optional persistent cache of parsed programs
+  private ProgramDiskCache _diskCache;
 
   private boolean _isClosed;
   
@@ -133,6 +139,22 @@ public class PageManager
     _isCompileFailover = isCompileFailover;
   }
   
+  /**
+   * Returns the number of requests before a lazy page is compiled.
+   */
+  public int getCompileThreshold()
+  {
+    return _compileThreshold;
+  }
+
+  /**
+   * Sets the number of requests before a lazy page is compiled.
+   */
+  public void setCompileThreshold(int threshold)
+  {
+    _compileThreshold = threshold;
+  }
+
   /**
    * true if compiled pages require their source
    */
@@ -163,7 +185,27 @@ public class PageManager
   public void setPageCacheSize(int size)
   {
     if (_programCache.getCapacity() != size)
-      _programCache = new LruCache<Path,QuercusProgram>(size);
+      _programCache = new SegmentedLruCache<Path,QuercusProgram>(size);
+  }
+
+  /**
+   * Returns the directory of the persistent parsed-program cache.
+   */
+  public Path getProgramCacheDirectory()
+  {
+    return _diskCache != null ? _diskCache.getDirectory() : null;
+  }
+
+  /**
+   * Sets the directory of the persistent parsed-program cache, or null
+   * to disable it.
+   */
+  public void setProgramCacheDirectory(Path dir)
+  {
+    if (dir != null)
+      _diskCache = new ProgramDiskCache(_quercus, dir);
+    else
+      _diskCache = null;
   }
 
   /**
@@ -234,6 +276,9 @@ public class PageManager
                                         _quercus.getScriptEncoding(),
                                         fileName,
                                         line);
+
+          if (_diskCache != null && fileName == null)
+            _diskCache.save(path, program);
         }
         
         _programCache.put(path, program);
@@ -259,7 +304,11 @@ public class PageManager
 
   protected QuercusProgram preloadProgram(Path path, String fileName)
   {
-    return null;
+    // programs parsed with an explicit location are not cached
+    if (_diskCache != null && fileName == null)
+      return _diskCache.load(path);
+    else
+      return null;
   }
 
   protected void clearProgram(Path path, QuercusProgram program)
@@ -273,12 +322,59 @@ public class PageManager
 
   protected QuercusPage compilePage(QuercusProgram program, Path path)
   {
+    if (program.isCompilable() && isCompileRequired(program)
+        && program.startCompiling()) {
+      try {
+        new ProgramCompiler(program).compile();
+
+        QuercusPage page = new CompiledPage(program);
+
+        program.setCompiledPage(page);
+
+        if (log.isLoggable(Level.FINE))
+          log.fine(L.l("Quercus[{0}] loading compiled page", path));
+
+        return page;
+      } catch (Throwable e) {
+        program.setCompilable(false);
+
+        if (e instanceof Exception)
+          program.setCompileException((Exception) e);
+
+        if (_isCompile && ! _isCompileFailover) {
+          if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+          else
+            throw new QuercusRuntimeException(e);
+        }
+
+        log.log(Level.FINE, L.l("Quercus[{0}] compilation failed, using interpreted page: {1}",
+                                path, e.toString()), e);
+      } finally {
+        program.finishCompiling();
+      }
+    }
+
     if (log.isLoggable(Level.FINE))
       log.fine(L.l("Quercus[{0}] loading interpreted page", path));
     
     return new InterpretedPage(program);
   }
 
+  /**
+   * Returns true if the program should be compiled now, i.e. always when
+   * compile is set, and after enough requests when compile is lazy.
+   */
+  private boolean isCompileRequired(QuercusProgram program)
+  {
+    if (_isCompile)
+      return true;
+    else if (_isLazyCompile)
+      return _compileThreshold <= program.addExecutionCount();
+    else
+      return false;
+  }
+
   public void close()
   {
     _isClosed = true;
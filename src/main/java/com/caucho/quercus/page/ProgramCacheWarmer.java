@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.page;
+
+import com.caucho.quercus.Quercus;
+import com.caucho.quercus.parser.QuercusParser;
+import com.caucho.quercus.program.QuercusProgram;
+import com.caucho.util.L10N;
+import com.caucho.vfs.Path;
+import com.caucho.vfs.Vfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Offline tool which parses every script under a docroot into the
+ * persistent program cache, so new instances skip the parser.
+ *
+ * <code><pre>
+ * java com.caucho.quercus.page.ProgramCacheWarmer docroot cache-dir [php.ini]
+ * </pre></code>
+ */
+public class ProgramCacheWarmer
+{
+  private static final Logger log
+    = Logger.getLogger(ProgramCacheWarmer.class.getName());
+  private static final L10N L = new L10N(ProgramCacheWarmer.class);
+
+  private final Quercus _quercus;
+  private final ProgramDiskCache _cache;
+
+  private String []_extensions = new String[] { ".php", ".inc" };
+
+  private int _count;
+  private int _errorCount;
+
+  public ProgramCacheWarmer(Quercus quercus, Path cacheDir)
+  {
+    _quercus = quercus;
+    _cache = new ProgramDiskCache(quercus, cacheDir);
+  }
+
+  /**
+   * Sets the file extensions to parse.
+   */
+  public void setExtensions(String []extensions)
+  {
+    _extensions = extensions;
+  }
+
+  /**
+   * Returns the number of programs written.
+   */
+  public int getCount()
+  {
+    return _count;
+  }
+
+  /**
+   * Returns the number of scripts which failed to parse.
+   */
+  public int getErrorCount()
+  {
+    return _errorCount;
+  }
+
+  /**
+   * Parses the scripts under the directory, recursively.
+   */
+  public void warm(Path dir)
+    throws IOException
+  {
+    String []list = dir.list();
+
+    for (int i = 0; i < list.length; i++) {
+      Path path = dir.lookup(list[i]);
+
+      if (path.isDirectory())
+        warm(path);
+      else if (isScript(list[i]))
+        warmFile(path);
+    }
+  }
+
+  private void warmFile(Path path)
+  {
+    try {
+      QuercusProgram program
+        = QuercusParser.parse(_quercus, path, _quercus.getScriptEncoding());
+
+      _cache.save(path, program);
+
+      _count++;
+    } catch (Exception e) {
+      _errorCount++;
+
+      log.log(Level.WARNING, L.l("{0}: {1}", path, e.toString()), e);
+    }
+  }
+
+  private boolean isScript(String name)
+  {
+    for (String ext : _extensions) {
+      if (name.endsWith(ext))
+        return true;
+    }
+
+    return false;
+  }
+
+  public static void main(String []args)
+    throws Exception
+  {
+    if (args.length < 2) {
+      System.err.println(L.l("usage: ProgramCacheWarmer docroot cache-dir [php.ini]"));
+      System.exit(1);
+    }
+
+    Path docroot = Vfs.lookup(new File(args[0]).getAbsolutePath());
+    Path cacheDir = Vfs.lookup(new File(args[1]).getAbsolutePath());
+
+    Quercus quercus = new Quercus();
+
+    quercus.setPwd(docroot);
+
+    if (args.length > 2)
+      quercus.setIniFile(Vfs.lookup(new File(args[2]).getAbsolutePath()));
+
+    quercus.init();
+    quercus.start();
+
+    try {
+      ProgramCacheWarmer warmer = new ProgramCacheWarmer(quercus, cacheDir);
+
+      warmer.warm(docroot);
+
+      System.out.println(L.l("parsed {0} scripts into {1}, {2} errors",
+                             warmer.getCount(), cacheDir,
+                             warmer.getErrorCount()));
+    } finally {
+      quercus.close();
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.page;
+
+import com.caucho.quercus.Quercus;
+import com.caucho.quercus.program.Function;
+import com.caucho.quercus.program.FunctionInfo;
+import com.caucho.quercus.program.InterpretedClassDef;
+import com.caucho.quercus.program.ProgramInputStream;
+import com.caucho.quercus.program.QuercusProgram;
+import com.caucho.quercus.statement.Statement;
+import com.caucho.util.Crc64;
+import com.caucho.util.L10N;
+import com.caucho.vfs.Path;
+import com.caucho.vfs.ReadStream;
+import com.caucho.vfs.WriteStream;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent cache of parsed programs.  Each entry is keyed by the source
+ * path (relative to the engine's pwd when possible), its modification
+ * time and length, the cache format version and the Quercus version.
+ */
+public class ProgramDiskCache
+{
+  private static final Logger log
+    = Logger.getLogger(ProgramDiskCache.class.getName());
+  private static final L10N L = new L10N(ProgramDiskCache.class);
+
+  // the parse tree classes have fixed serialVersionUIDs, so increment
+  // when the serialized form of any of them changes
+  private static final int VERSION = 2;
+
+  private final Quercus _quercus;
+  private final Path _dir;
+
+  public ProgramDiskCache(Quercus quercus, Path dir)
+  {
+    _quercus = quercus;
+    _dir = dir;
+  }
+
+  /**
+   * Returns the cache directory.
+   */
+  public Path getDirectory()
+  {
+    return _dir;
+  }
+
+  /**
+   * Returns the cached program for the source file, or null if there is
+   * no entry or the entry is stale.
+   */
+  @SuppressWarnings("unchecked")
+  public QuercusProgram load(Path path)
+  {
+    Path cachePath = getCachePath(path);
+
+    if (! cachePath.canRead())
+      return null;
+
+    ReadStream is = null;
+
+    try {
+      is = cachePath.openRead();
+
+      ProgramInputStream in = new ProgramInputStream(is, _quercus, path);
+
+      if (in.readInt() != VERSION
+          || ! _quercus.getVersion().equals(in.readUTF())
+          || ! getKey(path).equals(in.readUTF())
+          || in.readLong() != path.getLastModified()
+          || in.readLong() != path.getLength()
+          || ! _quercus.getScriptEncoding().equals(in.readUTF())
+          || in.readBoolean() != _quercus.isUnicodeSemantics()) {
+        if (log.isLoggable(Level.FINER))
+          log.finer(L.l("Quercus[{0}] stale program cache entry", path));
+
+        return null;
+      }
+
+      HashMap<String,Function> functionMap
+        = (HashMap<String,Function>) in.readObject();
+      ArrayList<Function> functionList
+        = (ArrayList<Function>) in.readObject();
+      HashMap<String,InterpretedClassDef> classMap
+        = (HashMap<String,InterpretedClassDef>) in.readObject();
+      ArrayList<InterpretedClassDef> classList
+        = (ArrayList<InterpretedClassDef>) in.readObject();
+      FunctionInfo functionInfo = (FunctionInfo) in.readObject();
+      Statement statement = (Statement) in.readObject();
+
+      if (log.isLoggable(Level.FINE))
+        log.fine(L.l("Quercus[{0}] loading cached program", path));
+
+      return new QuercusProgram(_quercus, path,
+                                functionMap, functionList,
+                                classMap, classList,
+                                functionInfo, statement);
+    } catch (Exception e) {
+      // a corrupt or incompatible entry is just a miss
+      log.log(Level.FINE, e.toString(), e);
+
+      return null;
+    } finally {
+      if (is != null)
+        is.close();
+    }
+  }
+
+  /**
+   * Saves a freshly parsed program.  The entry is written to a temp file
+   * and renamed, so readers never see a partial entry.
+   */
+  public void save(Path path, QuercusProgram program)
+  {
+    Path cachePath = getCachePath(path);
+    Path tempPath = _dir.lookup(cachePath.getTail() + "."
+                                + Thread.currentThread().getId() + ".tmp");
+
+    WriteStream os = null;
+
+    try {
+      _dir.mkdirs();
+
+      os = tempPath.openWrite();
+
+      ObjectOutputStream out = new ObjectOutputStream(os);
+
+      out.writeInt(VERSION);
+      out.writeUTF(_quercus.getVersion());
+      out.writeUTF(getKey(path));
+      out.writeLong(path.getLastModified());
+      out.writeLong(path.getLength());
+      out.writeUTF(_quercus.getScriptEncoding());
+      out.writeBoolean(_quercus.isUnicodeSemantics());
+
+      out.writeObject(program.getFunctionMap());
+      out.writeObject(program.getFunctionList());
+      out.writeObject(program.getClassMap());
+      out.writeObject(program.getClassList());
+      out.writeObject(program.getFunctionInfo());
+      out.writeObject(program.getStatement());
+
+      out.close();
+      os = null;
+
+      tempPath.renameTo(cachePath);
+    } catch (Exception e) {
+      log.log(Level.FINE, L.l("Quercus[{0}] cannot save program cache entry: {1}",
+                              path, e.toString()), e);
+
+      try {
+        tempPath.remove();
+      } catch (IOException e1) {
+        log.log(Level.FINEST, e1.toString(), e1);
+      }
+    } finally {
+      try {
+        if (os != null)
+          os.close();
+      } catch (IOException e) {
+        log.log(Level.FINEST, e.toString(), e);
+      }
+    }
+  }
+
+  /**
+   * Returns the path used as the cache key, relative to the pwd so a
+   * cache built offline matches the deployed docroot.
+   */
+  private String getKey(Path path)
+  {
+    String fullPath = path.getFullPath();
+    String pwd = _quercus.getPwd().getFullPath();
+
+    if (! pwd.endsWith("/"))
+      pwd = pwd + "/";
+
+    if (fullPath.startsWith(pwd))
+      return fullPath.substring(pwd.length());
+    else
+      return fullPath;
+  }
+
+  private Path getCachePath(Path path)
+  {
+    String key = getKey(path);
+
+    return _dir.lookup(Long.toHexString(Crc64.generate(key)) + ".qpc");
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _dir + "]";
+  }
+}
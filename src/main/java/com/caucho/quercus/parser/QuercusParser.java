@@ -3462,10 +3462,14 @@ public class QuercusParser {
     else if (token == '$') {
       _peekToken = token;
 
+      _function.setVariableVar(true);
+
       // php/0d6c, php/0d6f
       return _factory.createVarVar(parseTermArray());
     }
     else if (token == '{') {
+      _function.setVariableVar(true);
+
       AbstractVarExpr expr = _factory.createVarVar(parseExpr());
 
       expect('}');
@@ -3509,6 +3513,12 @@ public class QuercusParser {
         //return _factory.createEach(args.get(0));
       }
 
+      // extract(), compact(), etc. need the named symbol table
+      AbstractFunction fun = _quercus != null ? _quercus.findFunction(name) : null;
+
+      if (fun != null && fun.isCallUsesSymbolTable())
+        _function.setUsesSymbolTable(true);
+
       return _factory.createFunction(getLocation(), name, args);     
     }
     else if (isInstantiated) {
@@ -3601,8 +3611,10 @@ public class QuercusParser {
     if (_peekToken == '(' && ! _isNewExpr) {
       parseToken();
 
-      if (varExpr != null)
+      if (varExpr != null) {
+        _function.setVariableVar(true);
         varExpr = _factory.createVarVar(varExpr);
+      }
       else
         varExpr = _factory.createVar(_function.createVar(var));
 
@@ -34,7 +34,9 @@ import com.caucho.quercus.expr.Expr;
 /**
  * Represents a formal argument.
  */
-public class Arg {
+public class Arg implements java.io.Serializable {
+  private static final long serialVersionUID = 1L;
+
   private final String _name;
   private final Expr _default;
 
@@ -33,6 +33,7 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.EnvVar;
 import com.caucho.quercus.env.EnvVarImpl;
+import com.caucho.quercus.env.LocalVarMap;
 import com.caucho.quercus.env.NullThisValue;
 import com.caucho.quercus.env.NullValue;
 import com.caucho.quercus.env.Value;
@@ -49,12 +50,18 @@ import java.util.Map;
  * Represents sequence of statements.
  */
 public class Function extends AbstractFunction {
+  private static final long serialVersionUID = 1L;
+
   protected final FunctionInfo _info;
   protected final boolean _isReturnsReference;
 
   protected final String _name;
   protected final Arg []_args;
-  protected final Statement _statement;
+  // volatile because the compiler swaps it in while requests are running
+  protected volatile Statement _statement;
+
+  // true if the locals use a slot-indexed frame instead of a HashMap
+  protected final boolean _isSlotFrame;
 
   protected boolean _hasReturn;
   
@@ -74,6 +81,7 @@ public class Function extends AbstractFunction {
     _isReturnsReference = info.isReturnsReference();
     _args = args;
     _statement = new BlockStatement(location, statements);
+    _isSlotFrame = info.isSlotFrame();
 
     setGlobal(info.isPageStatic());
     
@@ -99,6 +107,7 @@ public class Function extends AbstractFunction {
     System.arraycopy(args, 0, _args, 0, args.length);
 
     _statement = exprFactory.createBlock(location, statements);
+    _isSlotFrame = info.isSlotFrame();
 
     setGlobal(info.isPageStatic());
     
@@ -136,6 +145,22 @@ public class Function extends AbstractFunction {
       return null;
   }
 
+  /**
+   * Returns the function body.
+   */
+  public Statement getStatement()
+  {
+    return _statement;
+  }
+
+  /**
+   * Replaces the function body, e.g. with a compiled statement.
+   */
+  public void setStatement(Statement statement)
+  {
+    _statement = statement;
+  }
+
   /**
    * Returns the args.
    */
@@ -223,8 +248,21 @@ public class Function extends AbstractFunction {
 
   private Value callImpl(Env env, Expr []args, boolean isRef)
   {
-    HashMap<String,EnvVar> map = new HashMap<String,EnvVar>();
+    if (! _isSlotFrame)
+      return callImpl(env, args, isRef, new HashMap<String,EnvVar>());
+
+    LocalVarMap frame = env.allocateFrame(_info, _info.getVarCount());
 
+    try {
+      return callImpl(env, args, isRef, frame);
+    } finally {
+      env.freeFrame(frame);
+    }
+  }
+
+  private Value callImpl(Env env, Expr []args, boolean isRef,
+                         Map<String,EnvVar> map)
+  {
     Value []values = new Value[args.length];
 
     for (int i = 0; i < args.length; i++) {
@@ -314,8 +352,21 @@ public class Function extends AbstractFunction {
 
   private Value callImpl(Env env, Value []args, boolean isRef)
   {
-    HashMap<String,EnvVar> map = new HashMap<String,EnvVar>(8);
+    if (! _isSlotFrame)
+      return callImpl(env, args, isRef, new HashMap<String,EnvVar>(8));
+
+    LocalVarMap frame = env.allocateFrame(_info, _info.getVarCount());
 
+    try {
+      return callImpl(env, args, isRef, frame);
+    } finally {
+      env.freeFrame(frame);
+    }
+  }
+
+  private Value callImpl(Env env, Value []args, boolean isRef,
+                         Map<String,EnvVar> map)
+  {
     for (int i = 0; i < args.length; i++) {
       Arg arg = null;
 
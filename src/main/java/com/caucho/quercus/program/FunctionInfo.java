@@ -32,6 +32,8 @@ package com.caucho.quercus.program;
 import com.caucho.quercus.Quercus;
 import com.caucho.quercus.expr.VarInfo;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -39,15 +41,21 @@ import java.util.HashMap;
 /**
  * Information about a function.
  */
-public class FunctionInfo
+public class FunctionInfo implements java.io.Serializable
 {
-  private final Quercus _quercus;
+  private static final long serialVersionUID = 1L;
+
+  // restored by ProgramInputStream
+  private transient Quercus _quercus;
 
   private final String _name;
   
   private final HashMap<String,VarInfo> _varMap
     = new HashMap<String,VarInfo>();
 
+  private final ArrayList<VarInfo> _varList
+    = new ArrayList<VarInfo>();
+
   private final ArrayList<String> _tempVarList
     = new ArrayList<String>();
 
@@ -81,6 +89,7 @@ public class FunctionInfo
     FunctionInfo copy = createCopy();
 
     copy._varMap.putAll(_varMap);
+    copy._varList.addAll(_varList);
     copy._tempVarList.addAll(_tempVarList);
     copy._classDef = _classDef;
     copy._fun = _fun;
@@ -338,12 +347,53 @@ public class FunctionInfo
 
     if (var == null) {
       var = createVarInfo(name);
+      var.setIndex(_varList.size());
 
       _varMap.put(name, var);
+      _varList.add(var);
     }
 
     return var;
   }
+
+  /**
+   * Returns the local frame slot for the variable, or -1 if the
+   * variable is not known at parse time.
+   */
+  public int getVarIndex(String name)
+  {
+    VarInfo var = _varMap.get(name);
+
+    if (var != null)
+      return var.getIndex();
+    else
+      return -1;
+  }
+
+  /**
+   * Returns the variable assigned to the local frame slot.
+   */
+  public VarInfo getVar(int index)
+  {
+    return _varList.get(index);
+  }
+
+  /**
+   * Returns the number of local frame slots.
+   */
+  public int getVarCount()
+  {
+    return _varList.size();
+  }
+
+  /**
+   * True if the locals can be stored in a slot-indexed frame, i.e.
+   * the symbol table is never accessed by name at runtime.
+   */
+  public boolean isSlotFrame()
+  {
+    return ! _isPageMain && ! _isVariableVar && ! _isUsesSymbolTable;
+  }
   
   protected VarInfo createVarInfo(String name)
   {
@@ -380,6 +430,15 @@ public class FunctionInfo
     return _tempVarList.size();
   }
 
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    if (in instanceof ProgramInputStream)
+      _quercus = ((ProgramInputStream) in).getQuercus();
+  }
+
   public String toString()
   {
     return "FunctionInfo[" + _name + "]";
@@ -45,6 +45,8 @@ import java.util.Set;
 public class InterpretedClassDef extends ClassDef
   implements InstanceInitializer
 {
+  private static final long serialVersionUID = 1L;
+
   protected boolean _isAbstract;
   protected boolean _isInterface;
   protected boolean _isFinal;
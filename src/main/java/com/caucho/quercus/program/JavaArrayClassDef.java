@@ -40,6 +40,8 @@ import java.lang.reflect.Array;
  * Represents an introspected Java class.
  */
 public class JavaArrayClassDef<T> extends JavaClassDef<T[]> {
+  private static final long serialVersionUID = 1L;
+
   public JavaArrayClassDef(ModuleContext moduleContext,
                            String name,
                            Class<T[]> type)
@@ -62,6 +62,8 @@ import java.util.logging.Logger;
  * Represents an introspected Java class.
  */
 public class JavaClassDef<T> extends ClassDef {
+  private static final long serialVersionUID = 1L;
+
   private final static Logger log
     = Logger.getLogger(JavaClassDef.class.getName());
   private final static L10N L = new L10N(JavaClassDef.class);
@@ -1542,6 +1544,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class LongClassDef extends JavaClassDef<Long> {
+    private static final long serialVersionUID = 1L;
+
     LongClassDef(ModuleContext module)
     {
       super(module, "Long", Long.class);
@@ -1555,6 +1559,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class DoubleClassDef extends JavaClassDef<Double> {
+    private static final long serialVersionUID = 1L;
+
     DoubleClassDef(ModuleContext module)
     {
       super(module, "Double", Double.class);
@@ -1568,6 +1574,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class BigIntegerClassDef extends JavaClassDef<BigInteger> {
+    private static final long serialVersionUID = 1L;
+
     BigIntegerClassDef(ModuleContext module)
     {
       super(module, "BigInteger", BigInteger.class);
@@ -1581,6 +1589,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class BigDecimalClassDef extends JavaClassDef<BigDecimal> {
+    private static final long serialVersionUID = 1L;
+
     BigDecimalClassDef(ModuleContext module)
     {
       super(module, "BigDecimal", BigDecimal.class);
@@ -1594,6 +1604,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class StringClassDef extends JavaClassDef<String> {
+    private static final long serialVersionUID = 1L;
+
     StringClassDef(ModuleContext module)
     {
       super(module, "String", String.class);
@@ -1607,6 +1619,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class BooleanClassDef extends JavaClassDef<Boolean> {
+    private static final long serialVersionUID = 1L;
+
     BooleanClassDef(ModuleContext module)
     {
       super(module, "Boolean", Boolean.class);
@@ -1623,6 +1637,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class CalendarClassDef extends JavaClassDef<Calendar> {
+    private static final long serialVersionUID = 1L;
+
     CalendarClassDef(ModuleContext module)
     {
       super(module, "Calendar", Calendar.class);
@@ -1636,6 +1652,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class DateClassDef extends JavaClassDef<Date> {
+    private static final long serialVersionUID = 1L;
+
     DateClassDef(ModuleContext module)
     {
       super(module, "Date", Date.class);
@@ -1649,6 +1667,8 @@ public class JavaClassDef<T> extends ClassDef {
   }
   
   private static class URLClassDef extends JavaClassDef<URL> {
+    private static final long serialVersionUID = 1L;
+
     URLClassDef(ModuleContext module)
     {
       super(module, "URL", URL.class);
@@ -40,6 +40,8 @@ import java.util.Collection;
  * Represents an introspected Java class.
  */
 public class JavaCollectionClassDef<T> extends JavaClassDef<Collection<T>> {
+  private static final long serialVersionUID = 1L;
+
   JavaCollectionClassDef(ModuleContext moduleContext, String name, Class<Collection<T>> type)
   {
     super(moduleContext, name, type);
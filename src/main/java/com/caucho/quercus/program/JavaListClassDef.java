@@ -40,6 +40,8 @@ import java.util.List;
  * Represents an introspected Java class.
  */
 public class JavaListClassDef<T> extends JavaClassDef<List<T>> {
+  private static final long serialVersionUID = 1L;
+
   JavaListClassDef(ModuleContext moduleContext, String name, Class<List<T>> type)
   {
     super(moduleContext, name, type);
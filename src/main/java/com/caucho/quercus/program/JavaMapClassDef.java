@@ -40,6 +40,8 @@ import java.util.Map;
  * Represents an introspected Java class.
  */
 public class JavaMapClassDef<K,V> extends JavaClassDef<Map<K,V>> {
+  private static final long serialVersionUID = 1L;
+
   JavaMapClassDef(ModuleContext moduleContext, String name, Class<Map<K,V>> type)
   {
     super(moduleContext, name, type);
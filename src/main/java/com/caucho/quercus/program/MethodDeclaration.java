@@ -41,6 +41,8 @@ import com.caucho.quercus.statement.*;
  */
 public class MethodDeclaration extends Function
 {
+  private static final long serialVersionUID = 1L;
+
   public MethodDeclaration(ExprFactory exprFactory,
                            Location location,
                            ClassDef qClass,
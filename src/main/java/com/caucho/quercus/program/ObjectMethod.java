@@ -37,6 +37,8 @@ import com.caucho.quercus.statement.Statement;
  * Represents sequence of statements.
  */
 public class ObjectMethod extends Function {
+  private static final long serialVersionUID = 1L;
+
   private ClassDef _quercusClass;
 
   ObjectMethod(Location location,
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.program;
+
+import com.caucho.quercus.Quercus;
+import com.caucho.vfs.Path;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * Reads a serialized program, supplying the engine and source path to
+ * nodes that do not serialize them.
+ */
+public class ProgramInputStream extends ObjectInputStream {
+  private final Quercus _quercus;
+  private final Path _sourcePath;
+
+  public ProgramInputStream(InputStream is, Quercus quercus, Path sourcePath)
+    throws IOException
+  {
+    super(is);
+
+    _quercus = quercus;
+    _sourcePath = sourcePath;
+  }
+
+  /**
+   * Returns the owning engine.
+   */
+  public Quercus getQuercus()
+  {
+    return _quercus;
+  }
+
+  /**
+   * Returns the path of the program's source file.
+   */
+  public Path getSourcePath()
+  {
+    return _sourcePath;
+  }
+
+  /**
+   * Resolves classes from the context loader, falling back to the default.
+   */
+  @Override
+  protected Class<?> resolveClass(ObjectStreamClass desc)
+    throws IOException, ClassNotFoundException
+  {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+    if (loader != null) {
+      try {
+        return Class.forName(desc.getName(), false, loader);
+      } catch (ClassNotFoundException e) {
+      }
+    }
+
+    return super.resolveClass(desc);
+  }
+}
@@ -61,6 +61,9 @@ public class QuercusProgram {
   private long _lastModified;  
   private boolean _isCompiling;
   private boolean _isCompilable = true;
+
+  // approximate count of parses, used for lazy compilation
+  private int _executionCount;
   
   private Exception _compileException;
 
@@ -74,7 +77,8 @@ public class QuercusProgram {
   private ArrayList<InterpretedClassDef> _classList;
 
   private FunctionInfo _functionInfo;
-  private Statement _statement;
+  // volatile because the compiler swaps it in while requests are running
+  private volatile Statement _statement;
 
   // runtime function list for compilation
   private AbstractFunction []_runtimeFunList;
@@ -111,6 +115,9 @@ public class QuercusProgram {
 
     _functionInfo = functionInfo;
     _statement = statement;
+
+    if (sourceFile != null)
+      _lastModified = sourceFile.getLastModified();
   }
 
   /**
@@ -155,6 +162,22 @@ public class QuercusProgram {
     return _statement;
   }
   
+  /**
+   * Replaces the top-level statement, e.g. with a compiled statement.
+   */
+  public void setStatement(Statement statement)
+  {
+    _statement = statement;
+  }
+
+  /**
+   * Increments and returns the number of times the page was requested.
+   */
+  public int addExecutionCount()
+  {
+    return ++_executionCount;
+  }
+
   /*
    * Start compiling
    */
@@ -298,6 +321,14 @@ public class QuercusProgram {
   {
     return _functionMap.values();
   }
+
+  /**
+   * Returns the function map.
+   */
+  public HashMap<String,Function> getFunctionMap()
+  {
+    return _functionMap;
+  }
   
   /**
    * Returns the functions.
@@ -314,6 +345,14 @@ public class QuercusProgram {
   {
     return _classMap.values();
   }
+
+  /**
+   * Returns the class map.
+   */
+  public HashMap<String,InterpretedClassDef> getClassMap()
+  {
+    return _classMap;
+  }
   
   /**
    * Returns the functions.
@@ -38,6 +38,8 @@ import com.caucho.util.L10N;
  * Represents an undefined
  */
 public class UndefinedFunction extends AbstractFunction {
+  private static final long serialVersionUID = 1L;
+
   private static final L10N L = new L10N(UndefinedFunction.class);
   
   private final String _name;
@@ -37,6 +37,8 @@ import com.caucho.quercus.function.AbstractFunction;
  * Represents an unset function
  */
 public class UnsetFunction extends AbstractFunction {
+  private static final long serialVersionUID = 1L;
+
   private final long _crc;
   
   public UnsetFunction(long crc)
@@ -34,6 +34,7 @@ import com.caucho.quercus.Quercus;
 import com.caucho.quercus.QuercusRuntimeException;
 import com.caucho.quercus.module.QuercusModule;
 import com.caucho.util.L10N;
+import com.caucho.vfs.HttpStreamPool;
 import com.caucho.vfs.Path;
 
 import javax.naming.Context;
@@ -156,6 +157,23 @@ public class QuercusServlet
         isCompileFailover));
   }
 
+  /**
+   * Sets the number of requests before a lazily compiled page is compiled.
+   */
+  public void setCompileThreshold(int threshold)
+  {
+    getQuercus().setCompileThreshold(threshold);
+  }
+
+  /**
+   * Sets the number of calls before a builtin function is called through
+   * a generated invoker instead of reflection, or -1 to disable.
+   */
+  public void setDirectInvokeThreshold(int threshold)
+  {
+    getQuercus().setDirectInvokeThreshold(threshold);
+  }
+
   /**
    * Sets the frequency of profiling, expressed as a probability.
    */
@@ -335,6 +353,15 @@ public class QuercusServlet
     if ("compile".equals(paramName)) {
       setCompile(paramValue);
     }
+    else if ("compile-failover".equals(paramName)) {
+      setCompileFailover(paramValue);
+    }
+    else if ("compile-threshold".equals(paramName)) {
+      setCompileThreshold(Integer.parseInt(paramValue));
+    }
+    else if ("direct-invoke-threshold".equals(paramName)) {
+      setDirectInvokeThreshold(Integer.parseInt(paramValue));
+    }
     else if ("database".equals(paramName)) {
       try {
         Context ic = new InitialContext();
@@ -370,6 +397,23 @@ public class QuercusServlet
 
       setIniFile(path);
     }
+    else if ("program-cache-dir".equals(paramName)) {
+      Quercus quercus = getQuercus();
+
+      String realPath = getServletContext().getRealPath(paramValue);
+
+      if (realPath == null)
+        realPath = paramValue;
+
+      quercus.setProgramCacheDirectory(quercus.getPwd().lookup(realPath));
+    }
+    else if ("preload-script".equals(paramName)) {
+      Quercus quercus = getQuercus();
+
+      String realPath = getServletContext().getRealPath(paramValue);
+
+      quercus.setPreloadScript(quercus.getPwd().lookup(realPath));
+    }
     else if ("mysql-version".equals(paramName)) {
       setMysqlVersion(paramValue);
     }
@@ -392,6 +436,24 @@ public class QuercusServlet
     else if ("connection-pool".equals(paramName)) {
       setConnectionPool("true".equals(paramValue));
     }
+    else if ("connection-pool-max".equals(paramName)) {
+      getQuercus().setConnectionPoolMax(Integer.parseInt(paramValue));
+    }
+    else if ("connection-pool-max-idle-time".equals(paramName)) {
+      getQuercus().setConnectionPoolMaxIdleTime(Long.parseLong(paramValue));
+    }
+    else if ("connection-pool-validation-query".equals(paramName)) {
+      getQuercus().setConnectionPoolValidationQuery(paramValue);
+    }
+    else if ("http-keepalive-max-per-host".equals(paramName)) {
+      HttpStreamPool.getPool().setMaxIdlePerHost(Integer.parseInt(paramValue));
+    }
+    else if ("http-keepalive-max".equals(paramName)) {
+      HttpStreamPool.getPool().setMaxIdle(Integer.parseInt(paramValue));
+    }
+    else if ("http-keepalive-idle-time".equals(paramName)) {
+      HttpStreamPool.getPool().setIdleTimeout(Long.parseLong(paramValue));
+    }
     else
       throw new ServletException(L.l("'{0}' is not a recognized init-param", paramName));
   }
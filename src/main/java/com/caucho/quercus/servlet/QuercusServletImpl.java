@@ -158,6 +158,8 @@ public class QuercusServletImpl
       env = quercus.createEnv(page, ws, request, response);
       try {
         env.start();
+
+        quercus.preload(env);
         
         env.setScriptGlobal("request", request);
         env.setScriptGlobal("response", response);
@@ -32,6 +32,7 @@ package com.caucho.quercus.statement;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 import java.util.ArrayList;
 
@@ -39,6 +40,8 @@ import java.util.ArrayList;
  * Represents sequence of statements.
  */
 public class BlockStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected Statement []_statements;
 
   public BlockStatement(Location location, Statement []statements)
@@ -111,5 +114,15 @@ public class BlockStatement extends Statement {
 
     return null;
   }
-}
 
+  /**
+   * Generates code for the block.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    for (int i = 0; i < _statements.length; i++) {
+      _statements[i].generate(gen);
+    }
+  }
+}
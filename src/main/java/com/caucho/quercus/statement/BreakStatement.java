@@ -31,16 +31,20 @@ package com.caucho.quercus.statement;
 
 import java.util.ArrayList;
 
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BreakValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a break expression statement in a PHP program.
  */
 public class BreakStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _target;
   protected final ArrayList<String> _loopLabelList;
   
@@ -66,5 +70,19 @@ public class BreakStatement extends Statement {
     else
       return new BreakValue(_target.eval(env).toInt());
   }
-}
 
+  /**
+   * Generates code for the statement, jumping directly when the
+   * enclosing loop is compiled.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    Label label = gen.getBreakLabel();
+
+    if (_target == null && label != null)
+      gen.getCode().gotoLabel(label);
+    else
+      super.generate(gen);
+  }
+}
@@ -38,6 +38,8 @@ import com.caucho.quercus.program.InterpretedClassDef;
  * Represents a class definition
  */
 public class ClassDefStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final InterpretedClassDef _cl;
 
   public ClassDefStatement(Location location, InterpretedClassDef cl)
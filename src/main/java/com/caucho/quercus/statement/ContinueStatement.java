@@ -31,16 +31,20 @@ package com.caucho.quercus.statement;
 
 import java.util.ArrayList;
 
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.ContinueValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a continue expression statement in a PHP program.
  */
 public class ContinueStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   //public static final ContinueStatement CONTINUE = new ContinueStatement();
   
   protected final Expr _target;
@@ -65,5 +69,19 @@ public class ContinueStatement extends Statement {
     else
       return new ContinueValue(_target.eval(env).toInt());
   }
-}
 
+  /**
+   * Generates code for the statement, jumping directly when the
+   * enclosing loop is compiled.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    Label label = gen.getContinueLabel();
+
+    if (_target == null && label != null)
+      gen.getCode().gotoLabel(label);
+    else
+      super.generate(gen);
+  }
+}
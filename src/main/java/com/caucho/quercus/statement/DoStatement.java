@@ -29,17 +29,22 @@
 
 package com.caucho.quercus.statement;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BreakValue;
 import com.caucho.quercus.env.ContinueValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a do ... while statement.
  */
 public class DoStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _test;
   protected final Statement _block;
   protected final String _label;
@@ -103,5 +108,32 @@ public class DoStatement extends Statement {
 
     return null;
   }
-}
 
+  /**
+   * Generates code for the loop.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+
+    Label topLabel = code.createLabel();
+    Label breakLabel = code.createLabel();
+    Label continueLabel = code.createLabel();
+
+    gen.beginLoop(this, breakLabel, continueLabel);
+
+    code.mark(topLabel);
+    gen.generateCheckTimeout();
+    _block.generate(gen);
+
+    code.mark(continueLabel);
+    _test.generateBoolean(gen);
+    code.branch(CodeWriter.IFNE, topLabel);
+    code.gotoLabel(breakLabel);
+
+    gen.endLoop();
+
+    code.mark(breakLabel);
+  }
+}
@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents an echo statement in a PHP program.
  */
 public class EchoStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
 
   /**
@@ -58,5 +61,16 @@ public class EchoStatement extends Statement {
 
     return null;
   }
-}
 
+  /**
+   * Generates code for the statement.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    _expr.generate(gen);
+    gen.loadEnv();
+    gen.getCode().invokeVirtual(PhpGenerator.VALUE, "print",
+                                "(" + PhpGenerator.L_ENV + ")V");
+  }
+}
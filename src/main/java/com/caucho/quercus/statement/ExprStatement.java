@@ -33,11 +33,14 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents an expression statement in a PHP program.
  */
 public class ExprStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   private Expr _expr;
   
   /**
@@ -65,5 +68,14 @@ public class ExprStatement extends Statement {
 
     return null;
   }
-}
 
+  /**
+   * Generates code for the statement.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    _expr.generate(gen);
+    gen.getCode().pop();
+  }
+}
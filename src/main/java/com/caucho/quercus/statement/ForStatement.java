@@ -29,17 +29,22 @@
 
 package com.caucho.quercus.statement;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BreakValue;
 import com.caucho.quercus.env.ContinueValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a for statement.
  */
 public class ForStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _init;
   protected final Expr _test;
   protected final Expr _incr;
@@ -112,5 +117,47 @@ public class ForStatement extends Statement {
 
     return null;
   }
-}
 
+  /**
+   * Generates code for the loop.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+
+    Label topLabel = code.createLabel();
+    Label breakLabel = code.createLabel();
+    Label continueLabel = code.createLabel();
+
+    gen.beginLoop(this, breakLabel, continueLabel);
+
+    if (_init != null) {
+      _init.generate(gen);
+      code.pop();
+    }
+
+    code.mark(topLabel);
+
+    if (_test != null) {
+      _test.generateBoolean(gen);
+      code.branch(CodeWriter.IFEQ, breakLabel);
+    }
+
+    gen.generateCheckTimeout();
+    _block.generate(gen);
+
+    code.mark(continueLabel);
+
+    if (_incr != null) {
+      _incr.generate(gen);
+      code.pop();
+    }
+
+    code.gotoLabel(topLabel);
+
+    gen.endLoop();
+
+    code.mark(breakLabel);
+  }
+}
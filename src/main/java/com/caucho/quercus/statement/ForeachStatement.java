@@ -46,6 +46,8 @@ import java.util.Map;
 public class ForeachStatement
   extends Statement
 {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _objExpr;
 
   protected final AbstractVarExpr _key;
@@ -39,6 +39,8 @@ import com.caucho.util.L10N;
  * Represents a function definition
  */
 public class FunctionDefStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   private final static L10N L = new L10N(FunctionDefStatement.class);
   
   protected Function _fun;
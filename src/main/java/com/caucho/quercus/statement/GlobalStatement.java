@@ -38,6 +38,8 @@ import com.caucho.quercus.expr.VarExpr;
  * Represents a global statement in a PHP program.
  */
 public class GlobalStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected VarExpr _var;
   
   /**
@@ -29,15 +29,20 @@
 
 package com.caucho.quercus.statement;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents an if statement.
  */
 public class IfStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   private final Expr _test;
   private final Statement _trueBlock;
   private final Statement _falseBlock;
@@ -86,5 +91,32 @@ public class IfStatement extends Statement {
     else
       return null;
   }
-}
 
+  /**
+   * Generates code for the 'if' statement.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+
+    Label falseLabel = code.createLabel();
+    Label endLabel = code.createLabel();
+
+    _test.generateBoolean(gen);
+    code.branch(CodeWriter.IFEQ, falseLabel);
+
+    _trueBlock.generate(gen);
+
+    if (_falseBlock != null && code.isReachable())
+      code.gotoLabel(endLabel);
+
+    code.mark(falseLabel);
+
+    if (_falseBlock != null) {
+      _falseBlock.generate(gen);
+
+      code.mark(endLabel);
+    }
+  }
+}
@@ -37,6 +37,8 @@ import com.caucho.quercus.env.Value;
  * Represents a compiled PHP program.
  */
 public class NullStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   public static final NullStatement NULL = new NullStatement();
 
   protected NullStatement()
@@ -39,6 +39,8 @@ import com.caucho.quercus.expr.Expr;
  * Represents a return expression statement in a PHP program.
  */
 public class ReturnRefStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected Expr _expr;
   
   /**
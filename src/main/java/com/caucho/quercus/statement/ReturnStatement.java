@@ -34,11 +34,14 @@ import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.NullValue;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a return expression statement in a PHP program.
  */
 public class ReturnStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _expr;
   
   /**
@@ -77,5 +80,19 @@ public class ReturnStatement extends Statement {
   {
     return RETURN;
   }
-}
 
+  /**
+   * Generates code for the statement.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    if (_expr != null)
+      _expr.generate(gen);
+    else
+      gen.getCode().getStatic("com/caucho/quercus/env/NullValue", "NULL",
+                              "Lcom/caucho/quercus/env/NullValue;");
+
+    gen.getCode().returnValue();
+  }
+}
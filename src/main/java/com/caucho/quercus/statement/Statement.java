@@ -33,6 +33,7 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.QuercusExecutionException;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
+import com.caucho.quercus.gen.PhpGenerator;
 
 import java.util.IdentityHashMap;
 import java.util.logging.Level;
@@ -41,7 +42,9 @@ import java.util.logging.Logger;
 /**
  * Represents a PHP statement
  */
-abstract public class Statement {
+abstract public class Statement implements java.io.Serializable {
+  private static final long serialVersionUID = 1L;
+
   private static final Logger log = Logger.getLogger(Statement.class.getName());
 
   public static final int FALL_THROUGH = 0;
@@ -84,6 +87,15 @@ abstract public class Statement {
 
   abstract public Value execute(Env env);
 
+  /**
+   * Generates bytecode for the statement.  The default calls
+   * <code>execute</code>.
+   */
+  public void generate(PhpGenerator gen)
+  {
+    gen.generateExecute(this);
+  }
+
   /**
    * Returns true if the statement can fallthrough.
    */
@@ -92,6 +104,15 @@ abstract public class Statement {
     return FALL_THROUGH;
   }
 
+  /**
+   * Rethrows a runtime exception with the statement's location, used by
+   * compiled loops.
+   */
+  final public void rethrowRuntime(RuntimeException e)
+  {
+    rethrow(e, RuntimeException.class);
+  }
+
   final protected void rethrow(Throwable t)
     throws Throwable
   {
@@ -41,6 +41,8 @@ import com.caucho.quercus.expr.VarExpr;
  * Represents a static statement in a PHP program.
  */
 public class StaticStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected VarExpr _var;
   protected Expr _initValue;
   protected String _staticName;
@@ -33,15 +33,36 @@ import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BreakValue;
 import com.caucho.quercus.env.ContinueValue;
 import com.caucho.quercus.env.Env;
+import com.caucho.quercus.env.LongValue;
+import com.caucho.quercus.env.StringBuilderValue;
+import com.caucho.quercus.env.UnicodeBuilderValue;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Represents a switch statement.
+ *
+ * When every case label is an integer or string literal, the labels are
+ * hashed to their blocks so long and plain string test values find
+ * their case without scanning.  The hashed candidate is still checked
+ * with eq(), and any value the tables can't decide exactly falls back
+ * to the linear scan.
  */
 public class SwitchStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
+  // fewest labels worth hashing
+  private static final int MIN_HASH_CASES = 8;
+
+  // doubles represent every long up to this magnitude exactly
+  private static final long MAX_EXACT_LONG = 1L << 53;
+
+  private static final int NO_MATCH = -1;
+  private static final int UNKNOWN = -2;
+
   protected final Expr _value;
 
   protected final Expr[][] _cases;
@@ -50,6 +71,18 @@ public class SwitchStatement extends Statement {
   protected final Statement _defaultBlock;
   protected final String _label;
 
+  // literal label values, or null if the labels aren't hashed
+  private Value [][]_caseValues;
+
+  // block of the first label equal to a long test value
+  private HashMap<Long,Integer> _longCaseMap;
+
+  // block of the first string label equal to a plain string test value
+  private HashMap<String,Integer> _stringCaseMap;
+
+  // block of the first integer label, by value
+  private HashMap<Long,Integer> _intCaseMap;
+
   public SwitchStatement(Location location,
                          Expr value,
                          ArrayList<Expr[]> caseList,
@@ -77,6 +110,152 @@ public class SwitchStatement extends Statement {
       _defaultBlock.setParent(this);
     
     _label = label;
+
+    initCaseMaps();
+  }
+
+  /**
+   * Hashes the case labels if they are all integer or string literals.
+   */
+  private void initCaseMaps()
+  {
+    int count = 0;
+
+    Value [][]caseValues = new Value[_cases.length][];
+
+    for (int i = 0; i < _cases.length; i++) {
+      Expr []cases = _cases[i];
+
+      caseValues[i] = new Value[cases.length];
+
+      for (int j = 0; j < cases.length; j++) {
+        if (! cases[j].isLiteral())
+          return;
+
+        Value value = cases[j].evalConstant();
+
+        if (! (value instanceof LongValue) && ! isPlainStringType(value))
+          return;
+        else if (value instanceof LongValue
+                 && Math.abs(value.toLong()) > MAX_EXACT_LONG)
+          return;
+
+        caseValues[i][j] = value;
+        count++;
+      }
+    }
+
+    if (count < MIN_HASH_CASES)
+      return;
+
+    HashMap<Long,Integer> longCaseMap = new HashMap<Long,Integer>();
+    HashMap<String,Integer> stringCaseMap = new HashMap<String,Integer>();
+    HashMap<Long,Integer> intCaseMap = new HashMap<Long,Integer>();
+
+    for (int i = 0; i < caseValues.length; i++) {
+      Integer index = Integer.valueOf(i);
+
+      for (Value value : caseValues[i]) {
+        if (value instanceof LongValue) {
+          Long key = Long.valueOf(value.toLong());
+
+          putFirst(longCaseMap, key, index);
+          putFirst(intCaseMap, key, index);
+        }
+        else {
+          putFirst(stringCaseMap, value.toString(), index);
+
+          // a long test value compares numerically against any string
+          if (value.isLongConvertible())
+            putFirst(longCaseMap, Long.valueOf(value.toLong()), index);
+          else {
+            double d = value.toDouble();
+
+            if (isExactLong(d))
+              putFirst(longCaseMap, Long.valueOf((long) d), index);
+          }
+        }
+      }
+    }
+
+    _caseValues = caseValues;
+    _longCaseMap = longCaseMap;
+    _stringCaseMap = stringCaseMap;
+    _intCaseMap = intCaseMap;
+  }
+
+  private static <K> void putFirst(HashMap<K,Integer> map,
+                                   K key, Integer index)
+  {
+    if (! map.containsKey(key))
+      map.put(key, index);
+  }
+
+  /**
+   * Returns true for the string types whose eq() compares a non-numeric
+   * string by its characters and a number by toDouble().
+   */
+  private static boolean isPlainStringType(Value value)
+  {
+    return (value instanceof StringBuilderValue
+            || value instanceof UnicodeBuilderValue);
+  }
+
+  private static boolean isExactLong(double d)
+  {
+    return (d == Math.floor(d)
+            && -MAX_EXACT_LONG <= d && d <= MAX_EXACT_LONG);
+  }
+
+  /**
+   * Returns the block of the first case equal to the test value,
+   * NO_MATCH if there is none, or UNKNOWN if the scan must decide.
+   */
+  private int findCase(Value testValue)
+  {
+    Value value = testValue.toValue();
+
+    Integer index;
+
+    if (value instanceof LongValue) {
+      long v = value.toLong();
+
+      if (v < -MAX_EXACT_LONG || MAX_EXACT_LONG < v)
+        return UNKNOWN;
+
+      index = _longCaseMap.get(Long.valueOf(v));
+    }
+    else if (isPlainStringType(value)
+             && ! value.getValueType().isNumberCmp()) {
+      index = _stringCaseMap.get(value.toString());
+
+      // a non-numeric string still equals an integer by its toDouble()
+      if (_intCaseMap.size() > 0) {
+        double d = value.toDouble();
+
+        if (isExactLong(d)) {
+          Integer intIndex = _intCaseMap.get(Long.valueOf((long) d));
+
+          if (intIndex != null
+              && (index == null || intIndex.intValue() < index.intValue()))
+            index = intIndex;
+        }
+      }
+    }
+    else
+      return UNKNOWN;
+
+    if (index == null)
+      return NO_MATCH;
+
+    int i = index.intValue();
+
+    for (Value caseValue : _caseValues[i]) {
+      if (testValue.eq(caseValue))
+        return i;
+    }
+
+    return UNKNOWN;
   }
 
   /**
@@ -87,6 +266,15 @@ public class SwitchStatement extends Statement {
     try {
       Value testValue = _value.eval(env);
 
+      if (_caseValues != null) {
+        int i = findCase(testValue);
+
+        if (i >= 0)
+          return executeBlock(env, i);
+        else if (i == NO_MATCH)
+          return executeDefault(env);
+      }
+
       int len = _cases.length;
 
       for (int i = 0; i < len; i++) {
@@ -95,37 +283,12 @@ public class SwitchStatement extends Statement {
         for (int j = 0; j < values.length; j++) {
           Value caseValue = values[j].eval(env);
 
-          if (testValue.eq(caseValue)) {
-            Value retValue = _blocks[i].execute(env);
-
-            if (retValue instanceof BreakValue) {
-              return null;
-            }
-            else if (retValue instanceof ContinueValue) {
-              ContinueValue conValue = (ContinueValue) retValue;
-              
-              int target = conValue.getTarget();
-              
-              if (target > 1)
-                return new ContinueValue(target - 1);
-              else
-                return null;
-            }
-            else
-              return retValue;
-          }
+          if (testValue.eq(caseValue))
+            return executeBlock(env, i);
         }
       }
 
-      if (_defaultBlock != null) {
-        Value retValue = _defaultBlock.execute(env);
-
-        if (retValue instanceof BreakValue)
-          return null;
-        else
-          return retValue;
-      }
-
+      return executeDefault(env);
     }
     catch (RuntimeException e) {
       rethrow(e, RuntimeException.class);
@@ -134,6 +297,47 @@ public class SwitchStatement extends Statement {
     return null;
   }
 
+  /**
+   * Executes the block of a matching case.
+   */
+  private Value executeBlock(Env env, int i)
+  {
+    Value retValue = _blocks[i].execute(env);
+
+    if (retValue instanceof BreakValue) {
+      return null;
+    }
+    else if (retValue instanceof ContinueValue) {
+      ContinueValue conValue = (ContinueValue) retValue;
+
+      int target = conValue.getTarget();
+
+      if (target > 1)
+        return new ContinueValue(target - 1);
+      else
+        return null;
+    }
+    else
+      return retValue;
+  }
+
+  /**
+   * Executes the default block, if any.
+   */
+  private Value executeDefault(Env env)
+  {
+    if (_defaultBlock != null) {
+      Value retValue = _defaultBlock.execute(env);
+
+      if (retValue instanceof BreakValue)
+        return null;
+      else
+        return retValue;
+    }
+
+    return null;
+  }
+
   /**
    * Returns true if control can go past the statement.
    */
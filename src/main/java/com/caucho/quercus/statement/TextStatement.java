@@ -38,6 +38,8 @@ import com.caucho.quercus.env.StringValue;
  * Represents static text in a PHP program.
  */
 public class TextStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   private StringValue _value;
   
   /**
@@ -38,6 +38,8 @@ import com.caucho.quercus.expr.Expr;
  * Represents a throw expression statement in a Quercus program.
  */
 public class ThrowStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected Expr _expr;
   
   /**
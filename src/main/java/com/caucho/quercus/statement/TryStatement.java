@@ -45,6 +45,8 @@ import java.util.ArrayList;
  * Represents sequence of statements.
  */
 public class TryStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Statement _block;
   protected final ArrayList<Catch> _catchList = new ArrayList<Catch>();
 
@@ -129,7 +131,9 @@ public class TryStatement extends Statement {
     }
   }
 
-  public static class Catch {
+  public static class Catch implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
     private final String _id;
     private final AbstractVarExpr _lhs;
     private final Statement _block;
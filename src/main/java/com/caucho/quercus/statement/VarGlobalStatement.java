@@ -39,6 +39,8 @@ import com.caucho.quercus.expr.VarVarExpr;
  * Represents a global statement in a PHP program.
  */
 public class VarGlobalStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected Expr _varExpr;
   
   /**
@@ -29,17 +29,22 @@
 
 package com.caucho.quercus.statement;
 
+import com.caucho.bytecode.CodeWriter;
+import com.caucho.bytecode.Label;
 import com.caucho.quercus.Location;
 import com.caucho.quercus.env.BreakValue;
 import com.caucho.quercus.env.ContinueValue;
 import com.caucho.quercus.env.Env;
 import com.caucho.quercus.env.Value;
 import com.caucho.quercus.expr.Expr;
+import com.caucho.quercus.gen.PhpGenerator;
 
 /**
  * Represents a while statement.
  */
 public class WhileStatement extends Statement {
+  private static final long serialVersionUID = 1L;
+
   protected final Expr _test;
   protected final Statement _block;
   protected final String _label;
@@ -103,5 +108,32 @@ public class WhileStatement extends Statement {
 
     return null;
   }
-}
 
+  /**
+   * Generates code for the loop.
+   */
+  @Override
+  public void generate(PhpGenerator gen)
+  {
+    CodeWriter code = gen.getCode();
+
+    Label breakLabel = code.createLabel();
+    Label continueLabel = code.createLabel();
+
+    gen.beginLoop(this, breakLabel, continueLabel);
+
+    code.mark(continueLabel);
+    _test.generateBoolean(gen);
+    code.branch(CodeWriter.IFEQ, breakLabel);
+
+    gen.generateCheckTimeout();
+    _block.generate(gen);
+
+    if (code.isReachable())
+      code.gotoLabel(continueLabel);
+
+    gen.endLoop();
+
+    code.mark(breakLabel);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Low-resolution wall clock shared by all threads.  While the clock is
+ * started, a daemon thread refreshes the time every few milliseconds, so
+ * hot checks like the script timeout read a volatile field instead of
+ * calling System.currentTimeMillis().
+ *
+ * <p>Users, e.g. each Quercus engine, call start() and stop() in pairs,
+ * and the thread runs only while there is a user, so a redeployed webapp
+ * doesn't leave it behind.  When the thread isn't running, e.g. in a
+ * sandbox which forbids threads, the clock falls back to the system time.
+ */
+public final class CurrentTime {
+  private static final Logger log
+    = Logger.getLogger(CurrentTime.class.getName());
+
+  // refresh interval in milliseconds
+  private static final long RESOLUTION = 10L;
+
+  private static volatile long _currentTime = System.currentTimeMillis();
+  private static volatile boolean _isActive;
+
+  private static int _userCount;
+  private static Thread _thread;
+
+  private CurrentTime()
+  {
+  }
+
+  /**
+   * Adds a user of the clock, starting the clock thread if needed.
+   */
+  public static synchronized void start()
+  {
+    _userCount++;
+
+    if (_thread != null)
+      return;
+
+    try {
+      Thread thread = new Thread(new ClockTask(), "quercus-clock");
+      thread.setDaemon(true);
+
+      _currentTime = System.currentTimeMillis();
+      _thread = thread;
+      _isActive = true;
+
+      thread.start();
+    } catch (SecurityException e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      _thread = null;
+      _isActive = false;
+    }
+  }
+
+  /**
+   * Removes a user of the clock, stopping the clock thread after the
+   * last one.
+   */
+  public static synchronized void stop()
+  {
+    if (_userCount == 0 || --_userCount > 0)
+      return;
+
+    Thread thread = _thread;
+
+    _isActive = false;
+    _thread = null;
+
+    if (thread != null)
+      thread.interrupt();
+  }
+
+  /**
+   * Returns the current time in milliseconds, accurate to the clock's
+   * resolution.
+   */
+  public static long getCurrentTime()
+  {
+    if (_isActive)
+      return _currentTime;
+    else
+      return System.currentTimeMillis();
+  }
+
+  /**
+   * Returns true if the clock thread is running.
+   */
+  public static boolean isActive()
+  {
+    return _isActive;
+  }
+
+  static class ClockTask implements Runnable {
+    public void run()
+    {
+      try {
+        while (_isActive) {
+          _currentTime = System.currentTimeMillis();
+
+          Thread.sleep(RESOLUTION);
+        }
+      } catch (InterruptedException e) {
+        log.log(Level.FINEST, e.toString(), e);
+      } finally {
+        synchronized (CurrentTime.class) {
+          if (_thread == Thread.currentThread()) {
+            _thread = null;
+            _isActive = false;
+          }
+        }
+      }
+    }
+  }
+}
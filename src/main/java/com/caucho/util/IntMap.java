@@ -201,7 +201,7 @@ public class IntMap {
    * Returns an iterator of the keys.
    */
 
-  public Iterator iterator()
+  public Iterator<Object> iterator()
   {
     return new IntMapIterator();
   }
@@ -234,7 +234,7 @@ public class IntMap {
     */
   }
 
-  class IntMapIterator implements Iterator {
+  class IntMapIterator implements Iterator<Object> {
     int _index = -1;
     Item _item;
 
@@ -170,22 +170,22 @@ public final class LruCache<K,V> {
     ArrayList<CacheListener> listeners = null;
 
     synchronized (this) {
-      for (int i = _entries.length - 1; i >= 0; i--) {
-        CacheItem<K,V> item = _entries[i];
-        _entries[i] = null;
+      synchronized (_lruLock) {
+        for (int i = _entries.length - 1; i >= 0; i--) {
+          CacheItem<K,V> item = _entries[i];
+          _entries[i] = null;
 
-        if (_isEnableListeners) {
           for (; item != null; item = item._nextHash) {
-            if (item._value instanceof CacheListener) {
+            item._isRemoved = true;
+
+            if (_isEnableListeners && item._value instanceof CacheListener) {
               if (listeners == null)
                 listeners = new ArrayList<CacheListener>();
               listeners.add((CacheListener) item._value);
             }
           }
         }
-      }
 
-      synchronized (_lruLock) {
         _size1 = 0;
         _head1 = null;
         _tail1 = null;
@@ -406,6 +406,10 @@ public final class LruCache<K,V> {
   private void updateLruImpl(CacheItem<K,V> item)
   {
     synchronized (_lruLock) {
+      // a concurrent get() may race with remove(); don't relink the item
+      if (item._isRemoved)
+        return;
+      
       _lruCounter = (_lruCounter + 1) & 0x3fffffff;
 
       item._lruCounter = _lruCounter;
@@ -548,6 +552,8 @@ public final class LruCache<K,V> {
             CacheItem<K,V> prevLru = item._prevLru;
             CacheItem<K,V> nextLru = item._nextLru;
 
+            item._isRemoved = true;
+
             if (item._hitCount == 1) {
               _size1--; 
 
@@ -669,6 +675,7 @@ public final class LruCache<K,V> {
     V _value;
     int _index;
     int _hitCount;
+    boolean _isRemoved;
 
     CacheItem(K key, V value)
     {
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.util;
+
+import java.util.Iterator;
+
+/**
+ * Fixed length cache with an approximate LRU replacement policy, split
+ * into independently locked LruCache segments so concurrent threads
+ * rarely contend for the same monitor.  Each key belongs to one segment,
+ * and the LRU order is kept per segment.
+ *
+ * <p>The API matches LruCache.  Null keys are not allowed.
+ */
+public final class SegmentedLruCache<K,V> {
+  // maximum number of segments
+  private static final int MAX_SEGMENTS = 16;
+  // minimum capacity of a segment
+  private static final int MIN_SEGMENT_CAPACITY = 8;
+
+  private final LruCache<K,V> []_segments;
+  private final int _segmentShift;
+
+  private final int _capacity;
+
+  /**
+   * Create the cache with a specific capacity.
+   *
+   * @param initialCapacity minimum capacity of the cache
+   */
+  @SuppressWarnings("unchecked")
+  public SegmentedLruCache(int initialCapacity)
+  {
+    int segmentCount = 1;
+    int shift = 32;
+
+    while (segmentCount < MAX_SEGMENTS
+           && 2 * segmentCount * MIN_SEGMENT_CAPACITY <= initialCapacity) {
+      segmentCount *= 2;
+      shift--;
+    }
+
+    _segments = (LruCache<K,V>[]) new LruCache[segmentCount];
+    _segmentShift = shift;
+    _capacity = initialCapacity;
+
+    int segmentCapacity = (initialCapacity + segmentCount - 1) / segmentCount;
+
+    for (int i = 0; i < segmentCount; i++) {
+      _segments[i] = new LruCache<K,V>(segmentCapacity);
+    }
+  }
+
+  /**
+   * Returns the segment for a key.  The segment uses the high bits of a
+   * spread hash, since the LruCache tables use the low bits.
+   */
+  private LruCache<K,V> getSegment(Object key)
+  {
+    if (_segments.length == 1)
+      return _segments[0];
+
+    int hash = key.hashCode() * 0x9e3779b9;
+
+    return _segments[hash >>> _segmentShift];
+  }
+
+  /**
+   * Disable the listeners
+   */
+  public void setEnableListeners(boolean isEnable)
+  {
+    for (LruCache<K,V> segment : _segments) {
+      segment.setEnableListeners(isEnable);
+    }
+  }
+
+  /**
+   * Returns the current number of entries in the cache.
+   */
+  public int size()
+  {
+    int size = 0;
+
+    for (LruCache<K,V> segment : _segments) {
+      size += segment.size();
+    }
+
+    return size;
+  }
+
+  /**
+   * Returns the cache capacity
+   */
+  public int getCapacity()
+  {
+    return _capacity;
+  }
+
+  /**
+   * Clears the cache
+   */
+  public void clear()
+  {
+    for (LruCache<K,V> segment : _segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * Get an item from the cache and make it most recently used.
+   *
+   * @param key key to lookup the item
+   * @return the matching object in the cache
+   */
+  public V get(K key)
+  {
+    return getSegment(key).get(key);
+  }
+
+  /**
+   * Puts a new item in the cache.  If the segment is full, remove its
+   * LRU item.
+   *
+   * @param key key to store data
+   * @param value value to be stored
+   *
+   * @return old value stored under the key
+   */
+  public V put(K key, V value)
+  {
+    return getSegment(key).put(key, value);
+  }
+
+  /**
+   * Puts a new item in the cache.  If the segment is full, remove its
+   * LRU item.
+   *
+   * @param key key to store data
+   * @param value value to be stored
+   *
+   * @return the value actually stored
+   */
+  public V putIfNew(K key, V value)
+  {
+    return getSegment(key).putIfNew(key, value);
+  }
+
+  /**
+   * Puts a new item in the cache if the current value matches oldValue.
+   *
+   * @param key the key
+   * @param value the new value
+   * @param testValue the value to test against the current
+   *
+   * @return true if the put succeeds
+   */
+  public boolean compareAndPut(V testValue, K key, V value)
+  {
+    return getSegment(key).compareAndPut(testValue, key, value);
+  }
+
+  /**
+   * Removes an item from the cache
+   *
+   * @param key the key to remove
+   *
+   * @return the value removed
+   */
+  public V remove(K key)
+  {
+    return getSegment(key).remove(key);
+  }
+
+  /**
+   * Remove the last item in the LRU of the largest segment.
+   */
+  public boolean removeTail()
+  {
+    return getLargestSegment().removeTail();
+  }
+
+  /**
+   * Remove the last item in the LRU of the largest segment, from the
+   * list with the longest length.
+   */
+  public boolean removeLongestTail()
+  {
+    return getLargestSegment().removeLongestTail();
+  }
+
+  private LruCache<K,V> getLargestSegment()
+  {
+    LruCache<K,V> largest = _segments[0];
+
+    for (int i = 1; i < _segments.length; i++) {
+      if (largest.size() < _segments[i].size())
+        largest = _segments[i];
+    }
+
+    return largest;
+  }
+
+  /**
+   * Returns the keys stored in the cache
+   */
+  public Iterator<K> keys()
+  {
+    return new SegmentIterator<K>() {
+      Iterator<K> iterator(LruCache<K,V> segment)
+      {
+        return segment.keys();
+      }
+    };
+  }
+
+  /**
+   * Returns keys stored in the cache.  The old iterator isn't reused.
+   */
+  public Iterator<K> keys(Iterator<K> oldIter)
+  {
+    return keys();
+  }
+
+  /**
+   * Returns the values in the cache
+   */
+  public Iterator<V> values()
+  {
+    return new SegmentIterator<V>() {
+      Iterator<V> iterator(LruCache<K,V> segment)
+      {
+        return segment.values();
+      }
+    };
+  }
+
+  public Iterator<V> values(Iterator<V> oldIter)
+  {
+    return values();
+  }
+
+  /**
+   * Returns the entries
+   */
+  public Iterator<LruCache.Entry<K,V>> iterator()
+  {
+    return new SegmentIterator<LruCache.Entry<K,V>>() {
+      Iterator<LruCache.Entry<K,V>> iterator(LruCache<K,V> segment)
+      {
+        return segment.iterator();
+      }
+    };
+  }
+
+  /**
+   * Returns the hit count.
+   */
+  public long getHitCount()
+  {
+    long count = 0;
+
+    for (LruCache<K,V> segment : _segments) {
+      count += segment.getHitCount();
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the miss count.
+   */
+  public long getMissCount()
+  {
+    long count = 0;
+
+    for (LruCache<K,V> segment : _segments) {
+      count += segment.getMissCount();
+    }
+
+    return count;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + size() + "/" + _capacity
+            + ",segments=" + _segments.length + "]");
+  }
+
+  /**
+   * Iterates over the segments in turn.
+   */
+  abstract class SegmentIterator<T> implements Iterator<T> {
+    private int _index;
+    private Iterator<T> _iter;
+
+    abstract Iterator<T> iterator(LruCache<K,V> segment);
+
+    public boolean hasNext()
+    {
+      while (_iter == null || ! _iter.hasNext()) {
+        if (_segments.length <= _index)
+          return false;
+
+        _iter = iterator(_segments[_index++]);
+      }
+
+      return true;
+    }
+
+    public T next()
+    {
+      if (! hasNext())
+        return null;
+
+      return _iter.next();
+    }
+
+    public void remove()
+    {
+      _iter.remove();
+    }
+  }
+}
@@ -39,6 +39,7 @@ import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.logging.Level;
@@ -55,12 +56,18 @@ class HttpStream extends StreamImpl {
   // reserved headers that should not be passed to the HTTP server
   private static HashMap<String,String> _reserved;
 
-  private static final Object LOCK = new Object();
-  
-  // Saved keepalive stream for a new request.
-  private static HttpStream _savedStream;
+  // default read timeout for the socket
+  private static final int SOCKET_TIMEOUT = 300 * 1000;
+  // largest unread response body drained to recycle a connection
+  private static final int MAX_DRAIN_LENGTH = 64 * 1024;
+
   private boolean _isSSL;
 
+  // the keepalive pool key, i.e. scheme://host:port
+  private String _poolKey;
+  // time the stream was returned to the keepalive pool
+  private long _idleStartTime;
+
   private Socket _s;
   private InputStream _is;
   private OutputStream _os;
@@ -108,11 +115,13 @@ class HttpStream extends StreamImpl {
   /**
    * Create a new HTTP stream.
    */
-  private HttpStream(Path path, String host, int port, Socket s)
+  private HttpStream(Path path, String poolKey,
+                     String host, int port, Socket s)
     throws IOException
   {
     _s = s;
 
+    _poolKey = poolKey;
     _host = host;
     _port = port;
     
@@ -158,8 +167,8 @@ class HttpStream extends StreamImpl {
   }
 
   /**
-   * Creates a new HTTP stream.  If there is a saved connection to
-   * the same host, use it.
+   * Creates a new HTTP stream.  If the keepalive pool has an idle
+   * connection to the same host, use it.
    *
    * @param path the URL for the stream
    *
@@ -170,26 +179,17 @@ class HttpStream extends StreamImpl {
     String host = path.getHost();
     int port = path.getPort();
 
-    HttpStream stream = null;
-    synchronized (LOCK) {
-      if (_savedStream != null
-          && host.equals(_savedStream.getHost())
-          && port == _savedStream.getPort()) {
-        stream = _savedStream;
-        _savedStream = null;
-      }
-    }
+    String poolKey = path.getScheme() + "://" + host + ":" + port;
 
-    if (stream == null) {
-    }
-    // if the stream has timed out, close it
-    else {
-      try {
-        stream._isKeepalive = false;
-        stream.close();
-      } catch (IOException e) {
-        log.log(Level.FINE, e.toString(), e);
-      }
+    HttpStream stream = HttpStreamPool.getPool().allocate(poolKey);
+
+    if (stream != null) {
+      if (log.isLoggable(Level.FINER))
+        log.finer(stream + " reuse keepalive connection for " + poolKey);
+
+      stream.init(path);
+
+      return stream;
     }
 
     Socket s;
@@ -226,14 +226,12 @@ class HttpStream extends StreamImpl {
       throw new ConnectException(path.getURL() + ": " + e.toString());
     }
 
-    int socketTimeout = 300 * 1000;
-
     try {
-      s.setSoTimeout(socketTimeout);
+      s.setSoTimeout(SOCKET_TIMEOUT);
     } catch (Exception e) {
     }
           
-    return new HttpStream(path, host, port, s);
+    return new HttpStream(path, poolKey, host, port, s);
   }
 
   /**
@@ -248,6 +246,8 @@ class HttpStream extends StreamImpl {
     _isPost = false;
     _isHead = false;
     _method = null;
+    _isKeepalive = true;
+    _isHttp11 = true;
     _attributes.clear();
     
     setPath(path);
@@ -256,6 +256,62 @@ class HttpStream extends StreamImpl {
       _virtualHost = ((HttpPath) path).getVirtualHost();
   }
 
+  /**
+   * Returns the keepalive pool key.
+   */
+  String getPoolKey()
+  {
+    return _poolKey;
+  }
+
+  /**
+   * Returns the time the stream became idle in the keepalive pool.
+   */
+  long getIdleStartTime()
+  {
+    return _idleStartTime;
+  }
+
+  /**
+   * Sets the time the stream became idle in the keepalive pool.
+   */
+  void setIdleStartTime(long time)
+  {
+    _idleStartTime = time;
+  }
+
+  /**
+   * Returns true if an idle connection can no longer be used, i.e. the
+   * server has closed it or sent unexpected data.
+   */
+  boolean isStale()
+  {
+    if (_s == null || _s.isClosed() || _s.isInputShutdown())
+      return true;
+
+    try {
+      if (_rs.getBufferAvailable() > 0)
+        return true;
+
+      _s.setSoTimeout(1);
+
+      try {
+        // any data or eof on an idle connection means it's unusable
+        _is.read();
+
+        return true;
+      } catch (SocketTimeoutException e) {
+        return false;
+      } finally {
+        _s.setSoTimeout(SOCKET_TIMEOUT);
+      }
+    } catch (IOException e) {
+      log.log(Level.FINEST, e.toString(), e);
+
+      return true;
+    }
+  }
+
   /**
    * Set if this should be an SSL connection.
    */
@@ -491,6 +547,7 @@ class HttpStream extends StreamImpl {
           }
 
           if (_chunkLength == 0) {
+            skipChunkTrailer();
             _isRequestDone = true;
             return -1;
           }
@@ -529,6 +586,28 @@ class HttpStream extends StreamImpl {
     }
   }
 
+  /**
+   * Skips the trailer after the last chunk, so a recycled connection
+   * starts at the next response.
+   */
+  private void skipChunkTrailer() throws IOException
+  {
+    CharBuffer line = new CharBuffer();
+
+    for (int count = 0; count < 100; count++) {
+      line.clear();
+
+      if (! _rs.readln(line)) {
+        _isKeepalive = false;
+        return;
+      }
+      else if (line.length() == 0)
+        return;
+    }
+
+    _isKeepalive = false;
+  }
+
   /**
    * Sends the request and initializes the response.
    */
@@ -558,6 +637,10 @@ class HttpStream extends StreamImpl {
       return;
 
     _didGet = true;
+
+    // HTTP/1.0 servers close the connection after the response
+    if (! _isHttp11)
+      _isKeepalive = false;
     
     if (log.isLoggable(Level.FINER))
       log.finer(this + " connect " + _method + " post=" + _isPost);
@@ -813,6 +896,10 @@ class HttpStream extends StreamImpl {
         _attributes.put(keyString, value);
       }
     }
+
+    // a body delimited by eof can't be followed by another request
+    if (! _isHead && ! _isChunked && _contentLength < 0)
+      _isKeepalive = false;
   }
 
   /**
@@ -833,27 +920,69 @@ class HttpStream extends StreamImpl {
   }
 
   /**
-   * Close the connection.
+   * Close the connection.  If keepalive is allowed, any unread response
+   * is drained and the connection is returned to the keepalive pool.
    */
   public void close() throws IOException
   {
     if (_isKeepalive) {
       // If recycling, read any unread data
-      if (! _didGet)
-        getConnInput();
+      try {
+        if (! _didGet)
+          getConnInput();
+      } catch (IOException e) {
+        _isKeepalive = false;
+      }
 
-      if (! _isRequestDone) {
-        if (_tempBuffer == null)
-          _tempBuffer = new byte[256];
+      if (_isKeepalive && ! _isRequestDone)
+        drain();
+    }
 
-        try {
-          while (read(_tempBuffer, 0, _tempBuffer.length) > 0) {
-          }
-        } catch (IOException e) {
+    if (_isKeepalive && _isRequestDone && _s != null) {
+      if (HttpStreamPool.getPool().free(this))
+        return;
+    }
+
+    closeSocket();
+  }
+
+  /**
+   * Reads the rest of a short response so the connection can be reused.
+   */
+  private void drain()
+  {
+    if (_contentLength > MAX_DRAIN_LENGTH) {
+      _isKeepalive = false;
+      return;
+    }
+
+    if (_tempBuffer == null)
+      _tempBuffer = new byte[256];
+
+    int total = 0;
+
+    try {
+      int len;
+
+      while ((len = read(_tempBuffer, 0, _tempBuffer.length)) > 0) {
+        total += len;
+
+        if (MAX_DRAIN_LENGTH < total) {
           _isKeepalive = false;
+          return;
         }
       }
+    } catch (IOException e) {
+      _isKeepalive = false;
     }
+  }
+
+  /**
+   * Closes the underlying socket.
+   */
+  void closeSocket() throws IOException
+  {
+    _isKeepalive = false;
 
     try {
       try {
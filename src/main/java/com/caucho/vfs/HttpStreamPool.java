@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.vfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of idle keepalive HTTP connections, keyed by scheme, host and port.
+ */
+public class HttpStreamPool {
+  private static final Logger log
+    = Logger.getLogger(HttpStreamPool.class.getName());
+
+  private static final HttpStreamPool _pool = new HttpStreamPool();
+
+  private final HashMap<String,ArrayList<HttpStream>> _idleMap
+    = new HashMap<String,ArrayList<HttpStream>>();
+
+  private int _maxIdlePerHost = 8;
+  private int _maxIdle = 64;
+  private long _idleTimeout = 15000L;
+
+  private int _idleCount;
+
+  private long _hitCount;
+  private long _missCount;
+  private long _staleCount;
+
+  private HttpStreamPool()
+  {
+  }
+
+  /**
+   * Returns the shared pool.
+   */
+  public static HttpStreamPool getPool()
+  {
+    return _pool;
+  }
+
+  /**
+   * Sets the maximum idle connections kept for a single host.
+   */
+  public void setMaxIdlePerHost(int max)
+  {
+    _maxIdlePerHost = max;
+  }
+
+  /**
+   * Returns the maximum idle connections kept for a single host.
+   */
+  public int getMaxIdlePerHost()
+  {
+    return _maxIdlePerHost;
+  }
+
+  /**
+   * Sets the maximum idle connections kept for all hosts.
+   */
+  public void setMaxIdle(int max)
+  {
+    _maxIdle = max;
+  }
+
+  /**
+   * Returns the maximum idle connections kept for all hosts.
+   */
+  public int getMaxIdle()
+  {
+    return _maxIdle;
+  }
+
+  /**
+   * Sets the time in milliseconds an idle connection is kept.
+   */
+  public void setIdleTimeout(long timeout)
+  {
+    _idleTimeout = timeout;
+  }
+
+  /**
+   * Returns the time in milliseconds an idle connection is kept.
+   */
+  public long getIdleTimeout()
+  {
+    return _idleTimeout;
+  }
+
+  /**
+   * Returns the number of requests which reused an idle connection.
+   */
+  public synchronized long getHitCount()
+  {
+    return _hitCount;
+  }
+
+  /**
+   * Returns the number of requests which opened a new connection.
+   */
+  public synchronized long getMissCount()
+  {
+    return _missCount;
+  }
+
+  /**
+   * Returns the number of idle connections discarded as closed or expired.
+   */
+  public synchronized long getStaleCount()
+  {
+    return _staleCount;
+  }
+
+  /**
+   * Returns the current number of idle connections.
+   */
+  public synchronized int getIdleCount()
+  {
+    return _idleCount;
+  }
+
+  /**
+   * Returns an idle connection for the key, or null if a new connection
+   * must be opened.
+   */
+  HttpStream allocate(String key)
+  {
+    long now = System.currentTimeMillis();
+
+    while (true) {
+      HttpStream stream = null;
+
+      synchronized (this) {
+        ArrayList<HttpStream> idleList = _idleMap.get(key);
+
+        if (idleList != null && idleList.size() > 0) {
+          // most recently used first, since it's least likely to be stale
+          stream = idleList.remove(idleList.size() - 1);
+          _idleCount--;
+        }
+        else {
+          _missCount++;
+
+          return null;
+        }
+      }
+
+      if (stream.getIdleStartTime() + _idleTimeout < now
+          || stream.isStale()) {
+        synchronized (this) {
+          _staleCount++;
+        }
+
+        close(stream);
+        continue;
+      }
+
+      synchronized (this) {
+        _hitCount++;
+      }
+
+      return stream;
+    }
+  }
+
+  /**
+   * Returns a connection to the pool.
+   *
+   * @return false if the pool is full and the caller must close it
+   */
+  boolean free(HttpStream stream)
+  {
+    long now = System.currentTimeMillis();
+
+    ArrayList<HttpStream> expiredList = null;
+
+    boolean isFree = false;
+
+    synchronized (this) {
+      String key = stream.getPoolKey();
+
+      ArrayList<HttpStream> idleList = _idleMap.get(key);
+
+      if (idleList == null) {
+        idleList = new ArrayList<HttpStream>();
+        _idleMap.put(key, idleList);
+      }
+
+      // oldest connections are at the head
+      while (idleList.size() > 0
+             && idleList.get(0).getIdleStartTime() + _idleTimeout < now) {
+        if (expiredList == null)
+          expiredList = new ArrayList<HttpStream>();
+
+        expiredList.add(idleList.remove(0));
+        _idleCount--;
+        _staleCount++;
+      }
+
+      if (idleList.size() < _maxIdlePerHost && _idleCount < _maxIdle) {
+        stream.setIdleStartTime(now);
+        idleList.add(stream);
+        _idleCount++;
+
+        isFree = true;
+      }
+
+      if (idleList.size() == 0)
+        _idleMap.remove(key);
+    }
+
+    if (expiredList != null) {
+      for (HttpStream expired : expiredList) {
+        close(expired);
+      }
+    }
+
+    return isFree;
+  }
+
+  /**
+   * Closes all idle connections.
+   */
+  public void clear()
+  {
+    ArrayList<HttpStream> closeList = new ArrayList<HttpStream>();
+
+    synchronized (this) {
+      for (ArrayList<HttpStream> idleList : _idleMap.values()) {
+        closeList.addAll(idleList);
+      }
+
+      _idleMap.clear();
+      _idleCount = 0;
+    }
+
+    for (HttpStream stream : closeList) {
+      close(stream);
+    }
+  }
+
+  private void close(HttpStream stream)
+  {
+    try {
+      stream.closeSocket();
+    } catch (IOException e) {
+      log.log(Level.FINE, e.toString(), e);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[idle=" + getIdleCount()
+            + ",hit=" + getHitCount()
+            + ",miss=" + getMissCount() + "]");
+  }
+}
@@ -363,10 +363,11 @@ public final class ReadStream extends InputStream
 
       long skipped = _source.skip(n - buffered);
 
+      // the buffered bytes are already counted in _position
       if (skipped < 0)
         return buffered;
       else {
-        _position += skipped + buffered;
+        _position += skipped;
         return skipped + buffered;
       }
     }
@@ -174,6 +174,14 @@ public class VfsStream extends StreamImpl {
     return _os != null;
   }
 
+  /**
+   * Returns the underlying output stream.
+   */
+  public OutputStream getOutputStream()
+  {
+    return _os;
+  }
+
   public boolean getFlushOnNewline()
   {
     return flushOnNewline;
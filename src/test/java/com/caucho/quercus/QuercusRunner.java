@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus;
+
+import com.caucho.quercus.env.Env;
+import com.caucho.quercus.page.QuercusPage;
+import com.caucho.vfs.Path;
+import com.caucho.vfs.StringStream;
+import com.caucho.vfs.Vfs;
+import com.caucho.vfs.WriteStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Runs PHP scripts on a private Quercus instance for tests.
+ */
+public class QuercusRunner
+{
+  private final Quercus _quercus;
+
+  public QuercusRunner()
+  {
+    _quercus = new Quercus();
+
+    _quercus.init();
+    _quercus.start();
+  }
+
+  /**
+   * Returns the engine the scripts run on.
+   */
+  public Quercus getQuercus()
+  {
+    return _quercus;
+  }
+
+  /**
+   * Runs the script, which starts in PHP mode, and returns its output.
+   */
+  public String execute(String code)
+    throws IOException
+  {
+    return execute(_quercus.parse(StringStream.open("<?php " + code)));
+  }
+
+  /**
+   * Runs the script file, which can open files relative to its own
+   * directory, and returns its output.
+   */
+  public String execute(Path path)
+    throws IOException
+  {
+    return execute(_quercus.parse(path));
+  }
+
+  private String execute(QuercusPage page)
+    throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    WriteStream out = Vfs.openWrite(bos);
+    out.setNewlineString("\n");
+
+    Env env = new Env(_quercus, page, out, null, null);
+
+    try {
+      env.start();
+
+      _quercus.preload(env);
+
+      try {
+        page.executeTop(env);
+      } catch (QuercusExitException e) {
+      }
+
+      out.flush();
+    } finally {
+      env.close();
+    }
+
+    return new String(bos.toByteArray(), "ISO-8859-1");
+  }
+
+  /**
+   * Closes the engine.
+   */
+  public void close()
+  {
+    _quercus.close();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.env;
+
+import com.caucho.quercus.QuercusRunner;
+import com.caucho.vfs.Vfs;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that requests started from a preloaded state see the preload
+ * script's globals, including the ones it made references.
+ */
+public class SaveStateTest
+{
+  private static final String PRELOAD
+    = "<?php"
+    + " $b = array('n' => 1);"
+    + " $a = &$b;"
+    + " $c = 5;"
+    + " $d = &$c;"
+    + " $e = &$c;"
+    + " $f = 'f';";
+
+  private static QuercusRunner _runner;
+  private static File _file;
+
+  @BeforeClass
+  public static void setUp()
+    throws Exception
+  {
+    _file = File.createTempFile("quercus-preload", ".php");
+
+    FileOutputStream os = new FileOutputStream(_file);
+
+    try {
+      os.write(PRELOAD.getBytes("ISO-8859-1"));
+    } finally {
+      os.close();
+    }
+
+    _runner = new QuercusRunner();
+    _runner.getQuercus().setPreloadScript(Vfs.lookup(_file.getAbsolutePath()));
+  }
+
+  @AfterClass
+  public static void tearDown()
+  {
+    _runner.close();
+
+    _file.delete();
+  }
+
+  @Test
+  public void testReferences()
+    throws Exception
+  {
+    String code = "$a['n']++;"
+      + "echo $b['n'], ',';"
+      + "$d = 7;"
+      + "echo $c, $e, ',';"
+      + "unset($e);"
+      + "$c = 8;"
+      + "echo $d, isset($e) ? 'set' : 'unset', ',', $f;";
+
+    // each request starts from the same saved state
+    assertEquals("2,77,8unset,f", _runner.execute(code));
+    assertEquals("2,77,8unset,f", _runner.execute(code));
+  }
+
+  @Test
+  public void testReferenceRebound()
+    throws Exception
+  {
+    String code = "$x = 9;"
+      + "$c = &$x;"
+      + "echo $c, $d, $e, ',';"
+      + "function f() { global $a; $a['n'] = 42; }"
+      + "f();"
+      + "echo $b['n'];";
+
+    assertEquals("955,42", _runner.execute(code));
+  }
+}
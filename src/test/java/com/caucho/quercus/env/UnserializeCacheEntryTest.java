@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.env;
+
+import com.caucho.quercus.QuercusRunner;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that writes into a fetched value never reach the frozen value
+ * shared by later apc_fetch and unserialize calls.
+ */
+public class UnserializeCacheEntryTest
+{
+  // writes into every level of $a
+  private static final String WRITE
+    = "function write(&$a) {"
+    + "  foreach ($a['x'] as &$v) { if (! is_array($v)) $v += 10; }"
+    + "  unset($v);"
+    + "  foreach ($a['x']['z'] as &$v) $v *= 10;"
+    + "  unset($v);"
+    + "  $a['x']['y']++;"
+    + "  $r = &$a['x'];"
+    + "  $r['w'] = 1;"
+    + "}"
+    + "function show($a) {"
+    + "  return $a['x']['y'] . ':' . implode(',', $a['x']['z'])"
+    + "    . ':' . count($a['x']) . ';';"
+    + "}";
+
+  private static final String VALUE
+    = "array('x' => array('y' => 1, 'z' => array(1, 2)))";
+
+  private static QuercusRunner _runner;
+
+  @BeforeClass
+  public static void setUp()
+  {
+    _runner = new QuercusRunner();
+  }
+
+  @AfterClass
+  public static void tearDown()
+  {
+    _runner.close();
+  }
+
+  @Test
+  public void testApcFetch()
+    throws Exception
+  {
+    String code = WRITE
+      + "apc_store('unserialize-cache-test', " + VALUE + ");"
+      + "for ($i = 0; $i < 3; $i++) {"
+      + "  $a = apc_fetch('unserialize-cache-test');"
+      + "  echo show($a);"
+      + "  write($a);"
+      + "}";
+
+    assertEquals("1:1,2:2;1:1,2:2;1:1,2:2;", _runner.execute(code));
+
+    // and in a later request
+    code = WRITE
+      + "$a = apc_fetch('unserialize-cache-test');"
+      + "echo show($a);";
+
+    assertEquals("1:1,2:2;", _runner.execute(code));
+  }
+
+  @Test
+  public void testUnserialize()
+    throws Exception
+  {
+    String code = WRITE
+      + "$s = serialize(" + VALUE + ");"
+      + "for ($i = 0; $i < 3; $i++) {"
+      + "  $a = unserialize($s);"
+      + "  echo show($a);"
+      + "  write($a);"
+      + "}";
+
+    assertEquals("1:1,2:2;1:1,2:2;1:1,2:2;", _runner.execute(code));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.expr;
+
+import com.caucho.quercus.QuercusRunner;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that writes into a nested literal array never reach the
+ * constant array shared by every evaluation of the literal.
+ */
+public class ArrayLiteralExprTest
+{
+  private static QuercusRunner _runner;
+
+  @BeforeClass
+  public static void setUp()
+  {
+    _runner = new QuercusRunner();
+  }
+
+  @AfterClass
+  public static void tearDown()
+  {
+    _runner.close();
+  }
+
+  @Test
+  public void testForeachByReference()
+    throws Exception
+  {
+    String code
+      = "function f() { return array('x' => array(10, 20)); }"
+      + "for ($i = 0; $i < 3; $i++) {"
+      + "  $a = f();"
+      + "  echo implode(',', $a['x']), ';';"
+      + "  foreach ($a['x'] as &$v) $v *= 10;"
+      + "  unset($v);"
+      + "}";
+
+    assertEquals("10,20;10,20;10,20;", _runner.execute(code));
+  }
+
+  @Test
+  public void testNestedForeachByReference()
+    throws Exception
+  {
+    String code
+      = "function f() { return array('x' => array('y' => array(1, 2))); }"
+      + "for ($i = 0; $i < 3; $i++) {"
+      + "  $a = f();"
+      + "  echo implode(',', $a['x']['y']), ';';"
+      + "  foreach ($a['x']['y'] as &$v) $v += 5;"
+      + "  unset($v);"
+      + "}";
+
+    assertEquals("1,2;1,2;1,2;", _runner.execute(code));
+  }
+
+  @Test
+  public void testNestedAssignment()
+    throws Exception
+  {
+    String code
+      = "function f() {"
+      + "  $a = array('x' => array('y' => 1));"
+      + "  $a['x']['y'] += 10;"
+      + "  $r = &$a['x'];"
+      + "  $r['z'] = 2;"
+      + "  return $a['x']['y'] . count($a['x']);"
+      + "}"
+      + "echo f(), ',', f(), ',', f();";
+
+    assertEquals("112,112,112", _runner.execute(code));
+  }
+
+  @Test
+  public void testStatic()
+    throws Exception
+  {
+    String code
+      = "function f() {"
+      + "  static $s = array('x' => array(1, 2));"
+      + "  foreach ($s['x'] as &$v) $v++;"
+      + "  unset($v);"
+      + "  return implode(',', $s['x']);"
+      + "}"
+      + "function g() { return array('x' => array(1, 2)); }"
+      + "echo f(), ';', f(), ';';"
+      + "$a = g();"
+      + "echo implode(',', $a['x']);";
+
+    assertEquals("2,3;3,4;1,2", _runner.execute(code));
+  }
+}
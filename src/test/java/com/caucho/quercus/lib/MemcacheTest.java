@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib;
+
+import com.caucho.quercus.QuercusRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Memcache class against an in-JVM stand-in server.
+ */
+public class MemcacheTest
+{
+  private MemcachedStub _server;
+  private QuercusRunner _runner;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _server = new MemcachedStub();
+    _runner = new QuercusRunner();
+  }
+
+  @After
+  public void tearDown()
+  {
+    _runner.close();
+    _server.close();
+  }
+
+  @Test
+  public void testSetGet()
+    throws Exception
+  {
+    assertEquals("bool(true)\nstring(5) \"hello\"\nbool(false)\n",
+                 run("var_dump($m->set('a', 'hello'));"
+                     + "var_dump($m->get('a'));"
+                     + "var_dump($m->get('missing'));"));
+  }
+
+  @Test
+  public void testSerialized()
+    throws Exception
+  {
+    assertEquals("1,2,x",
+                 run("$m->set('a', array(1, 2, 'x'));"
+                     + "echo implode(',', $m->get('a'));"));
+  }
+
+  @Test
+  public void testMultiGet()
+    throws Exception
+  {
+    assertEquals("a=1,c=3",
+                 run("$m->set('a', 1); $m->set('c', 3);"
+                     + "$r = $m->get(array('a', 'b', 'c'));"
+                     + "foreach ($r as $k => $v) $s[] = \"$k=$v\";"
+                     + "echo implode(',', $s);"));
+  }
+
+  @Test(timeout = 60000)
+  public void testLargeMultiGet()
+    throws Exception
+  {
+    // requests and responses both larger than the socket buffers
+    assertEquals("3000 3000",
+                 run("$v = str_repeat('v', 2048); $keys = array();"
+                     + "for ($i = 0; $i < 3000; $i++) {"
+                     + "  $k = str_pad($i, 200, 'k');"
+                     + "  $keys[] = $k; $values[$k] = $v . $i;"
+                     + "}"
+                     + "$m->setMulti($values);"
+                     + "$r = $m->get($keys); $n = 0;"
+                     + "foreach ($keys as $k) if ($r[$k] === $values[$k]) $n++;"
+                     + "echo count($r), ' ', $n;"));
+
+    // one get per 100 keys, each answered before the next is sent
+    assertEquals(30, _server.getGetCount());
+    assertEquals(0, _server.getPipelinedGetCount());
+  }
+
+  @Test
+  public void testAddReplace()
+    throws Exception
+  {
+    assertEquals("bool(true)\nbool(false)\nbool(false)\nbool(true)\n"
+                 + "string(1) \"2\"\n",
+                 run("var_dump($m->add('a', 1));"
+                     + "var_dump($m->add('a', 2));"
+                     + "var_dump($m->replace('b', 2));"
+                     + "var_dump($m->replace('a', 2));"
+                     + "var_dump($m->get('a'));"));
+  }
+
+  @Test
+  public void testDelete()
+    throws Exception
+  {
+    assertEquals("bool(true)\nbool(false)\nbool(false)\n",
+                 run("$m->set('a', 1);"
+                     + "var_dump($m->delete('a'));"
+                     + "var_dump($m->delete('a'));"
+                     + "var_dump($m->get('a'));"));
+  }
+
+  @Test
+  public void testIncrementDecrement()
+    throws Exception
+  {
+    assertEquals("int(6)\nint(16)\nint(0)\nbool(false)\n",
+                 run("$m->set('n', 5);"
+                     + "var_dump($m->increment('n'));"
+                     + "var_dump($m->increment('n', 10));"
+                     + "var_dump($m->decrement('n', 20));"
+                     + "var_dump($m->increment('missing'));"));
+  }
+
+  @Test
+  public void testCompressed()
+    throws Exception
+  {
+    assertEquals("ok",
+                 run("$v = str_repeat('abc', 1000);"
+                     + "$m->set('z', $v, MEMCACHE_COMPRESSED);"
+                     + "echo $m->get('z') === $v ? 'ok' : 'bad';"));
+
+    assertTrue((_server.getFlags("z") & Memcache.FLAG_COMPRESSED) != 0);
+    assertTrue(_server.getData("z").length < 3000);
+  }
+
+  @Test
+  public void testCompressThreshold()
+    throws Exception
+  {
+    assertEquals("ok",
+                 run("$m->setCompressThreshold(100);"
+                     + "$m->set('small', 'abc');"
+                     + "$m->set('large', str_repeat('abc', 100));"
+                     + "echo $m->get('large') === str_repeat('abc', 100)"
+                     + "  ? 'ok' : 'bad';"));
+
+    assertEquals(0, _server.getFlags("small") & Memcache.FLAG_COMPRESSED);
+    assertTrue((_server.getFlags("large") & Memcache.FLAG_COMPRESSED) != 0);
+  }
+
+  @Test
+  public void testStaleConnection()
+    throws Exception
+  {
+    assertEquals("1", run("$m->set('a', 1); echo $m->get('a');"));
+    assertEquals(1, _server.getConnectionCount());
+
+    // the pooled connection dies, as if the server had restarted
+    _server.dropConnections();
+
+    assertEquals("1", run("echo $m->get('a');"));
+    assertEquals(2, _server.getConnectionCount());
+  }
+
+  @Test
+  public void testFailover()
+    throws Exception
+  {
+    MemcachedStub backup = new MemcachedStub();
+
+    try {
+      String keys = "$keys = array();"
+        + "for ($i = 0; $i < 20; $i++) $keys[] = \"key$i\";";
+
+      String addBackup = "$m->addServer('127.0.0.1', "
+        + backup.getPort() + ");";
+
+      assertEquals("20",
+                   run(addBackup + keys
+                       + "foreach ($keys as $k) $m->set($k, $k);"
+                       + "echo count($m->get($keys));"));
+
+      int backupCount = 0;
+      for (int i = 0; i < 20; i++) {
+        if (backup.getData("key" + i) != null)
+          backupCount++;
+      }
+
+      // both servers own some of the keys
+      assertTrue(0 < backupCount && backupCount < 20);
+
+      backup.close();
+
+      // the first request to the dead server marks it as failed, after
+      // which its keys move to the live one
+      assertEquals("20",
+                   run(addBackup + keys
+                       + "$m->get($keys);"
+                       + "foreach ($keys as $k) $m->set($k, $k);"
+                       + "echo count($m->get($keys));"));
+
+      for (int i = 0; i < 20; i++)
+        assertNotNull(_server.getData("key" + i));
+    } finally {
+      backup.close();
+    }
+  }
+
+  private String run(String code)
+    throws Exception
+  {
+    return _runner.execute("$m = new Memcache();"
+                           + "$m->addServer('127.0.0.1', "
+                           + _server.getPort() + ");"
+                           + code);
+  }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-JVM stand-in for memcached, speaking the subset of the text
+ * protocol the client uses: get, set, add, replace, delete, incr,
+ * decr, flush_all, version and stats.  Expiry times are ignored.
+ *
+ * The server side of each socket has small buffers, so a client that
+ * writes too much before reading blocks here as it would against a
+ * busy server.
+ */
+public class MemcachedStub
+{
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final ServerSocket _serverSocket;
+
+  private final ConcurrentHashMap<String,Item> _items
+    = new ConcurrentHashMap<String,Item>();
+
+  private final ArrayList<Socket> _sockets = new ArrayList<Socket>();
+
+  private final Thread _acceptThread;
+  private final AtomicInteger _activeCount = new AtomicInteger();
+
+  private final AtomicInteger _connectionCount = new AtomicInteger();
+  private final AtomicInteger _getCount = new AtomicInteger();
+  private final AtomicInteger _pipelinedGetCount = new AtomicInteger();
+
+  private volatile boolean _isClosed;
+
+  public MemcachedStub()
+    throws IOException
+  {
+    _serverSocket = new ServerSocket();
+    _serverSocket.setReceiveBufferSize(BUFFER_SIZE);
+    _serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"),
+                                             0));
+
+    _acceptThread = new Thread(new Runnable() {
+        public void run()
+        {
+          accept();
+        }
+      }, "memcached-stub-accept");
+    _acceptThread.setDaemon(true);
+    _acceptThread.start();
+  }
+
+  /**
+   * Returns the listening port.
+   */
+  public int getPort()
+  {
+    return _serverSocket.getLocalPort();
+  }
+
+  /**
+   * Returns the number of connections accepted.
+   */
+  public int getConnectionCount()
+  {
+    return _connectionCount.get();
+  }
+
+  /**
+   * Returns the number of get commands received.
+   */
+  public int getGetCount()
+  {
+    return _getCount.get();
+  }
+
+  /**
+   * Returns the number of get commands that arrived with more commands
+   * already waiting behind them.
+   */
+  public int getPipelinedGetCount()
+  {
+    return _pipelinedGetCount.get();
+  }
+
+  /**
+   * Returns the stored flags for the key, or -1.
+   */
+  public int getFlags(String key)
+  {
+    Item item = _items.get(key);
+
+    return item != null ? item._flags : -1;
+  }
+
+  /**
+   * Returns the stored data for the key, or null.
+   */
+  public byte []getData(String key)
+  {
+    Item item = _items.get(key);
+
+    return item != null ? item._data : null;
+  }
+
+  /**
+   * Closes the open connections but keeps listening, like a server
+   * restart that kept its data.  Returns once the connections are
+   * closed, since a socket closed under a blocked reader is only
+   * released when the reader wakes up.
+   */
+  public void dropConnections()
+  {
+    ArrayList<Socket> sockets;
+
+    synchronized (_sockets) {
+      sockets = new ArrayList<Socket>(_sockets);
+      _sockets.clear();
+    }
+
+    for (Socket socket : sockets) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+      }
+    }
+
+    long expire = System.currentTimeMillis() + 5000;
+
+    while (_activeCount.get() > 0 && System.currentTimeMillis() < expire) {
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Stops listening and closes the connections.
+   */
+  public void close()
+  {
+    _isClosed = true;
+
+    try {
+      _serverSocket.close();
+    } catch (IOException e) {
+    }
+
+    // the port keeps listening until the accept thread has left accept()
+    try {
+      _acceptThread.join(5000);
+    } catch (InterruptedException e) {
+    }
+
+    dropConnections();
+  }
+
+  private void accept()
+  {
+    while (! _isClosed) {
+      final Socket socket;
+
+      try {
+        socket = _serverSocket.accept();
+      } catch (IOException e) {
+        return;
+      }
+
+      synchronized (_sockets) {
+        _sockets.add(socket);
+      }
+
+      try {
+        socket.setSendBufferSize(BUFFER_SIZE);
+      } catch (IOException e) {
+      }
+
+      _connectionCount.incrementAndGet();
+      _activeCount.incrementAndGet();
+
+      Thread thread = new Thread(new Runnable() {
+          public void run()
+          {
+            serve(socket);
+          }
+        }, "memcached-stub-" + socket.getPort());
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private void serve(Socket socket)
+  {
+    try {
+      InputStream is = new BufferedInputStream(socket.getInputStream());
+      OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+
+      String line;
+      while ((line = readLine(is)) != null) {
+        if (! handle(line, is, os))
+          break;
+
+        // responses go out once the client has sent everything it
+        // pipelined, as a real server's event loop would
+        if (is.available() == 0)
+          os.flush();
+      }
+    } catch (IOException e) {
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {
+      }
+
+      _activeCount.decrementAndGet();
+    }
+  }
+
+  private boolean handle(String line, InputStream is, OutputStream os)
+    throws IOException
+  {
+    String []parts = line.split(" ");
+    String cmd = parts[0];
+
+    if (cmd.equals("get") || cmd.equals("gets")) {
+      _getCount.incrementAndGet();
+
+      if (is.available() > 0)
+        _pipelinedGetCount.incrementAndGet();
+
+      for (int i = 1; i < parts.length; i++) {
+        Item item = _items.get(parts[i]);
+
+        if (item != null) {
+          writeLine(os, "VALUE " + parts[i] + " " + item._flags
+                    + " " + item._data.length);
+          os.write(item._data);
+          writeLine(os, "");
+        }
+      }
+
+      writeLine(os, "END");
+    }
+    else if (cmd.equals("set") || cmd.equals("add")
+             || cmd.equals("replace")) {
+      String key = parts[1];
+      int flags = Integer.parseInt(parts[2]);
+      byte []data = readData(is, Integer.parseInt(parts[4]));
+
+      Item item = new Item(flags, data);
+      boolean isStored;
+
+      if (cmd.equals("add"))
+        isStored = _items.putIfAbsent(key, item) == null;
+      else if (cmd.equals("replace"))
+        isStored = _items.replace(key, item) != null;
+      else {
+        _items.put(key, item);
+        isStored = true;
+      }
+
+      writeLine(os, isStored ? "STORED" : "NOT_STORED");
+    }
+    else if (cmd.equals("delete"))
+      writeLine(os, _items.remove(parts[1]) != null ? "DELETED" : "NOT_FOUND");
+    else if (cmd.equals("incr") || cmd.equals("decr"))
+      writeLine(os, increment(parts[1], cmd.equals("incr"),
+                              Long.parseLong(parts[2])));
+    else if (cmd.equals("flush_all")) {
+      _items.clear();
+      writeLine(os, "OK");
+    }
+    else if (cmd.equals("version"))
+      writeLine(os, "VERSION stub");
+    else if (cmd.equals("stats")) {
+      writeLine(os, "STAT curr_items " + _items.size());
+      writeLine(os, "END");
+    }
+    else if (cmd.equals("quit"))
+      return false;
+    else
+      writeLine(os, "ERROR");
+
+    return true;
+  }
+
+  private String increment(String key, boolean isIncr, long delta)
+    throws IOException
+  {
+    while (true) {
+      Item item = _items.get(key);
+
+      if (item == null)
+        return "NOT_FOUND";
+
+      long value;
+
+      try {
+        value = Long.parseLong(new String(item._data, "ISO-8859-1").trim());
+      } catch (NumberFormatException e) {
+        return "CLIENT_ERROR cannot increment or decrement non-numeric value";
+      }
+
+      // memcached clamps decrements at zero
+      if (isIncr)
+        value += delta;
+      else
+        value = Math.max(0, value - delta);
+
+      String result = String.valueOf(value);
+      Item newItem = new Item(item._flags, result.getBytes("ISO-8859-1"));
+
+      if (_items.replace(key, item, newItem))
+        return result;
+    }
+  }
+
+  private static String readLine(InputStream is)
+    throws IOException
+  {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    int ch;
+    while ((ch = is.read()) >= 0) {
+      if (ch == '\n') {
+        byte []bytes = line.toByteArray();
+        int len = bytes.length;
+
+        if (len > 0 && bytes[len - 1] == '\r')
+          len--;
+
+        return new String(bytes, 0, len, "ISO-8859-1");
+      }
+
+      line.write(ch);
+    }
+
+    return null;
+  }
+
+  private static byte []readData(InputStream is, int length)
+    throws IOException
+  {
+    byte []data = new byte[length];
+
+    int offset = 0;
+    while (offset < length) {
+      int sublen = is.read(data, offset, length - offset);
+
+      if (sublen < 0)
+        throw new IOException("unexpected end of stream");
+
+      offset += sublen;
+    }
+
+    // trailing CRLF
+    is.read();
+    is.read();
+
+    return data;
+  }
+
+  private static void writeLine(OutputStream os, String line)
+    throws IOException
+  {
+    os.write(line.getBytes("ISO-8859-1"));
+    os.write('\r');
+    os.write('\n');
+  }
+
+  static final class Item {
+    final int _flags;
+    final byte []_data;
+
+    Item(int flags, byte []data)
+    {
+      _flags = flags;
+      _data = data;
+    }
+  }
+}
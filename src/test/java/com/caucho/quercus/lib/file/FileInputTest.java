@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.lib.file;
+
+import com.caucho.quercus.QuercusRunner;
+import com.caucho.vfs.Vfs;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the file position after fpassthru copies the rest of a
+ * partly-read file.
+ */
+public class FileInputTest
+{
+  // larger than the read buffer
+  private static final int LENGTH = 134670;
+
+  private static QuercusRunner _runner;
+  private static File _file;
+  private static String _data;
+
+  @BeforeClass
+  public static void setUp()
+    throws Exception
+  {
+    _runner = new QuercusRunner();
+
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < LENGTH; i++) {
+      sb.append((char) ('A' + i % 26));
+    }
+
+    _data = sb.toString();
+
+    _file = File.createTempFile("quercus-file-input", ".dat");
+
+    write(_file, _data);
+  }
+
+  @AfterClass
+  public static void tearDown()
+  {
+    _runner.close();
+
+    _file.delete();
+  }
+
+  @Test
+  public void testFreadFpassthruFtell()
+    throws Exception
+  {
+    String code = "$h = fopen('" + _file.getName() + "', 'r');"
+      + "echo fread($h, 10);"
+      + "$n = fpassthru($h);"
+      + "echo '|', $n, '|', ftell($h), '|', feof($h) ? 'eof' : 'more';"
+      + "fseek($h, 5);"
+      + "echo '|', fread($h, 3), '|', ftell($h);"
+      + "fclose($h);";
+
+    assertEquals(_data + "|" + (LENGTH - 10) + "|" + LENGTH + "|eof|FGH|8",
+                 execute(code));
+  }
+
+  @Test
+  public void testFreadSeekForward()
+    throws Exception
+  {
+    String code = "$h = fopen('" + _file.getName() + "', 'r');"
+      + "fread($h, 10);"
+      + "fseek($h, 100000);"
+      + "echo ftell($h), '|', fread($h, 3), '|', ftell($h);"
+      + "fclose($h);";
+
+    assertEquals("100000|" + _data.substring(100000, 100003) + "|100003",
+                 execute(code));
+  }
+
+  /**
+   * Runs the code from a script next to the data file.
+   */
+  private static String execute(String code)
+    throws IOException
+  {
+    File script = File.createTempFile("quercus-file-input", ".php",
+                                      _file.getParentFile());
+
+    try {
+      write(script, "<?php " + code);
+
+      return _runner.execute(Vfs.lookup(script.getAbsolutePath()));
+    } finally {
+      script.delete();
+    }
+  }
+
+  private static void write(File file, String data)
+    throws IOException
+  {
+    FileOutputStream os = new FileOutputStream(file);
+
+    try {
+      os.write(data.getBytes("ISO-8859-1"));
+    } finally {
+      os.close();
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 1998-2008 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Resin(R) Open Source
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Resin Open Source is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Resin Open Source is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Resin Open Source; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.quercus.statement;
+
+import com.caucho.quercus.QuercusRunner;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that switch statements with hashed case labels pick the same
+ * case as comparing the labels one by one with ==.
+ */
+public class SwitchStatementTest
+{
+  // eight integer labels, enough to be hashed
+  private static final String INT_SWITCH
+    = "function intSwitch($v) {"
+    + "  switch ($v) {"
+    + "  case 0: return 'c0';"
+    + "  case 1: return 'c1';"
+    + "  case 2: return 'c2';"
+    + "  case 10: return 'c10';"
+    + "  case -1: return 'c-1';"
+    + "  case 9007199254740992: return 'c2^53';"
+    + "  case -9007199254740992: return 'c-2^53';"
+    + "  case 100: return 'c100';"
+    + "  default: return 'default';"
+    + "  }"
+    + "}";
+
+  private static final String INT_LABELS
+    = "$intLabels = array(array(0, 'c0'), array(1, 'c1'), array(2, 'c2'),"
+    + "  array(10, 'c10'), array(-1, 'c-1'),"
+    + "  array(9007199254740992, 'c2^53'),"
+    + "  array(-9007199254740992, 'c-2^53'), array(100, 'c100'));";
+
+  // eight string labels, some of them numeric
+  private static final String STRING_SWITCH
+    = "function stringSwitch($v) {"
+    + "  switch ($v) {"
+    + "  case 'a': return 'sa';"
+    + "  case 'abc': return 'sabc';"
+    + "  case '10': return 's10';"
+    + "  case '1e1': return 's1e1';"
+    + "  case 'x': return 'sx';"
+    + "  case '': return 'sempty';"
+    + "  case '0': return 's0';"
+    + "  case '1.0': return 's1.0';"
+    + "  default: return 'default';"
+    + "  }"
+    + "}";
+
+  private static final String STRING_LABELS
+    = "$stringLabels = array(array('a', 'sa'), array('abc', 'sabc'),"
+    + "  array('10', 's10'), array('1e1', 's1e1'), array('x', 'sx'),"
+    + "  array('', 'sempty'), array('0', 's0'), array('1.0', 's1.0'));";
+
+  private static final String FALL_THROUGH_SWITCH
+    = "function fallThrough($v) {"
+    + "  $r = '';"
+    + "  switch ($v) {"
+    + "  case 1: $r .= 'a';"
+    + "  case 2: $r .= 'b'; break;"
+    + "  case 3: case 4: $r .= 'c';"
+    + "  case 5: $r .= 'd';"
+    + "  case 6: $r .= 'e'; break;"
+    + "  case 'seven': $r .= 'f';"
+    + "  case 8: $r .= 'g';"
+    + "  default: $r .= 'x';"
+    + "  }"
+    + "  return $r;"
+    + "}";
+
+  // the first label == the value, as the unhashed switch scans them
+  private static final String SCAN
+    = "function scan($labels, $v) {"
+    + "  foreach ($labels as $label) {"
+    + "    if ($v == $label[0]) return $label[1];"
+    + "  }"
+    + "  return 'default';"
+    + "}";
+
+  private static final String VALUES
+    = "$values = array(0, 1, 2, 3, 10, -1, 100, 11, -2,"
+    + "  '0', '1', '10', '1e1', ' 10', '10 ', '10abc', '010', '0x0A',"
+    + "  '+10', '-1', '10.0', '1.0', 'abc', 'a', 'x', '', ' ',"
+    + "  null, true, false, 0.0, 1.0, 1.5, 10.0, -0.0, 1e100, NAN,"
+    + "  9007199254740992, 9007199254740993, -9007199254740992,"
+    + "  -9007199254740993, 9007199254740992.0, '9007199254740992',"
+    + "  9223372036854775807, -9223372036854775807 - 1, array(), array(1));";
+
+  private static QuercusRunner _runner;
+
+  @BeforeClass
+  public static void setUp()
+  {
+    _runner = new QuercusRunner();
+  }
+
+  @AfterClass
+  public static void tearDown()
+  {
+    _runner.close();
+  }
+
+  @Test
+  public void testNumericStrings()
+    throws Exception
+  {
+    assertEquals("c10", intSwitch("'1e1'"));
+    assertEquals("c10", intSwitch("' 10'"));
+    assertEquals("c10", intSwitch("'10.0'"));
+    assertEquals("c10", intSwitch("'+10'"));
+    assertEquals("c-1", intSwitch("'-1'"));
+
+    assertEquals("s10", stringSwitch("'1e1'"));
+    assertEquals("s10", stringSwitch("' 10'"));
+    assertEquals("s10", stringSwitch("'10.0'"));
+    assertEquals("s1.0", stringSwitch("'1'"));
+  }
+
+  @Test
+  public void testLeadingNumericStrings()
+    throws Exception
+  {
+    // a string with trailing garbage compares to an int by its prefix
+    assertEquals("c10", intSwitch("'10abc'"));
+
+    // but compares to a string by its characters
+    assertEquals("default", stringSwitch("'10abc'"));
+  }
+
+  @Test
+  public void testNonNumericStringAndZero()
+    throws Exception
+  {
+    assertEquals("c0", intSwitch("'abc'"));
+    assertEquals("c0", intSwitch("''"));
+    assertEquals("sa", stringSwitch("0"));
+    assertEquals("sabc", stringSwitch("'abc'"));
+  }
+
+  @Test
+  public void testNullAndBooleans()
+    throws Exception
+  {
+    assertEquals("c0", intSwitch("null"));
+    assertEquals("c0", intSwitch("false"));
+    assertEquals("c1", intSwitch("true"));
+
+    assertEquals("sempty", stringSwitch("null"));
+    assertEquals("sempty", stringSwitch("false"));
+    assertEquals("sa", stringSwitch("true"));
+  }
+
+  @Test
+  public void testDoubles()
+    throws Exception
+  {
+    assertEquals("c1", intSwitch("1.0"));
+    assertEquals("c10", intSwitch("10.0"));
+    assertEquals("c0", intSwitch("-0.0"));
+    assertEquals("default", intSwitch("1.5"));
+
+    assertEquals("s10", stringSwitch("10.0"));
+    assertEquals("s1.0", stringSwitch("1.0"));
+  }
+
+  @Test
+  public void testLongLimits()
+    throws Exception
+  {
+    assertEquals("c2^53", intSwitch("9007199254740992"));
+    assertEquals("c-2^53", intSwitch("-9007199254740992"));
+    assertEquals("c2^53", intSwitch("9007199254740992.0"));
+
+    // past 2^53 the longs are distinct even where doubles are not
+    assertEquals("default", intSwitch("9007199254740993"));
+    assertEquals("default", intSwitch("-9007199254740993"));
+    assertEquals("default", intSwitch("9223372036854775807"));
+  }
+
+  @Test
+  public void testFallThrough()
+    throws Exception
+  {
+    assertEquals("ab", fallThrough("1"));
+    assertEquals("b", fallThrough("2"));
+    assertEquals("cde", fallThrough("3"));
+    assertEquals("cde", fallThrough("4"));
+    assertEquals("de", fallThrough("5"));
+    assertEquals("e", fallThrough("6"));
+    assertEquals("fgx", fallThrough("'seven'"));
+    assertEquals("gx", fallThrough("8"));
+    assertEquals("gx", fallThrough("'8'"));
+    assertEquals("x", fallThrough("9"));
+  }
+
+  @Test
+  public void testMatchesScan()
+    throws Exception
+  {
+    // prints the values where the switch and the scan disagree
+    String code = INT_SWITCH + STRING_SWITCH + SCAN
+      + INT_LABELS + STRING_LABELS + VALUES
+      + "foreach ($values as $i => $v) {"
+      + "  if (intSwitch($v) !== scan($intLabels, $v))"
+      + "    echo \"int $i: \", var_export($v, true), \"\\n\";"
+      + "  if (stringSwitch($v) !== scan($stringLabels, $v))"
+      + "    echo \"string $i: \", var_export($v, true), \"\\n\";"
+      + "}";
+
+    assertEquals("", _runner.execute(code));
+  }
+
+  private static String intSwitch(String value)
+    throws Exception
+  {
+    return _runner.execute(INT_SWITCH + "echo intSwitch(" + value + ");");
+  }
+
+  private static String stringSwitch(String value)
+    throws Exception
+  {
+    return _runner.execute(STRING_SWITCH
+                           + "echo stringSwitch(" + value + ");");
+  }
+
+  private static String fallThrough(String value)
+    throws Exception
+  {
+    return _runner.execute(FALL_THROUGH_SWITCH
+                           + "echo fallThrough(" + value + ");");
+  }
+}